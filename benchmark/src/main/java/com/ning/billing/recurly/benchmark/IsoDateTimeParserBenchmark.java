@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.recurly.model.RecurlyObject;
+
+/**
+ * Model timestamp parsing: Joda's ISO parser (new DateTime(String)), the fixed-format parser behind
+ * {@link RecurlyObject#dateTimeOrNull(Object)}, and the epoch millis kept in lazy mode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IsoDateTimeParserBenchmark {
+
+    private final String[] timestamps = new String[1024];
+    private int next = 0;
+
+    public IsoDateTimeParserBenchmark() {
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = new DateTime("2011-06-27T12:34:56Z").plusMinutes(i * 97).toString("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        }
+    }
+
+    @Benchmark
+    public DateTime joda() {
+        // Previous path
+        return new DateTime(nextTimestamp());
+    }
+
+    @Benchmark
+    public DateTime fastParser() {
+        return RecurlyObject.dateTimeOrNull(nextTimestamp());
+    }
+
+    @Benchmark
+    public long millisOnly() {
+        // Lazy mode: only the millis until the getter is called
+        return RecurlyObject.millisOrNull(nextTimestamp());
+    }
+
+    private String nextTimestamp() {
+        return timestamps[next++ & (timestamps.length - 1)];
+    }
+}
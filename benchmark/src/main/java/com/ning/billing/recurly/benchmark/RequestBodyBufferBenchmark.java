@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.TestUtils;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.util.RequestBodyBuffer;
+
+/**
+ * Serialization of an account with billing info: into a pooled {@link RequestBodyBuffer}, against the String
+ * re-encoded by the http client it replaced. Run with -prof gc to compare the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBodyBufferBenchmark {
+
+    private final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+    private final ObjectWriter writer = xmlMapper.writerWithType(Account.class);
+    private final Account account;
+
+    public RequestBodyBufferBenchmark() {
+        account = TestUtils.createRandomAccount();
+        account.setBillingInfo(TestUtils.createRandomBillingInfo());
+    }
+
+    @Benchmark
+    public int string() throws IOException {
+        // Previous approach: String, re-encoded by the http client
+        return xmlMapper.writeValueAsString(account).getBytes("UTF-8").length;
+    }
+
+    @Benchmark
+    public int pooledBuffer() throws IOException {
+        final RequestBodyBuffer buffer = RequestBodyBuffer.acquire();
+        try {
+            writer.writeValue(buffer, account);
+            return buffer.getLength();
+        } finally {
+            buffer.release();
+        }
+    }
+}
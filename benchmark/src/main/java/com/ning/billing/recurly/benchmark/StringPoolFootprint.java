@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.util.StringPool;
+
+/**
+ * Heap retained by a mirror of subscriptions, with and without the model {@link StringPool}
+ * <p/>
+ * Retained size isn't a JMH metric, so this is a plain program:
+ * java -cp target/benchmarks.jar com.ning.billing.recurly.benchmark.StringPoolFootprint [subscriptions]
+ */
+public class StringPoolFootprint {
+
+    private static final String[] STATES = {"active", "canceled", "expired", "future", "in_trial", "live", "past_due"};
+    private static final String[] CURRENCIES = {"USD", "EUR", "GBP", "CAD", "AUD"};
+
+    public static void main(final String[] args) throws InterruptedException {
+        final int subscriptions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final StringPool pool = RecurlyObject.getStringPool();
+        final int maxSize = pool.getMaxSize();
+
+        for (final boolean pooled : new boolean[]{false, true}) {
+            pool.clear();
+            pool.setMaxSize(pooled ? maxSize : 0);
+
+            final long before = usedHeap();
+            final List<Subscription> mirror = new ArrayList<Subscription>(subscriptions);
+            for (int i = 0; i < subscriptions; i++) {
+                final Subscription subscription = new Subscription();
+                // Fresh instances, as produced by the XML parser
+                subscription.setState(new String(STATES[i % STATES.length]));
+                subscription.setCurrency(new String(CURRENCIES[i % CURRENCIES.length]));
+                subscription.setPlanCode(new String("plan-" + (i % 50)));
+                mirror.add(subscription);
+            }
+            final long retained = usedHeap() - before;
+            System.out.println(String.format("%s: %d subscriptions retain %.1f MB (%d bytes/subscription)", pooled ? "Pooled" : "Not pooled",
+                                             mirror.size(), retained / (1024.0 * 1024.0), retained / subscriptions));
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.recurly.util.UriTemplate;
+
+/**
+ * Request url building: precompiled {@link UriTemplate} against the string concatenation it replaced
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UriTemplateBenchmark {
+
+    private static final String BASE_URL = "https://api.recurly.com:443/v2";
+    private static final UriTemplate TEMPLATE = UriTemplate.compile("/accounts/{account_code}/billing_info");
+
+    private final String[] accountCodes = new String[1024];
+    private final StringBuilder url = new StringBuilder(256);
+    private int next = 0;
+
+    public UriTemplateBenchmark() {
+        for (int i = 0; i < accountCodes.length; i++) {
+            accountCodes[i] = "account-" + i;
+        }
+    }
+
+    @Benchmark
+    public String concatenation() {
+        // Previous approach: concatenation in the public method, then StringBuffer in doGET
+        final String resource = "/accounts" + "/" + nextAccountCode() + "/billing_info";
+        final StringBuffer url = new StringBuffer(BASE_URL);
+        url.append(resource);
+        url.append("?");
+        url.append("per_page=" + Integer.valueOf(20).toString());
+        return url.toString();
+    }
+
+    @Benchmark
+    public String template() {
+        url.setLength(0);
+        url.append(BASE_URL);
+        TEMPLATE.appendTo(url, nextAccountCode());
+        url.append('?').append("per_page=20");
+        return url.toString();
+    }
+
+    private String nextAccountCode() {
+        return accountCodes[next++ & (accountCodes.length - 1)];
+    }
+}
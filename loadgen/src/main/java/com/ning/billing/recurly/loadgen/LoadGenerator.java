@@ -0,0 +1,358 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.exceptions.NotFoundException;
+import com.ning.billing.recurly.simulator.RecurlySimulator;
+import com.ning.billing.recurly.simulator.ReplayServer;
+import com.ning.billing.recurly.util.RecurlySslUtils;
+
+/**
+ * Open-loop load generator for {@link RecurlyClient}
+ * <p/>
+ * Calls are started at a fixed rate, whether or not the previous ones completed, and run on a pool of worker
+ * threads sharing one client. Latencies are recorded from the intended start time of each call (which avoids
+ * coordinated omission: a stalled client shows up as queueing delay instead of fewer samples).
+ * <p/>
+ * Allocations are measured per thread, for all threads but the ones of the embedded servers and of the load
+ * generator itself; threads which die during the run are not accounted for.
+ */
+public class LoadGenerator {
+
+    private static final String DISPATCHER_THREAD_NAME = "LoadGenerator-dispatcher";
+    private static final String SAMPLER_THREAD_NAME = "LoadGenerator-sampler";
+    private static final String[] EXCLUDED_THREAD_PREFIXES = {DISPATCHER_THREAD_NAME, SAMPLER_THREAD_NAME, "RecurlySimulator", "ReplayServer"};
+
+    private static final long IN_FLIGHT_SAMPLING_MILLIS = 10;
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private final RecurlyClient recurlyClient;
+    private final Workload workload;
+    private final int rate;
+    private final int threads;
+
+    public LoadGenerator(final RecurlyClient recurlyClient, final Workload workload, final int rate, final int threads) {
+        this.recurlyClient = recurlyClient;
+        this.workload = workload;
+        this.rate = rate;
+        this.threads = threads;
+    }
+
+    /**
+     * Run the workload
+     *
+     * @param warmupSeconds   duration during which calls are issued but not recorded
+     * @param durationSeconds duration of the measurement window
+     * @return the report, once all the calls issued have completed
+     * @throws InterruptedException if interrupted while waiting for the calls
+     */
+    public LoadReport run(final int warmupSeconds, final int durationSeconds) throws InterruptedException {
+        final Map<String, Recorder> recorders = new LinkedHashMap<String, Recorder>();
+        final Map<String, AtomicLong> errorCounters = new ConcurrentHashMap<String, AtomicLong>();
+        for (final String operationName : workload.getOperationNames()) {
+            recorders.put(operationName, new Recorder(3));
+            errorCounters.put(operationName, new AtomicLong());
+        }
+
+        final ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                                                  new LinkedBlockingQueue<Runnable>(),
+                                                                  new NamedThreadFactory("LoadGenerator-worker"));
+        workers.prestartAllCoreThreads();
+
+        final Histogram inFlightRequests = new Histogram(3);
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(SAMPLER_THREAD_NAME));
+
+        final long intervalNanos = 1000000000L / rate;
+        final long startNanos = System.nanoTime();
+        final long measurementStartNanos = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        final long endNanos = measurementStartNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        final String previousThreadName = Thread.currentThread().getName();
+        Thread.currentThread().setName(DISPATCHER_THREAD_NAME);
+        Map<Long, Long> allocationsAtStart = null;
+        try {
+            long intendedStartNanos = startNanos;
+            for (long i = 1; intendedStartNanos < endNanos; i++) {
+                if (allocationsAtStart == null && intendedStartNanos >= measurementStartNanos) {
+                    // Start of the measurement window
+                    allocationsAtStart = getAllocatedBytesPerThread();
+                    recurlyClient.resetPeakInFlightRequests();
+                    RecurlySslUtils.getHandshakeMetrics().reset();
+                    sampler.scheduleAtFixedRate(new Runnable() {
+                        @Override
+                        public void run() {
+                            inFlightRequests.recordValue(recurlyClient.getInFlightRequests());
+                        }
+                    }, 0, IN_FLIGHT_SAMPLING_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                long waitNanos;
+                while ((waitNanos = intendedStartNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+
+                final Operation operation = workload.next();
+                final boolean measured = intendedStartNanos >= measurementStartNanos;
+                workers.execute(new Call(operation, intendedStartNanos, measured ? recorders.get(operation.getName()) : null,
+                                         errorCounters.get(operation.getName())));
+
+                intendedStartNanos = startNanos + i * intervalNanos;
+            }
+        } finally {
+            Thread.currentThread().setName(previousThreadName);
+            workers.shutdown();
+        }
+
+        if (!workers.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+        final long windowNanos = System.nanoTime() - measurementStartNanos;
+        sampler.shutdownNow();
+        sampler.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        final long allocatedBytes = allocationsAtStart == null ? -1 : allocatedBytesSince(allocationsAtStart);
+
+        final Map<String, Histogram> latencies = new LinkedHashMap<String, Histogram>();
+        final Map<String, Long> errors = new HashMap<String, Long>();
+        for (final String operationName : recorders.keySet()) {
+            latencies.put(operationName, recorders.get(operationName).getIntervalHistogram());
+            errors.put(operationName, errorCounters.get(operationName).get());
+        }
+
+        return new LoadReport(rate, windowNanos, latencies, errors, allocatedBytes, inFlightRequests,
+                              recurlyClient.getPeakInFlightRequests(), RecurlySslUtils.getHandshakeMetrics());
+    }
+
+    /**
+     * @return allocated bytes per thread id, or null if not supported
+     */
+    private static Map<Long, Long> getAllocatedBytesPerThread() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemorySupported() || !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+
+        final Map<Long, Long> allocatedBytes = new HashMap<Long, Long>();
+        for (final Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            final Thread thread = entry.getKey();
+            if (isExcluded(thread.getName())) {
+                continue;
+            }
+            final long bytes = threadMXBean.getThreadAllocatedBytes(thread.getId());
+            if (bytes >= 0) {
+                allocatedBytes.put(thread.getId(), bytes);
+            }
+        }
+        return allocatedBytes;
+    }
+
+    private static long allocatedBytesSince(final Map<Long, Long> allocationsAtStart) {
+        final Map<Long, Long> allocationsAtEnd = getAllocatedBytesPerThread();
+        if (allocationsAtEnd == null) {
+            return -1;
+        }
+
+        long allocatedBytes = 0;
+        for (final Map.Entry<Long, Long> entry : allocationsAtEnd.entrySet()) {
+            final Long atStart = allocationsAtStart.get(entry.getKey());
+            allocatedBytes += entry.getValue() - (atStart == null ? 0 : atStart);
+        }
+        return allocatedBytes;
+    }
+
+    private static boolean isExcluded(final String threadName) {
+        for (final String prefix : EXCLUDED_THREAD_PREFIXES) {
+            if (threadName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create the accounts used by the synthetic workload, with billing info, if they don't exist yet
+     *
+     * @param recurlyClient client
+     * @param accounts      number of accounts
+     * @return the account codes
+     */
+    public static List<String> seedAccounts(final RecurlyClient recurlyClient, final int accounts) {
+        final List<String> accountCodes = new ArrayList<String>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            final String accountCode = String.format("loadgen-%05d", i);
+            accountCodes.add(accountCode);
+
+            final Account account = new Account();
+            account.setAccountCode(accountCode);
+            try {
+                recurlyClient.getAccount(accountCode);
+                continue;
+            } catch (NotFoundException e) {
+                account.setEmail(accountCode + "@example.com");
+                account.setFirstName("Load");
+                account.setLastName("Generator");
+                recurlyClient.createAccount(account);
+            }
+
+            final BillingInfo billingInfo = new BillingInfo();
+            billingInfo.setAccount(account);
+            billingInfo.setFirstName("Load");
+            billingInfo.setLastName("Generator");
+            billingInfo.setNumber("4111111111111111");
+            billingInfo.setVerificationValue(123);
+            billingInfo.setMonth(12);
+            billingInfo.setYear(2030);
+            recurlyClient.createOrUpdateBillingInfo(billingInfo);
+        }
+        return accountCodes;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LoadGeneratorOptions options;
+        try {
+            options = LoadGeneratorOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadGeneratorOptions.usage());
+            System.exit(1);
+            return;
+        }
+
+        RecurlySimulator simulator = null;
+        ReplayServer replayServer = null;
+        final RecurlyClient recurlyClient = new RecurlyClient(options.getApiKey());
+        try {
+            final Workload workload;
+            switch (options.getTargetType()) {
+                case ARCHIVE:
+                    final RecordedWorkload recordedWorkload = RecordedWorkload.fromArchive(options.getArchive());
+                    replayServer = ReplayServer.fromArchive(options.getArchive(), options.isOriginalTiming() ? ReplayServer.Timing.ORIGINAL : ReplayServer.Timing.MAXIMUM_SPEED)
+                                               .setLoop(true)
+                                               .start();
+                    recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(replayServer.getBaseUrl()));
+                    if (recordedWorkload.getRecordedPageSize() != null) {
+                        recurlyClient.reconfigure(recurlyClient.getConfig().withPageSize(recordedWorkload.getRecordedPageSize()));
+                    }
+                    recurlyClient.open();
+                    System.out.println(String.format("Replaying %s (%d exchanges skipped)", recordedWorkload.getOperationNames(), recordedWorkload.getSkippedExchanges()));
+                    workload = recordedWorkload;
+                    break;
+                case URL:
+                    recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(options.getUrl()));
+                    recurlyClient.open();
+                    workload = new SyntheticWorkload(options.getMix(), seedAccounts(recurlyClient, options.getAccounts()), options.getSeed());
+                    break;
+                default:
+                    simulator = new RecurlySimulator(options.getApiKey()).start();
+                    recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(simulator.getBaseUrl()));
+                    recurlyClient.open();
+                    workload = new SyntheticWorkload(options.getMix(), seedAccounts(recurlyClient, options.getAccounts()), options.getSeed());
+                    simulator.setLatency(options.getLatencyMillis(), options.getJitterMillis());
+                    break;
+            }
+
+            System.out.println(options);
+            final LoadReport report = new LoadGenerator(recurlyClient, workload, options.getRate(), options.getThreads())
+                    .run(options.getWarmupSeconds(), options.getDurationSeconds());
+            report.print(System.out);
+        } finally {
+            recurlyClient.close();
+            if (simulator != null) {
+                simulator.stop();
+            }
+            if (replayServer != null) {
+                replayServer.stop();
+            }
+        }
+    }
+
+    private final class Call implements Runnable {
+
+        private final Operation operation;
+        private final long intendedStartNanos;
+        private final Recorder recorder;
+        private final AtomicLong errors;
+
+        private Call(final Operation operation, final long intendedStartNanos, final Recorder recorder, final AtomicLong errors) {
+            this.operation = operation;
+            this.intendedStartNanos = intendedStartNanos;
+            this.recorder = recorder;
+            this.errors = errors;
+        }
+
+        @Override
+        public void run() {
+            boolean failed = true;
+            try {
+                failed = operation.execute(recurlyClient) == null;
+            } catch (RuntimeException e) {
+                // RecurlyException, or a failure of the client or of the operation itself
+            } finally {
+                if (recorder != null) {
+                    recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos));
+                    if (failed) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        private NamedThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, prefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import java.io.File;
+
+/**
+ * Command line options of the {@link LoadGenerator}, as --name=value arguments
+ */
+public class LoadGeneratorOptions {
+
+    public static enum TargetType {
+        // Embedded simulator, seeded with the configured number of accounts
+        SIMULATOR,
+        // Replay server serving a trace archive, with the recorded calls as workload
+        ARCHIVE,
+        // Any running endpoint (e.g. a standalone simulator), with the synthetic workload
+        URL
+    }
+
+    private TargetType targetType = TargetType.SIMULATOR;
+    private File archive = null;
+    private String url = null;
+    private String apiKey = "loadgen";
+    private int rate = 100;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private String mix = SyntheticWorkload.DEFAULT_MIX;
+    private int accounts = 100;
+    private int threads = 64;
+    private long latencyMillis = 0;
+    private int jitterMillis = 0;
+    private boolean originalTiming = false;
+    private long seed = 42;
+
+    public static LoadGeneratorOptions parse(final String... args) {
+        final LoadGeneratorOptions options = new LoadGeneratorOptions();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            final String name = arg.substring(2, separator);
+            final String value = arg.substring(separator + 1);
+            if ("target".equals(name)) {
+                options.setTarget(value);
+            } else if ("apiKey".equals(name)) {
+                options.apiKey = value;
+            } else if ("rate".equals(name)) {
+                options.rate = positive(name, value);
+            } else if ("duration".equals(name)) {
+                options.durationSeconds = positive(name, value);
+            } else if ("warmup".equals(name)) {
+                options.warmupSeconds = Integer.parseInt(value);
+            } else if ("mix".equals(name)) {
+                options.mix = value;
+            } else if ("accounts".equals(name)) {
+                options.accounts = positive(name, value);
+            } else if ("threads".equals(name)) {
+                options.threads = positive(name, value);
+            } else if ("latency".equals(name)) {
+                options.latencyMillis = Long.parseLong(value);
+            } else if ("jitter".equals(name)) {
+                options.jitterMillis = Integer.parseInt(value);
+            } else if ("timing".equals(name)) {
+                options.originalTiming = "original".equals(value);
+            } else if ("seed".equals(name)) {
+                options.seed = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg + "\n" + usage());
+            }
+        }
+        return options;
+    }
+
+    public static String usage() {
+        return "Usage: LoadGenerator [--target=simulator|archive:<file>|url:<baseUrl>] [--apiKey=<key>]\n" +
+               "                     [--rate=<requests/s>] [--duration=<s>] [--warmup=<s>] [--threads=<n>] [--seed=<n>]\n" +
+               "                     [--mix=" + SyntheticWorkload.DEFAULT_MIX + "] [--accounts=<n>]\n" +
+               "                     [--latency=<ms>] [--jitter=<ms>] (simulator) [--timing=original|maximum] (archive)";
+    }
+
+    private void setTarget(final String target) {
+        if ("simulator".equals(target)) {
+            targetType = TargetType.SIMULATOR;
+        } else if (target.startsWith("archive:")) {
+            targetType = TargetType.ARCHIVE;
+            archive = new File(target.substring("archive:".length()));
+        } else if (target.startsWith("url:")) {
+            targetType = TargetType.URL;
+            url = target.substring("url:".length());
+        } else {
+            throw new IllegalArgumentException("Unknown target " + target);
+        }
+    }
+
+    private static int positive(final String name, final String value) {
+        final int parsed = Integer.parseInt(value);
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, got " + value);
+        }
+        return parsed;
+    }
+
+    public TargetType getTargetType() {
+        return targetType;
+    }
+
+    public File getArchive() {
+        return archive;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public String getMix() {
+        return mix;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public int getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public boolean isOriginalTiming() {
+        return originalTiming;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("LoadGeneratorOptions");
+        sb.append("{targetType=").append(targetType);
+        sb.append(", archive=").append(archive);
+        sb.append(", url='").append(url).append('\'');
+        sb.append(", rate=").append(rate);
+        sb.append(", durationSeconds=").append(durationSeconds);
+        sb.append(", warmupSeconds=").append(warmupSeconds);
+        sb.append(", mix='").append(mix).append('\'');
+        sb.append(", accounts=").append(accounts);
+        sb.append(", threads=").append(threads);
+        sb.append(", latencyMillis=").append(latencyMillis);
+        sb.append(", jitterMillis=").append(jitterMillis);
+        sb.append(", originalTiming=").append(originalTiming);
+        sb.append(", seed=").append(seed);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.ning.billing.recurly.util.SslHandshakeMetrics;
+
+/**
+ * Results of a {@link LoadGenerator} run, over the measurement window (warm-up excluded)
+ * <p/>
+ * Latencies are in microseconds and measured from the intended start time of each call, so that queueing
+ * delays caused by a saturated client are accounted for.
+ */
+public class LoadReport {
+
+    private final int requestedRate;
+    private final long windowNanos;
+    private final Map<String, Histogram> latencies;
+    private final Map<String, Long> errors;
+    private final Histogram totalLatencies;
+    private final long totalErrors;
+    private final long allocatedBytes;
+    private final Histogram inFlightRequests;
+    private final int peakInFlightRequests;
+    private final SslHandshakeMetrics handshakeMetrics;
+
+    public LoadReport(final int requestedRate, final long windowNanos, final Map<String, Histogram> latencies, final Map<String, Long> errors,
+                      final long allocatedBytes, final Histogram inFlightRequests, final int peakInFlightRequests, final SslHandshakeMetrics handshakeMetrics) {
+        this.requestedRate = requestedRate;
+        this.windowNanos = windowNanos;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.allocatedBytes = allocatedBytes;
+        this.inFlightRequests = inFlightRequests;
+        this.peakInFlightRequests = peakInFlightRequests;
+        this.handshakeMetrics = handshakeMetrics;
+
+        this.totalLatencies = new Histogram(3);
+        long totalErrors = 0;
+        for (final String operationName : latencies.keySet()) {
+            totalLatencies.add(latencies.get(operationName));
+            totalErrors += errors.get(operationName);
+        }
+        this.totalErrors = totalErrors;
+    }
+
+    public int getRequestedRate() {
+        return requestedRate;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public Map<String, Histogram> getLatencies() {
+        return latencies;
+    }
+
+    public Histogram getTotalLatencies() {
+        return totalLatencies;
+    }
+
+    public long getTotalCount() {
+        return totalLatencies.getTotalCount();
+    }
+
+    public long getTotalErrors() {
+        return totalErrors;
+    }
+
+    /**
+     * @return completed calls per second, errors included
+     */
+    public double getThroughput() {
+        return windowNanos == 0 ? 0 : totalLatencies.getTotalCount() * 1e9 / windowNanos;
+    }
+
+    /**
+     * @return bytes allocated by the client and the load generator workers, -1 if the JVM doesn't support allocation accounting
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public Histogram getInFlightRequests() {
+        return inFlightRequests;
+    }
+
+    public int getPeakInFlightRequests() {
+        return peakInFlightRequests;
+    }
+
+    public void print(final PrintStream out) {
+        out.println(String.format("%-26s %9s %7s %9s %9s %9s %9s %9s", "operation", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (final String operationName : latencies.keySet()) {
+            printLine(out, operationName, latencies.get(operationName), errors.get(operationName));
+        }
+        printLine(out, "total", totalLatencies, totalErrors);
+        out.println();
+
+        out.println(String.format("throughput:  %.1f calls/s achieved, %d calls/s requested", getThroughput(), requestedRate));
+        if (allocatedBytes >= 0) {
+            final long count = Math.max(1, totalLatencies.getTotalCount());
+            out.println(String.format("allocations: %.1f MB/s, %d bytes/call", allocatedBytes * 1e3 / windowNanos, allocatedBytes / count));
+        } else {
+            out.println("allocations: not supported by this JVM");
+        }
+        out.println(String.format("connections: %.1f in use on average, %d max sampled, %d peak", inFlightRequests.getMean(), inFlightRequests.getMaxValue(), peakInFlightRequests));
+        if (handshakeMetrics != null && handshakeMetrics.getCompletedHandshakes() > 0) {
+            out.println("handshakes:  " + handshakeMetrics);
+        }
+    }
+
+    private static void printLine(final PrintStream out, final String name, final Histogram histogram, final long errors) {
+        out.println(String.format("%-26s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f", name, histogram.getTotalCount(), errors,
+                                  millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                                  histogram.getMaxValue() / 1e3));
+    }
+
+    private static double millis(final Histogram histogram, final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e3;
+    }
+}
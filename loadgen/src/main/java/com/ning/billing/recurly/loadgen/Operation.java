@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import com.ning.billing.recurly.RecurlyClient;
+
+/**
+ * Single Recurly call issued by the load generator
+ */
+public interface Operation {
+
+    /**
+     * @return name under which the latencies are reported, e.g. getAccount
+     */
+    String getName();
+
+    /**
+     * Run the call. A null result (the client returns null on transport failures) or any runtime exception counts
+     * as an error.
+     *
+     * @return the result of the call
+     */
+    Object execute(RecurlyClient recurlyClient);
+}
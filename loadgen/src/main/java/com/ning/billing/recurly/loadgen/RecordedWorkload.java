@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.trace.RecordedExchange;
+import com.ning.billing.recurly.trace.TraceArchiveReader;
+
+/**
+ * Replay the calls of a trace archive, in recorded order and looping over the archive, through the corresponding
+ * {@link RecurlyClient} methods
+ * <p/>
+ * Meant to run against a {@link com.ning.billing.recurly.simulator.ReplayServer} serving the same archive. Exchanges
+ * which don't map to a client method are skipped.
+ */
+public class RecordedWorkload implements Workload {
+
+    private static final Pattern ACCOUNT = Pattern.compile("/accounts/([^/]+)");
+    private static final Pattern ACCOUNT_SUB_RESOURCE = Pattern.compile("/accounts/([^/]+)/(billing_info|subscriptions|transactions|invoices)");
+    private static final Pattern SUBSCRIPTION = Pattern.compile("/subscriptions/([^/]+)");
+    private static final Pattern TRANSACTION = Pattern.compile("/transactions/([^/]+)");
+    private static final Pattern INVOICE = Pattern.compile("/invoices/([0-9]+)");
+    private static final Pattern PLAN = Pattern.compile("/plans/([^/]+)");
+    private static final Pattern COUPON = Pattern.compile("/coupons/([^/]+)");
+    private static final Pattern STATE_PARAMETER = Pattern.compile("(?:^|&)state=([^&]+)");
+    private static final Pattern PER_PAGE_PARAMETER = Pattern.compile("(?:^|&)per_page=([0-9]+)");
+
+    private final List<Operation> operations = new ArrayList<Operation>();
+    private final Set<String> operationNames = new LinkedHashSet<String>();
+    private final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+
+    private int skippedExchanges = 0;
+    private Integer recordedPageSize = null;
+    private int position = 0;
+
+    public RecordedWorkload(final List<RecordedExchange> exchanges) throws IOException {
+        for (final RecordedExchange exchange : exchanges) {
+            final Operation operation = toOperation(exchange);
+            if (operation == null) {
+                skippedExchanges++;
+            } else {
+                operations.add(operation);
+                operationNames.add(operation.getName());
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("No replayable exchange in the archive");
+        }
+    }
+
+    public static RecordedWorkload fromArchive(final File archive) throws IOException {
+        return new RecordedWorkload(TraceArchiveReader.readAll(archive));
+    }
+
+    /**
+     * @return the page size used during the recording, which the replaying client must use for its urls to match, null if unknown
+     */
+    public Integer getRecordedPageSize() {
+        return recordedPageSize;
+    }
+
+    public int getSkippedExchanges() {
+        return skippedExchanges;
+    }
+
+    @Override
+    public Set<String> getOperationNames() {
+        return operationNames;
+    }
+
+    @Override
+    public Operation next() {
+        final Operation operation = operations.get(position);
+        position = (position + 1) % operations.size();
+        return operation;
+    }
+
+    private Operation toOperation(final RecordedExchange exchange) throws IOException {
+        final String url = exchange.getUrl();
+        final int queryStart = url.indexOf('?');
+        final String path = queryStart < 0 ? url : url.substring(0, queryStart);
+        final String query = queryStart < 0 ? "" : url.substring(queryStart + 1);
+
+        final Matcher perPage = PER_PAGE_PARAMETER.matcher(query);
+        if (recordedPageSize == null && perPage.find()) {
+            recordedPageSize = Integer.valueOf(perPage.group(1));
+        }
+
+        final String method = exchange.getMethod();
+        Matcher matcher;
+        if ("GET".equals(method)) {
+            if ((matcher = ACCOUNT_SUB_RESOURCE.matcher(path)).matches()) {
+                final String accountCode = decode(matcher.group(1));
+                final String subResource = matcher.group(2);
+                if ("billing_info".equals(subResource)) {
+                    return new RecordedOperation("getBillingInfo") {
+                        @Override
+                        public Object execute(final RecurlyClient recurlyClient) {
+                            return recurlyClient.getBillingInfo(accountCode);
+                        }
+                    };
+                } else if ("subscriptions".equals(subResource)) {
+                    final Matcher state = STATE_PARAMETER.matcher(query);
+                    final String status = state.find() ? decode(state.group(1)) : null;
+                    return new RecordedOperation("getAccountSubscriptions") {
+                        @Override
+                        public Object execute(final RecurlyClient recurlyClient) {
+                            if (status == null) {
+                                return recurlyClient.getAccountSubscriptions(accountCode);
+                            } else {
+                                return recurlyClient.getAccountSubscriptions(accountCode, status);
+                            }
+                        }
+                    };
+                } else if ("transactions".equals(subResource)) {
+                    return new RecordedOperation("getAccountTransactions") {
+                        @Override
+                        public Object execute(final RecurlyClient recurlyClient) {
+                            return recurlyClient.getAccountTransactions(accountCode);
+                        }
+                    };
+                } else {
+                    return new RecordedOperation("getAccountInvoices") {
+                        @Override
+                        public Object execute(final RecurlyClient recurlyClient) {
+                            return recurlyClient.getAccountInvoices(accountCode);
+                        }
+                    };
+                }
+            } else if ((matcher = ACCOUNT.matcher(path)).matches()) {
+                final String accountCode = decode(matcher.group(1));
+                return new RecordedOperation("getAccount") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getAccount(accountCode);
+                    }
+                };
+            } else if ((matcher = SUBSCRIPTION.matcher(path)).matches()) {
+                final String uuid = decode(matcher.group(1));
+                return new RecordedOperation("getSubscription") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getSubscription(uuid);
+                    }
+                };
+            } else if ((matcher = TRANSACTION.matcher(path)).matches()) {
+                final String transactionId = decode(matcher.group(1));
+                return new RecordedOperation("getTransaction") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getTransaction(transactionId);
+                    }
+                };
+            } else if ((matcher = INVOICE.matcher(path)).matches()) {
+                final Integer invoiceNumber = Integer.valueOf(matcher.group(1));
+                return new RecordedOperation("getInvoice") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getInvoice(invoiceNumber);
+                    }
+                };
+            } else if ((matcher = PLAN.matcher(path)).matches()) {
+                final String planCode = decode(matcher.group(1));
+                return new RecordedOperation("getPlan") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getPlan(planCode);
+                    }
+                };
+            } else if ((matcher = COUPON.matcher(path)).matches()) {
+                final String couponCode = decode(matcher.group(1));
+                return new RecordedOperation("getCoupon") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getCoupon(couponCode);
+                    }
+                };
+            } else if ("/plans".equals(path)) {
+                return new RecordedOperation("getPlans") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.getPlans();
+                    }
+                };
+            }
+        } else if ("POST".equals(method) && exchange.getRequestBody() != null) {
+            if ("/accounts".equals(path)) {
+                final String body = exchange.getRequestBody();
+                return new RecordedOperation("createAccount") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.createAccount(parse(body, Account.class));
+                    }
+                };
+            } else if ("/subscriptions".equals(path)) {
+                final String body = exchange.getRequestBody();
+                return new RecordedOperation("createSubscription") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.createSubscription(parse(body, Subscription.class));
+                    }
+                };
+            } else if ("/transactions".equals(path)) {
+                final String body = exchange.getRequestBody();
+                return new RecordedOperation("createTransaction") {
+                    @Override
+                    public Object execute(final RecurlyClient recurlyClient) {
+                        return recurlyClient.createTransaction(parse(body, Transaction.class));
+                    }
+                };
+            }
+        } else if ("PUT".equals(method) && exchange.getRequestBody() != null && (matcher = ACCOUNT.matcher(path)).matches()) {
+            final String accountCode = decode(matcher.group(1));
+            final String body = exchange.getRequestBody();
+            return new RecordedOperation("updateAccount") {
+                @Override
+                public Object execute(final RecurlyClient recurlyClient) {
+                    return recurlyClient.updateAccount(accountCode, parse(body, Account.class));
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Payloads are parsed for every call, like an application building its objects
+     */
+    private <T> T parse(final String body, final Class<T> clazz) {
+        try {
+            return xmlMapper.readValue(body, clazz);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to parse recorded payload " + body, e);
+        }
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private abstract static class RecordedOperation implements Operation {
+
+        private final String name;
+
+        RecordedOperation(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Transaction;
+
+/**
+ * Weighted mix of account-centric operations over a fixed set of accounts, e.g.
+ * getAccount:60,getBillingInfo:10,createTransaction:30
+ * <p/>
+ * Operations and accounts are drawn from a seeded generator, so that two runs issue the same sequence of calls.
+ */
+public class SyntheticWorkload implements Workload {
+
+    public static final String DEFAULT_MIX = "getAccount:60,getBillingInfo:10,getAccountSubscriptions:10,getAccountTransactions:10,createTransaction:10";
+
+    public static enum SyntheticOperation {
+        GET_ACCOUNT("getAccount") {
+            @Override
+            Object execute(final RecurlyClient recurlyClient, final String accountCode) {
+                return recurlyClient.getAccount(accountCode);
+            }
+        },
+        GET_BILLING_INFO("getBillingInfo") {
+            @Override
+            Object execute(final RecurlyClient recurlyClient, final String accountCode) {
+                return recurlyClient.getBillingInfo(accountCode);
+            }
+        },
+        GET_ACCOUNT_SUBSCRIPTIONS("getAccountSubscriptions") {
+            @Override
+            Object execute(final RecurlyClient recurlyClient, final String accountCode) {
+                return recurlyClient.getAccountSubscriptions(accountCode);
+            }
+        },
+        GET_ACCOUNT_TRANSACTIONS("getAccountTransactions") {
+            @Override
+            Object execute(final RecurlyClient recurlyClient, final String accountCode) {
+                return recurlyClient.getAccountTransactions(accountCode);
+            }
+        },
+        GET_ACCOUNT_INVOICES("getAccountInvoices") {
+            @Override
+            Object execute(final RecurlyClient recurlyClient, final String accountCode) {
+                return recurlyClient.getAccountInvoices(accountCode);
+            }
+        },
+        CREATE_TRANSACTION("createTransaction") {
+            @Override
+            Object execute(final RecurlyClient recurlyClient, final String accountCode) {
+                final Account account = new Account();
+                account.setAccountCode(accountCode);
+                final Transaction transaction = new Transaction();
+                transaction.setAccount(account);
+                transaction.setAmountInCents(1000);
+                transaction.setCurrency("USD");
+                transaction.setDescription("Load test");
+                return recurlyClient.createTransaction(transaction);
+            }
+        };
+
+        private final String operationName;
+
+        SyntheticOperation(final String operationName) {
+            this.operationName = operationName;
+        }
+
+        public String getOperationName() {
+            return operationName;
+        }
+
+        abstract Object execute(RecurlyClient recurlyClient, String accountCode);
+
+        static SyntheticOperation fromOperationName(final String operationName) {
+            for (final SyntheticOperation operation : values()) {
+                if (operation.operationName.equals(operationName)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation " + operationName);
+        }
+    }
+
+    private final SyntheticOperation[] operations;
+    private final int[] cumulativeWeights;
+    private final List<String> accountCodes;
+    private final Random random;
+
+    /**
+     * @param mix          comma-separated operation:weight pairs
+     * @param accountCodes accounts to draw from, which must exist on the target
+     * @param seed         seed of the generator
+     */
+    public SyntheticWorkload(final String mix, final List<String> accountCodes, final long seed) {
+        final String[] entries = mix.split(",");
+        this.operations = new SyntheticOperation[entries.length];
+        this.cumulativeWeights = new int[entries.length];
+        int totalWeight = 0;
+        for (int i = 0; i < entries.length; i++) {
+            final String[] entry = entries[i].trim().split(":");
+            operations[i] = SyntheticOperation.fromOperationName(entry[0]);
+            final int weight = entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid weight in " + entries[i]);
+            }
+            totalWeight += weight;
+            cumulativeWeights[i] = totalWeight;
+        }
+        if (accountCodes.isEmpty()) {
+            throw new IllegalArgumentException("No account to run the workload against");
+        }
+        this.accountCodes = accountCodes;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public Set<String> getOperationNames() {
+        final Set<String> names = new LinkedHashSet<String>();
+        for (final SyntheticOperation operation : operations) {
+            names.add(operation.getOperationName());
+        }
+        return names;
+    }
+
+    @Override
+    public Operation next() {
+        final int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (draw >= cumulativeWeights[i]) {
+            i++;
+        }
+        return new AccountOperation(operations[i], accountCodes.get(random.nextInt(accountCodes.size())));
+    }
+
+    private static final class AccountOperation implements Operation {
+
+        private final SyntheticOperation operation;
+        private final String accountCode;
+
+        private AccountOperation(final SyntheticOperation operation, final String accountCode) {
+            this.operation = operation;
+            this.accountCode = accountCode;
+        }
+
+        @Override
+        public String getName() {
+            return operation.getOperationName();
+        }
+
+        @Override
+        public Object execute(final RecurlyClient recurlyClient) {
+            return operation.execute(recurlyClient, accountCode);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.simulator.RecurlySimulator;
+
+public class TestLoadGenerator {
+
+    @Test(groups = "fast")
+    public void testOptions() throws Exception {
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse("--target=archive:/tmp/traffic.rcra", "--rate=250", "--timing=original");
+        Assert.assertEquals(options.getTargetType(), LoadGeneratorOptions.TargetType.ARCHIVE);
+        Assert.assertEquals(options.getArchive().getPath(), "/tmp/traffic.rcra");
+        Assert.assertEquals(options.getRate(), 250);
+        Assert.assertTrue(options.isOriginalTiming());
+
+        try {
+            LoadGeneratorOptions.parse("--rate=0");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("rate"));
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testRunAgainstSimulator() throws Exception {
+        final RecurlySimulator simulator = new RecurlySimulator("apiKey").start();
+        final RecurlyClient recurlyClient = new RecurlyClient("apiKey");
+        recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(simulator.getBaseUrl()));
+        recurlyClient.open();
+        try {
+            final List<String> accountCodes = LoadGenerator.seedAccounts(recurlyClient, 5);
+            Assert.assertEquals(simulator.getSite().getAccounts(null).size(), 5);
+
+            final SyntheticWorkload workload = new SyntheticWorkload("getAccount:3,createTransaction:1", accountCodes, 1);
+            final LoadReport report = new LoadGenerator(recurlyClient, workload, 50, 4).run(0, 1);
+
+            Assert.assertEquals(report.getTotalErrors(), 0);
+            // One call every 20ms over a 1s window
+            Assert.assertTrue(report.getTotalCount() >= 45 && report.getTotalCount() <= 55, "Unexpected count " + report.getTotalCount());
+            Assert.assertTrue(report.getLatencies().get("getAccount").getTotalCount() > 0);
+            Assert.assertTrue(report.getLatencies().get("createTransaction").getTotalCount() > 0);
+            Assert.assertTrue(report.getPeakInFlightRequests() >= 1);
+            Assert.assertEquals(recurlyClient.getInFlightRequests(), 0);
+
+            final ByteArrayOutputStream printed = new ByteArrayOutputStream();
+            report.print(new PrintStream(printed, true, "UTF-8"));
+            final String[] lines = printed.toString("UTF-8").split("\n");
+            Assert.assertTrue(lines[0].startsWith("operation"));
+            Assert.assertTrue(lines[1].startsWith("getAccount") || lines[1].startsWith("createTransaction"), lines[1]);
+            Assert.assertTrue(lines[3].startsWith("total"), lines[3]);
+            Assert.assertTrue(lines[3].contains(" " + report.getTotalCount() + " "), lines[3]);
+            Assert.assertTrue(printed.toString("UTF-8").contains("calls/s requested"));
+        } finally {
+            recurlyClient.close();
+            simulator.stop();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Accounts;
+import com.ning.billing.recurly.model.push.Notification;
+import com.ning.billing.recurly.model.push.account.AccountNotification;
+import com.ning.billing.recurly.util.BloomFilter;
+
+/**
+ * Local answers to "does this account exist?", to avoid a round trip (and a 404) per lookup of an unknown account code.
+ * <p/>
+ * Two structures are kept:
+ * <ul>
+ * <li>a negative cache: account codes Recurly answered 404 for, remembered for a short TTL</li>
+ * <li>a Bloom filter of the known account codes, fed by account listings, successful lookups, account creations
+ * made through the client and account notifications ({@link #onNotification(Notification)})</li>
+ * </ul>
+ * A code missing from the Bloom filter is only reported as not found once the filter is marked complete, i.e. after
+ * all the accounts of the site have been listed ({@link #load(RecurlyClient)}): before that, the filter can't tell an
+ * unknown account from one that was never listed. Once complete, the filter is only as good as its feed: accounts
+ * created outside this client must reach it through their notifications. Accounts are never deleted by Recurly
+ * (closed accounts can still be fetched), so known codes never need to be removed.
+ * <pre>
+ * final AccountCodeCache accountCodeCache = new AccountCodeCache(1000000, 0.01, 30, TimeUnit.SECONDS);
+ * recurlyClient.setAccountCodeCache(accountCodeCache);
+ * accountCodeCache.load(recurlyClient);
+ * </pre>
+ */
+public class AccountCodeCache {
+
+    private static final String[] ACCOUNT_STATES = {"active", "closed"};
+
+    private static final int DEFAULT_MAX_NOT_FOUND_ENTRIES = 65536;
+
+    private final BloomFilter knownCodes;
+    private final long notFoundTtlNanos;
+    private final int maxNotFoundEntries;
+    // Account code -> expiration (System.nanoTime())
+    private final ConcurrentMap<String, Long> notFoundCodes = new ConcurrentHashMap<String, Long>();
+    private volatile boolean complete = false;
+
+    // Bumped on every new known code, so that a 404 racing with a creation isn't remembered
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong cachedNotFounds = new AtomicLong();
+    private final AtomicLong filteredNotFounds = new AtomicLong();
+    private final AtomicLong recordedNotFounds = new AtomicLong();
+
+    /**
+     * @param expectedAccounts  number of accounts of the site (with some room for growth)
+     * @param falsePositiveRate false positive probability of the Bloom filter, e.g. 0.01
+     * @param notFoundTtl       how long a 404 is remembered
+     * @param unit              unit of notFoundTtl
+     */
+    public AccountCodeCache(final int expectedAccounts, final double falsePositiveRate, final long notFoundTtl, final TimeUnit unit) {
+        this(expectedAccounts, falsePositiveRate, notFoundTtl, unit, DEFAULT_MAX_NOT_FOUND_ENTRIES);
+    }
+
+    /**
+     * @param maxNotFoundEntries maximum number of remembered 404s, further ones aren't remembered until some expire
+     */
+    public AccountCodeCache(final int expectedAccounts, final double falsePositiveRate, final long notFoundTtl, final TimeUnit unit,
+                            final int maxNotFoundEntries) {
+        this.knownCodes = new BloomFilter(expectedAccounts, falsePositiveRate);
+        this.notFoundTtlNanos = unit.toNanos(notFoundTtl);
+        this.maxNotFoundEntries = maxNotFoundEntries;
+    }
+
+    /**
+     * @param accountCode account code
+     * @return true if the account definitely doesn't exist (as far as this cache knows), false if it has to be asked
+     */
+    public boolean isKnownMissing(final String accountCode) {
+        final Long expiration = notFoundCodes.get(accountCode);
+        if (expiration != null) {
+            if (expiration - System.nanoTime() > 0) {
+                cachedNotFounds.incrementAndGet();
+                return true;
+            }
+            notFoundCodes.remove(accountCode, expiration);
+        }
+
+        if (complete && !knownCodes.mightContain(accountCode)) {
+            filteredNotFounds.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record an existing (or about to be created) account
+     *
+     * @param accountCode account code, ignored if null
+     */
+    public void addKnown(@Nullable final String accountCode) {
+        if (accountCode == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        knownCodes.put(accountCode);
+        notFoundCodes.remove(accountCode);
+    }
+
+    /**
+     * Record the accounts of a listing
+     *
+     * @param accounts accounts, ignored if null
+     */
+    public void addKnown(@Nullable final Accounts accounts) {
+        if (accounts == null) {
+            return;
+        }
+        for (final Account account : accounts) {
+            addKnown(account.getAccountCode());
+        }
+    }
+
+    /**
+     * Feed the account notifications (new, canceled, billing info updated) to the cache: they prove the account exists
+     *
+     * @param notification parsed push notification, other types are ignored
+     */
+    public void onNotification(final Notification notification) {
+        if (notification instanceof AccountNotification) {
+            final Account account = ((AccountNotification) notification).getAccount();
+            if (account != null) {
+                addKnown(account.getAccountCode());
+            }
+        }
+    }
+
+    /**
+     * List all the accounts of the site (active and closed) into the Bloom filter and, if every page could be
+     * fetched, mark it complete
+     *
+     * @param recurlyClient client
+     * @return true if the filter is now complete
+     */
+    public boolean load(final RecurlyClient recurlyClient) {
+        for (final String state : ACCOUNT_STATES) {
+            Accounts page = recurlyClient.getAccounts(state);
+            while (page != null) {
+                addKnown(page);
+                if (!page.hasNextPage()) {
+                    break;
+                }
+                page = recurlyClient.getNextPage(page);
+            }
+            if (page == null) {
+                return false;
+            }
+        }
+        complete = true;
+        return true;
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Remember a 404, unless an account was added since the lookup started
+     *
+     * @param accountCode account code
+     * @param generation  value of {@link #getGeneration()} when the lookup started
+     */
+    void recordNotFound(final String accountCode, final long generation) {
+        if (notFoundTtlNanos <= 0) {
+            return;
+        }
+        if (notFoundCodes.size() >= maxNotFoundEntries) {
+            purgeExpired();
+            if (notFoundCodes.size() >= maxNotFoundEntries) {
+                return;
+            }
+        }
+
+        notFoundCodes.put(accountCode, System.nanoTime() + notFoundTtlNanos);
+        recordedNotFounds.incrementAndGet();
+        if (this.generation.get() != generation) {
+            // The account may have been created meanwhile
+            notFoundCodes.remove(accountCode);
+        }
+    }
+
+    private void purgeExpired() {
+        final long now = System.nanoTime();
+        final Iterator<Map.Entry<String, Long>> iterator = notFoundCodes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() - now <= 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @param complete whether the Bloom filter holds every account code of the site, to answer from it
+     */
+    public void setComplete(final boolean complete) {
+        this.complete = complete;
+    }
+
+    public void clear() {
+        complete = false;
+        generation.incrementAndGet();
+        notFoundCodes.clear();
+        knownCodes.clear();
+    }
+
+    public int getNotFoundEntries() {
+        return notFoundCodes.size();
+    }
+
+    /**
+     * @return number of lookups answered from the remembered 404s
+     */
+    public long getCachedNotFounds() {
+        return cachedNotFounds.get();
+    }
+
+    /**
+     * @return number of lookups answered from the (complete) Bloom filter
+     */
+    public long getFilteredNotFounds() {
+        return filteredNotFounds.get();
+    }
+
+    /**
+     * @return number of 404s remembered
+     */
+    public long getRecordedNotFounds() {
+        return recordedNotFounds.get();
+    }
+}
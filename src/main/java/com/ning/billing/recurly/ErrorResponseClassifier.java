@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.errors.ErrorMessage404;
+import com.ning.billing.recurly.model.errors.Errors;
+import com.ning.billing.recurly.model.errors.TransactionError;
+import com.ning.billing.recurly.model.exceptions.CommonRequestException;
+import com.ning.billing.recurly.model.exceptions.NotFoundException;
+import com.ning.billing.recurly.model.exceptions.RecurlyException;
+import com.ning.billing.recurly.model.exceptions.RequestException;
+import com.ning.billing.recurly.model.exceptions.TransactionException;
+
+/**
+ * Turn an error response into the matching {@link RecurlyException}
+ * <p/>
+ * The root element is peeked at with StAX (only the prolog is read) to pick the target class, so that the body
+ * is deserialized at most once:
+ * <ul>
+ * <li>&lt;error&gt; (404) - {@link NotFoundException}</li>
+ * <li>&lt;errors&gt; with a transaction or a transaction error - {@link TransactionException}</li>
+ * <li>&lt;errors&gt; - {@link RequestException}</li>
+ * <li>&lt;transaction_error&gt; - {@link TransactionException}</li>
+ * <li>anything else - {@link CommonRequestException}</li>
+ * </ul>
+ */
+class ErrorResponseClassifier {
+
+    private static final Logger log = LoggerFactory.getLogger(ErrorResponseClassifier.class);
+
+    private static final String ERROR_ROOT = "error";
+    private static final String ERRORS_ROOT = "errors";
+    private static final String TRANSACTION_ERROR_ROOT = "transaction_error";
+
+    private static final XMLInputFactory xmlInputFactory;
+
+    static {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final XmlMapper xmlMapper;
+
+    ErrorResponseClassifier(final XmlMapper xmlMapper) {
+        this.xmlMapper = xmlMapper;
+    }
+
+    RecurlyException classify(final int statusCode, final String responseBody, final String url) {
+        final String root = peekRootElement(responseBody);
+        if (root == null) {
+            return new CommonRequestException(responseBody, url, statusCode);
+        }
+
+        try {
+            if (ERROR_ROOT.equals(root)) {
+                if (404 == statusCode) {
+                    return new NotFoundException(xmlMapper.readValue(responseBody, ErrorMessage404.class), responseBody, url);
+                }
+                // Not an <errors> document: nothing to map
+                return new RequestException(new Errors(), responseBody, url, statusCode);
+            } else if (ERRORS_ROOT.equals(root)) {
+                final Errors errors = xmlMapper.readValue(responseBody, Errors.class);
+                if (null != errors.getTransactionError() || null != errors.getTransaction()) {
+                    return new TransactionException(errors, responseBody, url, statusCode);
+                }
+                return new RequestException(errors, responseBody, url, statusCode);
+            } else if (TRANSACTION_ERROR_ROOT.equals(root)) {
+                final Errors errors = new Errors();
+                errors.setTransactionError(xmlMapper.readValue(responseBody, TransactionError.class));
+                return new TransactionException(errors, responseBody, url, statusCode);
+            }
+        } catch (Exception e) {
+            log.debug("Unable to deserialize error response with root <{}>: {}", root, e.getLocalizedMessage());
+        }
+
+        return new CommonRequestException(responseBody, url, statusCode);
+    }
+
+    /**
+     * @return the local name of the root element, null if the body isn't XML
+     */
+    static String peekRootElement(final String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(new StringReader(body));
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return reader.getLocalName();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly;
+
+import javax.annotation.Nullable;
+
+/**
+ * Raw XML body of a list page and the url of the next one, for callers parsing the page lazily
+ */
+final class ListPage {
+
+    private final byte[] body;
+    private final String nextUrl;
+
+    ListPage(final byte[] body, @Nullable final String nextUrl) {
+        this.body = body;
+        this.nextUrl = nextUrl;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    @Nullable
+    String getNextUrl() {
+        return nextUrl;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
+import com.fasterxml.jackson.databind.introspect.NopAnnotationIntrospector;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.RecurlyObject;
+
+/**
+ * Sparse update of a Recurly object: only the listed XML elements are sent, e.g.
+ * <pre>
+ * final Account account = new Account();
+ * account.setEmail("jane@example.com");
+ * recurlyClient.updateAccount("1234", Patch.of(account, "email"));
+ * </pre>
+ * Other fields of the object, including nested billing info, adjustments, invoices, subscriptions and transactions,
+ * are left out of the payload. Nested objects listed are sent in full.
+ *
+ * @param <T> type of the updated object
+ */
+public class Patch<T extends RecurlyObject> {
+
+    private static final String FILTER_ID = "recurlyPatch";
+
+    private final T object;
+    private final Set<String> elements;
+
+    private Patch(final T object, final Set<String> elements) {
+        this.object = object;
+        this.elements = elements;
+    }
+
+    public static <T extends RecurlyObject> Patch<T> of(final T object, final String... elements) {
+        return new Patch<T>(object, Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(elements))));
+    }
+
+    /**
+     * @return a copy of this patch, also sending the given elements
+     */
+    public Patch<T> include(final String... elements) {
+        final Set<String> newElements = new LinkedHashSet<String>(this.elements);
+        newElements.addAll(Arrays.asList(elements));
+        return new Patch<T>(object, Collections.unmodifiableSet(newElements));
+    }
+
+    public T getObject() {
+        return object;
+    }
+
+    public Set<String> getElements() {
+        return elements;
+    }
+
+    /**
+     * Build a mapper able to serialize patches: Recurly objects go through a property filter, which serializes
+     * all fields unless a patch is being written
+     *
+     * @return the XML mapper
+     */
+    static XmlMapper newXmlMapper() {
+        final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+        final AnnotationIntrospector filterIntrospector = new NopAnnotationIntrospector() {
+            @Override
+            public Object findFilterId(final Annotated annotated) {
+                if (annotated instanceof AnnotatedClass && RecurlyObject.class.isAssignableFrom(annotated.getRawType())) {
+                    return FILTER_ID;
+                }
+                return null;
+            }
+        };
+        xmlMapper.setAnnotationIntrospector(new AnnotationIntrospectorPair(filterIntrospector, xmlMapper.getSerializationConfig().getAnnotationIntrospector()));
+        xmlMapper.setFilters(new SimpleFilterProvider().addFilter(FILTER_ID, SimpleBeanPropertyFilter.serializeAllExcept(Collections.<String>emptySet())));
+        return xmlMapper;
+    }
+
+    /**
+     * @param xmlMapper mapper built by {@link #newXmlMapper()}
+     * @return a writer serializing the listed elements of the patched object only
+     */
+    ObjectWriter writer(final XmlMapper xmlMapper) {
+        return xmlMapper.writerWithType(object.getClass()).with(new SimpleFilterProvider().addFilter(FILTER_ID, new PatchFilter(object, elements)));
+    }
+
+    @Override
+    public String toString() {
+        return "Patch{elements=" + elements + ", object=" + object + '}';
+    }
+
+    // Filters the fields of the patched object itself, nested objects being serialized in full
+    private static class PatchFilter extends SimpleBeanPropertyFilter {
+
+        private final Object root;
+        private final Set<String> elements;
+
+        PatchFilter(final Object root, final Set<String> elements) {
+            this.root = root;
+            this.elements = elements;
+        }
+
+        @Override
+        public void serializeAsField(final Object pojo, final JsonGenerator jgen, final SerializerProvider provider, final PropertyWriter writer) throws Exception {
+            if (pojo != root || elements.contains(writer.getName())) {
+                writer.serializeAsField(pojo, jgen, provider);
+            }
+        }
+
+        @Override
+        protected boolean include(final BeanPropertyWriter writer) {
+            return true;
+        }
+
+        @Override
+        protected boolean include(final PropertyWriter writer) {
+            return true;
+        }
+    }
+}
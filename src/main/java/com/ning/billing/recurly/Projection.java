@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ning.billing.recurly.model.RecurlyObjects;
+
+/**
+ * Set of XML elements to materialize when parsing a response, e.g. Projection.of("uuid", "state", "plan_code")
+ * for subscriptions.
+ * <p/>
+ * Other child elements of each listed object (or of the object itself, for single-object responses) are skipped
+ * at the token level: their setters are never called and nested objects (plan, add-ons, ...) never created.
+ * Attributes are exposed as elements by the XML parser, e.g. "href" must be listed to keep the account code
+ * parsed from it.
+ */
+public class Projection {
+
+    private final Set<String> elements;
+
+    private Projection(final Set<String> elements) {
+        this.elements = elements;
+    }
+
+    public static Projection of(final String... elements) {
+        return new Projection(Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(elements))));
+    }
+
+    public Set<String> getElements() {
+        return elements;
+    }
+
+    public boolean includes(final String element) {
+        return elements.contains(element);
+    }
+
+    /**
+     * Parse a response, keeping only the projected elements
+     *
+     * @param mapper XML mapper
+     * @param in     response body
+     * @param clazz  response type, a list container (e.g. Subscriptions) or a single object
+     * @return the parsed object
+     * @throws IOException if the response can't be parsed
+     */
+    public <T> T read(final ObjectMapper mapper, final InputStream in, final Class<T> clazz) throws IOException {
+        // List containers are objects of objects: project the children of each item
+        final int depth = RecurlyObjects.class.isAssignableFrom(clazz) ? 2 : 1;
+        final JsonParser parser = new ProjectingParser(mapper.getFactory().createParser(in), elements, depth);
+        try {
+            return mapper.readValue(parser, clazz);
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Projection" + elements;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        return elements.equals(((Projection) o).elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return elements.hashCode();
+    }
+
+    // Skips the fields not in the projection at the given object depth. Object depth is tracked here rather than
+    // through the parsing context, so that skipChildren() calls from the deserializers are accounted for.
+    static class ProjectingParser extends JsonParserDelegate {
+
+        private final Set<String> elements;
+        private final int projectedDepth;
+
+        private int depth;
+
+        ProjectingParser(final JsonParser parser, final Set<String> elements, final int projectedDepth) {
+            super(parser);
+            this.elements = elements;
+            this.projectedDepth = projectedDepth;
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException, JsonParseException {
+            JsonToken token = delegate.nextToken();
+            while (token == JsonToken.FIELD_NAME && depth == projectedDepth && !elements.contains(delegate.getCurrentName())) {
+                delegate.nextToken();
+                delegate.skipChildren();
+                token = delegate.nextToken();
+            }
+
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                depth--;
+            }
+            return token;
+        }
+
+        @Override
+        public JsonToken nextValue() throws IOException, JsonParseException {
+            final JsonToken token = nextToken();
+            return token == JsonToken.FIELD_NAME ? nextToken() : token;
+        }
+
+        @Override
+        public JsonParser skipChildren() throws IOException, JsonParseException {
+            final JsonToken token = delegate.getCurrentToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                delegate.skipChildren();
+                depth--;
+            }
+            return this;
+        }
+    }
+}
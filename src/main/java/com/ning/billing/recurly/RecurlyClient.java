@@ -16,27 +16,55 @@
 
 package com.ning.billing.recurly;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
+import javax.net.ssl.SSLEngine;
 import javax.xml.bind.DatatypeConverter;
 
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.ning.billing.recurly.model.Account;
 import com.ning.billing.recurly.model.Accounts;
 import com.ning.billing.recurly.model.AddOn;
+import com.ning.billing.recurly.model.Adjustments;
 import com.ning.billing.recurly.model.BillingInfo;
 import com.ning.billing.recurly.model.Coupon;
 import com.ning.billing.recurly.model.Coupons;
@@ -45,23 +73,32 @@ import com.ning.billing.recurly.model.Invoices;
 import com.ning.billing.recurly.model.Plan;
 import com.ning.billing.recurly.model.Plans;
 import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.RecurlyObjects;
 import com.ning.billing.recurly.model.Subscription;
 import com.ning.billing.recurly.model.SubscriptionUpdate;
 import com.ning.billing.recurly.model.Subscriptions;
 import com.ning.billing.recurly.model.Transaction;
 import com.ning.billing.recurly.model.Transactions;
+import com.ning.billing.recurly.model.batch.AdjustmentBatch;
+import com.ning.billing.recurly.model.batch.BatchXmlReader;
+import com.ning.billing.recurly.model.batch.TransactionBatch;
 import com.ning.billing.recurly.model.errors.ErrorMessage404;
 import com.ning.billing.recurly.model.errors.Errors;
-import com.ning.billing.recurly.model.exceptions.CommonRequestException;
 import com.ning.billing.recurly.model.exceptions.NotFoundException;
 import com.ning.billing.recurly.model.exceptions.RecurlyException;
-import com.ning.billing.recurly.model.exceptions.RequestException;
-import com.ning.billing.recurly.model.exceptions.TransactionException;
+import com.ning.billing.recurly.trace.AsyncRequestTraceSink;
+import com.ning.billing.recurly.trace.LoggingRequestTraceSink;
+import com.ning.billing.recurly.trace.RequestTrace;
+import com.ning.billing.recurly.trace.RequestTraceSink;
 import com.ning.billing.recurly.util.RecurlySslUtils;
+import com.ning.billing.recurly.util.RequestBodyBuffer;
+import com.ning.billing.recurly.util.ResponseBodyBuffer;
+import com.ning.billing.recurly.util.UriTemplate;
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
 import com.ning.http.client.Response;
+import com.ning.http.client.SSLEngineFactory;
 
 public class RecurlyClient {
 
@@ -69,6 +106,8 @@ public class RecurlyClient {
 
     public static final String RECURLY_DEBUG_KEY = "recurly.debug";
     public static final String RECURLY_PAGE_SIZE_KEY = "recurly.page.size";
+    public static final String RECURLY_WARMUP_CONNECTIONS_KEY = "recurly.warmup.connections";
+    public static final String RECURLY_WARMUP_ASYNC_KEY = "recurly.warmup.async";
 
     private static final Integer DEFAULT_PAGE_SIZE = 20;
     private static final String PER_PAGE = "per_page=";
@@ -76,60 +115,82 @@ public class RecurlyClient {
     public static final String FETCH_RESOURCE = "/recurly_js/result";
 
     private static final String PAGING_ITEMS_PER_PAGE_PARAMETER_NAME = "per_page";
-    private static final String PARAMETER_DELIMITER = "&";
+    private static final String ACCOUNT_STATE_PARAMETER_NAME = "state";
+
+    // Next page of a list, e.g. Link: <https://api.recurly.com/v2/accounts?cursor=1304958672>; rel="next"
+    private static final Pattern NEXT_PAGE_LINK_PATTERN = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
 
     private static final Logger anotherLog  = LoggerFactory.getLogger("recurlyClientLogger");
     private static final String LOG_HTTP_MESSAGE_PREFIX = "RecurlyClient : %s";
 
-    private static final String LOG_HTTP_MESSAGE_TEMPLATE = "status code: %d request: %s response: %s";
-    private static final String LOG_HTTP_MESSAGE_FROM_RECURLY_API_TEMPLATE = "message from API: %s";
-
-    private static final String LOG_MDC = "RecurlyClient.recurlyClientIdentifier";
-
-    private final static String XML_TAG_PATTERN_MATCH_TEMPLATE = "<\\s?%s.*?>.*?</\\s?%s.*?>";
-    private final static String XML_HIDED_NODE_VALUES_MASK = "****";
-    private final static String XML_TAG_NODE_TEMPLATE = "<%s>%s</%s>";
-
-    /**
-     * Checks a system property to see if debugging output is
-     * required. Used internally by the client to decide whether to
-     * generate debug output
-     */
-    private static boolean debug() {
-        return Boolean.getBoolean(RECURLY_DEBUG_KEY);
-    }
+    private static final int WARMUP_TIMEOUT_SECONDS = 30;
+
+    // Classes returned or sent by the API: their (de)serializers are built during warm-up
+    private static final List<Class<?>> WARMUP_MODEL_CLASSES = Arrays.<Class<?>>asList(Account.class, Accounts.class, AddOn.class,
+                                                                                       BillingInfo.class, Coupon.class, Coupons.class,
+                                                                                       Invoice.class, Invoices.class, Plan.class, Plans.class,
+                                                                                       Subscription.class, SubscriptionUpdate.class, Subscriptions.class,
+                                                                                       Transaction.class, Transactions.class,
+                                                                                       Errors.class, ErrorMessage404.class);
+
+
+    private static final UriTemplate ACCOUNTS = UriTemplate.compile(Accounts.ACCOUNTS_RESOURCE);
+    private static final UriTemplate ACCOUNT = UriTemplate.compile(Account.ACCOUNT_RESOURCE + "/{account_code}");
+    private static final UriTemplate ACCOUNT_BILLING_INFO = UriTemplate.compile(ACCOUNT + BillingInfo.BILLING_INFO_RESOURCE);
+    private static final UriTemplate ACCOUNT_SUBSCRIPTIONS = UriTemplate.compile(ACCOUNT + Subscriptions.SUBSCRIPTIONS_RESOURCE);
+    private static final UriTemplate ACCOUNT_TRANSACTIONS = UriTemplate.compile(ACCOUNT + Transactions.TRANSACTIONS_RESOURCE);
+    private static final UriTemplate ACCOUNT_INVOICES = UriTemplate.compile(ACCOUNT + Invoices.INVOICES_RESOURCE);
+    private static final UriTemplate ACCOUNT_ADJUSTMENTS = UriTemplate.compile(ACCOUNT + Adjustments.INVOICES_RESOURCE);
+    private static final UriTemplate SUBSCRIPTIONS = UriTemplate.compile(Subscription.SUBSCRIPTION_RESOURCE);
+    private static final UriTemplate SUBSCRIPTION = UriTemplate.compile(Subscription.SUBSCRIPTION_RESOURCE + "/{uuid}");
+    private static final UriTemplate SUBSCRIPTION_CANCEL = UriTemplate.compile(SUBSCRIPTION + "/cancel");
+    private static final UriTemplate SUBSCRIPTION_REACTIVATE = UriTemplate.compile(SUBSCRIPTION + "/reactivate");
+    private static final UriTemplate TRANSACTIONS = UriTemplate.compile(Transactions.TRANSACTIONS_RESOURCE);
+    private static final UriTemplate TRANSACTION = UriTemplate.compile(TRANSACTIONS + "/{transaction_id}");
+    private static final UriTemplate INVOICE = UriTemplate.compile(Invoices.INVOICES_RESOURCE + "/{invoice_number}");
+    private static final UriTemplate PLANS = UriTemplate.compile(Plans.PLANS_RESOURCE);
+    private static final UriTemplate PLAN = UriTemplate.compile(PLANS + "/{plan_code}");
+    private static final UriTemplate PLAN_ADD_ONS = UriTemplate.compile(PLAN + AddOn.ADDONS_RESOURCE);
+    private static final UriTemplate PLAN_ADD_ON = UriTemplate.compile(PLAN_ADD_ONS + "/{add_on_code}");
+    private static final UriTemplate COUPONS = UriTemplate.compile(Coupon.COUPON_RESOURCE);
+    private static final UriTemplate COUPON = UriTemplate.compile(COUPONS + "/{coupon_code}");
+    private static final UriTemplate FETCH = UriTemplate.compile(FETCH_RESOURCE + "/{recurly_token}");
+
+    private static final int URL_BUILDER_MAX_CAPACITY = 4096;
+
+    // Per-thread url buffer, to avoid re-growing a new builder for every request
+    private static final ThreadLocal<StringBuilder> URL_BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
 
-    private class UrlParameterList
+    private static class UrlParameterList
     {
-        private List<String> parameterListHolder;
+        private final List<String> names = new ArrayList<String>(4);
+        private final List<String> values = new ArrayList<String>(4);
 
-        public UrlParameterList()
+        public void addParameter(String parameterName, String parameterValue)
         {
-            parameterListHolder = new ArrayList<String>();
+            names.add(parameterName);
+            values.add(parameterValue);
         }
 
-        public void addParameter(String parameterName,String parameterValue)
+        public boolean hasParameter(String parameterName)
         {
-            parameterListHolder.add(parameterName + "=" + parameterValue);
+            return names.contains(parameterName);
         }
 
-        public String getUrlParameterString()
+        public void appendTo(StringBuilder url)
         {
-            boolean isItFirst = true;
-            StringBuffer stringBuffer = new StringBuffer();
-            for (String parameterNameValuePair : parameterListHolder)
+            for (int i = 0; i < names.size(); i++)
             {
-                if (!isItFirst)
-                    stringBuffer.append(PARAMETER_DELIMITER);
-                stringBuffer.append(parameterNameValuePair);
-                isItFirst = false;
+                UriTemplate.appendQueryParameter(url, names.get(i), values.get(i));
             }
-
-            return stringBuffer.toString();
         }
     }
 
-
     /**
      * Returns the page Size to use when querying. The page size
      * is set as System.property: recurly.page.size
@@ -150,13 +211,37 @@ public class RecurlyClient {
 
     // TODO: should we make it static?
     private final XmlMapper xmlMapper;
+    // Writers resolve the root serializer once, instead of on every writeValue call
+    private final ConcurrentMap<Class<?>, ObjectWriter> xmlWriters = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+    // Separate mapper for sparse updates, so that the property filter doesn't apply to other payloads
+    private final XmlMapper patchXmlMapper = Patch.newXmlMapper();
+    private final ErrorResponseClassifier errorResponseClassifier;
 
     private final String key;
-    private final String baseUrl;
+    private final String host;
+    private final int port;
     private AsyncHttpClient client;
 
     private String instanceIdentifier;
-    private Set<String> hideXMLResponseNodeValues = new HashSet<String>();
+    // Derived updates (read, copy, install) go through compareAndSet so that concurrent ones aren't lost
+    private final AtomicReference<RecurlyClientConfig> config = new AtomicReference<RecurlyClientConfig>();
+    // Owned by the client: closed with it, and replaced when the client is opened again
+    private AsyncRequestTraceSink defaultRequestTraceSink = newDefaultRequestTraceSink();
+    private volatile RequestTraceSink requestTraceSink = defaultRequestTraceSink;
+    private volatile ResponseCache responseCache;
+    // Cache entries are specific to an API key, which isn't kept in clear in the keys
+    private final String responseCacheKeyPrefix;
+    private volatile AccountCodeCache accountCodeCache;
+    private final Set<String> hideXMLResponseNodeValuesView = new HideXMLResponseNodeValuesView();
+
+    // Each in-flight request holds a connection (no pipelining)
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicInteger peakInFlightRequests = new AtomicInteger();
+
+    // Single-flight GETs (see RecurlyClientConfig#isCoalesceGets()), keyed by class, projection and url
+    private final ConcurrentMap<String, InFlightGet> inFlightGets = new ConcurrentHashMap<String, InFlightGet>();
+    private final AtomicLong leaderGets = new AtomicLong();
+    private final AtomicLong coalescedGets = new AtomicLong();
 
     public RecurlyClient(final String apiKey) {
         this(apiKey, "api.recurly.com", 443, "v2");
@@ -164,8 +249,12 @@ public class RecurlyClient {
 
     public RecurlyClient(final String apiKey, final String host, final int port, final String version) {
         this.key = DatatypeConverter.printBase64Binary(apiKey.getBytes());
-        this.baseUrl = String.format("https://%s:%d/%s", host, port, version);
+        this.responseCacheKeyPrefix = sha256Hex(apiKey) + ' ';
+        this.host = host;
+        this.port = port;
+        this.config.set(RecurlyClientConfig.fromSystemProperties(String.format("https://%s:%d/%s", host, port, version)));
         this.xmlMapper = RecurlyObject.newXmlMapper();
+        this.errorResponseClassifier = new ErrorResponseClassifier(xmlMapper);
 
         instanceIdentifier = getLog4jMDCIdentifier();
     }
@@ -176,18 +265,108 @@ public class RecurlyClient {
     }
     /**
      * Open the underlying http client
+     * <p/>
+     * If the recurly.warmup.connections system property is set, the client is warmed up (see {@link #warmUp(int)}),
+     * synchronously unless recurly.warmup.async is set to true.
      */
     public synchronized void open() {
         client = createHttpClient();
+
+        if (defaultRequestTraceSink.isClosed()) {
+            final AsyncRequestTraceSink closedSink = defaultRequestTraceSink;
+            defaultRequestTraceSink = newDefaultRequestTraceSink();
+            if (requestTraceSink == closedSink) {
+                requestTraceSink = defaultRequestTraceSink;
+            }
+        }
+
+        final int warmUpConnections = Integer.getInteger(RECURLY_WARMUP_CONNECTIONS_KEY, 0);
+        if (warmUpConnections > 0) {
+            if (Boolean.getBoolean(RECURLY_WARMUP_ASYNC_KEY)) {
+                final Thread warmUpThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        warmUp(warmUpConnections);
+                    }
+                }, "RecurlyClient-warmup");
+                warmUpThread.setDaemon(true);
+                warmUpThread.start();
+            } else {
+                warmUp(warmUpConnections);
+            }
+        }
+    }
+
+    /**
+     * Warm up the client so that the first API calls run at steady-state latency
+     * <p/>
+     * Resolves the Recurly host, opens the requested number of keep-alive connections (TCP and TLS handshakes
+     * included) by issuing concurrent lightweight HEAD requests, and builds the Jackson (de)serializers for
+     * the model classes. Failures are logged and otherwise ignored.
+     *
+     * @param connections number of pooled connections to establish
+     */
+    public void warmUp(final int connections) {
+        final long startNanos = System.nanoTime();
+        try {
+            InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            log.warn("Unable to resolve {} during warm-up: {}", host, e.getLocalizedMessage());
+        }
+
+        final List<Future<Response>> futures = new ArrayList<Future<Response>>(connections);
+        for (int i = 0; i < connections; i++) {
+            try {
+                futures.add(client.prepareHead(config.get().getBaseUrl() + Plans.PLANS_RESOURCE + "?" + PER_PAGE + "1")
+                                  .addHeader("Authorization", "Basic " + key)
+                                  .addHeader("Accept", "application/xml")
+                                  .execute());
+            } catch (IOException e) {
+                log.warn("Unable to open warm-up connection: {}", e.getLocalizedMessage());
+            }
+        }
+
+        for (final Class<?> clazz : WARMUP_MODEL_CLASSES) {
+            xmlMapper.canDeserialize(xmlMapper.getTypeFactory().constructType(clazz));
+            xmlWriterFor(clazz);
+        }
+
+        int established = 0;
+        for (final Future<Response> future : futures) {
+            try {
+                future.get(WARMUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                established++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted during warm-up");
+                break;
+            } catch (ExecutionException e) {
+                log.warn("Warm-up request failed: {}", e.getLocalizedMessage());
+            } catch (TimeoutException e) {
+                log.warn("Warm-up request timed out");
+            }
+        }
+
+        log.info("RecurlyClient warm-up: {} connection(s) established in {} ms", established, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
     }
 
     /**
-     * Close the underlying http client
+     * Close the underlying http client, and flush the traces of the default trace sink
      */
     public synchronized void close() {
         if (client != null) {
             client.close();
         }
+
+        try {
+            defaultRequestTraceSink.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static AsyncRequestTraceSink newDefaultRequestTraceSink() {
+        return new AsyncRequestTraceSink(new LoggingRequestTraceSink(anotherLog));
     }
 
     /**
@@ -199,7 +378,8 @@ public class RecurlyClient {
      * @return the newly created account object on success, null otherwise
      */
     public Account createAccount(final Account account) {
-        return doPOST(Account.ACCOUNT_RESOURCE, account, Account.class);
+        accountCreated(account);
+        return doPOST(ACCOUNTS, account, Account.class);
     }
 
     /**
@@ -210,23 +390,92 @@ public class RecurlyClient {
      * @return account object on success, null otherwise
      */
     public Accounts getAccounts() {
-        return doGET(Accounts.ACCOUNTS_RESOURCE, Accounts.class);
+        return knownAccounts(doGET(ACCOUNTS, null, Accounts.class));
+    }
+
+    /**
+     * Get Accounts, only materializing the projected elements of each account
+     *
+     * @param projection elements to parse, e.g. Projection.of("account_code", "state")
+     * @return account object on success, null otherwise
+     */
+    public Accounts getAccounts(final Projection projection) {
+        return knownAccounts(doGET(ACCOUNTS, null, projection, Accounts.class));
+    }
+
+    /**
+     * Get Accounts in a given state
+     * <p/>
+     * Returns the first page, use {@link #getNextPage(RecurlyObjects)} to walk the following ones.
+     *
+     * @param state account state, e.g. active, closed, past_due, subscriber or non_subscriber
+     * @return account object on success, null otherwise
+     */
+    public Accounts getAccounts(final String state) {
+        final UrlParameterList urlParameterList = new UrlParameterList();
+        urlParameterList.addParameter(ACCOUNT_STATE_PARAMETER_NAME, state);
+        return knownAccounts(doGET(ACCOUNTS, urlParameterList, Accounts.class));
+    }
+
+    /**
+     * Get the page following a list returned by the client, using the cursor of its Link header
+     *
+     * @param page a page returned by the client
+     * @return the next page on success, null if the page is the last one or on failure
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends RecurlyObjects<?>> T getNextPage(final T page) {
+        final String nextUrl = page.getNextUrl();
+        if (nextUrl == null) {
+            return null;
+        }
+
+        final T next = doGETNextPage(nextUrl, (Class<T>) page.getClass());
+        if (next instanceof Accounts) {
+            knownAccounts((Accounts) next);
+        }
+        return next;
     }
 
     public Coupons getCoupons() {
-        return doGET(Coupons.COUPONS_RESOURCE, Coupons.class);
+        return doGET(COUPONS, null, Coupons.class);
     }
 
     /**
      * Get Account
      * <p/>
-     * Returns information about a single account.
+     * Returns information about a single account. With an {@link AccountCodeCache}, unknown accounts may be
+     * reported without calling Recurly.
      *
      * @param accountCode recurly account id
      * @return account object on success, null otherwise
+     * @throws NotFoundException if the account doesn't exist
      */
     public Account getAccount(final String accountCode) {
-        return doGET(Account.ACCOUNT_RESOURCE + "/" + accountCode, Account.class);
+        final AccountCodeCache accountCodeCache = this.accountCodeCache;
+        if (accountCodeCache == null) {
+            return doGET(ACCOUNT, null, Account.class, accountCode);
+        }
+
+        if (accountCodeCache.isKnownMissing(accountCode)) {
+            final ErrorMessage404 error = new ErrorMessage404();
+            error.setSymbol("not_found");
+            error.setDescription("Couldn't find Account with account_code = " + accountCode);
+            throw new NotFoundException(error, error.getDescription(), buildUrl(config.get(), ACCOUNT, null, false, accountCode));
+        }
+
+        final long generation = accountCodeCache.getGeneration();
+        final Account account;
+        try {
+            account = doGET(ACCOUNT, null, Account.class, accountCode);
+        } catch (NotFoundException e) {
+            accountCodeCache.recordNotFound(accountCode, generation);
+            throw e;
+        }
+        if (account != null) {
+            accountCodeCache.addKnown(accountCode);
+        }
+        return account;
     }
 
     /**
@@ -239,7 +488,18 @@ public class RecurlyClient {
      * @return the updated account object on success, null otherwise
      */
     public Account updateAccount(final String accountCode, final Account account) {
-        return doPUT(Account.ACCOUNT_RESOURCE + "/" + accountCode, account, Account.class);
+        return doPUT(ACCOUNT, account, Account.class, accountCode);
+    }
+
+    /**
+     * Update Account, only sending the elements listed in the patch
+     *
+     * @param accountCode recurly account id
+     * @param patch       account object and modified elements, e.g. Patch.of(account, "email", "first_name")
+     * @return the updated account object on success, null otherwise
+     */
+    public Account updateAccount(final String accountCode, final Patch<Account> patch) {
+        return doPUT(ACCOUNT, patch, Account.class, accountCode);
     }
 
     /**
@@ -251,7 +511,7 @@ public class RecurlyClient {
      * @param accountCode recurly account id
      */
     public void closeAccount(final String accountCode) {
-        doDELETE(Account.ACCOUNT_RESOURCE + "/" + accountCode);
+        doDELETE(ACCOUNT, accountCode);
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////
@@ -265,9 +525,8 @@ public class RecurlyClient {
      * @return the newly created Subscription object on success, null otherwise
      */
     public Subscription createSubscription(final Subscription subscription) {
-        return doPOST(Subscription.SUBSCRIPTION_RESOURCE,
-                subscription, Subscription.class
-        );
+        accountCreated(subscription.getAccount());
+        return doPOST(SUBSCRIPTIONS, subscription, Subscription.class);
     }
 
     /**
@@ -279,10 +538,7 @@ public class RecurlyClient {
      * @return Subscriptions for the specified user
      */
     public Subscription getSubscription(final String uuid) {
-        return doGET(Subscriptions.SUBSCRIPTIONS_RESOURCE
-                + "/" + uuid,
-                Subscription.class
-        );
+        return doGET(SUBSCRIPTION, null, Subscription.class, uuid);
     }
 
     /**
@@ -294,8 +550,7 @@ public class RecurlyClient {
      * @return -?-
      */
     public Subscription cancelSubscription(final Subscription subscription) {
-        return doPUT(Subscription.SUBSCRIPTION_RESOURCE + "/" + subscription.getUuid() + "/cancel",
-                     subscription, Subscription.class);
+        return doPUT(SUBSCRIPTION_CANCEL, subscription, Subscription.class, subscription.getUuid());
     }
 
     /**
@@ -307,9 +562,7 @@ public class RecurlyClient {
      * @return -?-
      */
     public Subscription reactivateSubscription(final Subscription subscription) {
-        return doPUT(Subscription.SUBSCRIPTION_RESOURCE + "/" + subscription.getUuid() + "/reactivate",
-                subscription, Subscription.class
-        );
+        return doPUT(SUBSCRIPTION_REACTIVATE, subscription, Subscription.class, subscription.getUuid());
     }
 
     /**
@@ -321,11 +574,18 @@ public class RecurlyClient {
      * @return Subscription the updated subscription
      */
     public Subscription updateSubscription(final String uuid, final SubscriptionUpdate subscriptionUpdate) {
-        return doPUT(Subscriptions.SUBSCRIPTIONS_RESOURCE
-                + "/" + uuid,
-                subscriptionUpdate,
-                Subscription.class
-        );
+        return doPUT(SUBSCRIPTION, subscriptionUpdate, Subscription.class, uuid);
+    }
+
+    /**
+     * Update a particular {@link Subscription} by it's UUID, only sending the elements listed in the patch
+     *
+     * @param uuid  UUID of the subscription to update
+     * @param patch subscription update and modified elements, e.g. Patch.of(subscriptionUpdate, "quantity")
+     * @return Subscription the updated subscription
+     */
+    public Subscription updateSubscription(final String uuid, final Patch<SubscriptionUpdate> patch) {
+        return doPUT(SUBSCRIPTION, patch, Subscription.class, uuid);
     }
 
     /**
@@ -337,10 +597,7 @@ public class RecurlyClient {
      * @return Subscriptions for the specified user
      */
     public Subscriptions getAccountSubscriptions(final String accountCode) {
-        return doGET(Account.ACCOUNT_RESOURCE
-                     + "/" + accountCode
-                     + Subscriptions.SUBSCRIPTIONS_RESOURCE,
-                     Subscriptions.class);
+        return doGET(ACCOUNT_SUBSCRIPTIONS, null, Subscriptions.class, accountCode);
     }
 
     /**
@@ -353,13 +610,23 @@ public class RecurlyClient {
      * @return Subscriptions for the specified user
      */
     public Subscriptions getAccountSubscriptions(final String accountCode, final String status) {
-        return doGET(Account.ACCOUNT_RESOURCE
-                + "/" + accountCode
-                + Subscriptions.SUBSCRIPTIONS_RESOURCE
-                + "?state="
-                + status,
-                Subscriptions.class
-        );
+        final UrlParameterList urlParameterList = new UrlParameterList();
+        urlParameterList.addParameter("state", status);
+        return doGET(ACCOUNT_SUBSCRIPTIONS, urlParameterList, Subscriptions.class, accountCode);
+    }
+
+    /**
+     * Get the subscriptions for an account, only materializing the projected elements of each subscription
+     * <p/>
+     * Skipped elements (e.g. the nested plan and add-ons) are never deserialized, which reduces parsing time and
+     * garbage on large pages.
+     *
+     * @param accountCode recurly account id
+     * @param projection  elements to parse, e.g. Projection.of("uuid", "state", "plan_code", "current_period_ends_at")
+     * @return Subscriptions for the specified user
+     */
+    public Subscriptions getAccountSubscriptions(final String accountCode, final Projection projection) {
+        return doGET(ACCOUNT_SUBSCRIPTIONS, null, projection, Subscriptions.class, accountCode);
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////
@@ -384,8 +651,7 @@ public class RecurlyClient {
         final String accountCode = billingInfo.getAccount().getAccountCode();
         // Unset it to avoid confusing Recurly
         billingInfo.setAccount(null);
-        return doPUT(Account.ACCOUNT_RESOURCE + "/" + accountCode + BillingInfo.BILLING_INFO_RESOURCE,
-                     billingInfo, BillingInfo.class);
+        return doPUT(ACCOUNT_BILLING_INFO, billingInfo, BillingInfo.class, accountCode);
     }
 
     /**
@@ -397,8 +663,7 @@ public class RecurlyClient {
      * @return the current billing info object associated with this account on success, null otherwise
      */
     public BillingInfo getBillingInfo(final String accountCode) {
-        return doGET(Account.ACCOUNT_RESOURCE + "/" + accountCode + BillingInfo.BILLING_INFO_RESOURCE,
-                     BillingInfo.class);
+        return doGET(ACCOUNT_BILLING_INFO, null, BillingInfo.class, accountCode);
     }
 
     /**
@@ -410,7 +675,7 @@ public class RecurlyClient {
      * @param accountCode recurly account id
      */
     public void clearBillingInfo(final String accountCode) {
-        doDELETE(Account.ACCOUNT_RESOURCE + "/" + accountCode + BillingInfo.BILLING_INFO_RESOURCE);
+        doDELETE(ACCOUNT_BILLING_INFO, accountCode);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -425,9 +690,18 @@ public class RecurlyClient {
      * @return the transaction history associated with this account on success, null otherwise
      */
     public Transactions getAccountTransactions(final String accountCode) {
-        return doGET(Accounts.ACCOUNTS_RESOURCE + "/" + accountCode + Transactions.TRANSACTIONS_RESOURCE,
-                Transactions.class
-        );
+        return doGET(ACCOUNT_TRANSACTIONS, null, Transactions.class, accountCode);
+    }
+
+    /**
+     * Lookup an account's transactions history, only materializing the projected elements of each transaction
+     *
+     * @param accountCode recurly account id
+     * @param projection  elements to parse, e.g. Projection.of("uuid", "amount_in_cents", "status")
+     * @return the transaction history associated with this account on success, null otherwise
+     */
+    public Transactions getAccountTransactions(final String accountCode, final Projection projection) {
+        return doGET(ACCOUNT_TRANSACTIONS, null, projection, Transactions.class, accountCode);
     }
 
     /**
@@ -456,9 +730,88 @@ public class RecurlyClient {
             urlParameterList.addParameter(PAGING_ITEMS_PER_PAGE_PARAMETER_NAME, Integer.toString(pagingParams.getItemsPerPage()));
 //            urlParameterList.addParameter(PAGING_PAGE_ID_PARAMETER_NAME, Integer.toString(pagingParams.getPageId()));
         }
-        String parameters = urlParameterList.getUrlParameterString();
 
-        return doGET(Accounts.ACCOUNTS_RESOURCE + "/" + accountCode + Transactions.TRANSACTIONS_RESOURCE, parameters, Transactions.class);
+        return doGET(ACCOUNT_TRANSACTIONS, urlParameterList, Transactions.class, accountCode);
+    }
+
+    /**
+     * Lookup an account's transactions history, as a columnar batch
+     * <p/>
+     * The response is streamed into primitive columns instead of one {@link Transaction} bean per row, for jobs
+     * scanning large volumes of transactions.
+     *
+     * @param accountCode recurly account id
+     * @return the transaction history associated with this account on success, null otherwise
+     */
+    public TransactionBatch getAccountTransactionBatch(final String accountCode) {
+        return doGET(ACCOUNT_TRANSACTIONS, null, TransactionBatch.class, accountCode);
+    }
+
+    /**
+     * Search the transactions of the site
+     * <p/>
+     * Returns the first page, use {@link #getNextPage(RecurlyObjects)} to walk the following ones.
+     *
+     * @param query filters, sort order and cursor
+     * @return the matching transactions on success, null otherwise
+     */
+    public Transactions getTransactions(final TransactionQuery query) {
+        return doGET(TRANSACTIONS, transactionQueryParameters(query), Transactions.class);
+    }
+
+    /**
+     * Search the transactions of the site, going through all pages
+     * <p/>
+     * Only one page is held at a time and transactions are deserialized as they are iterated over, e.g. to export
+     * a day of transactions with a query on that day.
+     *
+     * @param query filters, sort order and cursor of the first page
+     * @return the matching transactions, the stream fails with a RecurlyException if a page can't be fetched
+     */
+    public TransactionStream streamTransactions(final TransactionQuery query) {
+        return new TransactionStream(this, xmlMapper, buildUrl(config.get(), TRANSACTIONS, transactionQueryParameters(query), true));
+    }
+
+    /**
+     * Resume an interrupted {@link TransactionStream}
+     *
+     * @param pageUrl    {@link TransactionStream#getPageUrl()} of the interrupted stream
+     * @param pageOffset {@link TransactionStream#getPageOffset()} of the interrupted stream
+     * @return the transactions following the last one returned by the interrupted stream
+     */
+    public TransactionStream resumeTransactions(final String pageUrl, final int pageOffset) {
+        final TransactionStream stream = new TransactionStream(this, xmlMapper, pageUrl);
+        stream.skip(pageOffset);
+        return stream;
+    }
+
+    private static UrlParameterList transactionQueryParameters(final TransactionQuery query) {
+        final UrlParameterList urlParameterList = new UrlParameterList();
+        if (query.getState() != null) {
+            urlParameterList.addParameter(Transaction.STATE_PARAMETER_NAME, Transaction.State.getStringValue(query.getState()));
+        }
+        if (query.getType() != null) {
+            urlParameterList.addParameter(Transaction.TYPE_PARAMETER_NAME, Transaction.Type.getStringValue(query.getType()));
+        }
+        if (query.getBeginTime() != null) {
+            urlParameterList.addParameter(TransactionQuery.BEGIN_TIME_PARAMETER_NAME, query.getBeginTime().toDateTime(DateTimeZone.UTC).toString());
+        }
+        if (query.getEndTime() != null) {
+            urlParameterList.addParameter(TransactionQuery.END_TIME_PARAMETER_NAME, query.getEndTime().toDateTime(DateTimeZone.UTC).toString());
+        }
+        if (query.getSort() != null) {
+            urlParameterList.addParameter(TransactionQuery.SORT_PARAMETER_NAME, query.getSort().getParameterValue());
+        }
+        if (query.getOrder() != null) {
+            urlParameterList.addParameter(TransactionQuery.ORDER_PARAMETER_NAME, query.getOrder().getParameterValue());
+        }
+        if (query.getCursor() != null) {
+            urlParameterList.addParameter(TransactionQuery.CURSOR_PARAMETER_NAME, query.getCursor());
+        }
+        if (query.getPerPage() != null) {
+            urlParameterList.addParameter(PAGING_ITEMS_PER_PAGE_PARAMETER_NAME, query.getPerPage().toString());
+        }
+        return urlParameterList;
     }
 
     /**
@@ -468,7 +821,7 @@ public class RecurlyClient {
      * @return the transaction if found, null otherwise
      */
     public Transaction getTransaction(final String transactionId) {
-        return doGET(Transactions.TRANSACTIONS_RESOURCE + "/" + transactionId, Transaction.class);
+        return doGET(TRANSACTION, null, Transaction.class, transactionId);
     }
 
     /**
@@ -478,7 +831,18 @@ public class RecurlyClient {
      * @return The created {@link Transaction} object
      */
     public Transaction createTransaction(final Transaction trans) {
-        return doPOST(Transactions.TRANSACTIONS_RESOURCE, trans, Transaction.class);
+        accountCreated(trans.getAccount());
+        return doPOST(TRANSACTIONS, trans, Transaction.class);
+    }
+
+    /**
+     * Lookup an account's adjustments (charges and credits), as a columnar batch
+     *
+     * @param accountCode recurly account id
+     * @return the adjustments associated with this account on success, null otherwise
+     */
+    public AdjustmentBatch getAccountAdjustmentBatch(final String accountCode) {
+        return doGET(ACCOUNT_ADJUSTMENTS, null, AdjustmentBatch.class, accountCode);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -493,8 +857,18 @@ public class RecurlyClient {
      * @return the invoices associated with this account on success, null otherwise
      */
     public Invoices getAccountInvoices(final String accountCode) {
-        return doGET(Accounts.ACCOUNTS_RESOURCE + "/" + accountCode + Invoices.INVOICES_RESOURCE,
-                     Invoices.class);
+        return doGET(ACCOUNT_INVOICES, null, Invoices.class, accountCode);
+    }
+
+    /**
+     * Lookup an account's invoices, only materializing the projected elements of each invoice
+     *
+     * @param accountCode recurly account id
+     * @param projection  elements to parse, e.g. Projection.of("uuid", "state", "total_in_cents")
+     * @return the invoices associated with this account on success, null otherwise
+     */
+    public Invoices getAccountInvoices(final String accountCode, final Projection projection) {
+        return doGET(ACCOUNT_INVOICES, null, projection, Invoices.class, accountCode);
     }
 
     /**
@@ -506,9 +880,7 @@ public class RecurlyClient {
      * @return the invoices associated with this account on success, null otherwise
      */
     public Invoice getInvoice(final Integer invoiceId) {
-        return doGET(Invoices.INVOICES_RESOURCE + "/" + invoiceId.toString(),
-                Invoice.class
-        );
+        return doGET(INVOICE, null, Invoice.class, invoiceId.toString());
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -521,7 +893,7 @@ public class RecurlyClient {
      * @return the plan object as identified by the passed in ID
      */
     public Plan createPlan(final Plan plan) {
-        return doPOST(Plan.PLANS_RESOURCE, plan, Plan.class);
+        return doPOST(PLANS, plan, Plan.class);
     }
 
     /**
@@ -532,7 +904,7 @@ public class RecurlyClient {
      * @return the plan object as identified by the passed in ID
      */
     public Plan getPlan(final String planCode) {
-        return doGET(Plan.PLANS_RESOURCE + "/" + planCode, Plan.class);
+        return doGET(PLAN, null, Plan.class, planCode);
     }
 
     /**
@@ -542,7 +914,7 @@ public class RecurlyClient {
      * @return the plan object as identified by the passed in ID
      */
     public Plans getPlans() {
-        return doGET(Plans.PLANS_RESOURCE, Plans.class);
+        return doGET(PLANS, null, Plans.class);
     }
 
     /**
@@ -552,9 +924,7 @@ public class RecurlyClient {
      * @param planCode The {@link Plan} object to delete.
      */
     public void deletePlan(final String planCode) {
-        doDELETE(Plan.PLANS_RESOURCE +
-                 "/" +
-                 planCode);
+        doDELETE(PLAN, planCode);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -568,12 +938,7 @@ public class RecurlyClient {
      * @return the {@link AddOn} object as identified by the passed in object
      */
     public AddOn createPlanAddOn(final String planCode, final AddOn addOn) {
-        return doPOST(Plan.PLANS_RESOURCE +
-                "/" +
-                planCode +
-                AddOn.ADDONS_RESOURCE,
-                addOn, AddOn.class
-        );
+        return doPOST(PLAN_ADD_ONS, addOn, AddOn.class, planCode);
     }
 
     /**
@@ -585,12 +950,7 @@ public class RecurlyClient {
      * @return the {@link AddOn} object as identified by the passed in plan and add-on IDs
      */
     public AddOn getAddOn(final String planCode, final String addOnCode) {
-        return doGET(Plan.PLANS_RESOURCE +
-                     "/" +
-                     planCode +
-                     AddOn.ADDONS_RESOURCE +
-                     "/" +
-                     addOnCode, AddOn.class);
+        return doGET(PLAN_ADD_ON, null, AddOn.class, planCode, addOnCode);
     }
 
     /**
@@ -600,10 +960,7 @@ public class RecurlyClient {
      * @return the {@link AddOn} objects as identified by the passed plan ID
      */
     public AddOn getAddOns(final String planCode) {
-        return doGET(Plan.PLANS_RESOURCE +
-                     "/" +
-                     planCode +
-                     AddOn.ADDONS_RESOURCE, AddOn.class);
+        return doGET(PLAN_ADD_ONS, null, AddOn.class, planCode);
     }
 
     /**
@@ -614,12 +971,7 @@ public class RecurlyClient {
      * @param addOnCode The {@link AddOn} object to delete.
      */
     public void deleteAddOn(final String planCode, final String addOnCode) {
-        doDELETE(Plan.PLANS_RESOURCE +
-                 "/" +
-                 planCode +
-                 AddOn.ADDONS_RESOURCE +
-                 "/" +
-                 addOnCode);
+        doDELETE(PLAN_ADD_ON, planCode, addOnCode);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -632,7 +984,7 @@ public class RecurlyClient {
      * @return the {@link Coupon} object
      */
     public Coupon createCoupon(final Coupon coupon) {
-        return doPOST(Coupon.COUPON_RESOURCE, coupon, Coupon.class);
+        return doPOST(COUPONS, coupon, Coupon.class);
     }
 
     /**
@@ -643,7 +995,7 @@ public class RecurlyClient {
      * @return The {@link Coupon} object as identified by the passed in code
      */
     public Coupon getCoupon(final String couponCode) {
-        return doGET(Coupon.COUPON_RESOURCE + "/" + couponCode, Coupon.class);
+        return doGET(COUPON, null, Coupon.class, couponCode);
     }
 
     /**
@@ -653,7 +1005,7 @@ public class RecurlyClient {
      * @param couponCode The code for the {@link Coupon}
      */
     public void deleteCoupon(final String couponCode) {
-        doDELETE(Coupon.COUPON_RESOURCE + "/" + couponCode);
+        doDELETE(COUPON, couponCode);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -699,80 +1051,321 @@ public class RecurlyClient {
     }
 
     private <T> T fetch(final String recurlyToken, final Class<T> clazz) {
-        return doGET(FETCH_RESOURCE + "/" + recurlyToken, clazz);
+        return doGET(FETCH, null, clazz, recurlyToken);
     }
 
     ///////////////////////////////////////////////////////////////////////////
 
-    private <T> T doGET(final String resource, final Class<T> clazz) {
-        final StringBuffer url = new StringBuffer(baseUrl);
-        url.append(resource);
-        if (resource != null && !resource.contains("?")) {
-            url.append("?");
-        } else {
-            url.append("&");
-            url.append("&");
-        }
-        url.append(getPageSizeGetParam());
+    private <T> T doGET(final UriTemplate resource, @Nullable final UrlParameterList parameters, final Class<T> clazz, final Object... values) {
+        return doGET(resource, parameters, null, clazz, values);
+    }
 
-        if (debug()) {
+    private <T> T doGET(final UriTemplate resource, @Nullable final UrlParameterList parameters, @Nullable final Projection projection,
+                        final Class<T> clazz, final Object... values) {
+        final RecurlyClientConfig config = this.config.get();
+        final String url = buildUrl(config, resource, parameters, true, values);
+
+        if (config.isDebug()) {
             log.info("Msg to Recurly API [GET] :: URL : {}", url);
         }
-        return callRecurlySafe(client.prepareGet(url.toString()), clazz);
+        if (config.isCoalesceGets()) {
+            return coalescedGET(url, projection, clazz);
+        }
+        return sendGET(url, projection, clazz);
     }
 
-    private <T> T doGET(final String resource, final String parameters, final Class<T> clazz) {
-        final StringBuffer url = new StringBuffer(baseUrl);
-        url.append(resource);
-        url.append("?");
-        url.append(parameters);
+    /**
+     * GET through the response cache, if any
+     */
+    private <T> T sendGET(final String url, @Nullable final Projection projection, final Class<T> clazz) {
+        final ResponseCache responseCache = this.responseCache;
+        if (responseCache == null) {
+            return callRecurlySafe("GET", client.prepareGet(url), null, projection, clazz);
+        }
 
-        if (debug()) {
-            log.info("Msg to Recurly API [GET] :: URL : {}", url);
+        final CachedGET cachedGET = new CachedGET(responseCache, responseCacheKeyPrefix + requestKey(url, projection, clazz));
+        final AsyncHttpClient.BoundRequestBuilder builder = client.prepareGet(url);
+        if (cachedGET.entry != null) {
+            builder.addHeader("If-None-Match", cachedGET.entry.getEtag());
+        }
+        return callRecurlySafe("GET", builder, null, projection, clazz, cachedGET);
+    }
+
+    private static String requestKey(final String url, @Nullable final Projection projection, final Class<?> clazz) {
+        final StringBuilder key = new StringBuilder(url.length() + 64).append(clazz.getName()).append(' ');
+        if (projection != null) {
+            key.append(new TreeSet<String>(projection.getElements())).append(' ');
         }
-        return callRecurlySafe(client.prepareGet(url.toString()), clazz);
+        return key.append(url).toString();
     }
 
+    private static final class CachedGET {
+
+        private final ResponseCache cache;
+        private final String key;
+        private final ResponseCache.Entry entry;
 
-    private <T> T doPOST(final String resource, final RecurlyObject payload, final Class<T> clazz) {
-        final String xmlPayload;
+        private CachedGET(final ResponseCache cache, final String key) {
+            this.cache = cache;
+            this.key = key;
+            this.entry = cache.get(key);
+        }
+    }
+
+    /**
+     * Single-flight GET: concurrent calls for the same url, projection and class wait for the first one's request
+     * and get its result (the same instance) or exception
+     */
+    private <T> T coalescedGET(final String url, @Nullable final Projection projection, final Class<T> clazz) {
+        final String key = requestKey(url, projection, clazz);
+        final InFlightGet call = new InFlightGet();
+        final InFlightGet existing = inFlightGets.putIfAbsent(key, call);
+        if (existing != null) {
+            coalescedGets.incrementAndGet();
+            return clazz.cast(existing.await());
+        }
+
+        leaderGets.incrementAndGet();
+        T result = null;
+        Throwable failure = null;
         try {
-            xmlPayload = xmlMapper.writeValueAsString(payload);
-            if (debug()) {
-                log.info("Msg to Recurly API [POST]:: URL : {}", baseUrl + resource);
-                log.info("Payload for [POST]:: {}", xmlPayload);
+            result = sendGET(url, projection, clazz);
+            return result;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // Later calls send a new request
+            inFlightGets.remove(key, call);
+            call.complete(result, failure);
+        }
+    }
+
+    private static final class InFlightGet {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Object result;
+        private Throwable failure;
+
+        private void complete(@Nullable final Object result, @Nullable final Throwable failure) {
+            this.result = result;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        @Nullable
+        private Object await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // Same as an interrupted request
+                log.error("Interrupted while waiting for a coalesced request", e);
+                Thread.currentThread().interrupt();
+                return null;
             }
-        } catch (IOException e) {
-            log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                // Errors are wrapped rather than thrown from several threads at once
+                throw new RecurlyException("Coalesced request failed", failure);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * GET a page url returned by Recurly (Link header)
+     */
+    private <T> T doGETNextPage(final String url, final Class<T> clazz) {
+        final RecurlyClientConfig config = this.config.get();
+        // The url comes from the response: don't send the API key anywhere else than the configured host and port
+        if (!isSameOrigin(url, config.getBaseUrl())) {
+            throw new RecurlyException("Refusing to follow the page link " + url + " outside of " + config.getBaseUrl());
+        }
+        if (config.isDebug()) {
+            log.info("Msg to Recurly API [GET] :: URL : {}", url);
+        }
+        return callRecurlySafe("GET", client.prepareGet(url), null, null, clazz);
+    }
+
+    /**
+     * @param url url built by the client or returned by Recurly
+     * @return the raw page on success, null otherwise
+     */
+    @Nullable
+    ListPage getListPage(final String url) {
+        return doGETNextPage(url, ListPage.class);
+    }
+
+    private <T> T doPOST(final UriTemplate resource, final RecurlyObject payload, final Class<T> clazz, final Object... values) {
+        final RecurlyClientConfig config = this.config.get();
+        final String url = buildUrl(config, resource, null, false, values);
+        final RequestBodyBuffer xmlPayload = serialize(xmlWriterFor(payload.getClass()), payload, clazz);
+        if (xmlPayload == null) {
             return null;
         }
+        if (config.isDebug()) {
+            log.info("Msg to Recurly API [POST]:: URL : {}", url);
+            log.info("Payload for [POST]:: {}", xmlPayload);
+        }
+
+        return callRecurlySafe("POST", client.preparePost(url).setBody(xmlPayload.asBodyGenerator()), xmlPayload, null, clazz);
+    }
 
-        return callRecurlySafe(client.preparePost(baseUrl + resource).setBody(xmlPayload), clazz);
+    private <T> T doPUT(final UriTemplate resource, final RecurlyObject payload, final Class<T> clazz, final Object... values) {
+        return doPUT(resource, xmlWriterFor(payload.getClass()), payload, clazz, values);
     }
 
-    private <T> T doPUT(final String resource, final RecurlyObject payload, final Class<T> clazz) {
-        final String xmlPayload;
+    private <T> T doPUT(final UriTemplate resource, final Patch<?> patch, final Class<T> clazz, final Object... values) {
+        return doPUT(resource, patch.writer(patchXmlMapper), patch.getObject(), clazz, values);
+    }
+
+    private <T> T doPUT(final UriTemplate resource, final ObjectWriter writer, final RecurlyObject payload, final Class<T> clazz, final Object... values) {
+        final RecurlyClientConfig config = this.config.get();
+        final String url = buildUrl(config, resource, null, false, values);
+        final RequestBodyBuffer xmlPayload = serialize(writer, payload, clazz);
+        if (xmlPayload == null) {
+            return null;
+        }
+        if (config.isDebug()) {
+            log.info("Msg to Recurly API [PUT]:: URL : {}", url);
+            log.info("Payload for [PUT]:: {}", xmlPayload);
+        }
+
+        return callRecurlySafe("PUT", client.preparePut(url).setBody(xmlPayload.asBodyGenerator()), xmlPayload, null, clazz);
+    }
+
+    /**
+     * Serialize a payload into a pooled buffer, released by its owner once the request completes
+     *
+     * @return the buffer, null if the payload can't be serialized
+     */
+    @Nullable
+    private RequestBodyBuffer serialize(final ObjectWriter writer, final RecurlyObject payload, final Class<?> clazz) {
+        final RequestBodyBuffer buffer = RequestBodyBuffer.acquire();
         try {
-            xmlPayload = xmlMapper.writeValueAsString(payload);
-            if (debug()) {
-                log.info("Msg to Recurly API [PUT]:: URL : {}", baseUrl + resource);
-                log.info("Payload for [PUT]:: {}", xmlPayload);
-            }
+            writer.writeValue(buffer, payload);
+            return buffer;
         } catch (IOException e) {
+            buffer.release();
             log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
             return null;
         }
+    }
+
+    private ObjectWriter xmlWriterFor(final Class<?> clazz) {
+        ObjectWriter writer = xmlWriters.get(clazz);
+        if (writer == null) {
+            writer = xmlMapper.writerWithType(clazz);
+            final ObjectWriter existing = xmlWriters.putIfAbsent(clazz, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+
+    private void doDELETE(final UriTemplate resource, final Object... values) {
+        callRecurlySafe("DELETE", client.prepareDelete(buildUrl(config.get(), resource, null, false, values)), null, null, null);
+    }
+
+    /**
+     * Build the full url of a resource: base url, expanded (and encoded) template, query parameters and,
+     * for paged GETs, the configured page size unless the caller already specified one.
+     */
+    private static String buildUrl(final RecurlyClientConfig config, final UriTemplate resource, @Nullable final UrlParameterList parameters,
+                                   final boolean paged, final Object... values) {
+        StringBuilder url = URL_BUILDER.get();
+        if (url.capacity() > URL_BUILDER_MAX_CAPACITY) {
+            url = new StringBuilder(256);
+            URL_BUILDER.set(url);
+        }
+        url.setLength(0);
+
+        url.append(config.getBaseUrl());
+        resource.appendTo(url, values);
+        if (parameters != null) {
+            parameters.appendTo(url);
+        }
+        if (paged && (parameters == null || !parameters.hasParameter(PAGING_ITEMS_PER_PAGE_PARAMETER_NAME))) {
+            url.append(url.indexOf("?") < 0 ? '?' : '&').append(config.getPageSizeGetParam());
+        }
+        return url.toString();
+    }
+
+    private Accounts knownAccounts(@Nullable final Accounts accounts) {
+        final AccountCodeCache accountCodeCache = this.accountCodeCache;
+        if (accountCodeCache != null) {
+            accountCodeCache.addKnown(accounts);
+        }
+        return accounts;
+    }
+
+    // Called before the request, so that a lookup racing with the creation can't remember a 404
+    private void accountCreated(@Nullable final Account account) {
+        final AccountCodeCache accountCodeCache = this.accountCodeCache;
+        if (accountCodeCache != null && account != null) {
+            accountCodeCache.addKnown(account.getAccountCode());
+        }
+    }
+
+    private static String sha256Hex(final String value) {
+        try {
+            return DatatypeConverter.printHexBinary(MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8")));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not available", e);
+        }
+    }
+
+    @Nullable
+    static String nextPageUrl(@Nullable final String linkHeader) {
+        if (linkHeader == null) {
+            return null;
+        }
+        final Matcher matcher = NEXT_PAGE_LINK_PATTERN.matcher(linkHeader);
+        return matcher.find() ? matcher.group(1) : null;
+    }
 
-        return callRecurlySafe(client.preparePut(baseUrl + resource).setBody(xmlPayload), clazz);
+    static boolean isSameOrigin(final String url, final String baseUrl) {
+        try {
+            final URI uri = new URI(url);
+            final URI baseUri = new URI(baseUrl);
+            return uri.getHost() != null && uri.getScheme() != null
+                   && uri.getHost().equalsIgnoreCase(baseUri.getHost())
+                   && uri.getScheme().equalsIgnoreCase(baseUri.getScheme())
+                   && effectivePort(uri) == effectivePort(baseUri);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private static int effectivePort(final URI uri) {
+        if (uri.getPort() >= 0) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
     }
 
-    private void doDELETE(final String resource) {
-        callRecurlySafe(client.prepareDelete(baseUrl + resource), null);
+    private <T> T callRecurlySafe(final String method, final AsyncHttpClient.BoundRequestBuilder builder, @Nullable final RequestBodyBuffer payload,
+                                  @Nullable final Projection projection, @Nullable final Class<T> clazz) {
+        return callRecurlySafe(method, builder, payload, projection, clazz, null);
     }
 
-    private <T> T callRecurlySafe(final AsyncHttpClient.BoundRequestBuilder builder, @Nullable final Class<T> clazz) {
+    private <T> T callRecurlySafe(final String method, final AsyncHttpClient.BoundRequestBuilder builder, @Nullable final RequestBodyBuffer payload,
+                                  @Nullable final Projection projection, @Nullable final Class<T> clazz, @Nullable final CachedGET cachedGET) {
+        final int inFlight = inFlightRequests.incrementAndGet();
+        int peak;
+        while (inFlight > (peak = peakInFlightRequests.get()) && !peakInFlightRequests.compareAndSet(peak, inFlight)) {
+            // Retry
+        }
+
         try {
-            return callRecurly(builder, clazz);
+            return callRecurly(method, builder, payload, projection, clazz, cachedGET);
         } catch (IOException e) {
             log.warn("Error while calling Recurly", e);
             return null;
@@ -782,6 +1375,8 @@ public class RecurlyClient {
         } catch (InterruptedException e) {
             log.error("Interrupted while calling Recurly", e);
             return null;
+        } finally {
+            inFlightRequests.decrementAndGet();
         }
     }
 
@@ -811,124 +1406,164 @@ public class RecurlyClient {
         }
     }
 
-    private <T> T callRecurly(final AsyncHttpClient.BoundRequestBuilder builder, @Nullable final Class<T> clazz)
+    private <T> T callRecurly(final String method, final AsyncHttpClient.BoundRequestBuilder builder, @Nullable final RequestBodyBuffer payload,
+                              @Nullable final Projection projection, @Nullable final Class<T> clazz, @Nullable final CachedGET cachedGET)
             throws IOException, ExecutionException, InterruptedException {
+        final RecurlyClientConfig config = this.config.get();
 
+        final RequestTraceSink requestTraceSink = this.requestTraceSink;
+        if (anotherLog.isDebugEnabled()) {
+            logHttpDebugMessage(anotherLog, "callRecurly() starting ...");
+        }
 
-        org.apache.log4j.MDC.put(LOG_MDC, instanceIdentifier);
-        try
-        {
-            logHttpInfoMessage(anotherLog, "callRecurly() starting ...");
-
-            HttpResponseContainer httpResponseContainer = builder.addHeader("Authorization", "Basic " + key)
-                                                                 .addHeader("Accept", "application/xml")
-                                                                 .addHeader("Content-Type", "application/xml; charset=utf-8")
-                                                                 .execute(new AsyncCompletionHandler<HttpResponseContainer>()
+        final long startNanos = System.nanoTime();
+        HttpResponseContainer httpResponseContainer = builder.addHeader("Authorization", "Basic " + key)
+                                                             .addHeader("Accept", "application/xml")
+                                                             .addHeader("Content-Type", "application/xml; charset=utf-8")
+                                                             .execute(new AsyncCompletionHandler<HttpResponseContainer>()
+                                                             {
+                                                                 @Override
+                                                                 public HttpResponseContainer onCompleted(final Response response) throws Exception
                                                                  {
-                                                                     @Override
-                                                                     public HttpResponseContainer onCompleted(final Response response) throws Exception
+                                                                     final HttpResponseContainer httpResponseContainer = new HttpResponseContainer();
+                                                                     final ResponseBodyBuffer responseBody = ResponseBodyBuffer.acquire();
+                                                                     try
                                                                      {
-                                                                         final HttpResponseContainer httpResponseContainer = new HttpResponseContainer();
+                                                                         int statusCode = response.getStatusCode();
+                                                                         String responseUri = response.getUri().toString();
+
+                                                                         final InputStream in = response.getResponseBodyAsStream();
                                                                          try
                                                                          {
-                                                                             int statusCode = response.getStatusCode();
-                                                                             String responseUri = response.getUri().toString();
-                                                                             String responseBody = response.getResponseBody();
-
-                                                                             if (statusCode >= 300)
-                                                                             {
-                                                                                 log.warn("Recurly error whilst calling: {}", responseUri);
-                                                                                 log.warn("Recurly error: {}", hideResponseXMLNodeValues(responseBody));
-
-                                                                                 logHttpWarningMessage(anotherLog, getLogHttpMessage(statusCode, responseUri, responseBody));
+                                                                             responseBody.readFrom(in, config.isStripResponseNewlines());
+                                                                         }
+                                                                         finally
+                                                                         {
+                                                                             closeStream(in);
+                                                                         }
 
-                                                                                 RecurlyException exception = getRecurlyException(statusCode, responseBody, responseUri);
+                                                                         if (requestTraceSink.isTraceEnabled(statusCode))
+                                                                         {
+                                                                             // Only the part of the bodies the sink needs is decoded: traces may wait in a queue before being written
+                                                                             final int maxBytes = requestTraceSink.getMaxBodyLength(config.getMaxLoggedBodyLength());
+                                                                             requestTraceSink.trace(new RequestTrace(instanceIdentifier, method, responseUri,
+                                                                                                                     payload == null ? null : payload.toString(maxBytes), omittedBytes(payload == null ? 0 : payload.getLength(), maxBytes),
+                                                                                                                     statusCode, startNanos, System.nanoTime() - startNanos,
+                                                                                                                     responseBody.toString(maxBytes), omittedBytes(responseBody.getLength(), maxBytes),
+                                                                                                                     tracedResponseHeaders(response), config));
+                                                                         }
 
-                                                                                 httpResponseContainer.setException(exception);
+                                                                         if (statusCode == 304 && cachedGET != null && cachedGET.entry != null)
+                                                                         {
+                                                                             cachedGET.cache.recordNotModified();
+                                                                             // Bound again from the cached body: callers never share a (mutable) object with the cache
+                                                                             final byte[] cachedBody = cachedGET.entry.getBody();
+                                                                             httpResponseContainer.setObject(readResponse(cachedBody, cachedBody.length, cachedGET.entry.getNextUrl(), projection, clazz));
+                                                                             return httpResponseContainer;
+                                                                         }
 
-                                                                                 return httpResponseContainer;
-                                                                             }
-                                                                             else
+                                                                         if (statusCode >= 300)
+                                                                         {
+                                                                             final String errorBody = responseBody.toString();
+                                                                             if (log.isWarnEnabled())
                                                                              {
-                                                                                 logHttpInfoMessage(anotherLog, getLogHttpMessage(statusCode, responseUri, responseBody));
+                                                                                 log.warn("Recurly error whilst calling: {}", responseUri);
+                                                                                 log.warn("Recurly error: {}", config.hideXMLResponseNodeValues(errorBody));
                                                                              }
 
-                                                                             if (clazz == null)
-                                                                             {
-                                                                                 return httpResponseContainer;
-                                                                             }
+                                                                             RecurlyException exception = errorResponseClassifier.classify(statusCode, errorBody, responseUri);
 
-                                                                             final InputStream in = response.getResponseBodyAsStream();
-                                                                             try
-                                                                             {
-                                                                                 final String payload = convertStreamToString(in);
-                                                                                 if (debug())
-                                                                                 {
-                                                                                     String logPayload = hideResponseXMLNodeValues(payload);
-                                                                                     log.info("Msg from Recurly API :: {}", logPayload);
-                                                                                     logHttpInfoMessage(anotherLog, String.format(LOG_HTTP_MESSAGE_FROM_RECURLY_API_TEMPLATE,
-                                                                                             logPayload));
-                                                                                 }
+                                                                             httpResponseContainer.setException(exception);
 
-                                                                                 T obj = xmlMapper.readValue(payload, clazz);
+                                                                             return httpResponseContainer;
+                                                                         }
 
-                                                                                 httpResponseContainer.setObject(obj);
+                                                                         if (clazz == null || responseBody.isEmpty())
+                                                                         {
+                                                                             return httpResponseContainer;
+                                                                         }
 
-                                                                                 return httpResponseContainer;
-                                                                             }
-                                                                             finally
-                                                                             {
-                                                                                 closeStream(in);
-                                                                             }
+                                                                         if (config.isDebug())
+                                                                         {
+                                                                             log.info("Msg from Recurly API :: {}", config.hideXMLResponseNodeValues(responseBody.toString()));
                                                                          }
-                                                                         catch (Exception exception)
+
+                                                                         final String nextUrl = nextPageUrl(response.getHeader("Link"));
+                                                                         final T obj = readResponse(responseBody.getBytes(), responseBody.getLength(), nextUrl, projection, clazz);
+
+                                                                         final String etag = response.getHeader("ETag");
+                                                                         if (cachedGET != null && etag != null)
                                                                          {
-                                                                             httpResponseContainer.setException(new RecurlyException(exception));
+                                                                             cachedGET.cache.put(cachedGET.key, etag, responseBody.toByteArray(), nextUrl);
                                                                          }
 
+                                                                         httpResponseContainer.setObject(obj);
+
                                                                          return httpResponseContainer;
                                                                      }
+                                                                     catch (Exception exception)
+                                                                     {
+                                                                         httpResponseContainer.setException(new RecurlyException(exception));
+                                                                     }
+                                                                     finally
+                                                                     {
+                                                                         responseBody.release();
+                                                                         releaseRequestBody(payload);
+                                                                     }
+
+                                                                     return httpResponseContainer;
                                                                  }
-                                                                 ).get();
 
-            if (null != httpResponseContainer.getException())
-                throw httpResponseContainer.getException();
+                                                                 @Override
+                                                                 public void onThrowable(final Throwable t)
+                                                                 {
+                                                                     releaseRequestBody(payload);
+                                                                     super.onThrowable(t);
+                                                                 }
+                                                             }
+                                                             ).get();
 
-            logHttpInfoMessage(anotherLog, "callRecurly() finished");
+        if (null != httpResponseContainer.getException())
+            throw httpResponseContainer.getException();
 
-            return null == httpResponseContainer ? null : (T)httpResponseContainer.getObject();
-        }
-        finally
-        {
-            org.apache.log4j.MDC.remove(LOG_MDC);
+        if (anotherLog.isDebugEnabled()) {
+            logHttpDebugMessage(anotherLog, "callRecurly() finished");
         }
+
+        return null == httpResponseContainer ? null : (T)httpResponseContainer.getObject();
     }
 
-    private RecurlyException getRecurlyException(int statusCode, String responseBody, String url) {
-        if (404 == statusCode) {
-            try {
-                ErrorMessage404 errorObject = xmlMapper.readValue(responseBody, ErrorMessage404.class);
-                return new NotFoundException(errorObject, responseBody, url);
-            } catch (Exception exceptionMapping) {
-                //Not ErrorMessage404
-            }
+    /**
+     * Bind a response body, freshly downloaded or cached
+     */
+    private <T> T readResponse(final byte[] body, final int length, @Nullable final String nextUrl,
+                               @Nullable final Projection projection, final Class<T> clazz) throws IOException {
+        if (ListPage.class.equals(clazz)) {
+            return clazz.cast(new ListPage(Arrays.copyOf(body, length), nextUrl));
         }
-        try {
-            Errors errors = xmlMapper.readValue(responseBody, Errors.class);
-            if (null != errors.getTransactionError() || null != errors.getTransaction()) {
-                return new TransactionException(errors, responseBody, url, statusCode);
-            }
-            return new RequestException(errors, responseBody, url, statusCode);
-        } catch (Exception exception) {
-            return new CommonRequestException(responseBody, url, statusCode);
+
+        // Parse from a stream rather than the byte[] overload, which requires a Stax2 (Woodstox) parser
+        final InputStream in = new ByteArrayInputStream(body, 0, length);
+        final T obj;
+        if (BatchXmlReader.supports(clazz)) {
+            obj = BatchXmlReader.read(in, clazz);
+        } else if (projection != null) {
+            obj = projection.read(xmlMapper, in, clazz);
+        } else {
+            obj = xmlMapper.readValue(in, clazz);
+        }
+
+        if (obj instanceof RecurlyObjects) {
+            ((RecurlyObjects<?>) obj).setNextUrl(nextUrl);
         }
+        return obj;
     }
 
-    private String convertStreamToString(final java.io.InputStream is) {
-        try {
-            return new java.util.Scanner(is).useDelimiter("\\A").next().replace("\n", "");
-        } catch (java.util.NoSuchElementException e) {
-            return "";
+    // The body may still be read by the http client (e.g. early error response): the buffer goes back to the pool once
+    // the body is closed as well
+    private static void releaseRequestBody(@Nullable final RequestBodyBuffer payload) {
+        if (payload != null) {
+            payload.release();
         }
     }
 
@@ -954,60 +1589,296 @@ public class RecurlyClient {
         {
             log.error("Failed to create SSLContext", e);
         }
+        // Engines created by the default factory don't know about the peer, which prevents TLS session resumption.
+        // Always go through RecurlySslUtils so that a reloaded SSLContext is picked up by new connections.
+        builder.setSSLEngineFactory(new SSLEngineFactory() {
+            @Override
+            public SSLEngine newSSLEngine() throws GeneralSecurityException {
+                try {
+                    return RecurlySslUtils.getSSLEngine(host, port);
+                } catch (IOException e) {
+                    throw new GeneralSecurityException("Unable to create SSLEngine", e);
+                }
+            }
+        });
         builder.setMaximumConnectionsPerHost(-1);
         return new AsyncHttpClient(builder.build());
     }
 
-    private String getLogHttpMessage(int statusCode, String responseUri, String responseBody)
+    private static int omittedBytes(final int length, final int maxBytes)
     {
-        return String.format(LOG_HTTP_MESSAGE_TEMPLATE, statusCode, responseUri, hideResponseXMLNodeValues(responseBody));
+        return maxBytes < 0 ? 0 : Math.max(0, length - maxBytes);
     }
 
-    private String formatLogHttpInfoMessage(String message)
+    @Nullable
+    private static Map<String, String> tracedResponseHeaders(final Response response)
     {
-        return String.format(LOG_HTTP_MESSAGE_PREFIX, message);
+        Map<String, String> headers = null;
+        for (final String name : RequestTrace.TRACED_RESPONSE_HEADERS)
+        {
+            final String value = response.getHeader(name);
+            if (value != null)
+            {
+                if (headers == null)
+                {
+                    headers = new LinkedHashMap<String, String>(8);
+                }
+                headers.put(name, value);
+            }
+        }
+        return headers;
     }
 
-    private void logHttpInfoMessage(Logger log, String message)
+    private void logHttpDebugMessage(Logger log, String message)
     {
-        log.info(formatLogHttpInfoMessage(message));
+        log.debug(String.format(LOG_HTTP_MESSAGE_PREFIX, message));
     }
 
-    private void logHttpWarningMessage(Logger log, String message)
+    /**
+     * @return a live view of the masked XML nodes: changes made through it reconfigure the client
+     */
+    public Set<String> getHideXMLResponseNodeValues()
     {
-        log.warn(formatLogHttpInfoMessage(message));
+        return hideXMLResponseNodeValuesView;
     }
 
-    private void logHttpDebugMessage(Logger log, String message)
+    /**
+     * @param hideXMLResponseNodeValues XML nodes to mask, copied: later changes to the set are not seen by the client
+     */
+    public void setHideXMLResponseNodeValues(final Set<String> hideXMLResponseNodeValues)
     {
-        log.debug(formatLogHttpInfoMessage(message));
+        RecurlyClientConfig current;
+        do
+        {
+            current = config.get();
+        }
+        while (!config.compareAndSet(current, current.withHideXMLResponseNodeValues(hideXMLResponseNodeValues)));
     }
 
-    private void logHttpErrorMessage(Logger log, String message)
+    // Mutable view over the immutable config snapshots: each change installs a new snapshot (copy on write, retried
+    // until no other update of the config got in between)
+    private final class HideXMLResponseNodeValuesView extends AbstractSet<String>
     {
-        log.error(formatLogHttpInfoMessage(message));
+        @Override
+        public Iterator<String> iterator()
+        {
+            final Iterator<String> iterator = config.get().getHideXMLResponseNodeValues().iterator();
+            return new Iterator<String>()
+            {
+                private String last;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public String next()
+                {
+                    last = iterator.next();
+                    return last;
+                }
+
+                @Override
+                public void remove()
+                {
+                    if (last == null)
+                    {
+                        throw new IllegalStateException();
+                    }
+                    HideXMLResponseNodeValuesView.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size()
+        {
+            return config.get().getHideXMLResponseNodeValues().size();
+        }
+
+        @Override
+        public boolean contains(final Object o)
+        {
+            return config.get().getHideXMLResponseNodeValues().contains(o);
+        }
+
+        @Override
+        public boolean add(final String nodeName)
+        {
+            while (true)
+            {
+                final RecurlyClientConfig current = config.get();
+                final Set<String> values = new LinkedHashSet<String>(current.getHideXMLResponseNodeValues());
+                if (!values.add(nodeName))
+                {
+                    return false;
+                }
+                if (config.compareAndSet(current, current.withHideXMLResponseNodeValues(values)))
+                {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public boolean remove(final Object o)
+        {
+            while (true)
+            {
+                final RecurlyClientConfig current = config.get();
+                final Set<String> values = new LinkedHashSet<String>(current.getHideXMLResponseNodeValues());
+                if (!values.remove(o))
+                {
+                    return false;
+                }
+                if (config.compareAndSet(current, current.withHideXMLResponseNodeValues(values)))
+                {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            RecurlyClientConfig current;
+            do
+            {
+                current = config.get();
+            }
+            while (!config.compareAndSet(current, current.withHideXMLResponseNodeValues(Collections.<String>emptySet())));
+        }
     }
 
-    public Set<String> getHideXMLResponseNodeValues()
+    public RequestTraceSink getRequestTraceSink()
     {
-        return hideXMLResponseNodeValues;
+        return requestTraceSink;
     }
 
-    public void setHideXMLResponseNodeValues(final Set<String> hideXMLResponseNodeValues)
+    /**
+     * Set the destination of the request traces. By default, traces are written to the recurlyClientLogger logger
+     * by the drain thread of an {@link AsyncRequestTraceSink}, off the request path. Other sinks are called on the
+     * request path: wrap them in an {@link AsyncRequestTraceSink} unless they are cheap.
+     *
+     * @param requestTraceSink trace sink
+     */
+    public void setRequestTraceSink(final RequestTraceSink requestTraceSink)
     {
-        this.hideXMLResponseNodeValues = hideXMLResponseNodeValues;
+        this.requestTraceSink = requestTraceSink;
     }
 
-    private String hideResponseXMLNodeValues(String responseXml)
+    @Nullable
+    public ResponseCache getResponseCache()
     {
-        String processedResponseXml = responseXml;
-        for (String nodeName : hideXMLResponseNodeValues)
-        {
-            Pattern pattern = Pattern.compile(String.format(XML_TAG_PATTERN_MATCH_TEMPLATE, nodeName, nodeName), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(processedResponseXml);
-            processedResponseXml = matcher.replaceAll(String.format(XML_TAG_NODE_TEMPLATE, nodeName, XML_HIDED_NODE_VALUES_MASK, nodeName));
-        }
+        return responseCache;
+    }
 
-        return processedResponseXml;
+    /**
+     * Enable conditional GETs (If-None-Match): the responses carrying an ETag are cached and served again on 304
+     * Not Modified. The cached body is bound again for each 304: callers get their own objects, free to modify.
+     *
+     * @param responseCache cache, null to disable conditional GETs
+     */
+    public void setResponseCache(@Nullable final ResponseCache responseCache)
+    {
+        this.responseCache = responseCache;
+    }
+
+    @Nullable
+    public AccountCodeCache getAccountCodeCache()
+    {
+        return accountCodeCache;
+    }
+
+    /**
+     * Answer lookups of unknown account codes locally (see {@link AccountCodeCache}). The cache learns the account codes
+     * listed, fetched and created through this client.
+     *
+     * @param accountCodeCache cache, null to always ask Recurly
+     */
+    public void setAccountCodeCache(@Nullable final AccountCodeCache accountCodeCache)
+    {
+        this.accountCodeCache = accountCodeCache;
+    }
+
+    /**
+     * @return the number of requests currently waiting for Recurly, i.e. the number of pooled connections in use
+     */
+    public int getInFlightRequests()
+    {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return the highest number of concurrent requests since the client was created or the last reset
+     */
+    public int getPeakInFlightRequests()
+    {
+        return peakInFlightRequests.get();
+    }
+
+    public void resetPeakInFlightRequests()
+    {
+        peakInFlightRequests.set(inFlightRequests.get());
+    }
+
+    /**
+     * @return the number of GETs sent to Recurly while coalescing was enabled
+     */
+    public long getLeaderGets()
+    {
+        return leaderGets.get();
+    }
+
+    /**
+     * @return the number of GETs which shared the request of an identical concurrent GET instead of sending their own
+     */
+    public long getCoalescedGets()
+    {
+        return coalescedGets.get();
+    }
+
+    /**
+     * @return the configuration snapshot currently used by this client
+     */
+    public RecurlyClientConfig getConfig()
+    {
+        return config.get();
+    }
+
+    /**
+     * Atomically replace the configuration snapshot. In-flight requests keep using the snapshot they started with.
+     * <p/>
+     * All settings are replaced: a snapshot derived from an older {@link #getConfig()} undoes the changes made since,
+     * including masked XML nodes added through {@link #getHideXMLResponseNodeValues()}. Use
+     * {@link #compareAndReconfigure(RecurlyClientConfig, RecurlyClientConfig)} when other threads may reconfigure the client.
+     *
+     * @param config new configuration
+     */
+    public void reconfigure(final RecurlyClientConfig config)
+    {
+        this.config.set(config);
+    }
+
+    /**
+     * Replace the configuration snapshot, only if it is still the expected one. Derived updates should retry until
+     * this succeeds, e.g.
+     * <pre>
+     * RecurlyClientConfig current;
+     * do {
+     *     current = recurlyClient.getConfig();
+     * } while (!recurlyClient.compareAndReconfigure(current, current.withDebug(true)));
+     * </pre>
+     *
+     * @param expected snapshot the new configuration was derived from
+     * @param config   new configuration
+     * @return false if the configuration was changed in the meantime, in which case nothing was replaced
+     */
+    public boolean compareAndReconfigure(final RecurlyClientConfig expected, final RecurlyClientConfig config)
+    {
+        return this.config.compareAndSet(expected, config);
     }
 }
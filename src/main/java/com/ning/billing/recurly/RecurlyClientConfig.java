@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable snapshot of the {@link RecurlyClient} settings read on the request path.
+ * <p/>
+ * The snapshot is built once (by default from the recurly.* system properties) and can be swapped atomically
+ * with {@link RecurlyClient#reconfigure(RecurlyClientConfig)}, or compared and swapped with
+ * {@link RecurlyClient#compareAndReconfigure(RecurlyClientConfig, RecurlyClientConfig)}: requests never take a lock to read it.
+ */
+public class RecurlyClientConfig {
+
+    public static final String RECURLY_LOG_BODY_MAX_LENGTH_KEY = "recurly.log.body.max.length";
+    public static final String RECURLY_STRIP_RESPONSE_NEWLINES_KEY = "recurly.response.strip.newlines";
+    public static final String RECURLY_COALESCE_GETS_KEY = "recurly.get.coalesce";
+
+    private static final int DEFAULT_MAX_LOGGED_BODY_LENGTH = 4096;
+
+    private static final String PER_PAGE = "per_page=";
+
+    private final static String XML_TAG_PATTERN_MATCH_TEMPLATE = "<\\s?%s.*?>.*?</\\s?%s.*?>";
+    private final static String XML_HIDED_NODE_VALUES_MASK = "****";
+    private final static String XML_TAG_NODE_TEMPLATE = "<%s>%s</%s>";
+
+    private final String baseUrl;
+    private final int pageSize;
+    private final boolean debug;
+    private final Set<String> hideXMLResponseNodeValues;
+    private final int maxLoggedBodyLength;
+    private final boolean stripResponseNewlines;
+    private final boolean coalesceGets;
+
+    // Derived values, computed once per snapshot
+    private final String pageSizeGetParam;
+    private final List<Pattern> hideXMLResponseNodePatterns;
+    private final List<String> hideXMLResponseNodeReplacements;
+
+    /**
+     * Other settings start with their defaults and can be changed with the with* copy methods
+     */
+    public RecurlyClientConfig(final String baseUrl, final int pageSize, final boolean debug, final Set<String> hideXMLResponseNodeValues) {
+        this(baseUrl, pageSize, debug, hideXMLResponseNodeValues, DEFAULT_MAX_LOGGED_BODY_LENGTH, false, false);
+    }
+
+    private RecurlyClientConfig(final String baseUrl, final int pageSize, final boolean debug, final Set<String> hideXMLResponseNodeValues,
+                                final int maxLoggedBodyLength, final boolean stripResponseNewlines, final boolean coalesceGets) {
+        this.baseUrl = baseUrl;
+        this.pageSize = pageSize;
+        this.debug = debug;
+        this.hideXMLResponseNodeValues = Collections.unmodifiableSet(new LinkedHashSet<String>(hideXMLResponseNodeValues));
+        this.maxLoggedBodyLength = maxLoggedBodyLength;
+        this.stripResponseNewlines = stripResponseNewlines;
+        this.coalesceGets = coalesceGets;
+
+        this.pageSizeGetParam = PER_PAGE + pageSize;
+        this.hideXMLResponseNodePatterns = new ArrayList<Pattern>(this.hideXMLResponseNodeValues.size());
+        this.hideXMLResponseNodeReplacements = new ArrayList<String>(this.hideXMLResponseNodeValues.size());
+        for (final String nodeName : this.hideXMLResponseNodeValues) {
+            hideXMLResponseNodePatterns.add(Pattern.compile(String.format(XML_TAG_PATTERN_MATCH_TEMPLATE, nodeName, nodeName), Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+            hideXMLResponseNodeReplacements.add(String.format(XML_TAG_NODE_TEMPLATE, nodeName, XML_HIDED_NODE_VALUES_MASK, nodeName));
+        }
+    }
+
+    /**
+     * Build a snapshot from the recurly.* system properties
+     *
+     * @param baseUrl Recurly API base url, e.g. https://api.recurly.com:443/v2
+     * @return the configuration snapshot
+     */
+    public static RecurlyClientConfig fromSystemProperties(final String baseUrl) {
+        return new RecurlyClientConfig(baseUrl, RecurlyClient.getPageSize(), Boolean.getBoolean(RecurlyClient.RECURLY_DEBUG_KEY), Collections.<String>emptySet(),
+                                       Integer.getInteger(RECURLY_LOG_BODY_MAX_LENGTH_KEY, DEFAULT_MAX_LOGGED_BODY_LENGTH),
+                                       Boolean.getBoolean(RECURLY_STRIP_RESPONSE_NEWLINES_KEY), Boolean.getBoolean(RECURLY_COALESCE_GETS_KEY));
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public Set<String> getHideXMLResponseNodeValues() {
+        return hideXMLResponseNodeValues;
+    }
+
+    /**
+     * @return maximum number of characters of a response body written to the traces, -1 for no limit
+     */
+    public int getMaxLoggedBodyLength() {
+        return maxLoggedBodyLength;
+    }
+
+    /**
+     * @return whether newlines are removed from response bodies before parsing them (legacy behavior)
+     */
+    public boolean isStripResponseNewlines() {
+        return stripResponseNewlines;
+    }
+
+    /**
+     * @return whether concurrent identical GETs share a single request (and its result)
+     */
+    public boolean isCoalesceGets() {
+        return coalesceGets;
+    }
+
+    String getPageSizeGetParam() {
+        return pageSizeGetParam;
+    }
+
+    public RecurlyClientConfig withBaseUrl(final String baseUrl) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    public RecurlyClientConfig withPageSize(final int pageSize) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    public RecurlyClientConfig withDebug(final boolean debug) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    public RecurlyClientConfig withHideXMLResponseNodeValues(final Set<String> hideXMLResponseNodeValues) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    public RecurlyClientConfig withMaxLoggedBodyLength(final int maxLoggedBodyLength) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    public RecurlyClientConfig withStripResponseNewlines(final boolean stripResponseNewlines) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    public RecurlyClientConfig withCoalesceGets(final boolean coalesceGets) {
+        return new RecurlyClientConfig(baseUrl, pageSize, debug, hideXMLResponseNodeValues, maxLoggedBodyLength, stripResponseNewlines, coalesceGets);
+    }
+
+    /**
+     * Mask the values of the configured XML nodes
+     *
+     * @param responseXml xml to mask
+     * @return the masked xml
+     */
+    public String hideXMLResponseNodeValues(final String responseXml) {
+        String processedResponseXml = responseXml;
+        for (int i = 0; i < hideXMLResponseNodePatterns.size(); i++) {
+            processedResponseXml = hideXMLResponseNodePatterns.get(i).matcher(processedResponseXml).replaceAll(hideXMLResponseNodeReplacements.get(i));
+        }
+        return processedResponseXml;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("RecurlyClientConfig");
+        sb.append("{baseUrl='").append(baseUrl).append('\'');
+        sb.append(", pageSize=").append(pageSize);
+        sb.append(", debug=").append(debug);
+        sb.append(", hideXMLResponseNodeValues=").append(hideXMLResponseNodeValues);
+        sb.append(", maxLoggedBodyLength=").append(maxLoggedBodyLength);
+        sb.append(", stripResponseNewlines=").append(stripResponseNewlines);
+        sb.append(", coalesceGets=").append(coalesceGets);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Validating cache of GET responses: the ETag and body of each response are kept, and later identical GETs are
+ * sent with If-None-Match. On 304 Not Modified, the cached body is bound again without being downloaded: each
+ * caller gets its own object, which it is free to modify.
+ * <p/>
+ * Entries are keyed by API key, url, projection and result class, and evicted in least recently used order once
+ * the cached response bodies exceed the byte budget. A cache can be shared by several clients.
+ * <pre>
+ * recurlyClient.setResponseCache(new ResponseCache(16 * 1024 * 1024));
+ * </pre>
+ */
+public class ResponseCache {
+
+    static final class Entry {
+
+        private final String etag;
+        private final byte[] body;
+        private final String nextUrl;
+
+        private Entry(final String etag, final byte[] body, @Nullable final String nextUrl) {
+            this.etag = etag;
+            this.body = body;
+            this.nextUrl = nextUrl;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the response body, not to be modified
+         */
+        byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return url of the next page (Link header), if any
+         */
+        @Nullable
+        String getNextUrl() {
+            return nextUrl;
+        }
+    }
+
+    private final long maxBytes;
+    // Access order, for LRU eviction
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private long bytes = 0;
+
+    private final AtomicLong notModifiedResponses = new AtomicLong();
+    private final AtomicLong storedResponses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes maximum total size of the cached response bodies
+     */
+    public ResponseCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized Entry get(final String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(final String key, final String etag, final byte[] body, @Nullable final String nextUrl) {
+        final Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.body.length;
+        }
+        if (body.length > maxBytes) {
+            return;
+        }
+
+        entries.put(key, new Entry(etag, body, nextUrl));
+        bytes += body.length;
+        storedResponses.incrementAndGet();
+
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().body.length;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    void recordNotModified() {
+        notModifiedResponses.incrementAndGet();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * @return total size of the cached response bodies
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return number of GETs answered with 304 Not Modified, bound from the cached body
+     */
+    public long getNotModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    /**
+     * @return number of responses stored, new or modified
+     */
+    public long getStoredResponses() {
+        return storedResponses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly;
+
+import org.joda.time.DateTime;
+
+/**
+ * Site-wide transactions search: state and type filters ({@link TransactionFilter}), creation or update time range,
+ * sort order, page size and cursor, all applied by Recurly
+ * <p/>
+ * Used by {@link RecurlyClient#getTransactions(TransactionQuery)} (one page) and
+ * {@link RecurlyClient#streamTransactions(TransactionQuery)} (every page, one transaction at a time).
+ */
+public class TransactionQuery extends TransactionFilter {
+
+    public static final String BEGIN_TIME_PARAMETER_NAME = "begin_time";
+    public static final String END_TIME_PARAMETER_NAME = "end_time";
+    public static final String SORT_PARAMETER_NAME = "sort";
+    public static final String ORDER_PARAMETER_NAME = "order";
+    public static final String CURSOR_PARAMETER_NAME = "cursor";
+
+    public static enum Sort {
+        CREATED_AT("created_at"), UPDATED_AT("updated_at");
+
+        private final String parameterValue;
+
+        private Sort(final String parameterValue) {
+            this.parameterValue = parameterValue;
+        }
+
+        public String getParameterValue() {
+            return parameterValue;
+        }
+    }
+
+    public static enum Order {
+        ASC("asc"), DESC("desc");
+
+        private final String parameterValue;
+
+        private Order(final String parameterValue) {
+            this.parameterValue = parameterValue;
+        }
+
+        public String getParameterValue() {
+            return parameterValue;
+        }
+    }
+
+    private DateTime beginTime;
+    private DateTime endTime;
+    private Sort sort;
+    private Order order;
+    private Integer perPage;
+    private String cursor;
+
+    public DateTime getBeginTime() {
+        return beginTime;
+    }
+
+    /**
+     * @param beginTime first time (inclusive) of the sort field, null for no lower bound
+     */
+    public void setBeginTime(final DateTime beginTime) {
+        this.beginTime = beginTime;
+    }
+
+    public DateTime getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @param endTime last time (inclusive) of the sort field, null for no upper bound
+     */
+    public void setEndTime(final DateTime endTime) {
+        this.endTime = endTime;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * @param sort time field to sort and filter on, null for the Recurly default (created_at)
+     */
+    public void setSort(final Sort sort) {
+        this.sort = sort;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * @param order sort order, null for the Recurly default (desc)
+     */
+    public void setOrder(final Order order) {
+        this.order = order;
+    }
+
+    public Integer getPerPage() {
+        return perPage;
+    }
+
+    /**
+     * @param perPage page size (at most 200), null for the client page size
+     */
+    public void setPerPage(final Integer perPage) {
+        this.perPage = perPage;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor cursor of the first page to return, e.g. to resume an interrupted export, null to start from the beginning
+     */
+    public void setCursor(final String cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("TransactionQuery");
+        sb.append("{state=").append(getState());
+        sb.append(", type=").append(getType());
+        sb.append(", beginTime=").append(beginTime);
+        sb.append(", endTime=").append(endTime);
+        sb.append(", sort=").append(sort);
+        sb.append(", order=").append(order);
+        sb.append(", perPage=").append(perPage);
+        sb.append(", cursor='").append(cursor).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
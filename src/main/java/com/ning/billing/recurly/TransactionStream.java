@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.model.exceptions.RecurlyException;
+
+/**
+ * Transactions matching a {@link TransactionQuery}, across all pages
+ * <p/>
+ * Pages are fetched on demand and only one is held at a time, as raw XML: each &lt;transaction&gt; element is
+ * deserialized when the iterator reaches it, so that memory doesn't grow with the number of transactions.
+ * Streams are not thread-safe.
+ */
+public class TransactionStream implements Iterator<Transaction>, Closeable {
+
+    private static final String TRANSACTION = "transaction";
+
+    private final RecurlyClient recurlyClient;
+    private final ObjectMapper xmlMapper;
+
+    // Url of the next page to fetch, null after the last one
+    private String nextUrl;
+    // Url of the page being iterated over, and number of its transactions returned so far
+    private String pageUrl;
+    private int pageOffset = 0;
+    // Parser of the current page, null between pages
+    private JsonParser parser;
+    private Transaction next;
+
+    TransactionStream(final RecurlyClient recurlyClient, final ObjectMapper xmlMapper, final String url) {
+        this.recurlyClient = recurlyClient;
+        this.xmlMapper = xmlMapper;
+        this.nextUrl = url;
+    }
+
+    /**
+     * @throws RecurlyException if a page can't be fetched or parsed
+     */
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                if (parser == null) {
+                    if (nextUrl == null) {
+                        return false;
+                    }
+                    openPage(recurlyClient.getListPage(nextUrl));
+                }
+                next = readNextTransaction();
+                if (next == null) {
+                    closePage();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            close();
+            throw new RecurlyException("Unable to read the transactions", e);
+        }
+    }
+
+    @Override
+    public Transaction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Transaction transaction = next;
+        next = null;
+        pageOffset++;
+        return transaction;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return url of the page after the current one, null on the last page. Resuming from it is only exact at a page
+     * boundary: the transactions of the current page not returned yet would be skipped, see {@link #getPageUrl()}
+     */
+    @Nullable
+    public String getNextUrl() {
+        return nextUrl;
+    }
+
+    /**
+     * @return url of the page holding the next transaction to return, null before the first page is fetched. An
+     * interrupted iteration can be resumed with {@link RecurlyClient#resumeTransactions(String, int)}
+     */
+    @Nullable
+    public String getPageUrl() {
+        return pageUrl;
+    }
+
+    /**
+     * @return number of transactions of the current page already returned
+     */
+    public int getPageOffset() {
+        return pageOffset;
+    }
+
+    void skip(final int count) {
+        for (int i = 0; i < count && hasNext(); i++) {
+            next();
+        }
+    }
+
+    /**
+     * Drop the current page, the stream won't return any more transaction
+     */
+    @Override
+    public void close() {
+        nextUrl = null;
+        next = null;
+        closePage();
+    }
+
+    private void openPage(@Nullable final ListPage page) throws IOException {
+        if (page == null) {
+            throw new IOException("Unable to fetch " + nextUrl);
+        }
+        pageUrl = nextUrl;
+        pageOffset = 0;
+        nextUrl = page.getNextUrl();
+        parser = xmlMapper.getFactory().createParser(new ByteArrayInputStream(page.getBody()));
+        // Root element, anything else (e.g. empty text) is an empty page
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            closePage();
+        }
+    }
+
+    @Nullable
+    private Transaction readNextTransaction() throws IOException {
+        if (parser == null) {
+            return null;
+        }
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_OBJECT) {
+            if (token != JsonToken.FIELD_NAME) {
+                continue;
+            }
+            final String name = parser.getCurrentName();
+            token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT && TRANSACTION.equals(name)) {
+                return xmlMapper.readValue(parser, Transaction.class);
+            }
+            // Attributes of the root (type="array") and unknown elements
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private void closePage() {
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // In-memory page
+            }
+            parser = null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.analytics;
+
+/**
+ * Revenue totals of one currency, across plans
+ */
+public class CurrencyRevenue {
+
+    private final String currency;
+
+    long mrrMilliCents;
+    long payingAccounts;
+    long invoices;
+    long invoicedInCents;
+    long collectedInCents;
+    long refundedInCents;
+    long failedTransactions;
+
+    CurrencyRevenue(final String currency) {
+        this.currency = currency;
+    }
+
+    void merge(final CurrencyRevenue other) {
+        mrrMilliCents += other.mrrMilliCents;
+        payingAccounts += other.payingAccounts;
+        invoices += other.invoices;
+        invoicedInCents += other.invoicedInCents;
+        collectedInCents += other.collectedInCents;
+        refundedInCents += other.refundedInCents;
+        failedTransactions += other.failedTransactions;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getMrrInCents() {
+        return RevenueAggregator.toCents(mrrMilliCents);
+    }
+
+    /**
+     * @return the number of accounts with at least one active subscription in this currency, see
+     *         {@link RevenueAggregator#addAccountSubscriptions(Iterable)}
+     */
+    public long getPayingAccounts() {
+        return payingAccounts;
+    }
+
+    /**
+     * @return the average monthly revenue per paying account, in cents, 0 if there is none
+     */
+    public long getArpuInCents() {
+        return payingAccounts == 0 ? 0 : RevenueAggregator.toCents(mrrMilliCents / payingAccounts);
+    }
+
+    public long getInvoices() {
+        return invoices;
+    }
+
+    /**
+     * @return the total of the invoices, failed and voided invoices excluded
+     */
+    public long getInvoicedInCents() {
+        return invoicedInCents;
+    }
+
+    /**
+     * @return the total of the successful purchases
+     */
+    public long getCollectedInCents() {
+        return collectedInCents;
+    }
+
+    /**
+     * @return the total of the successful refunds
+     */
+    public long getRefundedInCents() {
+        return refundedInCents;
+    }
+
+    public long getNetCollectedInCents() {
+        return collectedInCents - refundedInCents;
+    }
+
+    public long getFailedTransactions() {
+        return failedTransactions;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("CurrencyRevenue");
+        sb.append("{currency='").append(currency).append('\'');
+        sb.append(", mrrInCents=").append(getMrrInCents());
+        sb.append(", payingAccounts=").append(payingAccounts);
+        sb.append(", arpuInCents=").append(getArpuInCents());
+        sb.append(", invoices=").append(invoices);
+        sb.append(", invoicedInCents=").append(invoicedInCents);
+        sb.append(", collectedInCents=").append(collectedInCents);
+        sb.append(", refundedInCents=").append(refundedInCents);
+        sb.append(", failedTransactions=").append(failedTransactions);
+        sb.append('}');
+        return sb.toString();
+    }
+}
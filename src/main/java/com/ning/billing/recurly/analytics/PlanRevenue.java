@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.analytics;
+
+/**
+ * Recurring revenue of one plan in one currency. Amounts are kept in thousandths of a cent, so that normalizing
+ * e.g. yearly or 10-day plans to monthly amounts doesn't accumulate rounding errors.
+ */
+public class PlanRevenue {
+
+    private final String planCode;
+    private final String currency;
+
+    long activeSubscriptions;
+    long mrrMilliCents;
+    long newSubscriptions;
+    long newMrrMilliCents;
+    long churnedSubscriptions;
+    long churnedMrrMilliCents;
+
+    PlanRevenue(final String planCode, final String currency) {
+        this.planCode = planCode;
+        this.currency = currency;
+    }
+
+    void merge(final PlanRevenue other) {
+        activeSubscriptions += other.activeSubscriptions;
+        mrrMilliCents += other.mrrMilliCents;
+        newSubscriptions += other.newSubscriptions;
+        newMrrMilliCents += other.newMrrMilliCents;
+        churnedSubscriptions += other.churnedSubscriptions;
+        churnedMrrMilliCents += other.churnedMrrMilliCents;
+    }
+
+    public String getPlanCode() {
+        return planCode;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the number of active (or past due) subscriptions
+     */
+    public long getActiveSubscriptions() {
+        return activeSubscriptions;
+    }
+
+    /**
+     * @return the monthly recurring revenue of the active subscriptions, in cents
+     */
+    public long getMrrInCents() {
+        return RevenueAggregator.toCents(mrrMilliCents);
+    }
+
+    /**
+     * @return the number of subscriptions activated during the aggregation period
+     */
+    public long getNewSubscriptions() {
+        return newSubscriptions;
+    }
+
+    public long getNewMrrInCents() {
+        return RevenueAggregator.toCents(newMrrMilliCents);
+    }
+
+    /**
+     * @return the number of subscriptions canceled or expired during the aggregation period
+     */
+    public long getChurnedSubscriptions() {
+        return churnedSubscriptions;
+    }
+
+    /**
+     * @return the monthly recurring revenue lost with the churned subscriptions, in cents
+     */
+    public long getChurnedMrrInCents() {
+        return RevenueAggregator.toCents(churnedMrrMilliCents);
+    }
+
+    /**
+     * @return the churned subscriptions over the subscriptions active at some point of the period, 0 if none
+     */
+    public double getChurnRate() {
+        final long exposed = activeSubscriptions + churnedSubscriptions;
+        return exposed == 0 ? 0 : (double) churnedSubscriptions / exposed;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("PlanRevenue");
+        sb.append("{planCode='").append(planCode).append('\'');
+        sb.append(", currency='").append(currency).append('\'');
+        sb.append(", activeSubscriptions=").append(activeSubscriptions);
+        sb.append(", mrrInCents=").append(getMrrInCents());
+        sb.append(", newSubscriptions=").append(newSubscriptions);
+        sb.append(", churnedSubscriptions=").append(churnedSubscriptions);
+        sb.append(", churnedMrrInCents=").append(getChurnedMrrInCents());
+        sb.append('}');
+        return sb.toString();
+    }
+}
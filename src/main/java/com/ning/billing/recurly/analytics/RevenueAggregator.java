@@ -0,0 +1,284 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.analytics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import com.ning.billing.recurly.model.Invoice;
+import com.ning.billing.recurly.model.Plan;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.model.batch.TransactionBatch;
+
+/**
+ * Incremental revenue aggregates (MRR, new and churned MRR, ARPU, collected revenue) per plan and currency
+ * <p/>
+ * Subscriptions, invoices and transactions are added one at a time as they are streamed (list pages, batches,
+ * push notifications payloads, ...) and only counted in primitive accumulators. Subscription amounts
+ * (unit amount times quantity, add-ons excluded) are normalized to monthly amounts using the interval of their plan.
+ * <p/>
+ * Aggregators are not thread-safe: use one per thread or partition ({@link #fork()}) and combine them with
+ * {@link #merge(RevenueAggregator)}. Accounts should not be split across partitions for paying account counts
+ * (and ARPU) to be exact.
+ */
+public class RevenueAggregator {
+
+    private static final String INTERVAL_DAYS = "days";
+    private static final long MILLI_CENTS_PER_CENT = 1000;
+
+    private final Map<String, Plan> plans;
+    private final DateTime periodStart;
+    private final DateTime periodEnd;
+
+    // Keyed by currency, then plan code
+    private final Map<String, Map<String, PlanRevenue>> planRevenues = new HashMap<String, Map<String, PlanRevenue>>();
+    private final Map<String, CurrencyRevenue> currencyRevenues = new HashMap<String, CurrencyRevenue>();
+
+    /**
+     * @param plans       plan catalogue, for the billing intervals (subscriptions only reference their plan)
+     * @param periodStart start of the period for new and churned subscriptions, null for no lower bound
+     * @param periodEnd   end (exclusive) of the period for new and churned subscriptions, null for no upper bound
+     */
+    public RevenueAggregator(final Iterable<Plan> plans, @Nullable final DateTime periodStart, @Nullable final DateTime periodEnd) {
+        final Map<String, Plan> plansByCode = new HashMap<String, Plan>();
+        for (final Plan plan : plans) {
+            plansByCode.put(plan.getPlanCode(), plan);
+        }
+        this.plans = Collections.unmodifiableMap(plansByCode);
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+    }
+
+    private RevenueAggregator(final RevenueAggregator template) {
+        this.plans = template.plans;
+        this.periodStart = template.periodStart;
+        this.periodEnd = template.periodEnd;
+    }
+
+    /**
+     * @return an empty aggregator with the same plans and period, e.g. for another thread
+     */
+    public RevenueAggregator fork() {
+        return new RevenueAggregator(this);
+    }
+
+    /**
+     * Count a subscription: active and past due subscriptions contribute to the MRR, subscriptions canceled or
+     * expired during the period to the churn
+     */
+    public void add(final Subscription subscription) {
+        addSubscription(subscription);
+    }
+
+    /**
+     * Count all subscriptions of one account, and the account itself as paying in the currencies of its active
+     * subscriptions
+     */
+    public void addAccountSubscriptions(final Iterable<Subscription> subscriptions) {
+        Set<String> payingCurrencies = null;
+        for (final Subscription subscription : subscriptions) {
+            if (addSubscription(subscription)) {
+                if (payingCurrencies == null) {
+                    payingCurrencies = new HashSet<String>(2);
+                }
+                payingCurrencies.add(subscription.getCurrency());
+            }
+        }
+
+        if (payingCurrencies != null) {
+            for (final String currency : payingCurrencies) {
+                currencyRevenue(currency).payingAccounts++;
+            }
+        }
+    }
+
+    public void add(final Invoice invoice) {
+        final String state = invoice.getState();
+        if (invoice.getCurrency() == null || invoice.getTotalInCents() == null || "failed".equals(state) || "void".equals(state)) {
+            return;
+        }
+
+        final CurrencyRevenue revenue = currencyRevenue(invoice.getCurrency());
+        revenue.invoices++;
+        revenue.invoicedInCents += invoice.getTotalInCents();
+    }
+
+    public void add(final Transaction transaction) {
+        if (transaction.getCurrency() != null && transaction.getAmountInCents() != null) {
+            addTransaction(transaction.getCurrency(), transaction.getAction(), transaction.getStatus(), transaction.getAmountInCents());
+        }
+    }
+
+    /**
+     * Count all transactions of a batch, without materializing them
+     */
+    public void add(final TransactionBatch batch) {
+        for (final TransactionBatch.Row row : batch) {
+            if (row.getCurrency() != null && row.getAmountInCents() != TransactionBatch.NULL_LONG) {
+                addTransaction(row.getCurrency(), row.getAction(), row.getStatus(), row.getAmountInCents());
+            }
+        }
+    }
+
+    /**
+     * Add the aggregates of another aggregator (e.g. of another partition) to this one
+     *
+     * @param other aggregator to merge, left unchanged
+     * @return this aggregator
+     */
+    public RevenueAggregator merge(final RevenueAggregator other) {
+        for (final Map<String, PlanRevenue> otherPlans : other.planRevenues.values()) {
+            for (final PlanRevenue otherRevenue : otherPlans.values()) {
+                planRevenue(otherRevenue.getPlanCode(), otherRevenue.getCurrency()).merge(otherRevenue);
+            }
+        }
+        for (final CurrencyRevenue otherRevenue : other.currencyRevenues.values()) {
+            currencyRevenue(otherRevenue.getCurrency()).merge(otherRevenue);
+        }
+        return this;
+    }
+
+    public Collection<PlanRevenue> getPlanRevenues(final String currency) {
+        final Map<String, PlanRevenue> revenues = planRevenues.get(currency);
+        return revenues == null ? Collections.<PlanRevenue>emptyList() : Collections.unmodifiableCollection(revenues.values());
+    }
+
+    @Nullable
+    public PlanRevenue getPlanRevenue(final String planCode, final String currency) {
+        final Map<String, PlanRevenue> revenues = planRevenues.get(currency);
+        return revenues == null ? null : revenues.get(planCode);
+    }
+
+    public Collection<CurrencyRevenue> getCurrencyRevenues() {
+        return Collections.unmodifiableCollection(currencyRevenues.values());
+    }
+
+    @Nullable
+    public CurrencyRevenue getCurrencyRevenue(final String currency) {
+        return currencyRevenues.get(currency);
+    }
+
+    /**
+     * Monthly amount of a recurring charge
+     *
+     * @param amountInCents  amount charged every interval
+     * @param intervalUnit   "months" or "days", months if unknown
+     * @param intervalLength number of units per interval, 1 if unknown
+     * @return the monthly amount, in thousandths of a cent
+     */
+    static long monthlyMilliCents(final long amountInCents, @Nullable final String intervalUnit, @Nullable final Integer intervalLength) {
+        final long length = intervalLength == null || intervalLength <= 0 ? 1 : intervalLength;
+        if (INTERVAL_DAYS.equals(intervalUnit)) {
+            // 365 days over 12 months
+            return amountInCents * MILLI_CENTS_PER_CENT * 365 / (12 * length);
+        }
+        return amountInCents * MILLI_CENTS_PER_CENT / length;
+    }
+
+    static long toCents(final long milliCents) {
+        // Round half up
+        return (milliCents + MILLI_CENTS_PER_CENT / 2) / MILLI_CENTS_PER_CENT;
+    }
+
+    // Returns whether the subscription is active (or past due)
+    private boolean addSubscription(final Subscription subscription) {
+        final String state = subscription.getState();
+        final String planCode = subscription.getPlan() != null && subscription.getPlan().getPlanCode() != null ? subscription.getPlan().getPlanCode() : subscription.getPlanCode();
+        if (state == null || planCode == null || subscription.getCurrency() == null || subscription.getUnitAmountInCents() == null) {
+            return false;
+        }
+
+        final boolean active = "active".equals(state) || "past_due".equals(state);
+        final DateTime churnedAt = "canceled".equals(state) ? subscription.getCanceledAt() : "expired".equals(state) ? subscription.getExpiresAt() : null;
+        if (!active && churnedAt == null) {
+            return false;
+        }
+
+        final long mrr = subscriptionMrrMilliCents(subscription, planCode);
+        final PlanRevenue planRevenue = planRevenue(planCode, subscription.getCurrency());
+        if (active) {
+            planRevenue.activeSubscriptions++;
+            planRevenue.mrrMilliCents += mrr;
+            currencyRevenue(subscription.getCurrency()).mrrMilliCents += mrr;
+            if (inPeriod(subscription.getActivatedAt())) {
+                planRevenue.newSubscriptions++;
+                planRevenue.newMrrMilliCents += mrr;
+            }
+        } else if (inPeriod(churnedAt)) {
+            planRevenue.churnedSubscriptions++;
+            planRevenue.churnedMrrMilliCents += mrr;
+        }
+        return active;
+    }
+
+    private long subscriptionMrrMilliCents(final Subscription subscription, final String planCode) {
+        final long quantity = subscription.getQuantity() == null ? 1 : subscription.getQuantity();
+        final Plan plan = plans.get(planCode);
+        return monthlyMilliCents(subscription.getUnitAmountInCents() * quantity,
+                                 plan == null ? null : plan.getPlanIntervalUnit(),
+                                 plan == null ? null : plan.getPlanIntervalLength());
+    }
+
+    private void addTransaction(final String currency, @Nullable final String action, @Nullable final String status, final long amountInCents) {
+        final CurrencyRevenue revenue = currencyRevenue(currency);
+        if ("failed".equals(status) || "declined".equals(status)) {
+            revenue.failedTransactions++;
+        } else if ("success".equals(status)) {
+            if ("purchase".equals(action)) {
+                revenue.collectedInCents += amountInCents;
+            } else if ("refund".equals(action)) {
+                revenue.refundedInCents += amountInCents;
+            }
+        }
+    }
+
+    private boolean inPeriod(@Nullable final DateTime dateTime) {
+        return dateTime != null && (periodStart == null || !dateTime.isBefore(periodStart)) && (periodEnd == null || dateTime.isBefore(periodEnd));
+    }
+
+    private PlanRevenue planRevenue(final String planCode, final String currency) {
+        Map<String, PlanRevenue> revenues = planRevenues.get(currency);
+        if (revenues == null) {
+            revenues = new HashMap<String, PlanRevenue>();
+            planRevenues.put(currency, revenues);
+        }
+        PlanRevenue revenue = revenues.get(planCode);
+        if (revenue == null) {
+            revenue = new PlanRevenue(planCode, currency);
+            revenues.put(planCode, revenue);
+        }
+        return revenue;
+    }
+
+    private CurrencyRevenue currencyRevenue(final String currency) {
+        CurrencyRevenue revenue = currencyRevenues.get(currency);
+        if (revenue == null) {
+            revenue = new CurrencyRevenue(currency);
+            currencyRevenues.put(currency, revenue);
+        }
+        return revenue;
+    }
+}
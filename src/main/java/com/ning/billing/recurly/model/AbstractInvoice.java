@@ -66,7 +66,7 @@ public class AbstractInvoice extends RecurlyObject {
     }
 
     public void setState(final Object state) {
-        this.state = stringOrNull(state);
+        this.state = internedStringOrNull(state);
     }
 
     public Integer getInvoiceNumber() {
@@ -106,7 +106,7 @@ public class AbstractInvoice extends RecurlyObject {
     }
 
     public void setCurrency(final Object currency) {
-        this.currency = stringOrNull(currency);
+        this.currency = internedStringOrNull(currency);
     }
 
     public Integer getNetTerms() {
@@ -122,7 +122,7 @@ public class AbstractInvoice extends RecurlyObject {
     }
 
     public void setCollectionMethod(final Object collectionMethod) {
-        this.collectionMethod = stringOrNull(collectionMethod);
+        this.collectionMethod = internedStringOrNull(collectionMethod);
     }
 
     public DateTime getClosedAt() {
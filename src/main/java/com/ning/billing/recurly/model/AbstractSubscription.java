@@ -45,7 +45,7 @@ public class AbstractSubscription extends RecurlyObject {
     }
 
     public void setPlanCode(final String planCode) {
-        this.planCode = stringOrNull(planCode);
+        this.planCode = internedStringOrNull(planCode);
     }
 
     public Integer getUnitAmountInCents() {
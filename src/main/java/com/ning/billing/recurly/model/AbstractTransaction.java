@@ -59,7 +59,7 @@ public class AbstractTransaction extends RecurlyObject {
     }
 
     public void setAction(final Object action) {
-        this.action = stringOrNull(action);
+        this.action = internedStringOrNull(action);
     }
 
     public Integer getAmountInCents() {
@@ -75,7 +75,7 @@ public class AbstractTransaction extends RecurlyObject {
     }
 
     public void setStatus(final Object status) {
-        this.status = stringOrNull(status);
+        this.status = internedStringOrNull(status);
     }
 
     public String getReference() {
@@ -115,7 +115,7 @@ public class AbstractTransaction extends RecurlyObject {
     }
 
     public void setSource(final Object source) {
-        this.source = stringOrNull(source);
+        this.source = internedStringOrNull(source);
     }
 
     public String getPaymentMethod() {
@@ -123,7 +123,7 @@ public class AbstractTransaction extends RecurlyObject {
     }
 
     public void setPaymentMethod(final Object paymentMethod) {
-        this.paymentMethod = stringOrNull(paymentMethod);
+        this.paymentMethod = internedStringOrNull(paymentMethod);
     }
 
     public TransactionError getTransactionError() {
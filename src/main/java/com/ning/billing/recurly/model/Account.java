@@ -27,6 +27,7 @@ import javax.xml.bind.annotation.XmlTransient;
 import org.joda.time.DateTime;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 @XmlRootElement(name = "account")
 public class Account extends RecurlyObject {
@@ -89,6 +90,10 @@ public class Account extends RecurlyObject {
     @XmlElement(name = "billing_info")
     private BillingInfo billingInfo;
 
+    // Buffered <billing_info> element in lazy mode, deserialized on first access by the (thread-safe) holder
+    @XmlTransient
+    private NestedResource<BillingInfo> billingInfoElement;
+
     // Note: I'm not sure why @JsonIgnore is required here - shouldn't @XmlTransient be enough?
     @JsonIgnore
     public String getHref() {
@@ -153,7 +158,7 @@ public class Account extends RecurlyObject {
     }
 
     public void setState(final Object state) {
-        this.state = stringOrNull(state);
+        this.state = internedStringOrNull(state);
     }
 
     public String getUsername() {
@@ -201,7 +206,7 @@ public class Account extends RecurlyObject {
     }
 
     public void setAcceptLanguage(final Object acceptLanguage) {
-        this.acceptLanguage = stringOrNull(acceptLanguage);
+        this.acceptLanguage = internedStringOrNull(acceptLanguage);
     }
 
     public String getHostedLoginToken() {
@@ -220,12 +225,22 @@ public class Account extends RecurlyObject {
         this.createdAt = dateTimeOrNull(createdAt);
     }
 
+    @JsonProperty("billing_info")
     public BillingInfo getBillingInfo() {
-        return billingInfo;
+        final NestedResource<BillingInfo> element = billingInfoElement;
+        return element == null ? billingInfo : element.get();
     }
 
+    @JsonIgnore
     public void setBillingInfo(final BillingInfo billingInfo) {
         this.billingInfo = billingInfo;
+        this.billingInfoElement = null;
+    }
+
+    @JsonProperty("billing_info")
+    private void setBillingInfoElement(final NestedResource<BillingInfo> billingInfo) {
+        this.billingInfo = null;
+        this.billingInfoElement = billingInfo;
     }
 
     @Override
@@ -247,7 +262,7 @@ public class Account extends RecurlyObject {
         sb.append(", acceptLanguage='").append(acceptLanguage).append('\'');
         sb.append(", hostedLoginToken='").append(hostedLoginToken).append('\'');
         sb.append(", createdAt=").append(createdAt);
-        sb.append(", billingInfo=").append(billingInfo);
+        sb.append(", billingInfo=").append(getBillingInfo());
         sb.append('}');
         return sb.toString();
     }
@@ -272,7 +287,7 @@ public class Account extends RecurlyObject {
         if (adjustments != null ? !adjustments.equals(account.adjustments) : account.adjustments != null) {
             return false;
         }
-        if (billingInfo != null ? !billingInfo.equals(account.billingInfo) : account.billingInfo != null) {
+        if (getBillingInfo() != null ? !getBillingInfo().equals(account.getBillingInfo()) : account.getBillingInfo() != null) {
             return false;
         }
         if (companyName != null ? !companyName.equals(account.companyName) : account.companyName != null) {
@@ -332,7 +347,7 @@ public class Account extends RecurlyObject {
         result = 31 * result + (acceptLanguage != null ? acceptLanguage.hashCode() : 0);
         result = 31 * result + (hostedLoginToken != null ? hostedLoginToken.hashCode() : 0);
         result = 31 * result + (createdAt != null ? createdAt.hashCode() : 0);
-        result = 31 * result + (billingInfo != null ? billingInfo.hashCode() : 0);
+        result = 31 * result + (getBillingInfo() != null ? getBillingInfo().hashCode() : 0);
         return result;
     }
 }
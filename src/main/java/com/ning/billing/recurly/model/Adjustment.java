@@ -18,6 +18,7 @@ package com.ning.billing.recurly.model;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.joda.time.DateTime;
 
@@ -63,12 +64,22 @@ public class Adjustment extends RecurlyObject {
     @XmlElement(name = "start_date")
     private DateTime startDate;
 
+    // Epoch millis of the timestamps, their DateTime being built on first access in lazy mode
+    @XmlTransient
+    private long startDateMillis = NO_MILLIS;
+
     @XmlElement(name = "end_date")
     private DateTime endDate;
 
+    @XmlTransient
+    private long endDateMillis = NO_MILLIS;
+
     @XmlElement(name = "created_at")
     private DateTime createdAt;
 
+    @XmlTransient
+    private long createdAtMillis = NO_MILLIS;
+
     public Account getAccount() {
         return account;
     }
@@ -98,7 +109,7 @@ public class Adjustment extends RecurlyObject {
     }
 
     public void setAccountingCode(final Object accountingCode) {
-        this.accountingCode = stringOrNull(accountingCode);
+        this.accountingCode = internedStringOrNull(accountingCode);
     }
 
     public String getOrigin() {
@@ -106,7 +117,7 @@ public class Adjustment extends RecurlyObject {
     }
 
     public void setOrigin(final Object origin) {
-        this.origin = stringOrNull(origin);
+        this.origin = internedStringOrNull(origin);
     }
 
     public Integer getUnitAmountInCents() {
@@ -154,7 +165,7 @@ public class Adjustment extends RecurlyObject {
     }
 
     public void setCurrency(final Object currency) {
-        this.currency = stringOrNull(currency);
+        this.currency = internedStringOrNull(currency);
     }
 
     public Boolean getTaxable() {
@@ -166,27 +177,33 @@ public class Adjustment extends RecurlyObject {
     }
 
     public DateTime getStartDate() {
+        startDate = lazyDateTime(startDate, startDateMillis);
         return startDate;
     }
 
     public void setStartDate(final Object startDate) {
-        this.startDate = dateTimeOrNull(startDate);
+        this.startDateMillis = millisOrNull(startDate);
+        this.startDate = eagerDateTimeOrNull(startDateMillis);
     }
 
     public DateTime getEndDate() {
+        endDate = lazyDateTime(endDate, endDateMillis);
         return endDate;
     }
 
     public void setEndDate(final Object endDate) {
-        this.endDate = dateTimeOrNull(endDate);
+        this.endDateMillis = millisOrNull(endDate);
+        this.endDate = eagerDateTimeOrNull(endDateMillis);
     }
 
     public DateTime getCreatedAt() {
+        createdAt = lazyDateTime(createdAt, createdAtMillis);
         return createdAt;
     }
 
     public void setCreatedAt(final Object createdAt) {
-        this.createdAt = dateTimeOrNull(createdAt);
+        this.createdAtMillis = millisOrNull(createdAt);
+        this.createdAt = eagerDateTimeOrNull(createdAtMillis);
     }
 
     @Override
@@ -205,9 +222,9 @@ public class Adjustment extends RecurlyObject {
         sb.append(", totalInCents=").append(totalInCents);
         sb.append(", currency='").append(currency).append('\'');
         sb.append(", taxable=").append(taxable);
-        sb.append(", startDate=").append(startDate);
-        sb.append(", endDate=").append(endDate);
-        sb.append(", createdAt=").append(createdAt);
+        sb.append(", startDate=").append(getStartDate());
+        sb.append(", endDate=").append(getEndDate());
+        sb.append(", createdAt=").append(getCreatedAt());
         sb.append('}');
         return sb.toString();
     }
@@ -229,7 +246,7 @@ public class Adjustment extends RecurlyObject {
         if (accountingCode != null ? !accountingCode.equals(that.accountingCode) : that.accountingCode != null) {
             return false;
         }
-        if (createdAt != null ? !createdAt.equals(that.createdAt) : that.createdAt != null) {
+        if (getCreatedAt() != null ? !getCreatedAt().equals(that.getCreatedAt()) : that.getCreatedAt() != null) {
             return false;
         }
         if (currency != null ? !currency.equals(that.currency) : that.currency != null) {
@@ -241,7 +258,7 @@ public class Adjustment extends RecurlyObject {
         if (discountInCents != null ? !discountInCents.equals(that.discountInCents) : that.discountInCents != null) {
             return false;
         }
-        if (endDate != null ? !endDate.equals(that.endDate) : that.endDate != null) {
+        if (getEndDate() != null ? !getEndDate().equals(that.getEndDate()) : that.getEndDate() != null) {
             return false;
         }
         if (origin != null ? !origin.equals(that.origin) : that.origin != null) {
@@ -250,7 +267,7 @@ public class Adjustment extends RecurlyObject {
         if (quantity != null ? !quantity.equals(that.quantity) : that.quantity != null) {
             return false;
         }
-        if (startDate != null ? !startDate.equals(that.startDate) : that.startDate != null) {
+        if (getStartDate() != null ? !getStartDate().equals(that.getStartDate()) : that.getStartDate() != null) {
             return false;
         }
         if (taxInCents != null ? !taxInCents.equals(that.taxInCents) : that.taxInCents != null) {
@@ -286,9 +303,9 @@ public class Adjustment extends RecurlyObject {
         result = 31 * result + (totalInCents != null ? totalInCents.hashCode() : 0);
         result = 31 * result + (currency != null ? currency.hashCode() : 0);
         result = 31 * result + (taxable != null ? taxable.hashCode() : 0);
-        result = 31 * result + (startDate != null ? startDate.hashCode() : 0);
-        result = 31 * result + (endDate != null ? endDate.hashCode() : 0);
-        result = 31 * result + (createdAt != null ? createdAt.hashCode() : 0);
+        result = 31 * result + (getStartDate() != null ? getStartDate().hashCode() : 0);
+        result = 31 * result + (getEndDate() != null ? getEndDate().hashCode() : 0);
+        result = 31 * result + (getCreatedAt() != null ? getCreatedAt().hashCode() : 0);
         return result;
     }
 }
@@ -157,7 +157,7 @@ public class BillingInfo extends RecurlyObject {
     }
 
     public void setState(final Object state) {
-        this.state = stringOrNull(state);
+        this.state = internedStringOrNull(state);
     }
 
     public String getZip() {
@@ -173,7 +173,7 @@ public class BillingInfo extends RecurlyObject {
     }
 
     public void setCountry(final Object country) {
-        this.country = stringOrNull(country);
+        this.country = internedStringOrNull(country);
     }
 
     public String getPhone() {
@@ -213,7 +213,7 @@ public class BillingInfo extends RecurlyObject {
     }
 
     public void setCardType(final Object cardType) {
-        this.cardType = stringOrNull(cardType);
+        this.cardType = internedStringOrNull(cardType);
     }
 
     public Integer getYear() {
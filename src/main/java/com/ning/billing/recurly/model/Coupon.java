@@ -105,7 +105,7 @@ public class Coupon extends RecurlyObject {
     }
 
     public void setState(final Object state) {
-        this.state = stringOrNull(state);
+        this.state = internedStringOrNull(state);
     }
 
     /**
@@ -150,7 +150,7 @@ public class Coupon extends RecurlyObject {
      * @param discountType A String of: 'percent'; 'dollars';
      */
     public void setDiscountType(final Object discountType) {
-        this.discountType = stringOrNull(discountType);
+        this.discountType = internedStringOrNull(discountType);
     }
 
     /**
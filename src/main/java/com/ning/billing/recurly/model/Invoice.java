@@ -17,6 +17,7 @@
 package com.ning.billing.recurly.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlElement;
@@ -42,6 +43,10 @@ public class Invoice extends AbstractInvoice {
     @XmlElement(name = "created_at")
     private DateTime createdAt;
 
+    // Epoch millis of createdAt, the DateTime being built on first access in lazy mode
+    @XmlTransient
+    private long createdAtMillis = NO_MILLIS;
+
     @XmlElementWrapper(name = "line_items")
     @XmlElement(name = "adjustment")
     private Adjustments adjustments;
@@ -50,12 +55,28 @@ public class Invoice extends AbstractInvoice {
     @XmlElement(name = "transaction")
     private Transactions transactions;
 
+    // Buffered <account> and <line_items> elements in lazy mode, deserialized on first access by the (thread-safe) holder
+    @XmlTransient
+    private NestedResource<Account> accountElement;
+
+    @XmlTransient
+    private NestedResource<Adjustments> adjustmentsElement;
+
     public Account getAccount() {
-        return account;
+        final NestedResource<Account> element = accountElement;
+        return element == null ? account : element.get();
     }
 
+    @JsonIgnore
     public void setAccount(final Account account) {
         this.account = account;
+        this.accountElement = null;
+    }
+
+    @JsonProperty("account")
+    private void setAccountElement(final NestedResource<Account> account) {
+        this.account = null;
+        this.accountElement = account;
     }
 
     public Integer getSubtotalInCents() {
@@ -75,19 +96,31 @@ public class Invoice extends AbstractInvoice {
     }
 
     public DateTime getCreatedAt() {
+        createdAt = lazyDateTime(createdAt, createdAtMillis);
         return createdAt;
     }
 
     public void setCreatedAt(final Object createdAt) {
-        this.createdAt = dateTimeOrNull(createdAt);
+        this.createdAtMillis = millisOrNull(createdAt);
+        this.createdAt = eagerDateTimeOrNull(createdAtMillis);
     }
 
+    @JsonProperty("adjustment")
     public Adjustments getLineItems() {
-        return adjustments;
+        final NestedResource<Adjustments> element = adjustmentsElement;
+        return element == null ? adjustments : element.get();
     }
 
+    @JsonIgnore
     public void setLineItems(final Adjustments adjustments) {
         this.adjustments = adjustments;
+        this.adjustmentsElement = null;
+    }
+
+    @JsonProperty("adjustment")
+    private void setLineItemsElement(final NestedResource<Adjustments> adjustments) {
+        this.adjustments = null;
+        this.adjustmentsElement = adjustments;
     }
 
     public Transactions getTransactions() {
@@ -111,7 +144,7 @@ public class Invoice extends AbstractInvoice {
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append("Invoice");
-        sb.append("{account=").append(account);
+        sb.append("{account=").append(getAccount());
         sb.append(", uuid='").append(getUuid()).append('\'');
         sb.append(", state='").append(getState()).append('\'');
         sb.append(", invoiceNumber=").append(getInvoiceNumber());
@@ -121,8 +154,8 @@ public class Invoice extends AbstractInvoice {
         sb.append(", taxInCents=").append(taxInCents);
         sb.append(", totalInCents=").append(getTotalInCents());
         sb.append(", currency='").append(getCurrency()).append('\'');
-        sb.append(", createdAt=").append(createdAt);
-        sb.append(", lineItems=").append(adjustments);
+        sb.append(", createdAt=").append(getCreatedAt());
+        sb.append(", lineItems=").append(getLineItems());
         sb.append(", transactions=").append(transactions);
         sb.append('}');
         return sb.toString();
@@ -144,13 +177,13 @@ public class Invoice extends AbstractInvoice {
 
         final Invoice invoice = (Invoice) o;
 
-        if (account != null ? !account.equals(invoice.account) : invoice.account != null) {
+        if (getAccount() != null ? !getAccount().equals(invoice.getAccount()) : invoice.getAccount() != null) {
             return false;
         }
-        if (createdAt != null ? !createdAt.equals(invoice.createdAt) : invoice.createdAt != null) {
+        if (getCreatedAt() != null ? !getCreatedAt().equals(invoice.getCreatedAt()) : invoice.getCreatedAt() != null) {
             return false;
         }
-        if (adjustments != null ? !adjustments.equals(invoice.adjustments) : invoice.adjustments != null) {
+        if (getLineItems() != null ? !getLineItems().equals(invoice.getLineItems()) : invoice.getLineItems() != null) {
             return false;
         }
         if (subtotalInCents != null ? !subtotalInCents.equals(invoice.subtotalInCents) : invoice.subtotalInCents != null) {
@@ -170,11 +203,11 @@ public class Invoice extends AbstractInvoice {
     public int hashCode() {
         final int prime = 31;
         int result = super.hashCode();
-        result = prime * result + (account != null ? account.hashCode() : 0);
+        result = prime * result + (getAccount() != null ? getAccount().hashCode() : 0);
         result = prime * result + (subtotalInCents != null ? subtotalInCents.hashCode() : 0);
         result = prime * result + (taxInCents != null ? taxInCents.hashCode() : 0);
-        result = prime * result + (createdAt != null ? createdAt.hashCode() : 0);
-        result = prime * result + (adjustments != null ? adjustments.hashCode() : 0);
+        result = prime * result + (getCreatedAt() != null ? getCreatedAt().hashCode() : 0);
+        result = prime * result + (getLineItems() != null ? getLineItems().hashCode() : 0);
         result = prime * result + (transactions != null ? transactions.hashCode() : 0);
         return result;
     }
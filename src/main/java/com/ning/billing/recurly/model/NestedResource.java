@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.ning.billing.recurly.model.exceptions.RecurlyException;
+
+/**
+ * Nested element of a parsed object (e.g. the account of a transaction), either already deserialized or, in lazy mode
+ * (see {@link RecurlyObject#RECURLY_LAZY_NESTED_RESOURCES_KEY}), kept as the buffered tokens of the element and
+ * deserialized on first access.
+ * <p/>
+ * Buffering only records the element tokens (the XML is tokenized when the response is parsed): none of the nested
+ * setters run, and no nested objects are created, until the getter of the enclosing object is called.
+ * <p/>
+ * Parsed objects can be shared between threads (coalesced GETs, cached responses): the element is deserialized once,
+ * under the lock of the holder, and the same object is then returned to every caller.
+ *
+ * @param <T> type of the nested object
+ */
+@JsonDeserialize(using = NestedResource.Deserializer.class)
+public class NestedResource<T> {
+
+    private final JavaType type;
+    private final ObjectCodec codec;
+    // Guarded by this, dropped once deserialized
+    private TokenBuffer tokens;
+    // Published by the volatile write of resolved
+    private T value;
+    private volatile boolean resolved;
+
+    private NestedResource(@Nullable final JavaType type, @Nullable final ObjectCodec codec, @Nullable final TokenBuffer tokens, @Nullable final T value) {
+        this.type = type;
+        this.codec = codec;
+        this.tokens = tokens;
+        this.value = value;
+        this.resolved = tokens == null;
+    }
+
+    public static <T> NestedResource<T> of(@Nullable final T value) {
+        return new NestedResource<T>(null, null, null, value);
+    }
+
+    static <T> NestedResource<T> buffered(final JavaType type, final ObjectCodec codec, final TokenBuffer tokens) {
+        return new NestedResource<T>(type, codec, tokens, null);
+    }
+
+    /**
+     * @return true if the element has not been deserialized yet
+     */
+    public boolean isBuffered() {
+        return !resolved;
+    }
+
+    /**
+     * Deserialize the element on first call, from any thread
+     *
+     * @return the nested object, the same instance on every call
+     */
+    @Nullable
+    public T get() {
+        if (resolved) {
+            return value;
+        }
+
+        synchronized (this) {
+            if (!resolved) {
+                value = deserialize();
+                tokens = null;
+                resolved = true;
+            }
+            return value;
+        }
+    }
+
+    private T deserialize() {
+        try {
+            final JsonParser parser = tokens.asParser(codec);
+            try {
+                // Position the parser on the first token, as the mapper would
+                parser.nextToken();
+                return codec.readValue(parser, type);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RecurlyException("Unable to deserialize nested " + type.getRawClass().getSimpleName(), e);
+        }
+    }
+
+    static class Deserializer extends JsonDeserializer<NestedResource<?>> implements ContextualDeserializer {
+
+        private final JavaType valueType;
+        private final JsonDeserializer<Object> valueDeserializer;
+
+        public Deserializer() {
+            this(null, null);
+        }
+
+        private Deserializer(@Nullable final JavaType valueType, @Nullable final JsonDeserializer<Object> valueDeserializer) {
+            this.valueType = valueType;
+            this.valueDeserializer = valueDeserializer;
+        }
+
+        @Override
+        public JsonDeserializer<?> createContextual(final DeserializationContext ctxt, final BeanProperty property) throws JsonMappingException {
+            final JavaType type = property.getType().containedType(0);
+            return new Deserializer(type, ctxt.findContextualValueDeserializer(type, property));
+        }
+
+        @Override
+        public NestedResource<?> deserialize(final JsonParser jp, final DeserializationContext ctxt) throws IOException, JsonProcessingException {
+            if (!RecurlyObject.isLazyNestedResources()) {
+                return NestedResource.of(valueDeserializer.deserialize(jp, ctxt));
+            }
+
+            final TokenBuffer tokens = new TokenBuffer(jp);
+            tokens.copyCurrentStructure(jp);
+            return NestedResource.buffered(valueType, jp.getCodec(), tokens);
+        }
+    }
+}
@@ -96,7 +96,7 @@ public class Plan extends RecurlyObject {
     }
 
     public void setPlanCode(final Object planCode) {
-        this.planCode = stringOrNull(planCode);
+        this.planCode = internedStringOrNull(planCode);
     }
 
     public String getName() {
@@ -176,7 +176,7 @@ public class Plan extends RecurlyObject {
     }
 
     public void setPlanIntervalUnit(final Object planIntervalUnit) {
-        this.planIntervalUnit = stringOrNull(planIntervalUnit);
+        this.planIntervalUnit = internedStringOrNull(planIntervalUnit);
     }
 
     public Integer getPlanIntervalLength() {
@@ -192,7 +192,7 @@ public class Plan extends RecurlyObject {
     }
 
     public void setTrialIntervalUnit(final Object trialIntervalUnit) {
-        this.trialIntervalUnit = stringOrNull(trialIntervalUnit);
+        this.trialIntervalUnit = internedStringOrNull(trialIntervalUnit);
     }
 
     public Integer getTrialIntervalLength() {
@@ -208,7 +208,7 @@ public class Plan extends RecurlyObject {
     }
 
     public void setAccountingCode(final Object accountingCode) {
-        this.accountingCode = stringOrNull(accountingCode);
+        this.accountingCode = internedStringOrNull(accountingCode);
     }
 
     public DateTime getCreatedAt() {
@@ -23,6 +23,7 @@ import java.util.Map;
 import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
+import org.joda.time.ReadableInstant;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
@@ -33,6 +34,8 @@ import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.ning.billing.recurly.util.IsoDateTimeParser;
+import com.ning.billing.recurly.util.StringPool;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public abstract class RecurlyObject {
@@ -40,6 +43,26 @@ public abstract class RecurlyObject {
     public static final String NIL_STR = "nil";
     public static final List<String> NIL_VAL = Arrays.asList("nil", "true");
 
+    public static final String RECURLY_STRING_POOL_SIZE_KEY = "recurly.string.pool.size";
+
+    private static final int DEFAULT_STRING_POOL_SIZE = 4096;
+
+    public static final String RECURLY_LAZY_DATE_TIMES_KEY = "recurly.datetime.lazy";
+
+    /**
+     * Epoch millis of a missing timestamp
+     */
+    public static final long NO_MILLIS = Long.MIN_VALUE;
+
+    private static volatile boolean lazyDateTimes = Boolean.getBoolean(RECURLY_LAZY_DATE_TIMES_KEY);
+
+    public static final String RECURLY_LAZY_NESTED_RESOURCES_KEY = "recurly.nested.lazy";
+
+    private static volatile boolean lazyNestedResources = Boolean.getBoolean(RECURLY_LAZY_NESTED_RESOURCES_KEY);
+
+    // Canonical instances of the enum-like field values (states, currencies, ...), shared by all parsed objects
+    private static final StringPool stringPool = new StringPool(Integer.getInteger(RECURLY_STRING_POOL_SIZE_KEY, DEFAULT_STRING_POOL_SIZE));
+
     public static XmlMapper newXmlMapper() {
         final XmlMapper xmlMapper = new XmlMapper();
         final AnnotationIntrospector primary = new JacksonAnnotationIntrospector();
@@ -76,6 +99,19 @@ public abstract class RecurlyObject {
         return object.toString();
     }
 
+    /**
+     * Same as {@link #stringOrNull(Object)}, for fields taking a handful of distinct values (states, currencies,
+     * plan codes, ...): the value is deduplicated through a bounded pool, so that objects kept in memory share
+     * one instance per distinct value.
+     */
+    public static String internedStringOrNull(@Nullable final Object object) {
+        return stringPool.intern(stringOrNull(object));
+    }
+
+    public static StringPool getStringPool() {
+        return stringPool;
+    }
+
     public static Integer integerOrNull(@Nullable final Object object) {
         if (isNull(object)) {
             return null;
@@ -94,8 +130,23 @@ public abstract class RecurlyObject {
     }
 
     public static DateTime dateTimeOrNull(@Nullable final Object object) {
+        final long millis = millisOrNull(object);
+        return millis == NO_MILLIS ? null : new DateTime(millis);
+    }
+
+    /**
+     * Epoch millis of a timestamp field
+     *
+     * @param object DateTime, ISO-8601 string or XML element value
+     * @return the epoch millis, {@link #NO_MILLIS} for nil values
+     */
+    public static long millisOrNull(@Nullable final Object object) {
         if (isNull(object)) {
-            return null;
+            return NO_MILLIS;
+        }
+
+        if (object instanceof ReadableInstant) {
+            return ((ReadableInstant) object).getMillis();
         }
 
         // DateTimes are represented as objects (e.g. <created_at type="datetime">2011-04-19T07:00:00Z</created_at>), which Jackson
@@ -103,11 +154,54 @@ public abstract class RecurlyObject {
         if (object instanceof Map) {
             final Map map = (Map) object;
             if (map.keySet().size() == 2 && "datetime".equals(map.get("type"))) {
-                return new DateTime(map.get(""));
+                return IsoDateTimeParser.parseMillis(map.get("").toString());
             }
         }
 
-        return new DateTime(object.toString());
+        return IsoDateTimeParser.parseMillis(object.toString());
+    }
+
+    /**
+     * Whether timestamp fields supporting it keep their epoch millis and build the DateTime on first access,
+     * see {@link #RECURLY_LAZY_DATE_TIMES_KEY}
+     */
+    public static boolean isLazyDateTimes() {
+        return lazyDateTimes;
+    }
+
+    public static void setLazyDateTimes(final boolean lazyDateTimes) {
+        RecurlyObject.lazyDateTimes = lazyDateTimes;
+    }
+
+    /**
+     * Whether nested elements supporting it (account and invoice of a transaction, account and line items of an invoice,
+     * billing info of an account) are buffered and deserialized on first access, see {@link #RECURLY_LAZY_NESTED_RESOURCES_KEY}
+     */
+    public static boolean isLazyNestedResources() {
+        return lazyNestedResources;
+    }
+
+    public static void setLazyNestedResources(final boolean lazyNestedResources) {
+        RecurlyObject.lazyNestedResources = lazyNestedResources;
+    }
+
+    /**
+     * DateTime to store in a field whose epoch millis are also kept: null in lazy mode, until first access
+     */
+    @Nullable
+    protected static DateTime eagerDateTimeOrNull(final long millis) {
+        return lazyDateTimes || millis == NO_MILLIS ? null : new DateTime(millis);
+    }
+
+    /**
+     * Value of a timestamp field getter, given its (possibly not yet built) DateTime and its epoch millis
+     */
+    @Nullable
+    protected static DateTime lazyDateTime(@Nullable final DateTime dateTime, final long millis) {
+        if (dateTime != null || millis == NO_MILLIS) {
+            return dateTime;
+        }
+        return new DateTime(millis);
     }
 
     public static boolean isNull(@Nullable final Object object) {
@@ -18,7 +18,10 @@ package com.ning.billing.recurly.model;
 
 import java.util.ArrayList;
 
+import javax.annotation.Nullable;
+
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonSetter;
 
@@ -29,6 +32,26 @@ import com.fasterxml.jackson.annotation.JsonSetter;
 @JsonFormat(shape = JsonFormat.Shape.OBJECT)
 public abstract class RecurlyObjects<T extends RecurlyObject> extends ArrayList<T> {
 
+    // Url of the next page (Link header), null on the last page
+    @JsonIgnore
+    private String nextUrl;
+
+    @JsonIgnore
+    @Nullable
+    public String getNextUrl() {
+        return nextUrl;
+    }
+
+    @JsonIgnore
+    public void setNextUrl(@Nullable final String nextUrl) {
+        this.nextUrl = nextUrl;
+    }
+
+    @JsonIgnore
+    public boolean hasNextPage() {
+        return nextUrl != null;
+    }
+
     @JsonSetter
     public void setRecurlyObject(final T value) {
         add(value);
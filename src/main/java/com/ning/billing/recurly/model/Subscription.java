@@ -48,24 +48,46 @@ public class Subscription extends AbstractSubscription {
     @XmlElement(name = "activated_at")
     private DateTime activatedAt;
 
+    // Epoch millis of the timestamps, their DateTime being built on first access in lazy mode
+    @XmlTransient
+    private long activatedAtMillis = NO_MILLIS;
+
     @XmlElement(name = "canceled_at")
     private DateTime canceledAt;
 
+    @XmlTransient
+    private long canceledAtMillis = NO_MILLIS;
+
     @XmlElement(name = "expires_at")
     private DateTime expiresAt;
 
+    @XmlTransient
+    private long expiresAtMillis = NO_MILLIS;
+
     @XmlElement(name = "current_period_started_at")
     private DateTime currentPeriodStartedAt;
 
+    @XmlTransient
+    private long currentPeriodStartedAtMillis = NO_MILLIS;
+
     @XmlElement(name = "current_period_ends_at")
     private DateTime currentPeriodEndsAt;
 
+    @XmlTransient
+    private long currentPeriodEndsAtMillis = NO_MILLIS;
+
     @XmlElement(name = "trial_started_at")
     private DateTime trialStartedAt;
 
+    @XmlTransient
+    private long trialStartedAtMillis = NO_MILLIS;
+
     @XmlElement(name = "trial_ends_at")
     private DateTime trialEndsAt;
 
+    @XmlTransient
+    private long trialEndsAtMillis = NO_MILLIS;
+
     @XmlElement(name = "pending_subscription")
     private Subscription pendingSubscription;
 
@@ -98,7 +120,7 @@ public class Subscription extends AbstractSubscription {
     }
 
     public void setState(final Object state) {
-        this.state = stringOrNull(state);
+        this.state = internedStringOrNull(state);
     }
 
     public String getCurrency() {
@@ -106,63 +128,77 @@ public class Subscription extends AbstractSubscription {
     }
 
     public void setCurrency(final Object currency) {
-        this.currency = stringOrNull(currency);
+        this.currency = internedStringOrNull(currency);
     }
 
     public DateTime getActivatedAt() {
+        activatedAt = lazyDateTime(activatedAt, activatedAtMillis);
         return activatedAt;
     }
 
     public void setActivatedAt(final Object activatedAt) {
-        this.activatedAt = dateTimeOrNull(activatedAt);
+        this.activatedAtMillis = millisOrNull(activatedAt);
+        this.activatedAt = eagerDateTimeOrNull(activatedAtMillis);
     }
 
     public DateTime getCanceledAt() {
+        canceledAt = lazyDateTime(canceledAt, canceledAtMillis);
         return canceledAt;
     }
 
     public void setCanceledAt(final Object canceledAt) {
-        this.canceledAt = dateTimeOrNull(canceledAt);
+        this.canceledAtMillis = millisOrNull(canceledAt);
+        this.canceledAt = eagerDateTimeOrNull(canceledAtMillis);
     }
 
     public DateTime getExpiresAt() {
+        expiresAt = lazyDateTime(expiresAt, expiresAtMillis);
         return expiresAt;
     }
 
     public void setExpiresAt(final Object expiresAt) {
-        this.expiresAt = dateTimeOrNull(expiresAt);
+        this.expiresAtMillis = millisOrNull(expiresAt);
+        this.expiresAt = eagerDateTimeOrNull(expiresAtMillis);
     }
 
     public DateTime getCurrentPeriodStartedAt() {
+        currentPeriodStartedAt = lazyDateTime(currentPeriodStartedAt, currentPeriodStartedAtMillis);
         return currentPeriodStartedAt;
     }
 
     public void setCurrentPeriodStartedAt(final Object currentPeriodStartedAt) {
-        this.currentPeriodStartedAt = dateTimeOrNull(currentPeriodStartedAt);
+        this.currentPeriodStartedAtMillis = millisOrNull(currentPeriodStartedAt);
+        this.currentPeriodStartedAt = eagerDateTimeOrNull(currentPeriodStartedAtMillis);
     }
 
     public DateTime getCurrentPeriodEndsAt() {
+        currentPeriodEndsAt = lazyDateTime(currentPeriodEndsAt, currentPeriodEndsAtMillis);
         return currentPeriodEndsAt;
     }
 
     public void setCurrentPeriodEndsAt(final Object currentPeriodEndsAt) {
-        this.currentPeriodEndsAt = dateTimeOrNull(currentPeriodEndsAt);
+        this.currentPeriodEndsAtMillis = millisOrNull(currentPeriodEndsAt);
+        this.currentPeriodEndsAt = eagerDateTimeOrNull(currentPeriodEndsAtMillis);
     }
 
     public DateTime getTrialStartedAt() {
+        trialStartedAt = lazyDateTime(trialStartedAt, trialStartedAtMillis);
         return trialStartedAt;
     }
 
     public void setTrialStartedAt(final Object trialStartedAt) {
-        this.trialStartedAt = dateTimeOrNull(trialStartedAt);
+        this.trialStartedAtMillis = millisOrNull(trialStartedAt);
+        this.trialStartedAt = eagerDateTimeOrNull(trialStartedAtMillis);
     }
 
     public DateTime getTrialEndsAt() {
+        trialEndsAt = lazyDateTime(trialEndsAt, trialEndsAtMillis);
         return trialEndsAt;
     }
 
     public void setTrialEndsAt(final Object trialEndsAt) {
-        this.trialEndsAt = dateTimeOrNull(trialEndsAt);
+        this.trialEndsAtMillis = millisOrNull(trialEndsAt);
+        this.trialEndsAt = eagerDateTimeOrNull(trialEndsAtMillis);
     }
 
     public Subscription getPendingSubscription() {
@@ -198,13 +234,13 @@ public class Subscription extends AbstractSubscription {
         sb.append(", unitAmountInCents=").append(unitAmountInCents);
         sb.append(", currency='").append(currency).append('\'');
         sb.append(", quantity=").append(quantity);
-        sb.append(", activatedAt=").append(activatedAt);
-        sb.append(", canceledAt=").append(canceledAt);
-        sb.append(", expiresAt=").append(expiresAt);
-        sb.append(", currentPeriodStartedAt=").append(currentPeriodStartedAt);
-        sb.append(", currentPeriodEndsAt=").append(currentPeriodEndsAt);
-        sb.append(", trialStartedAt=").append(trialStartedAt);
-        sb.append(", trialEndsAt=").append(trialEndsAt);
+        sb.append(", activatedAt=").append(getActivatedAt());
+        sb.append(", canceledAt=").append(getCanceledAt());
+        sb.append(", expiresAt=").append(getExpiresAt());
+        sb.append(", currentPeriodStartedAt=").append(getCurrentPeriodStartedAt());
+        sb.append(", currentPeriodEndsAt=").append(getCurrentPeriodEndsAt());
+        sb.append(", trialStartedAt=").append(getTrialStartedAt());
+        sb.append(", trialEndsAt=").append(getTrialEndsAt());
         sb.append(", addOns=").append(addOns);
         sb.append(", pendingSubscription=").append(pendingSubscription);
         sb.append('}');
@@ -225,25 +261,25 @@ public class Subscription extends AbstractSubscription {
         if (account != null ? !account.equals(that.account) : that.account != null) {
             return false;
         }
-        if (activatedAt != null ? !activatedAt.equals(that.activatedAt) : that.activatedAt != null) {
+        if (getActivatedAt() != null ? !getActivatedAt().equals(that.getActivatedAt()) : that.getActivatedAt() != null) {
             return false;
         }
         if (addOns != null ? !addOns.equals(that.addOns) : that.addOns != null) {
             return false;
         }
-        if (canceledAt != null ? !canceledAt.equals(that.canceledAt) : that.canceledAt != null) {
+        if (getCanceledAt() != null ? !getCanceledAt().equals(that.getCanceledAt()) : that.getCanceledAt() != null) {
             return false;
         }
         if (currency != null ? !currency.equals(that.currency) : that.currency != null) {
             return false;
         }
-        if (currentPeriodEndsAt != null ? !currentPeriodEndsAt.equals(that.currentPeriodEndsAt) : that.currentPeriodEndsAt != null) {
+        if (getCurrentPeriodEndsAt() != null ? !getCurrentPeriodEndsAt().equals(that.getCurrentPeriodEndsAt()) : that.getCurrentPeriodEndsAt() != null) {
             return false;
         }
-        if (currentPeriodStartedAt != null ? !currentPeriodStartedAt.equals(that.currentPeriodStartedAt) : that.currentPeriodStartedAt != null) {
+        if (getCurrentPeriodStartedAt() != null ? !getCurrentPeriodStartedAt().equals(that.getCurrentPeriodStartedAt()) : that.getCurrentPeriodStartedAt() != null) {
             return false;
         }
-        if (expiresAt != null ? !expiresAt.equals(that.expiresAt) : that.expiresAt != null) {
+        if (getExpiresAt() != null ? !getExpiresAt().equals(that.getExpiresAt()) : that.getExpiresAt() != null) {
             return false;
         }
         if (plan != null ? !plan.equals(that.plan) : that.plan != null) {
@@ -257,10 +293,10 @@ public class Subscription extends AbstractSubscription {
             return false;
         }
 
-        if (trialEndsAt != null ? !trialEndsAt.equals(that.trialEndsAt) : that.trialEndsAt != null) {
+        if (getTrialEndsAt() != null ? !getTrialEndsAt().equals(that.getTrialEndsAt()) : that.getTrialEndsAt() != null) {
             return false;
         }
-        if (trialStartedAt != null ? !trialStartedAt.equals(that.trialStartedAt) : that.trialStartedAt != null) {
+        if (getTrialStartedAt() != null ? !getTrialStartedAt().equals(that.getTrialStartedAt()) : that.getTrialStartedAt() != null) {
             return false;
         }
         if (unitAmountInCents != null ? !unitAmountInCents.equals(that.unitAmountInCents) : that.unitAmountInCents != null) {
@@ -285,13 +321,13 @@ public class Subscription extends AbstractSubscription {
         result = 31 * result + (unitAmountInCents != null ? unitAmountInCents.hashCode() : 0);
         result = 31 * result + (currency != null ? currency.hashCode() : 0);
         result = 31 * result + (quantity != null ? quantity.hashCode() : 0);
-        result = 31 * result + (activatedAt != null ? activatedAt.hashCode() : 0);
-        result = 31 * result + (canceledAt != null ? canceledAt.hashCode() : 0);
-        result = 31 * result + (expiresAt != null ? expiresAt.hashCode() : 0);
-        result = 31 * result + (currentPeriodStartedAt != null ? currentPeriodStartedAt.hashCode() : 0);
-        result = 31 * result + (currentPeriodEndsAt != null ? currentPeriodEndsAt.hashCode() : 0);
-        result = 31 * result + (trialStartedAt != null ? trialStartedAt.hashCode() : 0);
-        result = 31 * result + (trialEndsAt != null ? trialEndsAt.hashCode() : 0);
+        result = 31 * result + (getActivatedAt() != null ? getActivatedAt().hashCode() : 0);
+        result = 31 * result + (getCanceledAt() != null ? getCanceledAt().hashCode() : 0);
+        result = 31 * result + (getExpiresAt() != null ? getExpiresAt().hashCode() : 0);
+        result = 31 * result + (getCurrentPeriodStartedAt() != null ? getCurrentPeriodStartedAt().hashCode() : 0);
+        result = 31 * result + (getCurrentPeriodEndsAt() != null ? getCurrentPeriodEndsAt().hashCode() : 0);
+        result = 31 * result + (getTrialStartedAt() != null ? getTrialStartedAt().hashCode() : 0);
+        result = 31 * result + (getTrialEndsAt() != null ? getTrialEndsAt().hashCode() : 0);
         result = 31 * result + (addOns != null ? addOns.hashCode() : 0);
         result = 31 * result + (pendingSubscription != null ? pendingSubscription.hashCode() : 0);
         return result;
@@ -18,9 +18,13 @@ package com.ning.billing.recurly.model;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.joda.time.DateTime;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 @XmlRootElement(name = "transaction")
 public class Transaction extends AbstractTransaction {
 
@@ -81,6 +85,13 @@ public class Transaction extends AbstractTransaction {
     @XmlElement(name = "invoice")
     private Invoice invoice;
 
+    // Buffered <account> and <invoice> elements in lazy mode, deserialized on first access by the (thread-safe) holder
+    @XmlTransient
+    private NestedResource<Account> accountElement;
+
+    @XmlTransient
+    private NestedResource<Invoice> invoiceElement;
+
     @XmlElement(name = "subscription")
     private String subscription;
 
@@ -96,6 +107,10 @@ public class Transaction extends AbstractTransaction {
     @XmlElement(name = "created_at")
     private DateTime createdAt;
 
+    // Epoch millis of createdAt, the DateTime being built on first access in lazy mode
+    @XmlTransient
+    private long createdAtMillis = NO_MILLIS;
+
     @XmlElement(name = "description")
     private String description;
 
@@ -103,19 +118,37 @@ public class Transaction extends AbstractTransaction {
     private Boolean recurring;
 
     public Account getAccount() {
-        return account;
+        final NestedResource<Account> element = accountElement;
+        return element == null ? account : element.get();
     }
 
+    @JsonIgnore
     public void setAccount(final Account account) {
         this.account = account;
+        this.accountElement = null;
+    }
+
+    @JsonProperty("account")
+    private void setAccountElement(final NestedResource<Account> account) {
+        this.account = null;
+        this.accountElement = account;
     }
 
     public Invoice getInvoice() {
-        return invoice;
+        final NestedResource<Invoice> element = invoiceElement;
+        return element == null ? invoice : element.get();
     }
 
+    @JsonIgnore
     public void setInvoice(final Invoice invoice) {
         this.invoice = invoice;
+        this.invoiceElement = null;
+    }
+
+    @JsonProperty("invoice")
+    private void setInvoiceElement(final NestedResource<Invoice> invoice) {
+        this.invoice = null;
+        this.invoiceElement = invoice;
     }
 
     public String getSubscription() {
@@ -147,15 +180,17 @@ public class Transaction extends AbstractTransaction {
     }
 
     public void setCurrency(final Object currency) {
-        this.currency = stringOrNull(currency);
+        this.currency = internedStringOrNull(currency);
     }
 
     public DateTime getCreatedAt() {
+        createdAt = lazyDateTime(createdAt, createdAtMillis);
         return createdAt;
     }
 
     public void setCreatedAt(final Object createdAt) {
-        this.createdAt = dateTimeOrNull(createdAt);
+        this.createdAtMillis = millisOrNull(createdAt);
+        this.createdAt = eagerDateTimeOrNull(createdAtMillis);
     }
 
     public String getDescription() {
@@ -178,8 +213,8 @@ public class Transaction extends AbstractTransaction {
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append("Transaction");
-        sb.append("{account=").append(account);
-        sb.append(", invoice=").append(invoice);
+        sb.append("{account=").append(getAccount());
+        sb.append(", invoice=").append(getInvoice());
         sb.append(", subscription='").append(subscription).append('\'');
         sb.append(", uuid='").append(uuid).append('\'');
         sb.append(", action='").append(action).append('\'');
@@ -191,7 +226,7 @@ public class Transaction extends AbstractTransaction {
         sb.append(", test=").append(test);
         sb.append(", voidable=").append(voidable);
         sb.append(", refundable=").append(refundable);
-        sb.append(", createdAt=").append(createdAt);
+        sb.append(", createdAt=").append(getCreatedAt());
         sb.append(", description=").append(description);
         sb.append(", recurring=").append(recurring);
         sb.append('}');
@@ -212,16 +247,16 @@ public class Transaction extends AbstractTransaction {
 
         final Transaction that = (Transaction) o;
 
-        if (account != null ? !account.equals(that.account) : that.account != null) {
+        if (getAccount() != null ? !getAccount().equals(that.getAccount()) : that.getAccount() != null) {
             return false;
         }
-        if (createdAt != null ? !createdAt.equals(that.createdAt) : that.createdAt != null) {
+        if (getCreatedAt() != null ? !getCreatedAt().equals(that.getCreatedAt()) : that.getCreatedAt() != null) {
             return false;
         }
         if (currency != null ? !currency.equals(that.currency) : that.currency != null) {
             return false;
         }
-        if (invoice != null ? !invoice.equals(that.invoice) : that.invoice != null) {
+        if (getInvoice() != null ? !getInvoice().equals(that.getInvoice()) : that.getInvoice() != null) {
             return false;
         }
         if (subscription != null ? !subscription.equals(that.subscription) : that.subscription != null) {
@@ -244,13 +279,13 @@ public class Transaction extends AbstractTransaction {
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (account != null ? account.hashCode() : 0);
-        result = 31 * result + (invoice != null ? invoice.hashCode() : 0);
+        result = 31 * result + (getAccount() != null ? getAccount().hashCode() : 0);
+        result = 31 * result + (getInvoice() != null ? getInvoice().hashCode() : 0);
         result = 31 * result + (subscription != null ? subscription.hashCode() : 0);
         result = 31 * result + (uuid != null ? uuid.hashCode() : 0);
         result = 31 * result + (taxInCents != null ? taxInCents.hashCode() : 0);
         result = 31 * result + (currency != null ? currency.hashCode() : 0);
-        result = 31 * result + (createdAt != null ? createdAt.hashCode() : 0);
+        result = 31 * result + (getCreatedAt() != null ? getCreatedAt().hashCode() : 0);
         result = 31 * result + (recurring != null ? recurring.hashCode() : 0);
         return result;
     }
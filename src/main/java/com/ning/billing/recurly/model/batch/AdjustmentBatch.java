@@ -0,0 +1,241 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Adjustment;
+import com.ning.billing.recurly.model.batch.Columns.BooleanColumn;
+import com.ning.billing.recurly.model.batch.Columns.CodeColumn;
+import com.ning.billing.recurly.model.batch.Columns.LongColumn;
+import com.ning.billing.recurly.model.batch.Columns.StringColumn;
+import com.ning.billing.recurly.model.batch.Columns.UuidColumn;
+
+/**
+ * Columnar counterpart of {@link com.ning.billing.recurly.model.Adjustments}, filled by {@link BatchXmlReader}
+ * <p/>
+ * The account is only referenced by its code.
+ */
+public class AdjustmentBatch extends ColumnarBatch<AdjustmentBatch.Row> {
+
+    final UuidColumn uuids = new UuidColumn();
+    final StringColumn accountCodes = new StringColumn();
+    final StringColumn descriptions = new StringColumn();
+    final CodeColumn accountingCodes = new CodeColumn();
+    final CodeColumn origins = new CodeColumn();
+    final LongColumn unitAmountsInCents = new LongColumn();
+    final LongColumn quantities = new LongColumn();
+    final LongColumn discountsInCents = new LongColumn();
+    final LongColumn taxesInCents = new LongColumn();
+    final LongColumn totalsInCents = new LongColumn();
+    final CodeColumn currencies = new CodeColumn();
+    final BooleanColumn taxables = new BooleanColumn();
+    final LongColumn startDateMillis = new LongColumn();
+    final LongColumn endDateMillis = new LongColumn();
+    final LongColumn createdAtMillis = new LongColumn();
+
+    @Override
+    void clearRow(final int row) {
+        uuids.set(row, null);
+        accountCodes.set(row, null);
+        descriptions.set(row, null);
+        accountingCodes.set(row, null);
+        origins.set(row, null);
+        unitAmountsInCents.set(row, NULL_LONG);
+        quantities.set(row, NULL_LONG);
+        discountsInCents.set(row, NULL_LONG);
+        taxesInCents.set(row, NULL_LONG);
+        totalsInCents.set(row, NULL_LONG);
+        currencies.set(row, null);
+        taxables.set(row, null);
+        startDateMillis.set(row, NULL_LONG);
+        endDateMillis.set(row, NULL_LONG);
+        createdAtMillis.set(row, NULL_LONG);
+    }
+
+    @Override
+    Row newRow() {
+        return new Row();
+    }
+
+    /**
+     * @return the sum of the totals of all rows, missing totals excluded
+     */
+    public long sumTotalInCents() {
+        return totalsInCents.sum(size());
+    }
+
+    public Dictionary getCurrencyDictionary() {
+        return currencies.getDictionary();
+    }
+
+    public Dictionary getOriginDictionary() {
+        return origins.getDictionary();
+    }
+
+    public class Row extends ColumnarBatch.Row {
+
+        @Nullable
+        public String getUuid() {
+            return uuids.get(index);
+        }
+
+        @Nullable
+        public String getAccountCode() {
+            return accountCodes.get(index);
+        }
+
+        @Nullable
+        public String getDescription() {
+            return descriptions.get(index);
+        }
+
+        @Nullable
+        public String getAccountingCode() {
+            return accountingCodes.get(index);
+        }
+
+        @Nullable
+        public String getOrigin() {
+            return origins.get(index);
+        }
+
+        public int getOriginOrdinal() {
+            return origins.getOrdinal(index);
+        }
+
+        /**
+         * @return the unit amount, {@link #NULL_LONG} if missing
+         */
+        public long getUnitAmountInCents() {
+            return unitAmountsInCents.get(index);
+        }
+
+        /**
+         * @return the quantity, {@link #NULL_LONG} if missing
+         */
+        public long getQuantity() {
+            return quantities.get(index);
+        }
+
+        /**
+         * @return the discount, {@link #NULL_LONG} if missing
+         */
+        public long getDiscountInCents() {
+            return discountsInCents.get(index);
+        }
+
+        /**
+         * @return the tax, {@link #NULL_LONG} if missing
+         */
+        public long getTaxInCents() {
+            return taxesInCents.get(index);
+        }
+
+        /**
+         * @return the total, {@link #NULL_LONG} if missing
+         */
+        public long getTotalInCents() {
+            return totalsInCents.get(index);
+        }
+
+        @Nullable
+        public String getCurrency() {
+            return currencies.get(index);
+        }
+
+        public int getCurrencyOrdinal() {
+            return currencies.getOrdinal(index);
+        }
+
+        @Nullable
+        public Boolean getTaxable() {
+            return taxables.get(index);
+        }
+
+        /**
+         * @return the start date in epoch millis, {@link #NULL_LONG} if missing
+         */
+        public long getStartDateMillis() {
+            return startDateMillis.get(index);
+        }
+
+        @Nullable
+        public DateTime getStartDate() {
+            return Columns.toDateTime(startDateMillis.get(index));
+        }
+
+        /**
+         * @return the end date in epoch millis, {@link #NULL_LONG} if missing
+         */
+        public long getEndDateMillis() {
+            return endDateMillis.get(index);
+        }
+
+        @Nullable
+        public DateTime getEndDate() {
+            return Columns.toDateTime(endDateMillis.get(index));
+        }
+
+        /**
+         * @return the creation date in epoch millis, {@link #NULL_LONG} if missing
+         */
+        public long getCreatedAtMillis() {
+            return createdAtMillis.get(index);
+        }
+
+        @Nullable
+        public DateTime getCreatedAt() {
+            return Columns.toDateTime(createdAtMillis.get(index));
+        }
+
+        /**
+         * Materialize the row as a bean, e.g. to hand it over to code expecting the regular model
+         */
+        public Adjustment toAdjustment() {
+            final Adjustment adjustment = new Adjustment();
+            adjustment.setUuid(getUuid());
+            if (getAccountCode() != null) {
+                final Account account = new Account();
+                account.setAccountCode(getAccountCode());
+                adjustment.setAccount(account);
+            }
+            adjustment.setDescription(getDescription());
+            adjustment.setAccountingCode(getAccountingCode());
+            adjustment.setOrigin(getOrigin());
+            adjustment.setUnitAmountInCents(Columns.toInteger(getUnitAmountInCents()));
+            adjustment.setQuantity(Columns.toInteger(getQuantity()));
+            adjustment.setDiscountInCents(Columns.toInteger(getDiscountInCents()));
+            adjustment.setTaxInCents(Columns.toInteger(getTaxInCents()));
+            adjustment.setTotalInCents(Columns.toInteger(getTotalInCents()));
+            adjustment.setCurrency(getCurrency());
+            adjustment.setTaxable(getTaxable());
+            adjustment.setStartDate(getStartDate());
+            adjustment.setEndDate(getEndDate());
+            adjustment.setCreatedAt(getCreatedAt());
+            return adjustment;
+        }
+
+        @Override
+        public String toString() {
+            return "AdjustmentBatch.Row{index=" + index + ", uuid='" + getUuid() + "'}";
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.util.IsoDateTimeParser;
+
+/**
+ * Streaming (StAX) reader filling {@link TransactionBatch} and {@link AdjustmentBatch} directly from the XML
+ * responses, without building the beans
+ * <p/>
+ * Every &lt;transaction&gt; (resp. &lt;adjustment&gt;) element of the document becomes a row, whatever its depth:
+ * listings, but also the transactions and line items of invoices, can be read. Unknown elements are skipped.
+ */
+public final class BatchXmlReader {
+
+    private static final String TRANSACTION = "transaction";
+    private static final String ADJUSTMENT = "adjustment";
+    private static final String HREF = "href";
+
+    private static final XMLInputFactory xmlInputFactory;
+
+    static {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private BatchXmlReader() {
+    }
+
+    /**
+     * @param clazz class of a response
+     * @return true if the class is a batch this reader can fill
+     */
+    public static boolean supports(final Class<?> clazz) {
+        return TransactionBatch.class.equals(clazz) || AdjustmentBatch.class.equals(clazz);
+    }
+
+    /**
+     * Read a new batch of the given class
+     *
+     * @param in    XML document
+     * @param clazz {@link TransactionBatch} or {@link AdjustmentBatch}
+     * @return the batch
+     * @throws IOException if the document can't be parsed
+     */
+    public static <T> T read(final InputStream in, final Class<T> clazz) throws IOException {
+        if (TransactionBatch.class.equals(clazz)) {
+            return clazz.cast(readTransactions(in, new TransactionBatch()));
+        } else if (AdjustmentBatch.class.equals(clazz)) {
+            return clazz.cast(readAdjustments(in, new AdjustmentBatch()));
+        } else {
+            throw new IllegalArgumentException("Unsupported batch class " + clazz);
+        }
+    }
+
+    /**
+     * Append the transactions of a document to a batch, e.g. to accumulate several pages
+     *
+     * @param in    XML document
+     * @param batch batch to append to
+     * @return the batch
+     * @throws IOException if the document can't be parsed
+     */
+    public static TransactionBatch readTransactions(final InputStream in, final TransactionBatch batch) throws IOException {
+        try {
+            final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && TRANSACTION.equals(reader.getLocalName())) {
+                        readTransaction(reader, batch, batch.appendRow());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read transactions", e);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to read transactions", e);
+        }
+        return batch;
+    }
+
+    /**
+     * Append the adjustments of a document to a batch, e.g. to accumulate several pages
+     *
+     * @param in    XML document
+     * @param batch batch to append to
+     * @return the batch
+     * @throws IOException if the document can't be parsed
+     */
+    public static AdjustmentBatch readAdjustments(final InputStream in, final AdjustmentBatch batch) throws IOException {
+        try {
+            final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && ADJUSTMENT.equals(reader.getLocalName())) {
+                        readAdjustment(reader, batch, batch.appendRow());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read adjustments", e);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to read adjustments", e);
+        }
+        return batch;
+    }
+
+    private static void readTransaction(final XMLStreamReader reader, final TransactionBatch batch, final int row) throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            final String name = reader.getLocalName();
+            if ("account".equals(name)) {
+                batch.accountCodes.set(row, readReference(reader, "account_code"));
+            } else if ("invoice".equals(name)) {
+                batch.invoiceNumbers.set(row, parseLong(readReference(reader, "invoice_number")));
+            } else if ("subscription".equals(name)) {
+                batch.subscriptionUuids.set(row, readReference(reader, "uuid"));
+            } else if ("details".equals(name)) {
+                final String accountCode = readDescendantText(reader, "account_code");
+                if (accountCode != null) {
+                    batch.accountCodes.set(row, accountCode);
+                }
+            } else if ("uuid".equals(name)) {
+                batch.uuids.set(row, readText(reader));
+            } else if ("action".equals(name)) {
+                batch.actions.set(row, readText(reader));
+            } else if ("amount_in_cents".equals(name)) {
+                batch.amountsInCents.set(row, parseLong(readText(reader)));
+            } else if ("tax_in_cents".equals(name)) {
+                batch.taxesInCents.set(row, parseLong(readText(reader)));
+            } else if ("currency".equals(name)) {
+                batch.currencies.set(row, readText(reader));
+            } else if ("status".equals(name)) {
+                batch.statuses.set(row, readText(reader));
+            } else if ("payment_method".equals(name)) {
+                batch.paymentMethods.set(row, readText(reader));
+            } else if ("source".equals(name)) {
+                batch.sources.set(row, readText(reader));
+            } else if ("reference".equals(name)) {
+                batch.references.set(row, readText(reader));
+            } else if ("description".equals(name)) {
+                batch.descriptions.set(row, readText(reader));
+            } else if ("test".equals(name)) {
+                batch.tests.set(row, parseBoolean(readText(reader)));
+            } else if ("voidable".equals(name)) {
+                batch.voidables.set(row, parseBoolean(readText(reader)));
+            } else if ("refundable".equals(name)) {
+                batch.refundables.set(row, parseBoolean(readText(reader)));
+            } else if ("recurring".equals(name)) {
+                batch.recurrings.set(row, parseBoolean(readText(reader)));
+            } else if ("created_at".equals(name)) {
+                batch.createdAtMillis.set(row, parseMillis(readText(reader)));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static void readAdjustment(final XMLStreamReader reader, final AdjustmentBatch batch, final int row) throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            final String name = reader.getLocalName();
+            if ("account".equals(name)) {
+                batch.accountCodes.set(row, readReference(reader, "account_code"));
+            } else if ("uuid".equals(name)) {
+                batch.uuids.set(row, readText(reader));
+            } else if ("description".equals(name)) {
+                batch.descriptions.set(row, readText(reader));
+            } else if ("accounting_code".equals(name)) {
+                batch.accountingCodes.set(row, readText(reader));
+            } else if ("origin".equals(name)) {
+                batch.origins.set(row, readText(reader));
+            } else if ("unit_amount_in_cents".equals(name)) {
+                batch.unitAmountsInCents.set(row, parseLong(readText(reader)));
+            } else if ("quantity".equals(name)) {
+                batch.quantities.set(row, parseLong(readText(reader)));
+            } else if ("discount_in_cents".equals(name)) {
+                batch.discountsInCents.set(row, parseLong(readText(reader)));
+            } else if ("tax_in_cents".equals(name)) {
+                batch.taxesInCents.set(row, parseLong(readText(reader)));
+            } else if ("total_in_cents".equals(name)) {
+                batch.totalsInCents.set(row, parseLong(readText(reader)));
+            } else if ("currency".equals(name)) {
+                batch.currencies.set(row, readText(reader));
+            } else if ("taxable".equals(name)) {
+                batch.taxables.set(row, parseBoolean(readText(reader)));
+            } else if ("start_date".equals(name)) {
+                batch.startDateMillis.set(row, parseMillis(readText(reader)));
+            } else if ("end_date".equals(name)) {
+                batch.endDateMillis.set(row, parseMillis(readText(reader)));
+            } else if ("created_at".equals(name)) {
+                batch.createdAtMillis.set(row, parseMillis(readText(reader)));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    /**
+     * Read a text-only element, positioned on its start tag
+     *
+     * @return the text, null for nil elements
+     */
+    @Nullable
+    private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+        final boolean nil = isNil(reader);
+        final String text = reader.getElementText();
+        return nil ? null : text;
+    }
+
+    /**
+     * Read a link to another resource, either &lt;account href=".../accounts/code"/&gt; or an embedded
+     * resource with the identifying child element
+     *
+     * @return the identifier, from the child element if present, the last segment of the href otherwise
+     */
+    @Nullable
+    private static String readReference(final XMLStreamReader reader, final String identifierElement) throws XMLStreamException {
+        final String href = reader.getAttributeValue(null, HREF);
+        final String identifier = readDescendantText(reader, identifierElement);
+        if (identifier != null || href == null) {
+            return identifier;
+        }
+        return decode(href.substring(href.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * Consume the current element, returning the text of its first descendant with the given name
+     */
+    @Nullable
+    private static String readDescendantText(final XMLStreamReader reader, final String elementName) throws XMLStreamException {
+        String text = null;
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (text == null && elementName.equals(reader.getLocalName())) {
+                    // Consumes the end tag
+                    text = readText(reader);
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return text;
+    }
+
+    private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isNil(final XMLStreamReader reader) {
+        final String nil = reader.getAttributeValue(null, RecurlyObject.NIL_STR);
+        return nil != null && RecurlyObject.NIL_VAL.contains(nil);
+    }
+
+    private static long parseLong(@Nullable final String value) {
+        if (value == null || value.trim().length() == 0) {
+            return ColumnarBatch.NULL_LONG;
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    @Nullable
+    private static Boolean parseBoolean(@Nullable final String value) {
+        if (value == null || value.trim().length() == 0) {
+            return null;
+        }
+        return Boolean.valueOf(value.trim());
+    }
+
+    private static long parseMillis(@Nullable final String value) {
+        if (value == null || value.trim().length() == 0) {
+            return ColumnarBatch.NULL_LONG;
+        }
+        return IsoDateTimeParser.parseMillis(value.trim());
+    }
+
+    private static String decode(final String value) {
+        try {
+            // Path segments don't use '+' for spaces
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
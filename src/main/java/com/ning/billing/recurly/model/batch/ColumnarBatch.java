@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only, column-oriented page of Recurly objects
+ * <p/>
+ * Values are held in primitive arrays (amounts in cents, epoch millis) and dictionary-encoded strings instead of
+ * one bean per row, and are read through flyweight row views: the iterator returns the same view, moved from row
+ * to row, which must not be retained across iterations (use {@link #row(int)} for a standalone view).
+ *
+ * @param <R> row view type
+ */
+public abstract class ColumnarBatch<R extends ColumnarBatch.Row> implements Iterable<R> {
+
+    /**
+     * Value of missing numeric and date fields
+     */
+    public static final long NULL_LONG = Long.MIN_VALUE;
+
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index row index
+     * @return a new view positioned on the row
+     */
+    public R row(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + ", size " + size);
+        }
+        final R row = newRow();
+        row.index = index;
+        return row;
+    }
+
+    @Override
+    public Iterator<R> iterator() {
+        final R row = newRow();
+        return new Iterator<R>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public R next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                row.index = next++;
+                return row;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Batches are read-only");
+            }
+        };
+    }
+
+    /**
+     * Append a row with all fields missing
+     *
+     * @return the index of the new row
+     */
+    int appendRow() {
+        final int row = size;
+        clearRow(row);
+        size++;
+        return row;
+    }
+
+    abstract void clearRow(int row);
+
+    abstract R newRow();
+
+    /**
+     * Flyweight view over one row of a batch
+     */
+    public abstract static class Row {
+
+        int index;
+
+        public int getIndex() {
+            return index;
+        }
+    }
+}
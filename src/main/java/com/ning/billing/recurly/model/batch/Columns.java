@@ -0,0 +1,237 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Growable primitive columns backing the batches
+ */
+final class Columns {
+
+    static final int INITIAL_CAPACITY = 64;
+
+    private Columns() {
+    }
+
+    @Nullable
+    static DateTime toDateTime(final long millis) {
+        return millis == ColumnarBatch.NULL_LONG ? null : new DateTime(millis, DateTimeZone.UTC);
+    }
+
+    @Nullable
+    static Integer toInteger(final long value) {
+        return value == ColumnarBatch.NULL_LONG ? null : (int) value;
+    }
+
+    static int grow(final int capacity, final int minCapacity) {
+        return Math.max(minCapacity, capacity + (capacity >> 1) + 1);
+    }
+
+    /**
+     * Column of longs, {@link TransactionBatch#NULL_LONG} standing for missing values
+     */
+    static final class LongColumn {
+
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        void set(final int row, final long value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row + 1));
+            }
+            values[row] = value;
+        }
+
+        long get(final int row) {
+            return values[row];
+        }
+
+        long sum(final int size) {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] != ColumnarBatch.NULL_LONG) {
+                    sum += values[i];
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Dictionary-encoded string column
+     */
+    static final class CodeColumn {
+
+        private final Dictionary dictionary = new Dictionary();
+        private int[] ordinals = new int[INITIAL_CAPACITY];
+
+        void set(final int row, @Nullable final String value) {
+            if (row >= ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, grow(ordinals.length, row + 1));
+            }
+            ordinals[row] = dictionary.encode(value);
+        }
+
+        int getOrdinal(final int row) {
+            return ordinals[row];
+        }
+
+        @Nullable
+        String get(final int row) {
+            return dictionary.decode(ordinals[row]);
+        }
+
+        Dictionary getDictionary() {
+            return dictionary;
+        }
+    }
+
+    /**
+     * Plain string column, for high-cardinality values
+     */
+    static final class StringColumn {
+
+        private String[] values = new String[INITIAL_CAPACITY];
+
+        void set(final int row, @Nullable final String value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row + 1));
+            }
+            values[row] = value;
+        }
+
+        @Nullable
+        String get(final int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     * Nullable boolean column, one byte per row
+     */
+    static final class BooleanColumn {
+
+        private static final byte NULL = 0;
+        private static final byte FALSE = 1;
+        private static final byte TRUE = 2;
+
+        private byte[] values = new byte[INITIAL_CAPACITY];
+
+        void set(final int row, @Nullable final Boolean value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row + 1));
+            }
+            values[row] = value == null ? NULL : (value ? TRUE : FALSE);
+        }
+
+        @Nullable
+        Boolean get(final int row) {
+            switch (values[row]) {
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Uuid column: Recurly uuids (32 hexadecimal characters) are packed into two longs, other values
+     * are kept as strings
+     */
+    static final class UuidColumn {
+
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        private long[] high = new long[INITIAL_CAPACITY];
+        private long[] low = new long[INITIAL_CAPACITY];
+        private final BitSet packed = new BitSet();
+        private String[] others = null;
+
+        void set(final int row, @Nullable final String value) {
+            if (row >= high.length) {
+                final int capacity = grow(high.length, row + 1);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+            }
+
+            if (value != null && value.length() == 32 && pack(value, row)) {
+                packed.set(row);
+                if (others != null && row < others.length) {
+                    others[row] = null;
+                }
+                return;
+            }
+
+            packed.clear(row);
+            if (others == null) {
+                if (value == null) {
+                    return;
+                }
+                others = new String[high.length];
+            } else if (row >= others.length) {
+                others = Arrays.copyOf(others, high.length);
+            }
+            others[row] = value;
+        }
+
+        @Nullable
+        String get(final int row) {
+            if (packed.get(row)) {
+                final char[] chars = new char[32];
+                unpack(high[row], chars, 0);
+                unpack(low[row], chars, 16);
+                return new String(chars);
+            }
+            return others == null || row >= others.length ? null : others[row];
+        }
+
+        private boolean pack(final String value, final int row) {
+            long h = 0;
+            long l = 0;
+            for (int i = 0; i < 32; i++) {
+                final int digit = Character.digit(value.charAt(i), 16);
+                // Only lower case values round-trip
+                if (digit < 0 || Character.isUpperCase(value.charAt(i))) {
+                    return false;
+                }
+                if (i < 16) {
+                    h = (h << 4) | digit;
+                } else {
+                    l = (l << 4) | digit;
+                }
+            }
+            high[row] = h;
+            low[row] = l;
+            return true;
+        }
+
+        private static void unpack(final long value, final char[] chars, final int offset) {
+            for (int i = 0; i < 16; i++) {
+                chars[offset + i] = HEX_DIGITS[(int) (value >>> (60 - 4 * i)) & 0x0F];
+            }
+        }
+    }
+}
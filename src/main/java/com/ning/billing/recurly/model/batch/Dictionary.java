@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Dictionary encoding of a low-cardinality string column (currencies, states, actions, origins, ...)
+ * <p/>
+ * Each distinct value is stored once and rows only hold its int ordinal, so that decoding a value returns the
+ * same String instance for every row.
+ */
+public class Dictionary {
+
+    public static final int NULL_ORDINAL = -1;
+
+    private final Map<String, Integer> ordinals = new HashMap<String, Integer>();
+    private final List<String> values = new ArrayList<String>();
+
+    public int encode(@Nullable final String value) {
+        if (value == null) {
+            return NULL_ORDINAL;
+        }
+
+        final Integer ordinal = ordinals.get(value);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        final int newOrdinal = values.size();
+        values.add(value);
+        ordinals.put(value, newOrdinal);
+        return newOrdinal;
+    }
+
+    /**
+     * @param value value to look up
+     * @return the ordinal of the value, {@link #NULL_ORDINAL} if it was never encoded
+     */
+    public int ordinalOf(@Nullable final String value) {
+        if (value == null) {
+            return NULL_ORDINAL;
+        }
+        final Integer ordinal = ordinals.get(value);
+        return ordinal == null ? NULL_ORDINAL : ordinal;
+    }
+
+    @Nullable
+    public String decode(final int ordinal) {
+        return ordinal == NULL_ORDINAL ? null : values.get(ordinal);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public List<String> getValues() {
+        return Collections.unmodifiableList(values);
+    }
+}
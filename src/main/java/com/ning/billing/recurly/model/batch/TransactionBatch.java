@@ -0,0 +1,263 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Invoice;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.model.batch.Columns.BooleanColumn;
+import com.ning.billing.recurly.model.batch.Columns.CodeColumn;
+import com.ning.billing.recurly.model.batch.Columns.LongColumn;
+import com.ning.billing.recurly.model.batch.Columns.StringColumn;
+import com.ning.billing.recurly.model.batch.Columns.UuidColumn;
+
+/**
+ * Columnar counterpart of {@link com.ning.billing.recurly.model.Transactions}, filled by {@link BatchXmlReader}
+ * <p/>
+ * The account is only referenced by its code and the invoice by its number.
+ */
+public class TransactionBatch extends ColumnarBatch<TransactionBatch.Row> {
+
+    final UuidColumn uuids = new UuidColumn();
+    final StringColumn accountCodes = new StringColumn();
+    final LongColumn invoiceNumbers = new LongColumn();
+    final UuidColumn subscriptionUuids = new UuidColumn();
+    final CodeColumn actions = new CodeColumn();
+    final LongColumn amountsInCents = new LongColumn();
+    final LongColumn taxesInCents = new LongColumn();
+    final CodeColumn currencies = new CodeColumn();
+    final CodeColumn statuses = new CodeColumn();
+    final CodeColumn paymentMethods = new CodeColumn();
+    final CodeColumn sources = new CodeColumn();
+    final StringColumn references = new StringColumn();
+    final StringColumn descriptions = new StringColumn();
+    final BooleanColumn tests = new BooleanColumn();
+    final BooleanColumn voidables = new BooleanColumn();
+    final BooleanColumn refundables = new BooleanColumn();
+    final BooleanColumn recurrings = new BooleanColumn();
+    final LongColumn createdAtMillis = new LongColumn();
+
+    @Override
+    void clearRow(final int row) {
+        uuids.set(row, null);
+        accountCodes.set(row, null);
+        invoiceNumbers.set(row, NULL_LONG);
+        subscriptionUuids.set(row, null);
+        actions.set(row, null);
+        amountsInCents.set(row, NULL_LONG);
+        taxesInCents.set(row, NULL_LONG);
+        currencies.set(row, null);
+        statuses.set(row, null);
+        paymentMethods.set(row, null);
+        sources.set(row, null);
+        references.set(row, null);
+        descriptions.set(row, null);
+        tests.set(row, null);
+        voidables.set(row, null);
+        refundables.set(row, null);
+        recurrings.set(row, null);
+        createdAtMillis.set(row, NULL_LONG);
+    }
+
+    @Override
+    Row newRow() {
+        return new Row();
+    }
+
+    /**
+     * @return the sum of the amounts of all rows, missing amounts excluded
+     */
+    public long sumAmountInCents() {
+        return amountsInCents.sum(size());
+    }
+
+    /**
+     * Values of the currency ordinals returned by {@link Row#getCurrencyOrdinal()}, e.g. to aggregate per currency
+     */
+    public Dictionary getCurrencyDictionary() {
+        return currencies.getDictionary();
+    }
+
+    public Dictionary getStatusDictionary() {
+        return statuses.getDictionary();
+    }
+
+    public Dictionary getActionDictionary() {
+        return actions.getDictionary();
+    }
+
+    public class Row extends ColumnarBatch.Row {
+
+        @Nullable
+        public String getUuid() {
+            return uuids.get(index);
+        }
+
+        @Nullable
+        public String getAccountCode() {
+            return accountCodes.get(index);
+        }
+
+        /**
+         * @return the invoice number, {@link #NULL_LONG} if none
+         */
+        public long getInvoiceNumber() {
+            return invoiceNumbers.get(index);
+        }
+
+        @Nullable
+        public String getSubscriptionUuid() {
+            return subscriptionUuids.get(index);
+        }
+
+        @Nullable
+        public String getAction() {
+            return actions.get(index);
+        }
+
+        public int getActionOrdinal() {
+            return actions.getOrdinal(index);
+        }
+
+        /**
+         * @return the amount, {@link #NULL_LONG} if missing
+         */
+        public long getAmountInCents() {
+            return amountsInCents.get(index);
+        }
+
+        /**
+         * @return the tax, {@link #NULL_LONG} if missing
+         */
+        public long getTaxInCents() {
+            return taxesInCents.get(index);
+        }
+
+        @Nullable
+        public String getCurrency() {
+            return currencies.get(index);
+        }
+
+        public int getCurrencyOrdinal() {
+            return currencies.getOrdinal(index);
+        }
+
+        @Nullable
+        public String getStatus() {
+            return statuses.get(index);
+        }
+
+        public int getStatusOrdinal() {
+            return statuses.getOrdinal(index);
+        }
+
+        @Nullable
+        public String getPaymentMethod() {
+            return paymentMethods.get(index);
+        }
+
+        @Nullable
+        public String getSource() {
+            return sources.get(index);
+        }
+
+        @Nullable
+        public String getReference() {
+            return references.get(index);
+        }
+
+        @Nullable
+        public String getDescription() {
+            return descriptions.get(index);
+        }
+
+        @Nullable
+        public Boolean getTest() {
+            return tests.get(index);
+        }
+
+        @Nullable
+        public Boolean getVoidable() {
+            return voidables.get(index);
+        }
+
+        @Nullable
+        public Boolean getRefundable() {
+            return refundables.get(index);
+        }
+
+        @Nullable
+        public Boolean getRecurring() {
+            return recurrings.get(index);
+        }
+
+        /**
+         * @return the creation date in epoch millis, {@link #NULL_LONG} if missing
+         */
+        public long getCreatedAtMillis() {
+            return createdAtMillis.get(index);
+        }
+
+        @Nullable
+        public DateTime getCreatedAt() {
+            return Columns.toDateTime(createdAtMillis.get(index));
+        }
+
+        /**
+         * Materialize the row as a bean, e.g. to hand it over to code expecting the regular model
+         */
+        public Transaction toTransaction() {
+            final Transaction transaction = new Transaction();
+            transaction.setUuid(getUuid());
+            if (getAccountCode() != null) {
+                final Account account = new Account();
+                account.setAccountCode(getAccountCode());
+                transaction.setAccount(account);
+            }
+            if (getInvoiceNumber() != NULL_LONG) {
+                final Invoice invoice = new Invoice();
+                invoice.setInvoiceNumber((int) getInvoiceNumber());
+                transaction.setInvoice(invoice);
+            }
+            transaction.setSubscription(getSubscriptionUuid());
+            transaction.setAction(getAction());
+            transaction.setAmountInCents(Columns.toInteger(getAmountInCents()));
+            transaction.setTaxInCents(Columns.toInteger(getTaxInCents()));
+            transaction.setCurrency(getCurrency());
+            transaction.setStatus(getStatus());
+            transaction.setPaymentMethod(getPaymentMethod());
+            transaction.setSource(getSource());
+            transaction.setReference(getReference());
+            transaction.setDescription(getDescription());
+            transaction.setTest(getTest());
+            transaction.setVoidable(getVoidable());
+            transaction.setRefundable(getRefundable());
+            transaction.setRecurring(getRecurring());
+            transaction.setCreatedAt(getCreatedAt());
+            return transaction;
+        }
+
+        @Override
+        public String toString() {
+            return "TransactionBatch.Row{index=" + index + ", uuid='" + getUuid() + "'}";
+        }
+    }
+}
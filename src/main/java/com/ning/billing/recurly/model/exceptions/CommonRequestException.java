@@ -34,6 +34,21 @@ public class CommonRequestException extends RecurlyException
         this.statusCode = statusCode;
     }
 
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
     @Override
     public String getMessage() {
         return String.format(URL_MESSAGE, url) + String.format(BODY_MESSAGE, statusCode, errorMessage);
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.model.push;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead spool of raw push notification payloads, to acknowledge Recurly as soon as a notification is on disk
+ * and process it asynchronously
+ * <p/>
+ * Payloads are appended to memory-mapped segment files (spool-&lt;first offset&gt;.log) as records of a length, a
+ * CRC32 and the UTF-8 bytes, and forced to disk before {@link #append(String)} returns. The consumer reads them in
+ * order and {@link #commit(Entry) commits} the processed ones: the committed offset is saved in a checkpoint file
+ * (replaced atomically) and fully consumed segments are deleted. After a restart, reading starts again from the
+ * checkpoint, so that notifications which were spooled but not processed are replayed (at least once delivery)
+ * and a record torn by a crash during an append, which was never acknowledged, is dropped.
+ * <pre>
+ * // Webhook endpoint, once verified
+ * spool.append(payload);
+ * response.setStatus(200);
+ *
+ * // Processing
+ * spool.startConsumer(new NotificationSpool.Handler() {
+ *     public void handle(final NotificationSpool.Entry entry) {
+ *         final Notification notification = entry.read();
+ *         ...
+ *     }
+ * });
+ * </pre>
+ * Spools are thread-safe, but a directory must only be opened by one spool at a time. Commits save the checkpoint
+ * under their own lock, so that appends aren't held up by its write and sync.
+ * <p/>
+ * Java 6 can't sync a directory: the creation of a new segment file, when the active one is full, is not forced to
+ * disk with the segment contents. On some file systems, a crash right after such a rollover can lose the new segment,
+ * and the entries already acknowledged in it.
+ */
+public class NotificationSpool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationSpool.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Record: payload length (0 marks the end of a segment, mapped files are zero-filled), CRC32 of the payload, payload
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String CHECKPOINT_TEMP = "checkpoint.tmp";
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * Processing of spooled notifications
+     */
+    public static interface Handler {
+
+        /**
+         * @param entry spooled notification
+         * @throws Exception to get the notification again later, after a delay
+         */
+        public void handle(Entry entry) throws Exception;
+    }
+
+    public static final class Entry {
+
+        private final long offset;
+        private final long nextOffset;
+        private final String payload;
+
+        private Entry(final long offset, final long nextOffset, final String payload) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.payload = payload;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return offset of the following entry, saved by {@link NotificationSpool#commit(Entry)}
+         */
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        /**
+         * @return type of the notification, null if unknown
+         */
+        @Nullable
+        public Notification.Type getType() {
+            return Notification.detect(payload);
+        }
+
+        /**
+         * @return the notification, null if its type is unknown or it can't be read
+         */
+        @Nullable
+        public Notification read() {
+            final Notification.Type type = getType();
+            return type == null ? null : Notification.read(payload, type.getJavaType());
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{offset=" + offset + ", length=" + (nextOffset - offset - HEADER_SIZE) + '}';
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    // Serializes the checkpoint writes, taken before the spool monitor (never while holding it)
+    private final Object checkpointLock = new Object();
+
+    // Guarded by checkpointLock
+    private long checkpointOffset;
+    private long committedOffset;
+    private long readOffset;
+    private boolean closed = false;
+    private Thread consumerThread;
+
+    public NotificationSpool(final File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open a spool, recovering the segments and checkpoint found in the directory
+     *
+     * @param directory   spool directory, created if needed
+     * @param segmentSize size of the segment files, the largest payload must fit in one
+     * @throws IOException if the directory can't be read or written
+     */
+    public NotificationSpool(final File directory, final int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        final Long checkpoint = readCheckpoint();
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+        for (final File file : files) {
+            final Segment segment = Segment.open(file, baseOffset(file));
+            segment.recover();
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(directory, checkpoint == null ? 0 : checkpoint, segmentSize));
+        }
+
+        final long startOffset = segments.get(0).baseOffset;
+        final long endOffset = activeSegment().endOffset();
+        this.committedOffset = checkpoint == null ? startOffset : Math.min(Math.max(checkpoint, startOffset), endOffset);
+        this.readOffset = committedOffset;
+        this.checkpointOffset = committedOffset;
+        if (endOffset > committedOffset) {
+            log.info("Replaying {} bytes of spooled notifications from {}", endOffset - committedOffset, directory);
+        }
+    }
+
+    /**
+     * Append a payload and force it to disk: once this returns, the notification can be acknowledged
+     *
+     * @param payload raw notification
+     * @return offset of the entry
+     * @throws IOException if the spool is closed or the payload can't be written
+     */
+    public synchronized long append(final String payload) throws IOException {
+        if (closed) {
+            throw new IOException("Spool closed");
+        }
+        final byte[] bytes = payload.getBytes(UTF_8);
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Empty payload");
+        }
+        if (HEADER_SIZE + bytes.length > segmentSize) {
+            throw new IOException("Payload of " + bytes.length + " bytes larger than the segment size " + segmentSize);
+        }
+
+        Segment segment = activeSegment();
+        if (segment.writePosition + HEADER_SIZE + bytes.length > segment.buffer.capacity()) {
+            segment = Segment.create(directory, segment.endOffset(), segmentSize);
+            segments.add(segment);
+        }
+
+        final long offset = segment.endOffset();
+        final int position = segment.writePosition;
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(bytes);
+        buffer.putInt(position + 4, crc(bytes, 0, bytes.length));
+        buffer.putInt(position, bytes.length);
+        segment.buffer.force();
+        segment.writePosition += HEADER_SIZE + bytes.length;
+
+        notifyAll();
+        return offset;
+    }
+
+    /**
+     * @return the next entry to process, null if all spooled entries have been read
+     */
+    @Nullable
+    public synchronized Entry poll() {
+        if (closed) {
+            return null;
+        }
+        final Entry entry = readAt(readOffset);
+        if (entry != null) {
+            readOffset = entry.nextOffset;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the next entry to process, null if none was appended before the timeout or the spool was closed
+     */
+    @Nullable
+    public synchronized Entry take(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Entry entry;
+        while ((entry = poll()) == null && !closed) {
+            final long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+        return entry;
+    }
+
+    /**
+     * Mark an entry (and all the ones before it) as processed: it won't be replayed after a restart
+     *
+     * @param entry processed entry
+     * @throws IOException if the checkpoint can't be saved
+     */
+    public void commit(final Entry entry) throws IOException {
+        final List<Segment> consumed = new ArrayList<Segment>();
+        synchronized (checkpointLock) {
+            if (entry.nextOffset <= checkpointOffset) {
+                return;
+            }
+            writeCheckpoint(entry.nextOffset);
+            checkpointOffset = entry.nextOffset;
+
+            synchronized (this) {
+                committedOffset = Math.max(committedOffset, entry.nextOffset);
+                // Fully consumed segments, but the active one
+                while (segments.size() > 1 && segments.get(0).endOffset() <= committedOffset) {
+                    consumed.add(segments.remove(0));
+                }
+            }
+        }
+
+        for (final Segment segment : consumed) {
+            if (!segment.file.delete()) {
+                log.warn("Unable to delete spool segment {}", segment.file);
+            }
+        }
+    }
+
+    /**
+     * Read again the entries after the last commit, e.g. after a processing failure
+     */
+    public synchronized void rewind() {
+        readOffset = committedOffset;
+    }
+
+    public synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public synchronized long getEndOffset() {
+        return activeSegment().endOffset();
+    }
+
+    /**
+     * @return bytes of entries not committed yet (headers included)
+     */
+    public synchronized long getPendingBytes() {
+        return activeSegment().endOffset() - committedOffset;
+    }
+
+    /**
+     * Process the entries on a background thread, committing each one once handled. Failed entries are retried
+     * (with the ones after them) after a delay, until the spool is closed.
+     *
+     * @param handler processing of the entries
+     */
+    public synchronized void startConsumer(final Handler handler) {
+        if (consumerThread != null) {
+            throw new IllegalStateException("Consumer already started");
+        }
+        consumerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume(handler);
+            }
+        }, "RecurlyClient-spool");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    /**
+     * Stop the consumer, if any. Spooled entries stay on disk until committed.
+     */
+    @Override
+    public void close() throws IOException {
+        final Thread consumer;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+            consumer = consumerThread;
+        }
+        if (consumer != null && consumer != Thread.currentThread()) {
+            consumer.interrupt();
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void consume(final Handler handler) {
+        while (true) {
+            final Entry entry;
+            try {
+                entry = take(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+            }
+            if (entry == null) {
+                continue;
+            }
+
+            try {
+                handler.handle(entry);
+                commit(entry);
+            } catch (Exception e) {
+                log.warn("Unable to process spooled notification {}, retrying in {} ms", entry, RETRY_DELAY_MILLIS, e);
+                rewind();
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Segment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    @Nullable
+    private Entry readAt(final long offset) {
+        for (int i = 0; i < segments.size(); i++) {
+            final Segment segment = segments.get(i);
+            if (offset < segment.baseOffset || offset >= segment.endOffset()) {
+                continue;
+            }
+            final int position = (int) (offset - segment.baseOffset);
+            final ByteBuffer buffer = segment.buffer.duplicate();
+            final int length = buffer.getInt(position);
+            final byte[] bytes = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(bytes);
+            return new Entry(offset, offset + HEADER_SIZE + length, new String(bytes, UTF_8));
+        }
+        return null;
+    }
+
+    @Nullable
+    private Long readCheckpoint() throws IOException {
+        final File file = new File(directory, CHECKPOINT);
+        if (!file.exists()) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            final long offset = in.readLong();
+            final long checksum = in.readLong();
+            if (checksum != ~offset) {
+                throw new IOException("Corrupted spool checkpoint " + file);
+            }
+            return offset;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeCheckpoint(final long offset) throws IOException {
+        final File temp = new File(directory, CHECKPOINT_TEMP);
+        final FileOutputStream fileOut = new FileOutputStream(temp);
+        try {
+            final DataOutputStream out = new DataOutputStream(fileOut);
+            out.writeLong(offset);
+            out.writeLong(~offset);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+
+        final File checkpoint = new File(directory, CHECKPOINT);
+        // rename doesn't replace an existing file on all platforms
+        if (!temp.renameTo(checkpoint) && !(checkpoint.delete() && temp.renameTo(checkpoint))) {
+            throw new IOException("Unable to save spool checkpoint " + checkpoint);
+        }
+    }
+
+    private static long baseOffset(final File file) throws IOException {
+        final String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid spool segment name " + file);
+        }
+    }
+
+    private static int crc(final byte[] bytes, final int offset, final int length) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final long baseOffset;
+        private final MappedByteBuffer buffer;
+        private int writePosition = 0;
+
+        private Segment(final File file, final long baseOffset, final MappedByteBuffer buffer) {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(final File directory, final long baseOffset, final int size) throws IOException {
+            // Zero-padded, for the segments to sort by offset
+            final File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, baseOffset, SEGMENT_SUFFIX));
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(size);
+            } finally {
+                randomAccessFile.close();
+            }
+            return open(file, baseOffset);
+        }
+
+        private static Segment open(final File file, final long baseOffset) throws IOException {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                // The mapping stays valid once the file is closed
+                return new Segment(file, baseOffset, randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length()));
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        private long endOffset() {
+            return baseOffset + writePosition;
+        }
+
+        /**
+         * Find the end of the valid records, and erase a record torn by a crash
+         */
+        private void recover() {
+            final int capacity = buffer.capacity();
+            int position = 0;
+            while (position + HEADER_SIZE <= capacity) {
+                final int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length < 0 || position + HEADER_SIZE + length > capacity || !hasValidChecksum(position, length)) {
+                    log.warn("Dropping torn record at position {} of spool segment {}", position, file);
+                    for (int i = position; i < capacity; i++) {
+                        buffer.put(i, (byte) 0);
+                    }
+                    buffer.force();
+                    break;
+                }
+                position += HEADER_SIZE + length;
+            }
+            writePosition = position;
+        }
+
+        private boolean hasValidChecksum(final int position, final int length) {
+            final byte[] bytes = new byte[length];
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(position + HEADER_SIZE);
+            duplicate.get(bytes);
+            return crc(bytes, 0, length) == buffer.getInt(position + 4);
+        }
+    }
+}
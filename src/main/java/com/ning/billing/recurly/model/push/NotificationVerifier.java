@@ -0,0 +1,325 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.model.push;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.xml.bind.DatatypeConverter;
+
+import com.google.common.base.CaseFormat;
+
+/**
+ * Cheap checks of incoming push notifications, to run before {@link Notification#detect(String)} and
+ * {@link Notification#read(String, Class)}
+ * <p/>
+ * In order of cost: declared size, source address (exact addresses or CIDR blocks, e.g. the Recurly webhook
+ * addresses), HTTP Basic credentials (as configured on the Recurly site) and the shape of the payload, whose root
+ * element must be a known notification. Credentials are compared through SHA-256 digests with a constant-time
+ * comparison, so that neither their content nor their length leaks through response times. Payloads with a
+ * DOCTYPE are rejected, for entity expansion not to reach the XML parser.
+ * <p/>
+ * Verifiers are thread-safe and count the verdicts, e.g. to alert on junk traffic:
+ * <pre>
+ * final NotificationVerifier.Verdict verdict = verifier.verifyRequest(request.getRemoteAddr(), request.getHeader("Authorization"), request.getContentLength());
+ * if (!verdict.isAccepted()) {
+ *     response.sendError(verdict.getStatusCode());
+ *     return;
+ * }
+ * </pre>
+ */
+public class NotificationVerifier {
+
+    public static enum Verdict {
+        ACCEPTED(200),
+        PAYLOAD_TOO_LARGE(413),
+        FORBIDDEN_ADDRESS(403),
+        MISSING_CREDENTIALS(401),
+        BAD_CREDENTIALS(401),
+        MALFORMED_PAYLOAD(400),
+        UNKNOWN_NOTIFICATION(400);
+
+        private final int statusCode;
+
+        private Verdict(final int statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return HTTP status code to answer with
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public boolean isAccepted() {
+            return this == ACCEPTED;
+        }
+    }
+
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BASIC = "Basic ";
+    private static final Pattern IPV4_LITERAL = Pattern.compile("[0-9]{1,3}(\\.[0-9]{1,3}){3}");
+    // The root element is expected right after the XML declaration
+    private static final int MAX_ROOT_OFFSET = 256;
+
+    private static final Map<String, Notification.Type> TYPES_BY_ROOT_NAME = new HashMap<String, Notification.Type>();
+
+    static {
+        for (final Notification.Type type : Notification.Type.values()) {
+            TYPES_BY_ROOT_NAME.put(CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, type.name()), type);
+        }
+    }
+
+    private final byte[] expectedAuthorizationDigest;
+    private final List<AddressBlock> allowedAddresses;
+    private final int maxPayloadLength;
+    private final AtomicLongArray counts = new AtomicLongArray(Verdict.values().length);
+
+    /**
+     * @param username         expected HTTP Basic user name, null not to require credentials
+     * @param password         expected HTTP Basic password
+     * @param allowedAddresses addresses (e.g. 74.201.212.175) or CIDR blocks (e.g. 74.201.212.0/24) allowed to push, empty to allow any
+     * @param maxPayloadLength maximum size of a payload, in bytes
+     * @throws IllegalArgumentException if an address isn't a valid IP address or block
+     */
+    public NotificationVerifier(@Nullable final String username, @Nullable final String password, final Collection<String> allowedAddresses,
+                                final int maxPayloadLength) {
+        this.expectedAuthorizationDigest = username == null ? null : sha256(BASIC + DatatypeConverter.printBase64Binary((username + ":" + (password == null ? "" : password)).getBytes(UTF_8)));
+        final List<AddressBlock> blocks = new ArrayList<AddressBlock>(allowedAddresses.size());
+        for (final String allowedAddress : allowedAddresses) {
+            blocks.add(AddressBlock.parse(allowedAddress));
+        }
+        this.allowedAddresses = Collections.unmodifiableList(blocks);
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    public NotificationVerifier(@Nullable final String username, @Nullable final String password) {
+        this(username, password, Collections.<String>emptyList(), DEFAULT_MAX_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * Verify a request before reading its body
+     *
+     * @param remoteAddress IP address of the client (not a host name, which would be resolved)
+     * @param authorization Authorization header, null if absent
+     * @param contentLength declared length of the body, -1 if unknown
+     * @return the verdict
+     */
+    public Verdict verifyRequest(@Nullable final String remoteAddress, @Nullable final String authorization, final long contentLength) {
+        return count(checkRequest(remoteAddress, authorization, contentLength));
+    }
+
+    /**
+     * Verify a request and its body
+     *
+     * @param remoteAddress IP address of the client
+     * @param authorization Authorization header, null if absent
+     * @param payload       body
+     * @return the verdict
+     */
+    public Verdict verify(@Nullable final String remoteAddress, @Nullable final String authorization, final String payload) {
+        // Length in chars, a lower bound of the length in bytes
+        final Verdict verdict = checkRequest(remoteAddress, authorization, payload.length());
+        return count(verdict.isAccepted() ? checkPayload(payload) : verdict);
+    }
+
+    /**
+     * Verify a body, whose request has been accepted by {@link #verifyRequest(String, String, long)}
+     *
+     * @param payload body
+     * @return the verdict
+     */
+    public Verdict verifyPayload(final String payload) {
+        return count(payload.length() > maxPayloadLength ? Verdict.PAYLOAD_TOO_LARGE : checkPayload(payload));
+    }
+
+    /**
+     * @param verdict verdict
+     * @return number of verifications which ended with this verdict
+     */
+    public long getCount(final Verdict verdict) {
+        return counts.get(verdict.ordinal());
+    }
+
+    /**
+     * @return number of rejected verifications, all verdicts but ACCEPTED
+     */
+    public long getRejectedCount() {
+        long rejected = 0;
+        for (final Verdict verdict : Verdict.values()) {
+            if (!verdict.isAccepted()) {
+                rejected += counts.get(verdict.ordinal());
+            }
+        }
+        return rejected;
+    }
+
+    private Verdict count(final Verdict verdict) {
+        counts.incrementAndGet(verdict.ordinal());
+        return verdict;
+    }
+
+    private Verdict checkRequest(@Nullable final String remoteAddress, @Nullable final String authorization, final long contentLength) {
+        if (contentLength > maxPayloadLength) {
+            return Verdict.PAYLOAD_TOO_LARGE;
+        }
+        if (!allowedAddresses.isEmpty() && !isAllowed(remoteAddress)) {
+            return Verdict.FORBIDDEN_ADDRESS;
+        }
+        if (expectedAuthorizationDigest != null) {
+            if (authorization == null || !authorization.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
+                return Verdict.MISSING_CREDENTIALS;
+            }
+            // Normalize the scheme, credentials are compared as a whole
+            if (!MessageDigest.isEqual(expectedAuthorizationDigest, sha256(BASIC + authorization.substring(BASIC.length()).trim()))) {
+                return Verdict.BAD_CREDENTIALS;
+            }
+        }
+        return Verdict.ACCEPTED;
+    }
+
+    private boolean isAllowed(@Nullable final String remoteAddress) {
+        final byte[] address = parseAddressLiteral(remoteAddress);
+        if (address == null) {
+            return false;
+        }
+        for (final AddressBlock block : allowedAddresses) {
+            if (block.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Verdict checkPayload(final String payload) {
+        final int length = Math.min(payload.length(), MAX_ROOT_OFFSET);
+        int i = 0;
+        while (true) {
+            while (i < length && Character.isWhitespace(payload.charAt(i))) {
+                i++;
+            }
+            if (i + 1 >= length || payload.charAt(i) != '<') {
+                return Verdict.MALFORMED_PAYLOAD;
+            }
+            if (payload.charAt(i + 1) != '?') {
+                break;
+            }
+            // XML declaration
+            final int end = payload.indexOf("?>", i);
+            if (end < 0 || end >= length) {
+                return Verdict.MALFORMED_PAYLOAD;
+            }
+            i = end + 2;
+        }
+
+        // DOCTYPE, comments, CDATA: never sent by Recurly
+        if (payload.charAt(i + 1) == '!') {
+            return Verdict.MALFORMED_PAYLOAD;
+        }
+        final int nameStart = i + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < length && payload.charAt(nameEnd) != '>' && payload.charAt(nameEnd) != '/' && !Character.isWhitespace(payload.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == length) {
+            return Verdict.MALFORMED_PAYLOAD;
+        }
+        return TYPES_BY_ROOT_NAME.containsKey(payload.substring(nameStart, nameEnd)) ? Verdict.ACCEPTED : Verdict.UNKNOWN_NOTIFICATION;
+    }
+
+    @Nullable
+    private static byte[] parseAddressLiteral(@Nullable final String address) {
+        // Only literals: InetAddress would resolve host names
+        if (address == null || (address.indexOf(':') < 0 && !IPV4_LITERAL.matcher(address).matches())) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static byte[] sha256(final String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class AddressBlock {
+
+        private final byte[] network;
+        private final int prefixLength;
+
+        private AddressBlock(final byte[] network, final int prefixLength) {
+            this.network = network;
+            this.prefixLength = prefixLength;
+        }
+
+        private static AddressBlock parse(final String block) {
+            final int slash = block.indexOf('/');
+            final byte[] network = parseAddressLiteral(slash < 0 ? block : block.substring(0, slash));
+            if (network == null) {
+                throw new IllegalArgumentException("Invalid address " + block);
+            }
+            final int prefixLength;
+            try {
+                prefixLength = slash < 0 ? network.length * 8 : Integer.parseInt(block.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid address block " + block, e);
+            }
+            if (prefixLength < 0 || prefixLength > network.length * 8) {
+                throw new IllegalArgumentException("Invalid address block " + block);
+            }
+            return new AddressBlock(network, prefixLength);
+        }
+
+        private boolean contains(final byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            final int fullBytes = prefixLength / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            final int remainingBits = prefixLength % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            final int mask = (0xFF << (8 - remainingBits)) & 0xFF;
+            return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+    }
+}
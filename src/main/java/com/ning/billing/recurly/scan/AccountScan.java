@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.scan;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Accounts;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.Invoices;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.RecurlyObjects;
+import com.ning.billing.recurly.model.Subscriptions;
+import com.ning.billing.recurly.model.exceptions.NotFoundException;
+import com.ning.billing.recurly.model.exceptions.RecurlyException;
+
+/**
+ * A running account scan, see {@link AccountScanner}
+ * <p/>
+ * Snapshots are returned in completion order, not in account order. The iterator blocks until the next snapshot
+ * is ready and is meant to be consumed by a single thread (hand the snapshots over to a pool for parallel
+ * processing). A failure to list the accounts stops the scan and is thrown by {@link #hasNext()}, while a failure
+ * to fetch the sub-resources of an account is reported in its snapshot.
+ * <p/>
+ * Scans stop their threads once the last snapshot has been returned: close them when stopping earlier.
+ */
+public class AccountScan implements Iterator<AccountSnapshot>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountScan.class);
+
+    // Sub-resource calls per account: billing info, subscriptions, invoices
+    private static final int FAN_OUT = 3;
+
+    private static final Object END = new Object();
+
+    private final RecurlyClient recurlyClient;
+    private final RequestBudget budget;
+    private final ExecutorService listExecutor;
+    private final ExecutorService fetchExecutor;
+    private final Semaphore pendingAccounts;
+
+    // Snapshots, END or the Throwable which stopped the scan
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+    private final AtomicInteger partitionsRemaining;
+    // Accounts listed whose snapshot isn't queued yet
+    private final AtomicInteger accountsInProgress = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private volatile boolean closed;
+    private Object next;
+
+    AccountScan(final RecurlyClient recurlyClient, final List<String> states, final int parallelism, final RequestBudget budget, final int maxPendingAccounts) {
+        this.recurlyClient = recurlyClient;
+        this.budget = budget;
+        this.pendingAccounts = new Semaphore(maxPendingAccounts);
+        this.partitionsRemaining = new AtomicInteger(states.size());
+        // Listing threads wait on the consumer (pending accounts): they don't share the fetching threads, which never block on it
+        this.listExecutor = Executors.newFixedThreadPool(states.size(), new ScanThreadFactory("recurly-scan-list-"));
+        this.fetchExecutor = Executors.newFixedThreadPool(parallelism, new ScanThreadFactory("recurly-scan-fetch-"));
+
+        for (final String state : states) {
+            listExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listPartition(state);
+                }
+            });
+        }
+    }
+
+    /**
+     * @throws RecurlyException if the accounts couldn't be listed
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                next = results.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RecurlyException("Interrupted while waiting for the next account", e);
+            }
+            if (next == END) {
+                close();
+            } else if (next instanceof Throwable) {
+                close();
+                throw new RecurlyException("Unable to list the accounts", (Throwable) next);
+            }
+        }
+        return next instanceof AccountSnapshot;
+    }
+
+    @Override
+    public AccountSnapshot next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final AccountSnapshot snapshot = (AccountSnapshot) next;
+        next = null;
+        pendingAccounts.release();
+        return snapshot;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop the scan, interrupting the calls in progress
+     */
+    @Override
+    public void close() {
+        closed = true;
+        listExecutor.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    private void listPartition(final String state) {
+        try {
+            budget.acquire();
+            Accounts page = recurlyClient.getAccounts(state);
+            while (page != null) {
+                for (final Account account : page) {
+                    pendingAccounts.acquire();
+                    accountsInProgress.incrementAndGet();
+                    fetch(account);
+                }
+                if (!page.hasNextPage()) {
+                    break;
+                }
+                budget.acquire();
+                page = recurlyClient.getNextPage(page);
+            }
+            if (page == null) {
+                throw new RecurlyException("Unable to list the " + state + " accounts");
+            }
+
+            partitionsRemaining.decrementAndGet();
+            finishIfDone();
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (Throwable e) {
+            if (!closed) {
+                fail(e);
+            }
+        }
+    }
+
+    private void fetch(final Account account) {
+        final PendingSnapshot pending = new PendingSnapshot(account);
+        fetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        budget.acquire();
+                        pending.billingInfo = recurlyClient.getBillingInfo(account.getAccountCode());
+                    } catch (NotFoundException e) {
+                        // No billing info
+                    }
+                } catch (Throwable e) {
+                    pending.fail(e);
+                }
+                pending.done();
+            }
+        });
+        fetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    budget.acquire();
+                    pending.subscriptions = fetchAllPages(recurlyClient.getAccountSubscriptions(account.getAccountCode()), new Subscriptions());
+                } catch (Throwable e) {
+                    pending.fail(e);
+                }
+                pending.done();
+            }
+        });
+        fetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    budget.acquire();
+                    pending.invoices = fetchAllPages(recurlyClient.getAccountInvoices(account.getAccountCode()), new Invoices());
+                } catch (Throwable e) {
+                    pending.fail(e);
+                }
+                pending.done();
+            }
+        });
+    }
+
+    /**
+     * Collect all the pages of a list into a new list. The pages returned by the client are left untouched: they may be
+     * shared with other callers (response cache, coalesced GETs).
+     */
+    private <T extends RecurlyObject, L extends RecurlyObjects<T>> L fetchAllPages(final L firstPage, final L allPages) throws InterruptedException {
+        if (firstPage == null) {
+            throw new RecurlyException("Unable to fetch the list");
+        }
+        allPages.addAll(firstPage);
+        RecurlyObjects<T> page = firstPage;
+        while (page.hasNextPage()) {
+            budget.acquire();
+            final String nextUrl = page.getNextUrl();
+            page = recurlyClient.getNextPage(page);
+            if (page == null) {
+                throw new RecurlyException("Unable to fetch the next page " + nextUrl);
+            }
+            allPages.addAll(page);
+        }
+        return allPages;
+    }
+
+    private void finishIfDone() {
+        if (partitionsRemaining.get() == 0 && accountsInProgress.get() == 0 && finished.compareAndSet(false, true)) {
+            results.add(END);
+        }
+    }
+
+    private void fail(final Throwable e) {
+        log.warn("Account scan failed", e);
+        if (finished.compareAndSet(false, true)) {
+            results.add(e);
+        }
+        listExecutor.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    private final class PendingSnapshot {
+
+        private final Account account;
+        private final AtomicInteger remaining = new AtomicInteger(FAN_OUT);
+        private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        // Published by the remaining counter
+        private BillingInfo billingInfo;
+        private Subscriptions subscriptions;
+        private Invoices invoices;
+
+        private PendingSnapshot(final Account account) {
+            this.account = account;
+        }
+
+        private void fail(final Throwable e) {
+            error.compareAndSet(null, e);
+        }
+
+        private void done() {
+            if (remaining.decrementAndGet() > 0) {
+                return;
+            }
+
+            final Throwable e = error.get();
+            final RecurlyException recurlyException = e == null || e instanceof RecurlyException ? (RecurlyException) e : new RecurlyException(e);
+            results.add(new AccountSnapshot(account, billingInfo, subscriptions, invoices, recurlyException));
+            accountsInProgress.decrementAndGet();
+            finishIfDone();
+        }
+    }
+
+    private static final class ScanThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private ScanThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.ning.billing.recurly.RecurlyClient;
+
+/**
+ * Scan all accounts of a site with their billing info, subscriptions and invoices
+ * <p/>
+ * The account list is partitioned by state: each partition is paged through by its own thread, the next page
+ * being fetched while the accounts of the current one are processed. For every listed account, the billing info,
+ * subscriptions and invoices calls are fanned out on a shared pool of {@code parallelism} threads and joined into an
+ * {@link AccountSnapshot}. All calls go through a requests per second budget, to leave room under the
+ * site API rate limit for the other users of the key.
+ * <p/>
+ * Scanners are immutable and can be reused, every {@link #scan()} starts a new scan:
+ * <pre>
+ * final AccountScan scan = new AccountScanner(recurlyClient).withParallelism(16).withMaxRequestsPerSecond(20).scan();
+ * try {
+ *     while (scan.hasNext()) {
+ *         final AccountSnapshot snapshot = scan.next();
+ *         ...
+ *     }
+ * } finally {
+ *     scan.close();
+ * }
+ * </pre>
+ */
+public class AccountScanner {
+
+    // Disjoint states covering all accounts
+    public static final List<String> DEFAULT_STATES = Collections.unmodifiableList(Arrays.asList("active", "closed"));
+
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int DEFAULT_MAX_PENDING_ACCOUNTS = 256;
+
+    private final RecurlyClient recurlyClient;
+    private final List<String> states;
+    private final int parallelism;
+    private final double maxRequestsPerSecond;
+    private final int maxPendingAccounts;
+
+    public AccountScanner(final RecurlyClient recurlyClient) {
+        this(recurlyClient, DEFAULT_STATES, DEFAULT_PARALLELISM, 0, DEFAULT_MAX_PENDING_ACCOUNTS);
+    }
+
+    /**
+     * @param recurlyClient        opened client
+     * @param states               account states to scan, one partition each. They should be disjoint, for accounts not to be returned twice
+     * @param parallelism          number of threads fetching the sub-resources of the accounts
+     * @param maxRequestsPerSecond requests budget of the scan (all partitions), 0 for no limit
+     * @param maxPendingAccounts   maximum number of accounts listed but not yet consumed, to bound memory when the consumer is slower than the scan
+     */
+    public AccountScanner(final RecurlyClient recurlyClient, final List<String> states, final int parallelism, final double maxRequestsPerSecond,
+                          final int maxPendingAccounts) {
+        if (states.isEmpty()) {
+            throw new IllegalArgumentException("At least one account state is required");
+        }
+        if (parallelism < 1 || maxPendingAccounts < 1) {
+            throw new IllegalArgumentException("Parallelism and maximum number of pending accounts must be positive");
+        }
+        this.recurlyClient = recurlyClient;
+        this.states = Collections.unmodifiableList(new ArrayList<String>(states));
+        this.parallelism = parallelism;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.maxPendingAccounts = maxPendingAccounts;
+    }
+
+    public List<String> getStates() {
+        return states;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public double getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    public int getMaxPendingAccounts() {
+        return maxPendingAccounts;
+    }
+
+    public AccountScanner withStates(final String... states) {
+        return new AccountScanner(recurlyClient, Arrays.asList(states), parallelism, maxRequestsPerSecond, maxPendingAccounts);
+    }
+
+    public AccountScanner withParallelism(final int parallelism) {
+        return new AccountScanner(recurlyClient, states, parallelism, maxRequestsPerSecond, maxPendingAccounts);
+    }
+
+    public AccountScanner withMaxRequestsPerSecond(final double maxRequestsPerSecond) {
+        return new AccountScanner(recurlyClient, states, parallelism, maxRequestsPerSecond, maxPendingAccounts);
+    }
+
+    public AccountScanner withMaxPendingAccounts(final int maxPendingAccounts) {
+        return new AccountScanner(recurlyClient, states, parallelism, maxRequestsPerSecond, maxPendingAccounts);
+    }
+
+    /**
+     * Start a scan
+     *
+     * @return the running scan, to iterate and close
+     */
+    public AccountScan scan() {
+        return new AccountScan(recurlyClient, states, parallelism, new RequestBudget(maxRequestsPerSecond), maxPendingAccounts);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AccountScanner");
+        sb.append("{states=").append(states);
+        sb.append(", parallelism=").append(parallelism);
+        sb.append(", maxRequestsPerSecond=").append(maxRequestsPerSecond);
+        sb.append(", maxPendingAccounts=").append(maxPendingAccounts);
+        sb.append('}');
+        return sb.toString();
+    }
+}
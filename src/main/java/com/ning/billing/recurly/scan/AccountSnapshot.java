@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.scan;
+
+import javax.annotation.Nullable;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.Invoices;
+import com.ning.billing.recurly.model.Subscriptions;
+import com.ning.billing.recurly.model.exceptions.RecurlyException;
+
+/**
+ * An account and its sub-resources, as fetched by an {@link AccountScan}
+ * <p/>
+ * When one of the sub-resources couldn't be fetched, the snapshot carries the error and the missing parts are null.
+ */
+public class AccountSnapshot {
+
+    private final Account account;
+    private final BillingInfo billingInfo;
+    private final Subscriptions subscriptions;
+    private final Invoices invoices;
+    private final RecurlyException error;
+
+    public AccountSnapshot(final Account account, @Nullable final BillingInfo billingInfo, @Nullable final Subscriptions subscriptions,
+                           @Nullable final Invoices invoices, @Nullable final RecurlyException error) {
+        this.account = account;
+        this.billingInfo = billingInfo;
+        this.subscriptions = subscriptions;
+        this.invoices = invoices;
+        this.error = error;
+    }
+
+    /**
+     * @return the account, as listed
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * @return the billing info, null if the account has none
+     */
+    @Nullable
+    public BillingInfo getBillingInfo() {
+        return billingInfo;
+    }
+
+    /**
+     * @return all subscriptions of the account (every page)
+     */
+    @Nullable
+    public Subscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * @return all invoices of the account (every page)
+     */
+    @Nullable
+    public Invoices getInvoices() {
+        return invoices;
+    }
+
+    /**
+     * @return the first error met while fetching the sub-resources, null if the snapshot is complete
+     */
+    @Nullable
+    public RecurlyException getError() {
+        return error;
+    }
+
+    public boolean isComplete() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AccountSnapshot");
+        sb.append("{account=").append(account.getAccountCode());
+        sb.append(", billingInfo=").append(billingInfo != null);
+        sb.append(", subscriptions=").append(subscriptions == null ? null : subscriptions.size());
+        sb.append(", invoices=").append(invoices == null ? null : invoices.size());
+        sb.append(", error=").append(error);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.scan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests out to stay under a requests per second budget, shared by all threads of a scan
+ */
+class RequestBudget {
+
+    private final long intervalNanos;
+
+    // Earliest start of the next request
+    private long nextStartNanos;
+
+    /**
+     * @param maxRequestsPerSecond budget, 0 or less for no limit
+     */
+    RequestBudget(final double maxRequestsPerSecond) {
+        this.intervalNanos = maxRequestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond) : 0;
+        this.nextStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Wait until the next request fits in the budget
+     */
+    void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            // Unused budget isn't carried over: no bursts after an idle period
+            if (nextStartNanos - now < 0) {
+                nextStartNanos = now;
+            }
+            waitNanos = nextStartNanos - now;
+            nextStartNanos += intervalNanos;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hand traces off to a bounded queue drained by a background thread, which forwards them to a delegate sink
+ * <p/>
+ * The request path only pays for an offer that never waits for the drain thread (the ArrayBlockingQueue lock is
+ * held for the insertion only): masking, formatting and I/O happen on the drain thread. When the queue is full,
+ * traces are dropped (and counted) rather than slowing down Recurly calls.
+ * <p/>
+ * The drain thread is started by the first trace, so that sinks which never see a trace don't hold a thread.
+ */
+public class AsyncRequestTraceSink implements RequestTraceSink {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncRequestTraceSink.class);
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 10000;
+    // Bounds the time the drain thread takes to notice close() without being interrupted
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final RequestTraceSink delegate;
+    private final BlockingQueue<RequestTrace> queue;
+    private final AtomicLong droppedTraces = new AtomicLong();
+    private final Thread drainThread;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private volatile boolean running = true;
+
+    public AsyncRequestTraceSink(final RequestTraceSink delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    public AsyncRequestTraceSink(final RequestTraceSink delegate, final int capacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<RequestTrace>(capacity);
+        this.drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "RecurlyClient-trace");
+        this.drainThread.setDaemon(true);
+    }
+
+    @Override
+    public boolean isTraceEnabled(final int statusCode) {
+        return running && delegate.isTraceEnabled(statusCode);
+    }
+
+    @Override
+    public int getMaxBodyLength(final int maxLoggedBodyLength) {
+        return delegate.getMaxBodyLength(maxLoggedBodyLength);
+    }
+
+    @Override
+    public void trace(final RequestTrace trace) {
+        if (!queue.offer(trace)) {
+            droppedTraces.incrementAndGet();
+        }
+        if (!started.get() && started.compareAndSet(false, true)) {
+            drainThread.start();
+        }
+    }
+
+    public long getDroppedTraces() {
+        return droppedTraces.get();
+    }
+
+    public int getPendingTraces() {
+        return queue.size();
+    }
+
+    public boolean isClosed() {
+        return !running;
+    }
+
+    /**
+     * Stop the drain thread, after flushing the pending traces for at most 10 seconds
+     *
+     * @see #close(long, TimeUnit)
+     */
+    public void close() throws InterruptedException {
+        close(DEFAULT_CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop accepting traces and wait for the pending ones to be flushed. The drain thread is not interrupted, since it
+     * may be writing a trace: if the delegate is still busy when the timeout expires, the remaining traces are written
+     * in the background (the drain thread is a daemon thread).
+     *
+     * @param timeout maximum time to wait for the pending traces
+     * @param unit    unit of the timeout
+     * @return true if all pending traces were flushed
+     */
+    public boolean close(final long timeout, final TimeUnit unit) throws InterruptedException {
+        running = false;
+        if (!started.get()) {
+            return true;
+        }
+
+        drainThread.join(unit.toMillis(timeout));
+        if (drainThread.isAlive()) {
+            log.warn("{} trace(s) still pending after {} ms, leaving them to the drain thread", queue.size(), unit.toMillis(timeout));
+            return false;
+        }
+        return true;
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                final RequestTrace trace = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (trace != null) {
+                    forward(trace);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        RequestTrace trace;
+        while ((trace = queue.poll()) != null) {
+            forward(trace);
+        }
+    }
+
+    private void forward(final RequestTrace trace) {
+        try {
+            delegate.trace(trace);
+        } catch (RuntimeException e) {
+            log.warn("Unable to write trace {}", trace, e);
+        }
+    }
+}
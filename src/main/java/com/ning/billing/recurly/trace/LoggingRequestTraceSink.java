@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+
+/**
+ * Write traces to a logger: successful calls at INFO, errors at WARN
+ */
+public class LoggingRequestTraceSink implements RequestTraceSink {
+
+    public static final String LOG_MDC = "RecurlyClient.recurlyClientIdentifier";
+
+    private static final String LOG_HTTP_MESSAGE_TEMPLATE = "RecurlyClient : status code: %d request: %s response: %s";
+
+    private final Logger logger;
+
+    public LoggingRequestTraceSink(final Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean isTraceEnabled(final int statusCode) {
+        return statusCode >= 300 ? logger.isWarnEnabled() : logger.isInfoEnabled();
+    }
+
+    @Override
+    public int getMaxBodyLength(final int maxLoggedBodyLength) {
+        return maxLoggedBodyLength;
+    }
+
+    @Override
+    public void trace(final RequestTrace trace) {
+        if (!isTraceEnabled(trace.getStatusCode())) {
+            return;
+        }
+
+        MDC.put(LOG_MDC, trace.getClientIdentifier());
+        try {
+            final String message = String.format(LOG_HTTP_MESSAGE_TEMPLATE, trace.getStatusCode(), trace.getUrl(), trace.getLoggableResponseBody());
+            if (trace.isError()) {
+                logger.warn(message);
+            } else {
+                logger.info(message);
+            }
+        } finally {
+            MDC.remove(LOG_MDC);
+        }
+    }
+}
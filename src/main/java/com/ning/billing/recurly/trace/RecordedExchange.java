@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Request/response pair stored in a trace archive
+ * <p/>
+ * Urls are relative to the client base url (e.g. /accounts/1234?per_page=20) so that an archive can be replayed
+ * against any host. Bodies are stored masked. The response headers the client relies on (see
+ * {@link RequestTrace#TRACED_RESPONSE_HEADERS}) are kept, urls of Link headers being relative too.
+ */
+public class RecordedExchange {
+
+    private final long offsetNanos;
+    private final long durationNanos;
+    private final String method;
+    private final String url;
+    private final String requestBody;
+    private final int statusCode;
+    private final String responseBody;
+    private final Map<String, String> responseHeaders;
+
+    /**
+     * @param offsetNanos   time between the start of the recording and the request
+     * @param durationNanos time taken by Recurly to answer
+     */
+    public RecordedExchange(final long offsetNanos, final long durationNanos, final String method, final String url,
+                            final String requestBody, final int statusCode, final String responseBody) {
+        this(offsetNanos, durationNanos, method, url, requestBody, statusCode, responseBody, null);
+    }
+
+    /**
+     * @param responseHeaders response headers by name, null if none
+     */
+    public RecordedExchange(final long offsetNanos, final long durationNanos, final String method, final String url,
+                            final String requestBody, final int statusCode, final String responseBody,
+                            @Nullable final Map<String, String> responseHeaders) {
+        this.offsetNanos = offsetNanos;
+        this.durationNanos = durationNanos;
+        this.method = method;
+        this.url = url;
+        this.requestBody = requestBody;
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.responseHeaders = responseHeaders == null || responseHeaders.isEmpty() ? Collections.<String, String>emptyMap()
+                                                                                   : Collections.unmodifiableMap(new LinkedHashMap<String, String>(responseHeaders));
+    }
+
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getRequestBody() {
+        return requestBody;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("RecordedExchange");
+        sb.append("{offsetNanos=").append(offsetNanos);
+        sb.append(", durationNanos=").append(durationNanos);
+        sb.append(", method='").append(method).append('\'');
+        sb.append(", url='").append(url).append('\'');
+        sb.append(", statusCode=").append(statusCode);
+        sb.append('}');
+        return sb.toString();
+    }
+}
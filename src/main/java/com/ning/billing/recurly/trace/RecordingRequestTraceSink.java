@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Record every Recurly call into a trace archive, for offline replay (see {@link TraceArchiveReader})
+ * <p/>
+ * Request and response bodies are masked with the client's hideXMLResponseNodeValues set before being written.
+ * Traces are also forwarded to an optional delegate (e.g. the default logging sink). Writes are synchronous:
+ * wrap this sink in an {@link AsyncRequestTraceSink} to record off the request path, timings are not affected.
+ * The sink asks the client for complete bodies (see {@link #getMaxBodyLength(int)}), whatever the logging limit: the
+ * delegate still truncates what it logs.
+ * <pre>
+ * recurlyClient.setRequestTraceSink(new RecordingRequestTraceSink(archive, recurlyClient.getRequestTraceSink()));
+ * </pre>
+ */
+public class RecordingRequestTraceSink implements RequestTraceSink, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingRequestTraceSink.class);
+
+    private static final String LINK_HEADER = "Link";
+    private static final Pattern LINK_URL = Pattern.compile("<([^>]*)>");
+
+    private final TraceArchiveWriter writer;
+    private final RequestTraceSink delegate;
+    private final long recordingStartNanos = System.nanoTime();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong truncatedExchanges = new AtomicLong();
+
+    public RecordingRequestTraceSink(final File archive) throws IOException {
+        this(archive, null);
+    }
+
+    public RecordingRequestTraceSink(final File archive, @Nullable final RequestTraceSink delegate) throws IOException {
+        this.writer = new TraceArchiveWriter(archive);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isTraceEnabled(final int statusCode) {
+        return true;
+    }
+
+    @Override
+    public int getMaxBodyLength(final int maxLoggedBodyLength) {
+        return -1;
+    }
+
+    @Override
+    public void trace(final RequestTrace trace) {
+        if (delegate != null && delegate.isTraceEnabled(trace.getStatusCode())) {
+            delegate.trace(trace);
+        }
+
+        if (trace.isTruncated()) {
+            if (truncatedExchanges.getAndIncrement() == 0) {
+                log.warn("Not recording truncated exchanges: sinks wrapping this one must forward getMaxBodyLength");
+            }
+            return;
+        }
+
+        final RecordedExchange exchange = new RecordedExchange(Math.max(0, trace.getStartNanos() - recordingStartNanos), trace.getDurationNanos(),
+                                                               trace.getMethod() == null ? "GET" : trace.getMethod(), relativeUrl(trace),
+                                                               trace.getMaskedRequestBody(), trace.getStatusCode(), trace.getMaskedResponseBody(),
+                                                               recordedHeaders(trace));
+        try {
+            writer.write(exchange);
+        } catch (IOException e) {
+            if (failedWrites.getAndIncrement() == 0) {
+                log.warn("Unable to record {}", exchange, e);
+            }
+        }
+    }
+
+    public long getRecordedExchanges() {
+        return writer.getExchanges();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * @return number of exchanges not recorded because their bodies were truncated by a sink wrapping this one
+     */
+    public long getTruncatedExchanges() {
+        return truncatedExchanges.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    static String relativeUrl(final RequestTrace trace) {
+        return relativeUrl(trace.getUrl(), trace.getConfig().getBaseUrl());
+    }
+
+    // Link urls are made relative too, so that the replay can point them to its own host
+    static Map<String, String> recordedHeaders(final RequestTrace trace) {
+        final Map<String, String> headers = new LinkedHashMap<String, String>(trace.getResponseHeaders());
+        final String link = headers.get(LINK_HEADER);
+        if (link != null) {
+            final Matcher matcher = LINK_URL.matcher(link);
+            final StringBuffer relativeLink = new StringBuffer(link.length());
+            while (matcher.find()) {
+                matcher.appendReplacement(relativeLink, Matcher.quoteReplacement("<" + relativeUrl(matcher.group(1), trace.getConfig().getBaseUrl()) + ">"));
+            }
+            matcher.appendTail(relativeLink);
+            headers.put(LINK_HEADER, relativeLink.toString());
+        }
+        return headers;
+    }
+
+    private static String relativeUrl(final String url, final String baseUrl) {
+        if (url.startsWith(baseUrl)) {
+            return url.substring(baseUrl.length());
+        }
+
+        // e.g. default port added or removed by the http client: keep the path below the base url path
+        final String basePath = URI.create(baseUrl).getRawPath();
+        final URI uri = URI.create(url);
+        final String path = uri.getRawPath().startsWith(basePath) ? uri.getRawPath().substring(basePath.length()) : uri.getRawPath();
+        return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    }
+}
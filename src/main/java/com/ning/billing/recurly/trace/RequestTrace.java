@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.ning.billing.recurly.RecurlyClientConfig;
+
+/**
+ * Structured trace of a Recurly API call
+ * <p/>
+ * The client only decodes the first {@link RecurlyClientConfig#getMaxLoggedBodyLength()} bytes of the bodies, so that
+ * traces waiting to be written don't hold complete bodies. Masking is deferred to {@link #getLoggableResponseBody()},
+ * so that it only runs when (and where, e.g. on a background thread) the trace is actually written.
+ */
+public class RequestTrace {
+
+    /**
+     * Response headers kept in traces: pagination (Link, X-Records), validators (ETag) and throttling (Retry-After)
+     */
+    public static final List<String> TRACED_RESPONSE_HEADERS = Collections.unmodifiableList(Arrays.asList("Link", "X-Records", "ETag", "Retry-After"));
+
+    private final String clientIdentifier;
+    private final String method;
+    private final String url;
+    private final String requestBody;
+    private final int statusCode;
+    private final long startNanos;
+    private final long durationNanos;
+    private final String responseBody;
+    private final int omittedRequestBodyBytes;
+    private final int omittedResponseBodyBytes;
+    private final Map<String, String> responseHeaders;
+    private final RecurlyClientConfig config;
+
+    public RequestTrace(final String clientIdentifier, final String url, final int statusCode, final long durationNanos,
+                        final String responseBody, final RecurlyClientConfig config) {
+        this(clientIdentifier, null, url, null, 0, statusCode, System.nanoTime() - durationNanos, durationNanos, responseBody, 0, null, config);
+    }
+
+    /**
+     * @param method                   HTTP method
+     * @param requestBody              request payload (or its beginning), null if none
+     * @param omittedRequestBodyBytes  number of bytes of the request payload left out of requestBody
+     * @param startNanos               {@link System#nanoTime()} when the request was sent
+     * @param responseBody             response body (or its beginning)
+     * @param omittedResponseBodyBytes number of bytes of the response body left out of responseBody
+     * @param responseHeaders          values of the {@link #TRACED_RESPONSE_HEADERS} present in the response, null if none
+     */
+    public RequestTrace(final String clientIdentifier, final String method, final String url, final String requestBody, final int omittedRequestBodyBytes,
+                        final int statusCode, final long startNanos, final long durationNanos, final String responseBody, final int omittedResponseBodyBytes,
+                        @Nullable final Map<String, String> responseHeaders, final RecurlyClientConfig config) {
+        this.clientIdentifier = clientIdentifier;
+        this.method = method;
+        this.url = url;
+        this.requestBody = requestBody;
+        this.statusCode = statusCode;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.responseBody = responseBody;
+        this.omittedRequestBodyBytes = omittedRequestBodyBytes;
+        this.omittedResponseBodyBytes = omittedResponseBodyBytes;
+        this.responseHeaders = responseHeaders == null ? Collections.<String, String>emptyMap() : responseHeaders;
+        this.config = config;
+    }
+
+    public String getClientIdentifier() {
+        return clientIdentifier;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isError() {
+        return statusCode >= 300;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    public RecurlyClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return true if the request or response body was cut, see {@link RecurlyClientConfig#getMaxLoggedBodyLength()}
+     */
+    public boolean isTruncated() {
+        return omittedRequestBodyBytes > 0 || omittedResponseBodyBytes > 0;
+    }
+
+    /**
+     * @return the request payload with the configured XML nodes masked, null if there was none
+     */
+    public String getMaskedRequestBody() {
+        return requestBody == null ? null : config.hideXMLResponseNodeValues(requestBody);
+    }
+
+    /**
+     * @return the response body with the configured XML nodes masked, only its beginning if {@link #isTruncated()}
+     */
+    public String getMaskedResponseBody() {
+        return responseBody == null ? null : config.hideXMLResponseNodeValues(responseBody);
+    }
+
+    /**
+     * @return the response body, with the configured XML nodes masked, truncated to the configured maximum length
+     */
+    public String getLoggableResponseBody() {
+        if (responseBody == null) {
+            return null;
+        }
+
+        // Mask first: truncating first could cut a closing tag and leak part of a masked value
+        String masked = getMaskedResponseBody();
+        if (omittedResponseBodyBytes > 0) {
+            // Same issue for the body cut by the client: a masked node may have lost its closing tag
+            masked = withoutUnterminatedMaskedNode(masked);
+        }
+        final int maxLength = config.getMaxLoggedBodyLength();
+        final int omittedCharacters = maxLength < 0 ? 0 : Math.max(0, masked.length() - maxLength);
+        if (omittedCharacters == 0 && omittedResponseBodyBytes == 0) {
+            return masked;
+        }
+
+        final StringBuilder loggable = new StringBuilder(masked.length() + 32);
+        loggable.append(masked, 0, masked.length() - omittedCharacters).append("...(");
+        if (omittedCharacters > 0) {
+            loggable.append(omittedCharacters).append(" more characters");
+        }
+        if (omittedResponseBodyBytes > 0) {
+            loggable.append(omittedCharacters > 0 ? ", " : "").append(omittedResponseBodyBytes).append(" more bytes");
+        }
+        return loggable.append(')').toString();
+    }
+
+    private String withoutUnterminatedMaskedNode(final String masked) {
+        final String lowerCase = masked.toLowerCase(Locale.ENGLISH);
+        int end = masked.length();
+        for (final String nodeName : config.getHideXMLResponseNodeValues()) {
+            final String node = nodeName.toLowerCase(Locale.ENGLISH);
+            final int start = Math.max(lowerCase.lastIndexOf("<" + node), lowerCase.lastIndexOf("< " + node));
+            if (start >= 0 && start < end && lowerCase.indexOf("</" + node, start) < 0 && lowerCase.indexOf("</ " + node, start) < 0) {
+                end = start;
+            }
+        }
+        return masked.substring(0, end);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("RequestTrace");
+        sb.append("{clientIdentifier='").append(clientIdentifier).append('\'');
+        sb.append(", method='").append(method).append('\'');
+        sb.append(", url='").append(url).append('\'');
+        sb.append(", statusCode=").append(statusCode);
+        sb.append(", durationNanos=").append(durationNanos);
+        sb.append('}');
+        return sb.toString();
+    }
+}
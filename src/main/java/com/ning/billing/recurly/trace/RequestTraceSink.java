@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+/**
+ * Destination of the {@link RequestTrace} events emitted by {@link com.ning.billing.recurly.RecurlyClient}
+ */
+public interface RequestTraceSink {
+
+    /**
+     * Called on the request path before building a trace: implementations should answer cheaply.
+     *
+     * @param statusCode HTTP status code of the response
+     * @return true if a trace for this response would be recorded
+     */
+    boolean isTraceEnabled(int statusCode);
+
+    /**
+     * Called on the request path before building a trace: bodies are only decoded up to this length.
+     *
+     * @param maxLoggedBodyLength logging limit of the client (see {@link com.ning.billing.recurly.RecurlyClientConfig#getMaxLoggedBodyLength()})
+     * @return number of body bytes the traces must hold, -1 for complete bodies
+     */
+    int getMaxBodyLength(int maxLoggedBodyLength);
+
+    void trace(RequestTrace trace);
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read a trace archive written by {@link TraceArchiveWriter}
+ * <p/>
+ * Layout (gzipped): magic (int), version (int), then for each exchange a RECORD marker (byte), offset and
+ * duration in nanoseconds (longs), method and url (modified UTF-8), request body, status code (short), response
+ * headers (a count as short, then name and value pairs in modified UTF-8) and
+ * response body, bodies being a length (int, -1 for none) followed by UTF-8 bytes. An END marker (byte) closes
+ * the archive: an archive truncated by a crash is read up to its last complete exchange.
+ */
+public class TraceArchiveReader implements Closeable {
+
+    private final DataInputStream in;
+    private boolean done = false;
+
+    public TraceArchiveReader(final File archive) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(archive), 8192)));
+        try {
+            if (in.readInt() != TraceArchiveWriter.MAGIC) {
+                throw new IOException(archive + " is not a trace archive");
+            }
+            final int version = in.readInt();
+            if (version != TraceArchiveWriter.VERSION) {
+                throw new IOException("Unsupported trace archive version " + version);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read all the exchanges of an archive
+     */
+    public static List<RecordedExchange> readAll(final File archive) throws IOException {
+        final List<RecordedExchange> exchanges = new ArrayList<RecordedExchange>();
+        final TraceArchiveReader reader = new TraceArchiveReader(archive);
+        try {
+            RecordedExchange exchange;
+            while ((exchange = reader.next()) != null) {
+                exchanges.add(exchange);
+            }
+        } finally {
+            reader.close();
+        }
+        return exchanges;
+    }
+
+    /**
+     * @return the next exchange, null at the end of the archive
+     */
+    public RecordedExchange next() throws IOException {
+        if (done) {
+            return null;
+        }
+        try {
+            if (in.readByte() != TraceArchiveWriter.RECORD) {
+                done = true;
+                return null;
+            }
+            final long offsetNanos = in.readLong();
+            final long durationNanos = in.readLong();
+            final String method = in.readUTF();
+            final String url = in.readUTF();
+            final String requestBody = readBody();
+            final int statusCode = in.readShort();
+            final int headerCount = in.readShort();
+            final Map<String, String> responseHeaders = new LinkedHashMap<String, String>(headerCount * 2);
+            for (int i = 0; i < headerCount; i++) {
+                responseHeaders.put(in.readUTF(), in.readUTF());
+            }
+            final String responseBody = readBody();
+            return new RecordedExchange(offsetNanos, durationNanos, method, url, requestBody, statusCode, responseBody, responseHeaders);
+        } catch (EOFException e) {
+            // Truncated archive
+            done = true;
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readBody() throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, TraceArchiveWriter.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append {@link RecordedExchange}s to a trace archive
+ * <p/>
+ * The archive is a gzipped stream of binary records (see {@link TraceArchiveReader} for the layout): XML bodies
+ * compress well and no per-entry framing overhead is paid. Writes are synchronized, the archive is complete
+ * once closed.
+ */
+public class TraceArchiveWriter implements Closeable {
+
+    static final int MAGIC = 0x52435241; // RCRA
+    static final int VERSION = 1;
+    static final byte RECORD = 1;
+    static final byte END = 0;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream out;
+    private long exchanges = 0;
+    private boolean closed = false;
+
+    public TraceArchiveWriter(final File archive) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(archive), 8192)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    public synchronized void write(final RecordedExchange exchange) throws IOException {
+        if (closed) {
+            throw new IOException("Archive closed");
+        }
+        out.writeByte(RECORD);
+        out.writeLong(exchange.getOffsetNanos());
+        out.writeLong(exchange.getDurationNanos());
+        out.writeUTF(exchange.getMethod());
+        out.writeUTF(exchange.getUrl());
+        writeBody(exchange.getRequestBody());
+        out.writeShort(exchange.getStatusCode());
+        out.writeShort(exchange.getResponseHeaders().size());
+        for (final Map.Entry<String, String> header : exchange.getResponseHeaders().entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        writeBody(exchange.getResponseBody());
+        exchanges++;
+    }
+
+    public synchronized long getExchanges() {
+        return exchanges;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.writeByte(END);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBody(final String body) throws IOException {
+        if (body == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = body.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * ISO-8601 timestamp parser specialized for the format used by Recurly, e.g. 2011-06-27T12:34:56Z
+ * <p/>
+ * Timestamps of the form yyyy-MM-ddTHH:mm:ss[.SSS](Z|+HH:MM|-HH:MM) are decoded in place, without allocation;
+ * anything else (dates without time, week dates, missing offset, ...) goes through Joda's generic ISO parser,
+ * which is what {@code new DateTime(String)} uses, with the same result.
+ */
+public final class IsoDateTimeParser {
+
+    private static final DateTimeFormatter FALLBACK_PARSER = ISODateTimeFormat.dateTimeParser();
+
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private IsoDateTimeParser() {
+    }
+
+    /**
+     * @param text ISO-8601 timestamp
+     * @return the epoch millis
+     * @throws IllegalArgumentException if the text isn't a valid ISO-8601 timestamp
+     */
+    public static long parseMillis(final String text) {
+        final long millis = parseFast(text);
+        return millis != INVALID ? millis : FALLBACK_PARSER.parseMillis(text);
+    }
+
+    static long parseFast(final String text) {
+        final int length = text.length();
+        if (length < 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T' ||
+            text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return INVALID;
+        }
+
+        final int year = digits(text, 0, 4);
+        final int month = digits(text, 5, 2);
+        final int day = digits(text, 8, 2);
+        final int hour = digits(text, 11, 2);
+        final int minute = digits(text, 14, 2);
+        final int second = digits(text, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1] ||
+            (month == 2 && day == 29 && !isLeapYear(year)) || hour < 0 || hour > 23 || minute < 0 || minute > 59 ||
+            second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int position = 19;
+        int millisOfSecond = 0;
+        if (text.charAt(position) == '.') {
+            position++;
+            int fractionDigits = 0;
+            while (position < length && text.charAt(position) >= '0' && text.charAt(position) <= '9') {
+                if (fractionDigits < 3) {
+                    millisOfSecond = millisOfSecond * 10 + (text.charAt(position) - '0');
+                }
+                fractionDigits++;
+                position++;
+            }
+            if (fractionDigits == 0) {
+                return INVALID;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millisOfSecond *= 10;
+            }
+        }
+
+        if (position >= length) {
+            // No offset: local time, left to the generic parser
+            return INVALID;
+        }
+
+        final long offsetMillis;
+        final char zone = text.charAt(position);
+        if (zone == 'Z' && position + 1 == length) {
+            offsetMillis = 0;
+        } else if ((zone == '+' || zone == '-') && position + 6 == length && text.charAt(position + 3) == ':') {
+            final int offsetHours = digits(text, position + 1, 2);
+            final int offsetMinutes = digits(text, position + 4, 2);
+            if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return INVALID;
+            }
+            final long offset = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+            offsetMillis = zone == '+' ? offset : -offset;
+        } else {
+            return INVALID;
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE +
+               second * MILLIS_PER_SECOND + millisOfSecond - offsetMillis;
+    }
+
+    /**
+     * @return the value of the decimal digits, -1 if a character isn't a digit
+     */
+    private static int digits(final String text, final int offset, final int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(final int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's algorithm)
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
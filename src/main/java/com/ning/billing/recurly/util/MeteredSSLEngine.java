@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * SSLEngine decorator reporting handshake counts and latencies to {@link SslHandshakeMetrics}.
+ */
+class MeteredSSLEngine extends SSLEngine {
+
+    private final SSLEngine delegate;
+    private final SslHandshakeMetrics metrics;
+
+    private boolean initialHandshakeDone = false;
+    private long handshakeStartNanos = -1;
+    private long handshakeStartMillis = -1;
+
+    MeteredSSLEngine(final SSLEngine delegate, final SslHandshakeMetrics metrics) {
+        super(delegate.getPeerHost(), delegate.getPeerPort());
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SSLEngineResult wrap(final ByteBuffer[] srcs, final int offset, final int length, final ByteBuffer dst) throws SSLException {
+        beforeOperation();
+        try {
+            return afterOperation(delegate.wrap(srcs, offset, length, dst));
+        } catch (SSLException e) {
+            onFailure();
+            throw e;
+        }
+    }
+
+    @Override
+    public SSLEngineResult unwrap(final ByteBuffer src, final ByteBuffer[] dsts, final int offset, final int length) throws SSLException {
+        beforeOperation();
+        try {
+            return afterOperation(delegate.unwrap(src, dsts, offset, length));
+        } catch (SSLException e) {
+            onFailure();
+            throw e;
+        }
+    }
+
+    @Override
+    public void beginHandshake() throws SSLException {
+        markHandshakeStart();
+        delegate.beginHandshake();
+    }
+
+    private void beforeOperation() {
+        if (handshakeStartNanos < 0 && (!initialHandshakeDone || delegate.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING)) {
+            markHandshakeStart();
+        }
+    }
+
+    private void markHandshakeStart() {
+        if (handshakeStartNanos < 0) {
+            handshakeStartNanos = System.nanoTime();
+            handshakeStartMillis = System.currentTimeMillis();
+        }
+    }
+
+    private SSLEngineResult afterOperation(final SSLEngineResult result) {
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED && handshakeStartNanos >= 0) {
+            // A resumed session was created by an earlier handshake and pulled out of the session cache
+            final boolean resumed = delegate.getSession().getCreationTime() < handshakeStartMillis;
+            metrics.recordHandshake(System.nanoTime() - handshakeStartNanos, resumed);
+            initialHandshakeDone = true;
+            handshakeStartNanos = -1;
+        }
+        return result;
+    }
+
+    private void onFailure() {
+        if (handshakeStartNanos >= 0) {
+            metrics.recordFailure();
+            handshakeStartNanos = -1;
+        }
+    }
+
+    @Override
+    public Runnable getDelegatedTask() {
+        return delegate.getDelegatedTask();
+    }
+
+    @Override
+    public void closeInbound() throws SSLException {
+        delegate.closeInbound();
+    }
+
+    @Override
+    public boolean isInboundDone() {
+        return delegate.isInboundDone();
+    }
+
+    @Override
+    public void closeOutbound() {
+        delegate.closeOutbound();
+    }
+
+    @Override
+    public boolean isOutboundDone() {
+        return delegate.isOutboundDone();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public String[] getEnabledCipherSuites() {
+        return delegate.getEnabledCipherSuites();
+    }
+
+    @Override
+    public void setEnabledCipherSuites(final String[] suites) {
+        delegate.setEnabledCipherSuites(suites);
+    }
+
+    @Override
+    public String[] getSupportedProtocols() {
+        return delegate.getSupportedProtocols();
+    }
+
+    @Override
+    public String[] getEnabledProtocols() {
+        return delegate.getEnabledProtocols();
+    }
+
+    @Override
+    public void setEnabledProtocols(final String[] protocols) {
+        delegate.setEnabledProtocols(protocols);
+    }
+
+    @Override
+    public SSLSession getSession() {
+        return delegate.getSession();
+    }
+
+    @Override
+    public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+        return delegate.getHandshakeStatus();
+    }
+
+    @Override
+    public void setUseClientMode(final boolean mode) {
+        delegate.setUseClientMode(mode);
+    }
+
+    @Override
+    public boolean getUseClientMode() {
+        return delegate.getUseClientMode();
+    }
+
+    @Override
+    public void setNeedClientAuth(final boolean need) {
+        delegate.setNeedClientAuth(need);
+    }
+
+    @Override
+    public boolean getNeedClientAuth() {
+        return delegate.getNeedClientAuth();
+    }
+
+    @Override
+    public void setWantClientAuth(final boolean want) {
+        delegate.setWantClientAuth(want);
+    }
+
+    @Override
+    public boolean getWantClientAuth() {
+        return delegate.getWantClientAuth();
+    }
+
+    @Override
+    public void setEnableSessionCreation(final boolean flag) {
+        delegate.setEnableSessionCreation(flag);
+    }
+
+    @Override
+    public boolean getEnableSessionCreation() {
+        return delegate.getEnableSessionCreation();
+    }
+
+    @Override
+    public SSLParameters getSSLParameters() {
+        return delegate.getSSLParameters();
+    }
+
+    @Override
+    public void setSSLParameters(final SSLParameters params) {
+        delegate.setSSLParameters(params);
+    }
+}
@@ -28,6 +28,7 @@ import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
@@ -35,12 +36,28 @@ import javax.net.ssl.X509TrustManager;
 import com.ning.http.util.SslUtils;
 
 /**
+ * Holder for the SSLContext shared by all {@link com.ning.billing.recurly.RecurlyClient} instances.
+ * <p/>
+ * The context is created lazily and can be rebuilt at runtime via {@link #reloadSSLContext()}, e.g. after
+ * the keystore has been rotated. Engines created after a reload use the new context, already established
+ * connections are left untouched.
+ *
  * @see SslUtils
  */
 public class RecurlySslUtils
 {
+    public static final String RECURLY_SSL_SESSION_CACHE_SIZE_KEY = "recurly.ssl.session.cache.size";
+    public static final String RECURLY_SSL_SESSION_TIMEOUT_KEY = "recurly.ssl.session.timeout";
+
     private static final String DEFAULT_PROTOCOL = "TLSv1.2";
-    private static SSLContext context = null;
+
+    // We only ever talk to a handful of Recurly hosts: a small cache is enough to get abbreviated handshakes
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 256;
+    private static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 3600;
+
+    private static final Object lock = new Object();
+    private static final SslHandshakeMetrics handshakeMetrics = new SslHandshakeMetrics();
+    private static volatile SSLContext context = null;
 
     public static SSLEngine getSSLEngine()
             throws GeneralSecurityException, IOException {
@@ -55,18 +72,71 @@ public class RecurlySslUtils
         return engine;
     }
 
+    /**
+     * Create a client engine for the given peer. Unlike {@link #getSSLEngine()}, passing the peer host and port
+     * lets the JSSE client session cache look up previous sessions, hence allowing abbreviated handshakes.
+     *
+     * @param peerHost remote host
+     * @param peerPort remote port
+     * @return a client-mode engine reporting to {@link #getHandshakeMetrics()}
+     */
+    public static SSLEngine getSSLEngine(final String peerHost, final int peerPort)
+            throws GeneralSecurityException, IOException {
+        final SSLEngine engine = getSSLContext().createSSLEngine(peerHost, peerPort);
+        engine.setUseClientMode(true);
+        return new MeteredSSLEngine(engine, handshakeMetrics);
+    }
+
     public static SSLContext getSSLContext()
             throws GeneralSecurityException, IOException {
-        if (context == null) {
-            SSLConfig config = new SSLConfig();
-            if (config.keyStoreLocation == null
-                    || config.trustStoreLocation == null) {
-                context = getLooseSSLContext();
-            } else {
-                context = getStrictSSLContext(config);
+        SSLContext current = context;
+        if (current == null) {
+            synchronized (lock) {
+                current = context;
+                if (current == null) {
+                    current = createSSLContext();
+                    context = current;
+                }
             }
         }
-        return context;
+        return current;
+    }
+
+    /**
+     * Rebuild the shared SSLContext, re-reading the keystore and truststore configuration.
+     *
+     * @return the new SSLContext
+     */
+    public static SSLContext reloadSSLContext()
+            throws GeneralSecurityException, IOException {
+        synchronized (lock) {
+            final SSLContext newContext = createSSLContext();
+            context = newContext;
+            return newContext;
+        }
+    }
+
+    public static SslHandshakeMetrics getHandshakeMetrics() {
+        return handshakeMetrics;
+    }
+
+    private static SSLContext createSSLContext()
+            throws GeneralSecurityException, IOException {
+        final SSLConfig config = new SSLConfig();
+        final SSLContext newContext;
+        if (config.keyStoreLocation == null
+                || config.trustStoreLocation == null) {
+            newContext = getLooseSSLContext();
+        } else {
+            newContext = getStrictSSLContext(config);
+        }
+
+        final SSLSessionContext sessionContext = newContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(config.sessionCacheSize);
+            sessionContext.setSessionTimeout(config.sessionTimeoutSeconds);
+        }
+        return newContext;
     }
 
     static SSLContext getStrictSSLContext(SSLConfig config)
@@ -147,6 +217,10 @@ public class RecurlySslUtils
 
         public String trustManagerAlgorithm = "SunX509";
 
+        public int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+
+        public int sessionTimeoutSeconds = DEFAULT_SESSION_TIMEOUT_SECONDS;
+
         public SSLConfig() {
             keyStoreLocation = System.getProperty("javax.net.ssl.keyStore");
             keyStorePassword = System.getProperty("javax.net.ssl.keyStorePassword", "changeit");
@@ -173,6 +247,9 @@ public class RecurlySslUtils
             if (trustManagerAlgorithm == null) {
                 trustManagerAlgorithm = "SunX509";
             }
+
+            sessionCacheSize = Integer.getInteger(RECURLY_SSL_SESSION_CACHE_SIZE_KEY, DEFAULT_SESSION_CACHE_SIZE);
+            sessionTimeoutSeconds = Integer.getInteger(RECURLY_SSL_SESSION_TIMEOUT_KEY, DEFAULT_SESSION_TIMEOUT_SECONDS);
         }
     }
 }
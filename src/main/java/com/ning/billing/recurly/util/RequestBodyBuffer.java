@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ning.http.client.Body;
+import com.ning.http.client.BodyGenerator;
+
+/**
+ * Reusable byte buffer holding a request body
+ * <p/>
+ * Payloads are serialized directly into the buffer and sent from there, without an intermediate String.
+ * Unlike {@link ResponseBodyBuffer}, buffers are pooled across threads, and reference counted: the request may
+ * complete (early response, timeout) while the http client is still reading the body, so a buffer only goes back
+ * to the pool once its owner released it and every body created from it was closed. A body that is never closed
+ * keeps its buffer out of the pool, for the garbage collector to reclaim.
+ */
+public class RequestBodyBuffer extends OutputStream {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_CAPACITY = 4096;
+    // Don't keep around buffers grown by exceptionally large payloads
+    private static final int MAX_POOLED_CAPACITY = 256 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final Queue<RequestBodyBuffer> POOL = new ConcurrentLinkedQueue<RequestBodyBuffer>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    // The owner's reference, plus one per open body
+    private final AtomicInteger references = new AtomicInteger();
+    private final AtomicBoolean released = new AtomicBoolean(true);
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length = 0;
+
+    /**
+     * @return a pooled buffer, or a new one if none is available
+     */
+    public static RequestBodyBuffer acquire() {
+        RequestBodyBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = new RequestBodyBuffer();
+        } else {
+            POOLED.decrementAndGet();
+        }
+        buffer.length = 0;
+        buffer.references.set(1);
+        buffer.released.set(false);
+        return buffer;
+    }
+
+    /**
+     * Release the owner's reference: the buffer goes back to the pool once the bodies being sent are closed too.
+     * Extra calls are ignored.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            dereference();
+        }
+    }
+
+    private boolean reference() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    private void dereference() {
+        if (references.decrementAndGet() == 0) {
+            recycle();
+        }
+    }
+
+    private void recycle() {
+        length = 0;
+        if (bytes.length > MAX_POOLED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        if (POOLED.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            POOL.offer(this);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void write(final int b) {
+        ensureCapacity(length + 1);
+        bytes[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        ensureCapacity(length + len);
+        System.arraycopy(b, off, bytes, length, len);
+        length += len;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return a body generator over the content (not a copy), which can create bodies until the buffer is released.
+     *         Each body holds a reference on the buffer until it is closed, and reads the content from the start,
+     *         so that requests can be retried.
+     */
+    public BodyGenerator asBodyGenerator() {
+        return new BodyGenerator() {
+            @Override
+            public Body createBody() throws IOException {
+                return new BufferBody();
+            }
+        };
+    }
+
+    /**
+     * @return the content, decoded as UTF-8
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    /**
+     * @param maxBytes maximum number of bytes to decode, -1 for no limit
+     * @return the beginning of the content, decoded as UTF-8
+     */
+    public String toString(final int maxBytes) {
+        return ResponseBodyBuffer.decode(bytes, length, maxBytes);
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > bytes.length) {
+            final byte[] newBytes = new byte[Math.max(capacity, bytes.length * 2)];
+            System.arraycopy(bytes, 0, newBytes, 0, length);
+            bytes = newBytes;
+        }
+    }
+
+    private class BufferBody implements Body {
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private int position = 0;
+
+        private BufferBody() throws IOException {
+            if (released.get() || !reference()) {
+                throw new IOException("Request body buffer already released");
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public long read(final ByteBuffer buffer) throws IOException {
+            if (position == length) {
+                return -1;
+            }
+            final int read = Math.min(buffer.remaining(), length - position);
+            buffer.put(bytes, position, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                dereference();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reusable byte buffer holding a response body
+ * <p/>
+ * The body is read once from the response stream into a per-thread buffer, parsed directly from there and
+ * only decoded to a String when needed (error handling, logging). Buffers must be released after use.
+ */
+public class ResponseBodyBuffer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_CAPACITY = 8192;
+    // Don't keep around buffers grown by exceptionally large responses
+    private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<ResponseBodyBuffer> POOL = new ThreadLocal<ResponseBodyBuffer>() {
+        @Override
+        protected ResponseBodyBuffer initialValue() {
+            return new ResponseBodyBuffer();
+        }
+    };
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length = 0;
+    private boolean inUse = false;
+
+    /**
+     * @return the buffer of the current thread, or a new one if it is already in use
+     */
+    public static ResponseBodyBuffer acquire() {
+        final ResponseBodyBuffer buffer = POOL.get();
+        if (buffer.inUse) {
+            final ResponseBodyBuffer fresh = new ResponseBodyBuffer();
+            fresh.inUse = true;
+            return fresh;
+        }
+        buffer.inUse = true;
+        buffer.length = 0;
+        return buffer;
+    }
+
+    /**
+     * Read the stream until its end (the stream is not closed)
+     *
+     * @param in             stream to read
+     * @param stripNewlines  whether to drop '\n' bytes
+     * @return this buffer
+     */
+    public ResponseBodyBuffer readFrom(final InputStream in, final boolean stripNewlines) throws IOException {
+        length = 0;
+        int read;
+        while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length) {
+                grow();
+            }
+        }
+
+        if (stripNewlines) {
+            int newLength = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != '\n') {
+                    bytes[newLength++] = bytes[i];
+                }
+            }
+            length = newLength;
+        }
+        return this;
+    }
+
+    public void release() {
+        length = 0;
+        if (bytes.length > MAX_POOLED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        inUse = false;
+    }
+
+    /**
+     * @return the backing array, valid between 0 and {@link #getLength()} until the buffer is released
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * @return a stream over the content (not a copy), valid until the buffer is released
+     */
+    public InputStream asInputStream() {
+        return new ByteArrayInputStream(bytes, 0, length);
+    }
+
+    /**
+     * @return a copy of the content
+     */
+    public byte[] toByteArray() {
+        final byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @return the content, decoded as UTF-8
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    /**
+     * @param maxBytes maximum number of bytes to decode, -1 for no limit
+     * @return the beginning of the content, decoded as UTF-8
+     */
+    public String toString(final int maxBytes) {
+        return decode(bytes, length, maxBytes);
+    }
+
+    static String decode(final byte[] bytes, final int length, final int maxBytes) {
+        if (maxBytes < 0 || length <= maxBytes) {
+            return new String(bytes, 0, length, UTF_8);
+        }
+
+        // Don't cut a multi-byte character: back up to its first byte
+        int end = maxBytes;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        return new String(bytes, 0, end, UTF_8);
+    }
+
+    private void grow() {
+        final byte[] newBytes = new byte[bytes.length * 2];
+        System.arraycopy(bytes, 0, newBytes, 0, length);
+        bytes = newBytes;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the TLS handshakes performed by the engines handed out by {@link RecurlySslUtils}.
+ * <p/>
+ * A handshake is considered resumed (abbreviated) when the negotiated session was created before the
+ * handshake started, i.e. it was pulled out of the client session cache.
+ */
+public class SslHandshakeMetrics {
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong failedHandshakes = new AtomicLong();
+    private final AtomicLong totalHandshakeNanos = new AtomicLong();
+    private final AtomicLong maxHandshakeNanos = new AtomicLong();
+
+    void recordHandshake(final long durationNanos, final boolean resumed) {
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+        totalHandshakeNanos.addAndGet(durationNanos);
+
+        long currentMax = maxHandshakeNanos.get();
+        while (durationNanos > currentMax && !maxHandshakeNanos.compareAndSet(currentMax, durationNanos)) {
+            currentMax = maxHandshakeNanos.get();
+        }
+    }
+
+    void recordFailure() {
+        failedHandshakes.incrementAndGet();
+    }
+
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    public long getFailedHandshakes() {
+        return failedHandshakes.get();
+    }
+
+    public long getCompletedHandshakes() {
+        return fullHandshakes.get() + resumedHandshakes.get();
+    }
+
+    public long getTotalHandshakeNanos() {
+        return totalHandshakeNanos.get();
+    }
+
+    public long getMaxHandshakeNanos() {
+        return maxHandshakeNanos.get();
+    }
+
+    /**
+     * @return the mean handshake latency in nanoseconds, 0 if no handshake completed yet
+     */
+    public long getMeanHandshakeNanos() {
+        final long completed = getCompletedHandshakes();
+        return completed == 0 ? 0 : totalHandshakeNanos.get() / completed;
+    }
+
+    public void reset() {
+        fullHandshakes.set(0);
+        resumedHandshakes.set(0);
+        failedHandshakes.set(0);
+        totalHandshakeNanos.set(0);
+        maxHandshakeNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("SslHandshakeMetrics");
+        sb.append("{fullHandshakes=").append(getFullHandshakes());
+        sb.append(", resumedHandshakes=").append(getResumedHandshakes());
+        sb.append(", failedHandshakes=").append(getFailedHandshakes());
+        sb.append(", meanHandshakeNanos=").append(getMeanHandshakeNanos());
+        sb.append(", maxHandshakeNanos=").append(getMaxHandshakeNanos());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Bounded, concurrent pool of canonical String instances, for enum-like values (states, currencies, plan codes, ...)
+ * <p/>
+ * Unlike {@link String#intern()}, entries live on the regular heap and the pool stops growing once it holds
+ * {@link #getMaxSize()} values: later values are returned as-is, so that a field with unexpectedly high
+ * cardinality can't exhaust memory. Long values are never pooled.
+ */
+public class StringPool {
+
+    public static final int MAX_VALUE_LENGTH = 64;
+
+    private final ConcurrentMap<String, String> pool = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile int maxSize;
+
+    /**
+     * @param maxSize maximum number of distinct values held, 0 to disable pooling
+     */
+    public StringPool(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param value value to deduplicate
+     * @return the pooled instance equal to the value, or the value itself
+     */
+    @Nullable
+    public String intern(@Nullable final String value) {
+        if (value == null || value.length() > MAX_VALUE_LENGTH) {
+            return value;
+        }
+
+        final String pooled = pool.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (size.get() >= maxSize) {
+            return value;
+        }
+
+        final String previous = pool.putIfAbsent(value, value);
+        if (previous != null) {
+            return previous;
+        }
+        size.incrementAndGet();
+        return value;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Change the bound; values already pooled are kept until {@link #clear()}
+     */
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void clear() {
+        pool.clear();
+        size.set(0);
+    }
+}
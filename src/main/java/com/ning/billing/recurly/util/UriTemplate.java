@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precompiled resource path template, e.g. /accounts/{account_code}/billing_info
+ * <p/>
+ * Templates are parsed once and expanded directly into a caller-provided StringBuilder. Variables are
+ * percent-encoded as path segments (RFC 3986), query parameters as query components.
+ */
+public class UriTemplate {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Characters allowed as-is in a path segment: unreserved, sub-delims, ':' and '@'
+    private static final boolean[] PATH_SEGMENT_SAFE = safeCharacters("-._~!$&'()*+,;=:@");
+    // Characters allowed as-is in a query name or value: unreserved only, so that '&', '=' and '+' are escaped
+    private static final boolean[] QUERY_SAFE = safeCharacters("-._~");
+
+    private final String template;
+    private final String[] literals;
+    private final String[] variables;
+
+    private UriTemplate(final String template, final String[] literals, final String[] variables) {
+        this.template = template;
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * Parse a template
+     *
+     * @param template template, variables are enclosed in curly braces
+     * @return the compiled template
+     */
+    public static UriTemplate compile(final String template) {
+        final List<String> literals = new ArrayList<String>();
+        final List<String> variables = new ArrayList<String>();
+
+        int position = 0;
+        while (true) {
+            final int start = template.indexOf('{', position);
+            if (start < 0) {
+                literals.add(template.substring(position));
+                break;
+            }
+            final int end = template.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated variable in template " + template);
+            }
+            literals.add(template.substring(position, start));
+            variables.add(template.substring(start + 1, end));
+            position = end + 1;
+        }
+
+        return new UriTemplate(template, literals.toArray(new String[literals.size()]), variables.toArray(new String[variables.size()]));
+    }
+
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * Expand the template into the builder
+     *
+     * @param builder builder to append to
+     * @param values  variable values, in order of appearance in the template
+     * @return the builder
+     */
+    public StringBuilder appendTo(final StringBuilder builder, final Object... values) {
+        if (values.length != variables.length) {
+            throw new IllegalArgumentException(String.format("Template %s expects %d value(s), got %d", template, variables.length, values.length));
+        }
+
+        builder.append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            appendEncoded(builder, String.valueOf(values[i]), PATH_SEGMENT_SAFE);
+            builder.append(literals[i + 1]);
+        }
+        return builder;
+    }
+
+    public String expand(final Object... values) {
+        return appendTo(new StringBuilder(template.length() + 32), values).toString();
+    }
+
+    /**
+     * Append an encoded query parameter, using '?' or '&' as separator depending on whether the builder
+     * already contains a query
+     *
+     * @param builder url builder
+     * @param name    parameter name
+     * @param value   parameter value
+     * @return the builder
+     */
+    public static StringBuilder appendQueryParameter(final StringBuilder builder, final String name, final Object value) {
+        builder.append(builder.indexOf("?") < 0 ? '?' : '&');
+        appendEncoded(builder, name, QUERY_SAFE);
+        builder.append('=');
+        appendEncoded(builder, String.valueOf(value), QUERY_SAFE);
+        return builder;
+    }
+
+    static void appendEncoded(final StringBuilder builder, final String value, final boolean[] safe) {
+        // Fast path: nothing to escape
+        int i = 0;
+        final int length = value.length();
+        while (i < length) {
+            final char c = value.charAt(i);
+            if (c >= 128 || !safe[c]) {
+                break;
+            }
+            i++;
+        }
+        if (i == length) {
+            builder.append(value);
+            return;
+        }
+
+        builder.append(value, 0, i);
+        while (i < length) {
+            final char c = value.charAt(i);
+            if (c < 128 && safe[c]) {
+                builder.append(c);
+                i++;
+            } else {
+                // Encode the whole run of unsafe characters at once to keep surrogate pairs together
+                int end = i + 1;
+                while (end < length && (value.charAt(end) >= 128 || !safe[value.charAt(end)])) {
+                    end++;
+                }
+                for (final byte b : value.substring(i, end).getBytes(UTF_8)) {
+                    builder.append('%');
+                    builder.append(HEX_DIGITS[(b >> 4) & 0x0F]);
+                    builder.append(HEX_DIGITS[b & 0x0F]);
+                }
+                i = end;
+            }
+        }
+    }
+
+    private static boolean[] safeCharacters(final String extraCharacters) {
+        final boolean[] safe = new boolean[128];
+        for (char c = 'a'; c <= 'z'; c++) {
+            safe[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            safe[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            safe[c] = true;
+        }
+        for (final char c : extraCharacters.toCharArray()) {
+            safe[c] = true;
+        }
+        return safe;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
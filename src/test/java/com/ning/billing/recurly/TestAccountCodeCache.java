@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.push.account.CanceledAccountNotification;
+import com.ning.billing.recurly.model.push.account.NewAccountNotification;
+import com.ning.billing.recurly.util.BloomFilter;
+
+public class TestAccountCodeCache {
+
+    @Test(groups = "fast")
+    public void testNotFoundCache() throws Exception {
+        final AccountCodeCache cache = new AccountCodeCache(1000, 0.01, 1, TimeUnit.HOURS);
+        Assert.assertFalse(cache.isKnownMissing("bob"));
+
+        cache.recordNotFound("bob", cache.getGeneration());
+        Assert.assertTrue(cache.isKnownMissing("bob"));
+        Assert.assertEquals(cache.getCachedNotFounds(), 1);
+
+        // Created meanwhile: not remembered
+        final long generation = cache.getGeneration();
+        cache.addKnown("alice");
+        cache.recordNotFound("carol", generation);
+        Assert.assertFalse(cache.isKnownMissing("carol"));
+
+        // Creation invalidates
+        cache.addKnown("bob");
+        Assert.assertFalse(cache.isKnownMissing("bob"));
+        Assert.assertEquals(cache.getNotFoundEntries(), 0);
+
+        // Expired
+        final AccountCodeCache expiring = new AccountCodeCache(1000, 0.01, 1, TimeUnit.NANOSECONDS);
+        expiring.recordNotFound("bob", expiring.getGeneration());
+        Thread.sleep(1);
+        Assert.assertFalse(expiring.isKnownMissing("bob"));
+    }
+
+    @Test(groups = "fast")
+    public void testCompleteFilter() throws Exception {
+        final AccountCodeCache cache = new AccountCodeCache(1000, 0.01, 1, TimeUnit.HOURS);
+        cache.addKnown("john");
+
+        final NewAccountNotification newAccount = new NewAccountNotification();
+        newAccount.setAccount(newAccount("jane"));
+        cache.onNotification(newAccount);
+        final CanceledAccountNotification canceledAccount = new CanceledAccountNotification();
+        canceledAccount.setAccount(newAccount("jim"));
+        cache.onNotification(canceledAccount);
+
+        // Not complete: a missing code may just not have been listed
+        Assert.assertFalse(cache.isKnownMissing("bob"));
+
+        cache.setComplete(true);
+        Assert.assertTrue(cache.isKnownMissing("bob"));
+        Assert.assertEquals(cache.getFilteredNotFounds(), 1);
+        Assert.assertFalse(cache.isKnownMissing("john"));
+        Assert.assertFalse(cache.isKnownMissing("jane"));
+        Assert.assertFalse(cache.isKnownMissing("jim"));
+
+        cache.clear();
+        Assert.assertFalse(cache.isComplete());
+    }
+
+    @Test(groups = "fast")
+    public void testBloomFilter() throws Exception {
+        final BloomFilter filter = new BloomFilter(10000, 0.01);
+        Assert.assertEquals(filter.getHashCount(), 7);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("account-" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("account-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue(falsePositives < 2000, "False positives: " + falsePositives);
+    }
+
+    private static Account newAccount(final String accountCode) {
+        final Account account = new Account();
+        account.setAccountCode(accountCode);
+        return account;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.exceptions.CommonRequestException;
+import com.ning.billing.recurly.model.exceptions.NotFoundException;
+import com.ning.billing.recurly.model.exceptions.RecurlyException;
+import com.ning.billing.recurly.model.exceptions.RequestException;
+import com.ning.billing.recurly.model.exceptions.TransactionException;
+
+public class TestErrorResponseClassifier {
+
+    private static final String URL = "https://api.recurly.com:443/v2/accounts/1234";
+
+    private ErrorResponseClassifier classifier;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        classifier = new ErrorResponseClassifier(RecurlyObject.newXmlMapper());
+    }
+
+    @Test(groups = "fast")
+    public void testNotFound() throws Exception {
+        final String body = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                            "<error>\n" +
+                            "  <symbol>not_found</symbol>\n" +
+                            "  <description lang=\"en-US\">Couldn't find Account with account_code = 1234</description>\n" +
+                            "</error>";
+        final RecurlyException exception = classifier.classify(404, body, URL);
+        Assert.assertTrue(exception instanceof NotFoundException);
+        Assert.assertEquals(((NotFoundException) exception).getError().getSymbol(), "not_found");
+    }
+
+    @Test(groups = "fast")
+    public void testTransactionError() throws Exception {
+        final String errors = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                              "<errors>\n" +
+                              "  <transaction_error>\n" +
+                              "    <error_code>declined</error_code>\n" +
+                              "    <error_category>soft</error_category>\n" +
+                              "    <merchant_message>The card was declined</merchant_message>\n" +
+                              "    <customer_message>Your card was declined</customer_message>\n" +
+                              "  </transaction_error>\n" +
+                              "</errors>";
+        final RecurlyException exception = classifier.classify(422, errors, URL);
+        Assert.assertTrue(exception instanceof TransactionException);
+        Assert.assertEquals(((TransactionException) exception).getErrors().getTransactionError().getErrorCode(), "declined");
+
+        final String transactionError = "<transaction_error><error_code>fraud_gateway</error_code></transaction_error>";
+        final RecurlyException rootException = classifier.classify(422, transactionError, URL);
+        Assert.assertTrue(rootException instanceof TransactionException);
+        Assert.assertEquals(((TransactionException) rootException).getErrors().getTransactionError().getErrorCode(), "fraud_gateway");
+    }
+
+    @Test(groups = "fast")
+    public void testValidationErrors() throws Exception {
+        final String body = "<errors>\n" +
+                            "  <error field=\"account.account_code\" symbol=\"taken\">has already been taken</error>\n" +
+                            "</errors>";
+        final RecurlyException exception = classifier.classify(422, body, URL);
+        Assert.assertTrue(exception instanceof RequestException);
+        Assert.assertFalse(exception instanceof TransactionException);
+    }
+
+    @Test(groups = "fast")
+    public void testUnknownBodies() throws Exception {
+        Assert.assertTrue(classifier.classify(500, "", URL) instanceof CommonRequestException);
+        Assert.assertTrue(classifier.classify(502, "<html><body>Bad gateway</body></html>", URL) instanceof CommonRequestException);
+        Assert.assertTrue(classifier.classify(503, "Service Unavailable", URL) instanceof CommonRequestException);
+        Assert.assertNull(ErrorResponseClassifier.peekRootElement("not xml"));
+        Assert.assertEquals(ErrorResponseClassifier.peekRootElement("<?xml version=\"1.0\"?><!-- comment --><errors/>"), "errors");
+    }
+}
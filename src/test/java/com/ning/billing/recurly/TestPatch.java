@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Adjustment;
+import com.ning.billing.recurly.model.Adjustments;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.RecurlyObject;
+
+public class TestPatch {
+
+    private final XmlMapper patchXmlMapper = Patch.newXmlMapper();
+
+    @Test(groups = "fast")
+    public void testSparsePayload() throws Exception {
+        final Account account = newAccount();
+
+        final String xml = Patch.of(account, "email").writer(patchXmlMapper).writeValueAsString(account);
+        Assert.assertEquals(xml, "<account xmlns=\"\"><email>jane@example.com</email></account>");
+
+        // Nested objects listed are sent in full
+        final String withBillingInfo = Patch.of(account, "email").include("billing_info").writer(patchXmlMapper).writeValueAsString(account);
+        Assert.assertTrue(withBillingInfo.contains("<email>jane@example.com</email>"));
+        Assert.assertTrue(withBillingInfo.contains("<billing_info><first_name>Jane</first_name><last_name>Doe</last_name></billing_info>"));
+        Assert.assertFalse(withBillingInfo.contains("first_name>Janet"));
+        Assert.assertFalse(withBillingInfo.contains("adjustment"));
+    }
+
+    @Test(groups = "fast")
+    public void testFullPayloadOutsidePatches() throws Exception {
+        final Account account = newAccount();
+        // Without a patch, the filtering mapper serializes like the default one
+        Assert.assertEquals(patchXmlMapper.writeValueAsString(account), RecurlyObject.newXmlMapper().writeValueAsString(account));
+    }
+
+    private static Account newAccount() {
+        final Account account = new Account();
+        account.setAccountCode("jane");
+        account.setEmail("jane@example.com");
+        account.setFirstName("Janet");
+        final BillingInfo billingInfo = new BillingInfo();
+        billingInfo.setFirstName("Jane");
+        billingInfo.setLastName("Doe");
+        account.setBillingInfo(billingInfo);
+        final Adjustments adjustments = new Adjustments();
+        final Adjustment adjustment = new Adjustment();
+        adjustment.setUnitAmountInCents(1000);
+        adjustments.add(adjustment);
+        account.setAdjustments(adjustments);
+        return account;
+    }
+}
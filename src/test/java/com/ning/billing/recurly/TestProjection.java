@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.io.ByteArrayInputStream;
+
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.Subscriptions;
+
+public class TestProjection {
+
+    private static final Projection PROJECTION = Projection.of("uuid", "state", "plan", "current_period_ends_at");
+
+    private final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+
+    @Test(groups = "fast")
+    public void testProjectedList() throws Exception {
+        final Subscriptions subscriptions = PROJECTION.read(xmlMapper, new ByteArrayInputStream(subscriptionsXml(2).getBytes("UTF-8")), Subscriptions.class);
+        Assert.assertEquals(subscriptions.size(), 2);
+
+        final Subscription subscription = subscriptions.get(1);
+        Assert.assertEquals(subscription.getUuid(), "44f83d7cba354d5b84812419f923ea01");
+        Assert.assertEquals(subscription.getState(), "active");
+        Assert.assertEquals(subscription.getPlan().getPlanCode(), "gold");
+        Assert.assertEquals(subscription.getCurrentPeriodEndsAt(), new DateTime("2011-07-27T07:00:00Z"));
+
+        // Not projected
+        Assert.assertNull(subscription.getAccount());
+        Assert.assertNull(subscription.getCurrency());
+        Assert.assertNull(subscription.getUnitAmountInCents());
+        Assert.assertNull(subscription.getActivatedAt());
+        Assert.assertNull(subscription.getAddOns());
+    }
+
+    @Test(groups = "fast")
+    public void testProjectedObject() throws Exception {
+        final String xml = "<subscription>\n" +
+                           "  <uuid>44f83d7cba354d5b84812419f923ea96</uuid>\n" +
+                           "  <plan><plan_code>gold</plan_code></plan>\n" +
+                           "  <quantity type=\"integer\">1</quantity>\n" +
+                           "</subscription>";
+        final Subscription subscription = Projection.of("uuid").read(xmlMapper, new ByteArrayInputStream(xml.getBytes("UTF-8")), Subscription.class);
+        Assert.assertEquals(subscription.getUuid(), "44f83d7cba354d5b84812419f923ea96");
+        Assert.assertNull(subscription.getPlan());
+        Assert.assertNull(subscription.getQuantity());
+    }
+
+    private static String subscriptionsXml(final int count) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<subscriptions type=\"array\">\n");
+        for (int i = 0; i < count; i++) {
+            final String uuid = String.format("44f83d7cba354d5b84812419f923ea%02d", i % 100);
+            xml.append("  <subscription href=\"https://api.recurly.com/v2/subscriptions/").append(uuid).append("\">\n")
+               .append("    <account href=\"https://api.recurly.com/v2/accounts/1\"/>\n")
+               .append("    <plan href=\"https://api.recurly.com/v2/plans/gold\">\n")
+               .append("      <plan_code>gold</plan_code>\n")
+               .append("      <name>Gold plan</name>\n")
+               .append("    </plan>\n")
+               .append("    <uuid>").append(uuid).append("</uuid>\n")
+               .append("    <state>active</state>\n")
+               .append("    <unit_amount_in_cents type=\"integer\">800</unit_amount_in_cents>\n")
+               .append("    <currency>EUR</currency>\n")
+               .append("    <quantity type=\"integer\">1</quantity>\n")
+               .append("    <activated_at type=\"datetime\">2011-05-27T07:00:00Z</activated_at>\n")
+               .append("    <canceled_at nil=\"nil\"></canceled_at>\n")
+               .append("    <current_period_started_at type=\"datetime\">2011-06-27T07:00:00Z</current_period_started_at>\n")
+               .append("    <current_period_ends_at type=\"datetime\">2011-07-27T07:00:00Z</current_period_ends_at>\n")
+               .append("    <subscription_add_ons type=\"array\">\n")
+               .append("      <subscription_add_on>\n")
+               .append("        <add_on_code>seats</add_on_code>\n")
+               .append("        <unit_amount_in_cents type=\"integer\">100</unit_amount_in_cents>\n")
+               .append("        <quantity type=\"integer\">3</quantity>\n")
+               .append("      </subscription_add_on>\n")
+               .append("    </subscription_add_ons>\n")
+               .append("    <a name=\"cancel\" href=\"https://api.recurly.com/v2/subscriptions/").append(uuid).append("/cancel\" method=\"put\"/>\n")
+               .append("  </subscription>\n");
+        }
+        return xml.append("</subscriptions>").toString();
+    }
+}
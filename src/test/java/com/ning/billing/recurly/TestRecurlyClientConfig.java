@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRecurlyClientConfig {
+
+    @Test(groups = "fast")
+    public void testWithCopies() throws Exception {
+        final RecurlyClientConfig config = new RecurlyClientConfig("https://api.recurly.com:443/v2", 20, false, Collections.<String>emptySet());
+        Assert.assertEquals(config.getPageSizeGetParam(), "per_page=20");
+
+        final RecurlyClientConfig updated = config.withPageSize(200).withDebug(true);
+        Assert.assertEquals(updated.getPageSize(), 200);
+        Assert.assertEquals(updated.getPageSizeGetParam(), "per_page=200");
+        Assert.assertTrue(updated.isDebug());
+        Assert.assertEquals(updated.getBaseUrl(), "https://api.recurly.com:443/v2");
+        Assert.assertFalse(updated.isCoalesceGets());
+        Assert.assertTrue(updated.withCoalesceGets(true).isCoalesceGets());
+
+        // The original snapshot is untouched
+        Assert.assertEquals(config.getPageSize(), 20);
+        Assert.assertFalse(config.isDebug());
+    }
+
+    @Test(groups = "fast")
+    public void testHideXMLResponseNodeValues() throws Exception {
+        final Set<String> nodes = new HashSet<String>();
+        nodes.add("first_name");
+        final RecurlyClientConfig config = new RecurlyClientConfig("https://api.recurly.com:443/v2", 20, false, nodes);
+
+        // Later changes to the caller's set don't leak into the snapshot
+        nodes.add("email");
+        Assert.assertEquals(config.getHideXMLResponseNodeValues().size(), 1);
+
+        final String xml = "<account><first_name>Jane</first_name><email>jane@example.com</email></account>";
+        Assert.assertEquals(config.hideXMLResponseNodeValues(xml), "<account><first_name>****</first_name><email>jane@example.com</email></account>");
+    }
+
+    @Test(groups = "fast")
+    public void testSameOrigin() throws Exception {
+        final String baseUrl = "https://api.recurly.com:443/v2";
+        Assert.assertTrue(RecurlyClient.isSameOrigin("https://api.recurly.com/v2/accounts?cursor=1", baseUrl));
+        Assert.assertTrue(RecurlyClient.isSameOrigin("https://API.recurly.com:443/v2/accounts?cursor=1", baseUrl));
+        Assert.assertFalse(RecurlyClient.isSameOrigin("https://api.recurly.com:8443/v2/accounts?cursor=1", baseUrl));
+        Assert.assertFalse(RecurlyClient.isSameOrigin("http://api.recurly.com/v2/accounts?cursor=1", baseUrl));
+        Assert.assertFalse(RecurlyClient.isSameOrigin("https://example.com/v2/accounts?cursor=1", baseUrl));
+        Assert.assertFalse(RecurlyClient.isSameOrigin("/v2/accounts?cursor=1", baseUrl));
+    }
+
+    @Test(groups = "fast")
+    public void testReconfigure() throws Exception {
+        final RecurlyClient recurlyClient = new RecurlyClient("apiKey", "localhost", 8443, "v2");
+        Assert.assertEquals(recurlyClient.getConfig().getBaseUrl(), "https://localhost:8443/v2");
+
+        recurlyClient.setHideXMLResponseNodeValues(Collections.singleton("number"));
+        Assert.assertEquals(recurlyClient.getHideXMLResponseNodeValues(), Collections.singleton("number"));
+
+        recurlyClient.reconfigure(recurlyClient.getConfig().withPageSize(50));
+        Assert.assertEquals(recurlyClient.getConfig().getPageSize(), 50);
+        Assert.assertEquals(recurlyClient.getHideXMLResponseNodeValues(), Collections.singleton("number"));
+
+        // The client's set is a live view, changes through it reconfigure the client
+        recurlyClient.getHideXMLResponseNodeValues().add("email");
+        Assert.assertEquals(recurlyClient.getConfig().getHideXMLResponseNodeValues().size(), 2);
+        Assert.assertEquals(recurlyClient.getConfig().hideXMLResponseNodeValues("<email>jane@example.com</email>"), "<email>****</email>");
+        recurlyClient.getHideXMLResponseNodeValues().remove("number");
+        Assert.assertEquals(recurlyClient.getConfig().getHideXMLResponseNodeValues(), Collections.singleton("email"));
+        Assert.assertEquals(recurlyClient.getConfig().getPageSize(), 50);
+
+        // A snapshot taken before the mask was added can't be swapped in
+        final RecurlyClientConfig stale = recurlyClient.getConfig();
+        recurlyClient.getHideXMLResponseNodeValues().add("number");
+        Assert.assertFalse(recurlyClient.compareAndReconfigure(stale, stale.withDebug(true)));
+        Assert.assertEquals(recurlyClient.getConfig().getHideXMLResponseNodeValues().size(), 2);
+        final RecurlyClientConfig current = recurlyClient.getConfig();
+        Assert.assertTrue(recurlyClient.compareAndReconfigure(current, current.withDebug(true)));
+        Assert.assertTrue(recurlyClient.getConfig().isDebug());
+        Assert.assertEquals(recurlyClient.getConfig().getHideXMLResponseNodeValues().size(), 2);
+    }
+}
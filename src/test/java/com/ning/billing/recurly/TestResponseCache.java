@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestResponseCache {
+
+    @Test(groups = "fast")
+    public void testEviction() throws Exception {
+        final ResponseCache cache = new ResponseCache(100);
+        cache.put("a", "\"1\"", new byte[40], null);
+        cache.put("b", "\"2\"", new byte[40], null);
+        // a is now the most recently used
+        Assert.assertEquals(cache.get("a").getBody().length, 40);
+        cache.put("c", "\"3\"", new byte[40], "https://api.recurly.com/v2/accounts?cursor=1");
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(cache.get("a").getEtag(), "\"1\"");
+        Assert.assertEquals(cache.get("c").getNextUrl(), "https://api.recurly.com/v2/accounts?cursor=1");
+        Assert.assertEquals(cache.getBytes(), 80);
+        Assert.assertEquals(cache.getEvictions(), 1);
+
+        // Replaced entries don't count twice
+        cache.put("a", "\"4\"", new byte[50], null);
+        Assert.assertEquals(cache.getBytes(), 90);
+        Assert.assertEquals(cache.get("a").getEtag(), "\"4\"");
+
+        // Larger than the cache: not stored, and the stale entry is dropped
+        cache.put("c", "\"5\"", new byte[200], null);
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals(cache.getBytes(), 50);
+
+        cache.clear();
+        Assert.assertEquals(cache.getEntries(), 0);
+        Assert.assertEquals(cache.getBytes(), 0);
+    }
+}
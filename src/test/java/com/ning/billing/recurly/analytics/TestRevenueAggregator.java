@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.analytics;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.Invoice;
+import com.ning.billing.recurly.model.Plan;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.Transaction;
+
+public class TestRevenueAggregator {
+
+    private static final DateTime PERIOD_START = new DateTime("2013-06-01T00:00:00Z");
+    private static final DateTime PERIOD_END = new DateTime("2013-07-01T00:00:00Z");
+
+    @Test(groups = "fast")
+    public void testMonthlyNormalization() throws Exception {
+        Assert.assertEquals(RevenueAggregator.monthlyMilliCents(1500, "months", 1), 1500000);
+        Assert.assertEquals(RevenueAggregator.monthlyMilliCents(12000, "months", 12), 1000000);
+        Assert.assertEquals(RevenueAggregator.monthlyMilliCents(1000, "months", 3), 333333);
+        // 365 / 12 / 10 intervals of 10 days a month
+        Assert.assertEquals(RevenueAggregator.monthlyMilliCents(1200, "days", 10), 3650000);
+        Assert.assertEquals(RevenueAggregator.monthlyMilliCents(1500, null, null), 1500000);
+        Assert.assertEquals(RevenueAggregator.toCents(333333 * 3), 1000);
+    }
+
+    @Test(groups = "fast")
+    public void testAggregates() throws Exception {
+        final RevenueAggregator aggregator = newAggregator();
+        aggregator.addAccountSubscriptions(Arrays.asList(subscription("gold", "USD", 1500, 2, "active", "2013-06-10T00:00:00Z"),
+                                                         subscription("yearly", "USD", 12000, 1, "active", "2012-01-01T00:00:00Z")));
+        aggregator.addAccountSubscriptions(Arrays.asList(subscription("gold", "USD", 1500, 1, "past_due", "2013-01-10T00:00:00Z")));
+        aggregator.addAccountSubscriptions(Arrays.asList(subscription("gold", "USD", 1500, 1, "canceled", "2013-01-10T00:00:00Z")));
+        aggregator.add(subscription("gold", "EUR", 1200, 1, "in_trial", "2013-06-10T00:00:00Z"));
+
+        final PlanRevenue gold = aggregator.getPlanRevenue("gold", "USD");
+        Assert.assertEquals(gold.getActiveSubscriptions(), 2);
+        Assert.assertEquals(gold.getMrrInCents(), 4500);
+        Assert.assertEquals(gold.getNewSubscriptions(), 1);
+        Assert.assertEquals(gold.getNewMrrInCents(), 3000);
+        Assert.assertEquals(gold.getChurnedSubscriptions(), 1);
+        Assert.assertEquals(gold.getChurnedMrrInCents(), 1500);
+        Assert.assertEquals(gold.getChurnRate(), 1 / 3.0, 0.0001);
+
+        Assert.assertEquals(aggregator.getPlanRevenue("yearly", "USD").getMrrInCents(), 1000);
+        Assert.assertNull(aggregator.getPlanRevenue("gold", "EUR"));
+
+        final CurrencyRevenue usd = aggregator.getCurrencyRevenue("USD");
+        Assert.assertEquals(usd.getMrrInCents(), 5500);
+        Assert.assertEquals(usd.getPayingAccounts(), 2);
+        Assert.assertEquals(usd.getArpuInCents(), 2750);
+
+        aggregator.add(invoice("collected", 4000));
+        aggregator.add(invoice("failed", 1500));
+        aggregator.add(transaction("purchase", "success", 4000));
+        aggregator.add(transaction("refund", "success", 500));
+        aggregator.add(transaction("purchase", "declined", 1500));
+        Assert.assertEquals(usd.getInvoices(), 1);
+        Assert.assertEquals(usd.getInvoicedInCents(), 4000);
+        Assert.assertEquals(usd.getNetCollectedInCents(), 3500);
+        Assert.assertEquals(usd.getFailedTransactions(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testMerge() throws Exception {
+        final RevenueAggregator first = newAggregator();
+        final RevenueAggregator second = first.fork();
+        first.addAccountSubscriptions(Arrays.asList(subscription("gold", "USD", 1500, 1, "active", "2013-06-10T00:00:00Z")));
+        second.addAccountSubscriptions(Arrays.asList(subscription("gold", "USD", 1500, 3, "active", "2013-01-10T00:00:00Z")));
+        second.addAccountSubscriptions(Arrays.asList(subscription("yearly", "EUR", 24000, 1, "active", "2013-01-10T00:00:00Z")));
+        second.add(transaction("purchase", "success", 4500));
+
+        final RevenueAggregator merged = newAggregator().merge(first).merge(second);
+        Assert.assertEquals(merged.getPlanRevenue("gold", "USD").getActiveSubscriptions(), 2);
+        Assert.assertEquals(merged.getPlanRevenue("gold", "USD").getMrrInCents(), 6000);
+        Assert.assertEquals(merged.getPlanRevenue("gold", "USD").getNewSubscriptions(), 1);
+        Assert.assertEquals(merged.getCurrencyRevenue("USD").getPayingAccounts(), 2);
+        Assert.assertEquals(merged.getCurrencyRevenue("USD").getArpuInCents(), 3000);
+        Assert.assertEquals(merged.getCurrencyRevenue("USD").getCollectedInCents(), 4500);
+        Assert.assertEquals(merged.getCurrencyRevenue("EUR").getMrrInCents(), 2000);
+
+        // Merged aggregators are left unchanged
+        Assert.assertEquals(first.getPlanRevenue("gold", "USD").getActiveSubscriptions(), 1);
+    }
+
+    private static RevenueAggregator newAggregator() {
+        return new RevenueAggregator(Arrays.asList(plan("gold", "months", 1), plan("yearly", "months", 12)), PERIOD_START, PERIOD_END);
+    }
+
+    private static Plan plan(final String planCode, final String intervalUnit, final int intervalLength) {
+        final Plan plan = new Plan();
+        plan.setPlanCode(planCode);
+        plan.setPlanIntervalUnit(intervalUnit);
+        plan.setPlanIntervalLength(intervalLength);
+        return plan;
+    }
+
+    private static Subscription subscription(final String planCode, final String currency, final int unitAmountInCents, final int quantity,
+                                             final String state, final String activatedAt) {
+        final Subscription subscription = new Subscription();
+        subscription.setPlanCode(planCode);
+        subscription.setCurrency(currency);
+        subscription.setUnitAmountInCents(unitAmountInCents);
+        subscription.setQuantity(quantity);
+        subscription.setState(state);
+        subscription.setActivatedAt(activatedAt);
+        if ("canceled".equals(state)) {
+            subscription.setCanceledAt("2013-06-20T00:00:00Z");
+        }
+        return subscription;
+    }
+
+    private static Invoice invoice(final String state, final int totalInCents) {
+        final Invoice invoice = new Invoice();
+        invoice.setState(state);
+        invoice.setCurrency("USD");
+        invoice.setTotalInCents(totalInCents);
+        return invoice;
+    }
+
+    private static Transaction transaction(final String action, final String status, final int amountInCents) {
+        final Transaction transaction = new Transaction();
+        transaction.setAction(action);
+        transaction.setStatus(status);
+        transaction.setCurrency("USD");
+        transaction.setAmountInCents(amountInCents);
+        return transaction;
+    }
+}
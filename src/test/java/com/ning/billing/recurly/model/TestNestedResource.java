@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class TestNestedResource extends TestModelBase {
+
+    private static final String TRANSACTION_DATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                   "<transaction href=\"https://api.recurly.com/v2/transactions/a13acd8fe4294916b79aec87b7ea441f\" type=\"credit_card\">\n" +
+                                                   "  <account>\n" +
+                                                   "    <account_code>verena100</account_code>\n" +
+                                                   "    <first_name>Verena</first_name>\n" +
+                                                   "    <email>verena@test.com</email>\n" +
+                                                   "    <billing_info type=\"credit_card\">\n" +
+                                                   "      <first_name nil=\"nil\"></first_name>\n" +
+                                                   "      <card_type>Visa</card_type>\n" +
+                                                   "      <year type=\"integer\">2015</year>\n" +
+                                                   "      <last_four>1111</last_four>\n" +
+                                                   "    </billing_info>\n" +
+                                                   "  </account>\n" +
+                                                   "  <invoice href=\"https://api.recurly.com/v2/invoices/1108\">\n" +
+                                                   "    <uuid>421f7b7d414e4c6792938e7c49d552e9</uuid>\n" +
+                                                   "    <invoice_number type=\"integer\">1108</invoice_number>\n" +
+                                                   "    <line_items type=\"array\">\n" +
+                                                   "      <adjustment type=\"charge\">\n" +
+                                                   "        <uuid>626db120a84102b1809909071c701c60</uuid>\n" +
+                                                   "        <unit_amount_in_cents type=\"integer\">1000</unit_amount_in_cents>\n" +
+                                                   "      </adjustment>\n" +
+                                                   "      <adjustment type=\"credit\">\n" +
+                                                   "        <uuid>726db120a84102b1809909071c701c60</uuid>\n" +
+                                                   "        <unit_amount_in_cents type=\"integer\">-200</unit_amount_in_cents>\n" +
+                                                   "      </adjustment>\n" +
+                                                   "    </line_items>\n" +
+                                                   "  </invoice>\n" +
+                                                   "  <uuid>a13acd8fe4294916b79aec87b7ea441f</uuid>\n" +
+                                                   "  <amount_in_cents type=\"integer\">1000</amount_in_cents>\n" +
+                                                   "  <currency>USD</currency>\n" +
+                                                   "</transaction>\n";
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        RecurlyObject.setLazyNestedResources(false);
+    }
+
+    @Test(groups = "fast")
+    public void testLazyNestedResources() throws Exception {
+        final Transaction eager = xmlMapper.readValue(TRANSACTION_DATA, Transaction.class);
+
+        RecurlyObject.setLazyNestedResources(true);
+        final Transaction lazy = xmlMapper.readValue(TRANSACTION_DATA, Transaction.class);
+        // Top-level fields are set right away
+        Assert.assertEquals(lazy.getUuid(), "a13acd8fe4294916b79aec87b7ea441f");
+        Assert.assertEquals(lazy.getAmountInCents(), (Integer) 1000);
+
+        // Nested elements are deserialized on first access, with the current mode
+        final Account account = lazy.getAccount();
+        Assert.assertEquals(account.getAccountCode(), "verena100");
+        Assert.assertEquals(account.getBillingInfo().getCardType(), "Visa");
+        Assert.assertEquals(account.getBillingInfo().getYear(), (Integer) 2015);
+        Assert.assertSame(lazy.getAccount(), account);
+
+        final Invoice invoice = lazy.getInvoice();
+        Assert.assertEquals(invoice.getInvoiceNumber(), (Integer) 1108);
+        Assert.assertEquals(invoice.getLineItems().size(), 2);
+        Assert.assertEquals(invoice.getLineItems().get(1).getUnitAmountInCents(), (Integer) (-200));
+
+        Assert.assertEquals(lazy, eager);
+        Assert.assertEquals(lazy.hashCode(), eager.hashCode());
+    }
+
+    @Test(groups = "fast")
+    public void testSetterReplacesBufferedElement() throws Exception {
+        RecurlyObject.setLazyNestedResources(true);
+        final Transaction transaction = xmlMapper.readValue(TRANSACTION_DATA, Transaction.class);
+
+        final Account account = new Account();
+        account.setAccountCode("other");
+        transaction.setAccount(account);
+        Assert.assertSame(transaction.getAccount(), account);
+
+        // Serialization goes through the getters
+        RecurlyObject.setLazyNestedResources(false);
+        final Transaction copy = xmlMapper.readValue(xmlMapper.writeValueAsString(transaction), Transaction.class);
+        Assert.assertEquals(copy.getAccount().getAccountCode(), "other");
+        Assert.assertEquals(copy.getInvoice().getInvoiceNumber(), (Integer) 1108);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentFirstAccess() throws Exception {
+        RecurlyObject.setLazyNestedResources(true);
+        final Transaction shared = xmlMapper.readValue(TRANSACTION_DATA, Transaction.class);
+
+        // E.g. the result of a coalesced GET, read by all the callers at once
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Account>> accounts = new ArrayList<Future<Account>>();
+            for (int i = 0; i < threads; i++) {
+                accounts.add(executor.submit(new Callable<Account>() {
+                    @Override
+                    public Account call() throws Exception {
+                        start.await();
+                        return shared.getAccount();
+                    }
+                }));
+            }
+            start.countDown();
+
+            final Account account = accounts.get(0).get();
+            Assert.assertEquals(account.getAccountCode(), "verena100");
+            for (final Future<Account> other : accounts) {
+                Assert.assertSame(other.get(), account);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.model.batch;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.Adjustment;
+import com.ning.billing.recurly.model.Adjustments;
+import com.ning.billing.recurly.model.TestModelBase;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.model.Transactions;
+
+public class TestBatchXmlReader extends TestModelBase {
+
+    private static final String TRANSACTIONS_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                   "<transactions type=\"array\">\n" +
+                                                   "  <transaction href=\"https://api.recurly.com/v2/transactions/a13acd8fe4294916b79aec87b7ea441f\" type=\"credit_card\">\n" +
+                                                   "    <account href=\"https://api.recurly.com/v2/accounts/verena100\"/>\n" +
+                                                   "    <invoice href=\"https://api.recurly.com/v2/invoices/1108\"/>\n" +
+                                                   "    <subscription href=\"https://api.recurly.com/v2/subscriptions/17caaca1716f33572edc8146e0aaefde\"/>\n" +
+                                                   "    <uuid>a13acd8fe4294916b79aec87b7ea441f</uuid>\n" +
+                                                   "    <action>purchase</action>\n" +
+                                                   "    <amount_in_cents type=\"integer\">1000</amount_in_cents>\n" +
+                                                   "    <tax_in_cents type=\"integer\">0</tax_in_cents>\n" +
+                                                   "    <currency>USD</currency>\n" +
+                                                   "    <status>success</status>\n" +
+                                                   "    <payment_method>credit_card</payment_method>\n" +
+                                                   "    <reference nil=\"nil\"></reference>\n" +
+                                                   "    <source>subscription</source>\n" +
+                                                   "    <recurring type=\"boolean\">false</recurring>\n" +
+                                                   "    <test type=\"boolean\">true</test>\n" +
+                                                   "    <voidable type=\"boolean\">true</voidable>\n" +
+                                                   "    <refundable type=\"boolean\">true</refundable>\n" +
+                                                   "    <cvv_result code=\"\" nil=\"nil\"></cvv_result>\n" +
+                                                   "    <created_at type=\"datetime\">2011-06-27T12:34:56Z</created_at>\n" +
+                                                   "    <details>\n" +
+                                                   "      <account>\n" +
+                                                   "        <account_code>verena100</account_code>\n" +
+                                                   "        <billing_info type=\"credit_card\">\n" +
+                                                   "          <first_name nil=\"nil\"></first_name>\n" +
+                                                   "          <year type=\"integer\">2015</year>\n" +
+                                                   "        </billing_info>\n" +
+                                                   "      </account>\n" +
+                                                   "    </details>\n" +
+                                                   "    <a name=\"refund\" href=\"https://api.recurly.com/v2/transactions/a13acd8fe4294916b79aec87b7ea441f\" method=\"delete\"/>\n" +
+                                                   "  </transaction>\n" +
+                                                   "  <!-- Continued... -->\n" +
+                                                   "  <transaction href=\"https://api.recurly.com/v2/transactions/TX-2\" type=\"credit_card\">\n" +
+                                                   "    <account href=\"https://api.recurly.com/v2/accounts/jane%2Bdoe\"/>\n" +
+                                                   "    <uuid>TX-2</uuid>\n" +
+                                                   "    <action>refund</action>\n" +
+                                                   "    <amount_in_cents type=\"integer\">-250</amount_in_cents>\n" +
+                                                   "    <currency>EUR</currency>\n" +
+                                                   "    <status>success</status>\n" +
+                                                   "    <created_at type=\"datetime\">2011-06-28T00:00:00-07:00</created_at>\n" +
+                                                   "  </transaction>\n" +
+                                                   "  <transaction>\n" +
+                                                   "    <account><account_code>verena100</account_code></account>\n" +
+                                                   "    <amount_in_cents type=\"integer\">500</amount_in_cents>\n" +
+                                                   "    <currency>USD</currency>\n" +
+                                                   "  </transaction>\n" +
+                                                   "</transactions>\n";
+
+    private static final String ADJUSTMENTS_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                  "<adjustments type=\"array\">\n" +
+                                                  "  <adjustment type=\"credit\" href=\"https://api.recurly.com/v2/adjustments/626db120a84102b1809909071c701c60\">\n" +
+                                                  "    <account href=\"https://api.recurly.com/v2/accounts/100\"/>\n" +
+                                                  "    <uuid>626db120a84102b1809909071c701c60</uuid>\n" +
+                                                  "    <description>Refund for being a great customer</description>\n" +
+                                                  "    <accounting_code nil=\"nil\"></accounting_code>\n" +
+                                                  "    <origin>credit</origin>\n" +
+                                                  "    <unit_amount_in_cents type=\"integer\">-2000</unit_amount_in_cents>\n" +
+                                                  "    <quantity type=\"integer\">1</quantity>\n" +
+                                                  "    <discount_in_cents type=\"integer\">0</discount_in_cents>\n" +
+                                                  "    <tax_in_cents type=\"integer\">0</tax_in_cents>\n" +
+                                                  "    <total_in_cents type=\"integer\">-2000</total_in_cents>\n" +
+                                                  "    <currency>USD</currency>\n" +
+                                                  "    <taxable type=\"boolean\">false</taxable>\n" +
+                                                  "    <start_date type=\"datetime\">2011-08-31T03:30:00Z</start_date>\n" +
+                                                  "    <end_date nil=\"nil\"></end_date>\n" +
+                                                  "    <created_at type=\"datetime\">2011-08-31T03:30:00Z</created_at>\n" +
+                                                  "  </adjustment>\n" +
+                                                  "</adjustments>";
+
+    @Test(groups = "fast")
+    public void testReadTransactions() throws Exception {
+        final TransactionBatch batch = BatchXmlReader.read(new ByteArrayInputStream(TRANSACTIONS_XML.getBytes("UTF-8")), TransactionBatch.class);
+        Assert.assertEquals(batch.size(), 3);
+
+        final TransactionBatch.Row first = batch.row(0);
+        Assert.assertEquals(first.getUuid(), "a13acd8fe4294916b79aec87b7ea441f");
+        Assert.assertEquals(first.getAccountCode(), "verena100");
+        Assert.assertEquals(first.getInvoiceNumber(), 1108);
+        Assert.assertEquals(first.getSubscriptionUuid(), "17caaca1716f33572edc8146e0aaefde");
+        Assert.assertEquals(first.getAction(), "purchase");
+        Assert.assertEquals(first.getAmountInCents(), 1000);
+        Assert.assertEquals(first.getTaxInCents(), 0);
+        Assert.assertEquals(first.getCurrency(), "USD");
+        Assert.assertEquals(first.getStatus(), "success");
+        Assert.assertEquals(first.getPaymentMethod(), "credit_card");
+        Assert.assertNull(first.getReference());
+        Assert.assertEquals(first.getSource(), "subscription");
+        Assert.assertEquals(first.getRecurring(), Boolean.FALSE);
+        Assert.assertEquals(first.getTest(), Boolean.TRUE);
+        Assert.assertEquals(first.getCreatedAtMillis(), new DateTime("2011-06-27T12:34:56Z").getMillis());
+
+        // Non-hexadecimal uuids, encoded account codes and offsets
+        final TransactionBatch.Row second = batch.row(1);
+        Assert.assertEquals(second.getUuid(), "TX-2");
+        Assert.assertEquals(second.getAccountCode(), "jane+doe");
+        Assert.assertEquals(second.getInvoiceNumber(), ColumnarBatch.NULL_LONG);
+        Assert.assertNull(second.getSubscriptionUuid());
+        Assert.assertEquals(second.getAmountInCents(), -250);
+        Assert.assertEquals(second.getTaxInCents(), ColumnarBatch.NULL_LONG);
+        Assert.assertNull(second.getTest());
+        Assert.assertEquals(second.getCreatedAtMillis(), new DateTime("2011-06-28T07:00:00Z").getMillis());
+
+        // Embedded account, missing fields
+        final TransactionBatch.Row third = batch.row(2);
+        Assert.assertNull(third.getUuid());
+        Assert.assertEquals(third.getAccountCode(), "verena100");
+        Assert.assertEquals(third.getCreatedAtMillis(), ColumnarBatch.NULL_LONG);
+        Assert.assertNull(third.getCreatedAt());
+
+        // Dictionary encoding: one value per distinct string
+        Assert.assertEquals(batch.getCurrencyDictionary().getValues().size(), 2);
+        Assert.assertEquals(first.getCurrencyOrdinal(), third.getCurrencyOrdinal());
+        Assert.assertSame(first.getCurrency(), third.getCurrency());
+        Assert.assertEquals(batch.sumAmountInCents(), 1250);
+
+        // Flyweight iteration
+        final Iterator<TransactionBatch.Row> iterator = batch.iterator();
+        final TransactionBatch.Row view = iterator.next();
+        Assert.assertEquals(view.getIndex(), 0);
+        Assert.assertSame(iterator.next(), view);
+        Assert.assertEquals(view.getIndex(), 1);
+
+        // Same values as the beans
+        final Transactions transactions = xmlMapper.readValue(TRANSACTIONS_XML, Transactions.class);
+        final Transaction transaction = first.toTransaction();
+        final Transaction expected = transactions.get(0);
+        Assert.assertEquals(transaction.getUuid(), expected.getUuid());
+        Assert.assertEquals(transaction.getAmountInCents(), expected.getAmountInCents());
+        Assert.assertEquals(transaction.getCurrency(), expected.getCurrency());
+        Assert.assertEquals(transaction.getAccount().getAccountCode(), expected.getAccount().getAccountCode());
+        Assert.assertEquals(transaction.getCreatedAt().getMillis(), expected.getCreatedAt().getMillis());
+        Assert.assertEquals(transaction.getRefundable(), expected.getRefundable());
+    }
+
+    @Test(groups = "fast")
+    public void testReadAdjustmentsAcrossPages() throws Exception {
+        final AdjustmentBatch batch = new AdjustmentBatch();
+        for (int page = 0; page < 100; page++) {
+            BatchXmlReader.readAdjustments(new ByteArrayInputStream(ADJUSTMENTS_XML.getBytes("UTF-8")), batch);
+        }
+        Assert.assertEquals(batch.size(), 100);
+        Assert.assertEquals(batch.sumTotalInCents(), -200000);
+
+        final AdjustmentBatch.Row row = batch.row(99);
+        final Adjustment expected = xmlMapper.readValue(ADJUSTMENTS_XML, Adjustments.class).get(0);
+        final Adjustment adjustment = row.toAdjustment();
+        Assert.assertEquals(row.getAccountCode(), "100");
+        Assert.assertEquals(adjustment.getUuid(), expected.getUuid());
+        Assert.assertEquals(adjustment.getDescription(), expected.getDescription());
+        Assert.assertNull(adjustment.getAccountingCode());
+        Assert.assertEquals(adjustment.getOrigin(), expected.getOrigin());
+        Assert.assertEquals(adjustment.getUnitAmountInCents(), expected.getUnitAmountInCents());
+        Assert.assertEquals(adjustment.getQuantity(), expected.getQuantity());
+        Assert.assertEquals(adjustment.getTotalInCents(), expected.getTotalInCents());
+        Assert.assertEquals(adjustment.getTaxable(), expected.getTaxable());
+        Assert.assertEquals(adjustment.getStartDate().getMillis(), expected.getStartDate().getMillis());
+        Assert.assertNull(adjustment.getEndDate());
+    }
+
+    @Test(groups = "fast", expectedExceptions = java.io.IOException.class)
+    public void testMalformedDocument() throws Exception {
+        BatchXmlReader.read(new ByteArrayInputStream("<transactions><transaction><amount_in_cents>abc</amount_in_cents></transaction></transactions>".getBytes("UTF-8")),
+                            TransactionBatch.class);
+    }
+}
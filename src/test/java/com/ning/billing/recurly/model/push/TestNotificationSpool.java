@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.model.push;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.push.account.NewAccountNotification;
+
+public class TestNotificationSpool {
+
+    private static final String PAYLOAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                          "<new_account_notification>\n" +
+                                          "  <account><account_code>%s</account_code></account>\n" +
+                                          "</new_account_notification>";
+
+    private File directory;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        directory = File.createTempFile("recurly-", ".spool");
+        Assert.assertTrue(directory.delete());
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test(groups = "fast")
+    public void testReplayAfterRestart() throws Exception {
+        NotificationSpool spool = new NotificationSpool(directory, 4096);
+        for (int i = 0; i < 3; i++) {
+            spool.append(String.format(PAYLOAD, "account-" + i));
+        }
+
+        final NotificationSpool.Entry first = spool.poll();
+        Assert.assertEquals(first.getOffset(), 0);
+        Assert.assertEquals(first.getType(), Notification.Type.NewAccountNotification);
+        Assert.assertEquals(((NewAccountNotification) first.read()).getAccount().getAccountCode(), "account-0");
+        spool.commit(first);
+        // Read but not committed
+        Assert.assertNotNull(spool.poll());
+        spool.close();
+
+        spool = new NotificationSpool(directory, 4096);
+        Assert.assertEquals(spool.getCommittedOffset(), first.getNextOffset());
+        Assert.assertEquals(spool.poll().getPayload(), String.format(PAYLOAD, "account-1"));
+        final NotificationSpool.Entry last = spool.poll();
+        Assert.assertEquals(last.getPayload(), String.format(PAYLOAD, "account-2"));
+        Assert.assertNull(spool.poll());
+        spool.commit(last);
+        Assert.assertEquals(spool.getPendingBytes(), 0);
+
+        // Offsets keep growing
+        Assert.assertEquals(spool.append(String.format(PAYLOAD, "account-3")), last.getNextOffset());
+        spool.close();
+    }
+
+    @Test(groups = "fast")
+    public void testTornRecord() throws Exception {
+        NotificationSpool spool = new NotificationSpool(directory, 4096);
+        spool.append(String.format(PAYLOAD, "account-0"));
+        final long tornOffset = spool.append(String.format(PAYLOAD, "account-1"));
+        spool.close();
+
+        // Crash in the middle of the second append: payload partially written
+        final RandomAccessFile segment = new RandomAccessFile(directory.listFiles()[0], "rw");
+        segment.seek(tornOffset + 20);
+        segment.write(0);
+        segment.close();
+
+        spool = new NotificationSpool(directory, 4096);
+        Assert.assertEquals(spool.getEndOffset(), tornOffset);
+        Assert.assertEquals(spool.poll().getPayload(), String.format(PAYLOAD, "account-0"));
+        Assert.assertNull(spool.poll());
+        Assert.assertEquals(spool.append(String.format(PAYLOAD, "account-2")), tornOffset);
+        Assert.assertEquals(spool.poll().getPayload(), String.format(PAYLOAD, "account-2"));
+        spool.close();
+    }
+
+    @Test(groups = "fast")
+    public void testSegments() throws Exception {
+        // 2 records per segment
+        final NotificationSpool spool = new NotificationSpool(directory, 400);
+        for (int i = 0; i < 5; i++) {
+            spool.append(String.format(PAYLOAD, "account-" + i));
+        }
+        Assert.assertEquals(directory.list().length, 3);
+
+        NotificationSpool.Entry entry = null;
+        for (int i = 0; i < 4; i++) {
+            entry = spool.poll();
+            Assert.assertEquals(entry.getPayload(), String.format(PAYLOAD, "account-" + i));
+        }
+        spool.commit(entry);
+        // 1 segment left, and the checkpoint
+        Assert.assertEquals(directory.list().length, 2);
+        Assert.assertEquals(spool.poll().getPayload(), String.format(PAYLOAD, "account-4"));
+        spool.close();
+
+        final NotificationSpool reopened = new NotificationSpool(directory, 400);
+        try {
+            reopened.append(String.format(PAYLOAD, new String(new char[300]).replace('\0', 'x')));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("larger than the segment size"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testCommitWhileAppending() throws Exception {
+        // 2 records per segment, so that the commits delete segments while appends create new ones
+        final NotificationSpool spool = new NotificationSpool(directory, 400);
+        final int count = 200;
+        final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+        final Thread appender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        spool.append(String.format(PAYLOAD, "account-" + i));
+                    }
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }
+        });
+        appender.start();
+
+        NotificationSpool.Entry first = null;
+        for (int i = 0; i < count; i++) {
+            final NotificationSpool.Entry entry = spool.take(10, TimeUnit.SECONDS);
+            Assert.assertEquals(entry.getPayload(), String.format(PAYLOAD, "account-" + i));
+            if (first == null) {
+                first = entry;
+            }
+            spool.commit(entry);
+        }
+        appender.join();
+        Assert.assertEquals(errors.size(), 0);
+        Assert.assertEquals(spool.getPendingBytes(), 0);
+
+        // Committing an older entry again doesn't move the checkpoint back
+        spool.commit(first);
+        Assert.assertEquals(spool.getCommittedOffset(), spool.getEndOffset());
+        // The active segment, and the checkpoint
+        Assert.assertEquals(directory.list().length, 2);
+        spool.close();
+    }
+
+    @Test(groups = "fast")
+    public void testConsumer() throws Exception {
+        final NotificationSpool spool = new NotificationSpool(directory, 4096);
+        final List<String> handled = new CopyOnWriteArrayList<String>();
+        final AtomicInteger failures = new AtomicInteger();
+        spool.startConsumer(new NotificationSpool.Handler() {
+            @Override
+            public void handle(final NotificationSpool.Entry entry) throws Exception {
+                final String accountCode = ((NewAccountNotification) entry.read()).getAccount().getAccountCode();
+                // The first attempt of account-1 fails
+                if ("account-1".equals(accountCode) && failures.getAndIncrement() == 0) {
+                    throw new IllegalStateException("Downstream unavailable");
+                }
+                handled.add(accountCode);
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            spool.append(String.format(PAYLOAD, "account-" + i));
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (spool.getPendingBytes() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        spool.close();
+
+        Assert.assertEquals(spool.getPendingBytes(), 0);
+        Assert.assertEquals(handled.toString(), "[account-0, account-1, account-2]");
+        Assert.assertEquals(failures.get(), 2);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.model.push;
+
+import java.util.Arrays;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.push.NotificationVerifier.Verdict;
+
+public class TestNotificationVerifier {
+
+    private static final String PAYLOAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                          "<new_account_notification>\n" +
+                                          "  <account><account_code>1</account_code></account>\n" +
+                                          "</new_account_notification>";
+
+    private final NotificationVerifier verifier = new NotificationVerifier("recurly", "s3cr3t", Arrays.asList("74.201.212.175", "10.0.0.0/22", "2001:db8::/32"), 1024);
+
+    @Test(groups = "fast")
+    public void testCredentials() throws Exception {
+        Assert.assertEquals(verifier.verify("74.201.212.175", basic("recurly:s3cr3t"), PAYLOAD), Verdict.ACCEPTED);
+        Assert.assertEquals(verifier.verify("74.201.212.175", "basic  " + DatatypeConverter.printBase64Binary("recurly:s3cr3t".getBytes()), PAYLOAD), Verdict.ACCEPTED);
+        Assert.assertEquals(verifier.verify("74.201.212.175", null, PAYLOAD), Verdict.MISSING_CREDENTIALS);
+        Assert.assertEquals(verifier.verify("74.201.212.175", "Bearer abc", PAYLOAD), Verdict.MISSING_CREDENTIALS);
+        Assert.assertEquals(verifier.verify("74.201.212.175", basic("recurly:s3cr3"), PAYLOAD), Verdict.BAD_CREDENTIALS);
+        Assert.assertEquals(verifier.verify("74.201.212.175", basic("recurly:s3cr3t:"), PAYLOAD), Verdict.BAD_CREDENTIALS);
+
+        // No credentials configured
+        Assert.assertEquals(new NotificationVerifier(null, null).verify("1.2.3.4", null, PAYLOAD), Verdict.ACCEPTED);
+    }
+
+    @Test(groups = "fast")
+    public void testAddresses() throws Exception {
+        final String authorization = basic("recurly:s3cr3t");
+        Assert.assertEquals(verifier.verifyRequest("10.0.3.255", authorization, 100), Verdict.ACCEPTED);
+        Assert.assertEquals(verifier.verifyRequest("10.0.4.1", authorization, 100), Verdict.FORBIDDEN_ADDRESS);
+        Assert.assertEquals(verifier.verifyRequest("74.201.212.176", authorization, 100), Verdict.FORBIDDEN_ADDRESS);
+        Assert.assertEquals(verifier.verifyRequest("2001:db8:0:1::5", authorization, 100), Verdict.ACCEPTED);
+        Assert.assertEquals(verifier.verifyRequest("2001:db9::5", authorization, 100), Verdict.FORBIDDEN_ADDRESS);
+        // Host names are not resolved
+        Assert.assertEquals(verifier.verifyRequest("localhost", authorization, 100), Verdict.FORBIDDEN_ADDRESS);
+        Assert.assertEquals(verifier.verifyRequest(null, authorization, 100), Verdict.FORBIDDEN_ADDRESS);
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBlock() throws Exception {
+        new NotificationVerifier(null, null, Arrays.asList("10.0.0.0/33"), 1024);
+    }
+
+    @Test(groups = "fast")
+    public void testPayloads() throws Exception {
+        final NotificationVerifier verifier = new NotificationVerifier("recurly", "s3cr3t", Arrays.asList("10.0.0.0/22"), 1024);
+        final String authorization = basic("recurly:s3cr3t");
+        Assert.assertEquals(verifier.verifyRequest("10.0.0.1", authorization, 2048), Verdict.PAYLOAD_TOO_LARGE);
+        Assert.assertEquals(verifier.verifyRequest("10.0.0.1", authorization, -1), Verdict.ACCEPTED);
+
+        final StringBuilder large = new StringBuilder("<new_account_notification>");
+        while (large.length() <= 1024) {
+            large.append("<account></account>");
+        }
+        Assert.assertEquals(verifier.verifyPayload(large.toString()), Verdict.PAYLOAD_TOO_LARGE);
+        Assert.assertEquals(verifier.verifyPayload("  <successful_payment_notification><transaction/></successful_payment_notification>"), Verdict.ACCEPTED);
+        Assert.assertEquals(verifier.verifyPayload("<unknown_notification></unknown_notification>"), Verdict.UNKNOWN_NOTIFICATION);
+        Assert.assertEquals(verifier.verifyPayload("<?xml version=\"1.0\"?><!DOCTYPE lolz [<!ENTITY lol \"lol\">]><new_account_notification/>"), Verdict.MALFORMED_PAYLOAD);
+        Assert.assertEquals(verifier.verifyPayload("{\"json\": true}"), Verdict.MALFORMED_PAYLOAD);
+        Assert.assertEquals(verifier.verifyPayload(""), Verdict.MALFORMED_PAYLOAD);
+
+        Assert.assertEquals(verifier.getCount(Verdict.ACCEPTED), 2);
+        Assert.assertEquals(verifier.getCount(Verdict.PAYLOAD_TOO_LARGE), 2);
+        Assert.assertEquals(verifier.getRejectedCount(), 6);
+        Assert.assertEquals(Notification.detect(PAYLOAD), Notification.Type.NewAccountNotification);
+    }
+
+    private static String basic(final String credentials) {
+        return "Basic " + DatatypeConverter.printBase64Binary(credentials.getBytes());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.billing.recurly.scan;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.ResponseCache;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Accounts;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.Plan;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.Subscriptions;
+import com.ning.billing.recurly.simulator.RecurlySimulator;
+
+public class TestAccountScanner {
+
+    private static final String API_KEY = "simulatorApiKey";
+    private static final int ACCOUNTS = 25;
+
+    private RecurlySimulator simulator;
+    private RecurlyClient recurlyClient;
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        simulator = new RecurlySimulator(API_KEY).start();
+        recurlyClient = new RecurlyClient(API_KEY);
+        // Small pages, for every partition to span several of them
+        recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(simulator.getBaseUrl()).withPageSize(4));
+        recurlyClient.open();
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final Account account = new Account();
+            account.setAccountCode("account-" + i);
+            account.setEmail("account-" + i + "@example.com");
+            simulator.getSite().createAccount(account);
+        }
+        for (int i = 0; i < 5; i++) {
+            simulator.getSite().closeAccount("account-" + i);
+        }
+
+        final Plan plan = new Plan();
+        plan.setPlanCode("gold");
+        plan.setName("Gold plan");
+        final Plan.RecurlyUnitCurrency unitAmountInCents = new Plan.RecurlyUnitCurrency();
+        unitAmountInCents.setUnitAmountUSD(1500);
+        plan.setUnitAmountInCents(unitAmountInCents);
+        recurlyClient.createPlan(plan);
+
+        final BillingInfo billingInfo = new BillingInfo();
+        billingInfo.setFirstName("John");
+        billingInfo.setLastName("Doe");
+        billingInfo.setNumber("4111111111111111");
+        billingInfo.setMonth(12);
+        billingInfo.setYear(2030);
+        billingInfo.setVerificationValue(123);
+        final Account account = new Account();
+        account.setAccountCode("account-10");
+        account.setBillingInfo(billingInfo);
+        final Subscription subscription = new Subscription();
+        subscription.setPlanCode("gold");
+        subscription.setAccount(account);
+        subscription.setQuantity(1);
+        recurlyClient.createSubscription(subscription);
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDown() throws Exception {
+        recurlyClient.close();
+        simulator.stop();
+    }
+
+    @Test(groups = "slow")
+    public void testNextPage() throws Exception {
+        int count = 0;
+        Accounts page = recurlyClient.getAccounts("active");
+        while (page != null) {
+            Assert.assertTrue(page.size() <= 4);
+            count += page.size();
+            page = recurlyClient.getNextPage(page);
+        }
+        Assert.assertEquals(count, ACCOUNTS - 5);
+    }
+
+    @Test(groups = "slow")
+    public void testScan() throws Exception {
+        final Map<String, AccountSnapshot> snapshots = new HashMap<String, AccountSnapshot>();
+        final AccountScan scan = new AccountScanner(recurlyClient).withParallelism(4).withMaxPendingAccounts(8).scan();
+        try {
+            while (scan.hasNext()) {
+                final AccountSnapshot snapshot = scan.next();
+                Assert.assertNull(snapshots.put(snapshot.getAccount().getAccountCode(), snapshot));
+            }
+        } finally {
+            scan.close();
+        }
+
+        Assert.assertEquals(snapshots.size(), ACCOUNTS);
+        for (final AccountSnapshot snapshot : snapshots.values()) {
+            Assert.assertTrue(snapshot.isComplete(), snapshot.toString());
+            if ("account-10".equals(snapshot.getAccount().getAccountCode())) {
+                Assert.assertEquals(snapshot.getBillingInfo().getLastFour(), "1111");
+                Assert.assertEquals(snapshot.getSubscriptions().size(), 1);
+                Assert.assertEquals(snapshot.getInvoices().size(), 1);
+            } else {
+                Assert.assertNull(snapshot.getBillingInfo());
+                Assert.assertEquals(snapshot.getSubscriptions().size(), 0);
+                Assert.assertEquals(snapshot.getInvoices().size(), 0);
+            }
+        }
+        Assert.assertEquals(snapshots.get("account-0").getAccount().getState(), "closed");
+        Assert.assertFalse(scan.hasNext());
+    }
+
+    @Test(groups = "slow")
+    public void testRateLimitAndEarlyClose() throws Exception {
+        // 2 accounts pending at most: the listing waits for the consumer
+        final AccountScan scan = new AccountScanner(recurlyClient).withStates("active").withMaxPendingAccounts(2).withMaxRequestsPerSecond(200).scan();
+        final long start = System.nanoTime();
+        Assert.assertTrue(scan.hasNext());
+        scan.next();
+        Assert.assertTrue(scan.hasNext());
+        scan.next();
+        // 1 listing and 6 sub-resource calls, 5 ms apart
+        Assert.assertTrue(System.nanoTime() - start >= 25000000L);
+        scan.close();
+        Assert.assertFalse(scan.hasNext());
+    }
+
+    @Test(groups = "slow")
+    public void testScanLeavesSharedPagesUntouched() throws Exception {
+        // 6 subscriptions, over 2 pages
+        for (int i = 0; i < 5; i++) {
+            final Subscription subscription = new Subscription();
+            subscription.setPlanCode("gold");
+            final Account account = new Account();
+            account.setAccountCode("account-10");
+            subscription.setAccount(account);
+            subscription.setQuantity(1);
+            recurlyClient.createSubscription(subscription);
+        }
+        final ResponseCache responseCache = new ResponseCache(16 * 1024 * 1024);
+        recurlyClient.setResponseCache(responseCache);
+
+        final AccountScan scan = new AccountScanner(recurlyClient).withStates("active").scan();
+        try {
+            while (scan.hasNext()) {
+                final AccountSnapshot snapshot = scan.next();
+                if ("account-10".equals(snapshot.getAccount().getAccountCode())) {
+                    Assert.assertEquals(snapshot.getSubscriptions().size(), 6);
+                }
+            }
+        } finally {
+            scan.close();
+        }
+
+        // The first page, served from the cache, is still a single page
+        final Subscriptions firstPage = recurlyClient.getAccountSubscriptions("account-10");
+        Assert.assertTrue(responseCache.getNotModifiedResponses() > 0);
+        Assert.assertEquals(firstPage.size(), 4);
+        Assert.assertTrue(firstPage.hasNextPage());
+    }
+}
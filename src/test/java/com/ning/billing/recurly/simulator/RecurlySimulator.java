@@ -0,0 +1,628 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.AddOn;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.Coupon;
+import com.ning.billing.recurly.model.Plan;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.SubscriptionUpdate;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.util.UriTemplate;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded, in-memory implementation of the Recurly v2 endpoints used by
+ * {@link com.ning.billing.recurly.RecurlyClient}, to run functional and load tests without a Recurly site.
+ * <p/>
+ * The server speaks plain http: point a client at it with
+ * <pre>
+ * recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(simulator.getBaseUrl()));
+ * </pre>
+ * Lists are paginated like the real API (per_page and cursor parameters, X-Records and Link headers) and GET
+ * responses carry an ETag, honored by If-None-Match. Latency,
+ * server errors and rate limiting (429) can be injected; errors are injected on every Nth request so that a run
+ * is reproducible regardless of thread scheduling.
+ * <p/>
+ * It can also be started standalone (e.g. for load tests from another process), from the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ning.billing.recurly.simulator.RecurlySimulator -Dexec.args="8080 apiKey"
+ * </pre>
+ */
+public class RecurlySimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(RecurlySimulator.class);
+
+    public static final String VERSION = "v2";
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final String CONTEXT = "/" + VERSION + "/";
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    private static final long LATENCY_SEED = 42;
+
+    private final String expectedAuthorization;
+    private final int requestedPort;
+    private final SimulatedSite site = new SimulatedSite();
+    private final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+    private final Random latencyRandom = new Random(LATENCY_SEED);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+
+    private volatile long latencyMillis = 0;
+    private volatile int latencyJitterMillis = 0;
+    private volatile int errorEvery = 0;
+    private volatile int errorStatusCode = 500;
+    private volatile int throttleEvery = 0;
+    private volatile int retryAfterSeconds = 1;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Create a simulator listening on an ephemeral port
+     *
+     * @param apiKey API key expected in the Authorization header
+     */
+    public RecurlySimulator(final String apiKey) {
+        this(apiKey, 0);
+    }
+
+    public RecurlySimulator(final String apiKey, final int port) {
+        this.expectedAuthorization = "Basic " + DatatypeConverter.printBase64Binary(apiKey.getBytes());
+        this.requestedPort = port;
+    }
+
+    public synchronized RecurlySimulator start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", requestedPort), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "RecurlySimulator-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                handleExchange(exchange);
+            }
+        });
+        server.start();
+        log.info("Recurly simulator listening on {}", getBaseUrl());
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return base url for {@link com.ning.billing.recurly.RecurlyClientConfig#withBaseUrl(String)}, e.g. http://127.0.0.1:52345/v2
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort() + "/" + VERSION;
+    }
+
+    public SimulatedSite getSite() {
+        return site;
+    }
+
+    /**
+     * Delay every response by latencyMillis plus a pseudo-random (but reproducible) jitter
+     */
+    public RecurlySimulator setLatency(final long latencyMillis, final int jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Answer every Nth request with the given server error, 0 to disable
+     */
+    public RecurlySimulator setErrorEvery(final int every, final int statusCode) {
+        this.errorEvery = every;
+        this.errorStatusCode = statusCode;
+        return this;
+    }
+
+    /**
+     * Answer every Nth request with a 429 and a Retry-After header, 0 to disable
+     */
+    public RecurlySimulator setThrottleEvery(final int every, final int retryAfterSeconds) {
+        this.throttleEvery = every;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    /**
+     * Clear the site and the counters, keep the injection settings
+     */
+    public void reset() {
+        site.reset();
+        requests.set(0);
+        injectedErrors.set(0);
+        throttledRequests.set(0);
+    }
+
+    private void handleExchange(final HttpExchange exchange) throws IOException {
+        try {
+            final SimulatorResponse response = respond(exchange);
+            for (final Map.Entry<String, String> header : response.headers.entrySet()) {
+                exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+            }
+            if (response.body == null || "HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(response.statusCode, -1);
+            } else {
+                final byte[] body = response.body.getBytes("UTF-8");
+                if (response.statusCode == 200 && "GET".equals(exchange.getRequestMethod())) {
+                    // Validators, like the real API
+                    final String etag = etag(body);
+                    exchange.getResponseHeaders().add("ETag", etag);
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        return;
+                    }
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/xml; charset=utf-8");
+                exchange.sendResponseHeaders(response.statusCode, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Simulator failure", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private SimulatorResponse respond(final HttpExchange exchange) throws IOException {
+        final long requestNumber = requests.incrementAndGet();
+        simulateLatency();
+
+        if (!expectedAuthorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            return SimulatorResponse.of(SimulatorException.error(401, "unauthorized", "The API key is invalid."));
+        }
+        if (throttleEvery > 0 && requestNumber % throttleEvery == 0) {
+            throttledRequests.incrementAndGet();
+            return SimulatorResponse.of(SimulatorException.error(429, "rate_limit_exceeded", "You have made too many API requests in the last hour."))
+                                    .withHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        }
+        if (errorEvery > 0 && requestNumber % errorEvery == 0) {
+            injectedErrors.incrementAndGet();
+            return SimulatorResponse.of(SimulatorException.error(errorStatusCode, "internal_server_error", "Injected error for request " + requestNumber));
+        }
+
+        final String rawPath = exchange.getRequestURI().getRawPath();
+        final String[] segments = rawPath.substring(CONTEXT.length()).split("/");
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = decode(segments[i].replace("+", "%2B"));
+        }
+        final String method = "HEAD".equals(exchange.getRequestMethod()) ? "GET" : exchange.getRequestMethod();
+        final Request request = new Request(method, rawPath, segments, parseQuery(exchange.getRequestURI().getRawQuery()),
+                                            readBody(exchange.getRequestBody()));
+        try {
+            return route(request);
+        } catch (SimulatorException e) {
+            return SimulatorResponse.of(e);
+        } catch (IOException e) {
+            return SimulatorResponse.of(SimulatorException.error(400, "bad_request", "Unable to parse the request body: " + e.getMessage()));
+        }
+    }
+
+    private SimulatorResponse route(final Request request) throws IOException {
+        final String[] segments = request.segments;
+        final String resource = segments[0];
+
+        if ("accounts".equals(resource)) {
+            return routeAccounts(request);
+        } else if ("subscriptions".equals(resource)) {
+            return routeSubscriptions(request);
+        } else if ("transactions".equals(resource)) {
+            if (segments.length == 1 && request.is("GET")) {
+                return page("transactions", search(site.getTransactions(null, request.query.get("state"), request.query.get("type")), request), request);
+            } else if (segments.length == 1 && request.is("POST")) {
+                return created(site.createTransaction(request.bodyAs(Transaction.class)));
+            } else if (segments.length == 2 && request.is("GET")) {
+                return ok(site.getTransaction(segments[1]));
+            }
+        } else if ("invoices".equals(resource)) {
+            if (segments.length == 2 && request.is("GET")) {
+                final Integer invoiceNumber;
+                try {
+                    invoiceNumber = Integer.valueOf(segments[1]);
+                } catch (NumberFormatException e) {
+                    throw SimulatorException.notFound("Invoice", "invoice_number", segments[1]);
+                }
+                return ok(site.getInvoice(invoiceNumber));
+            }
+        } else if ("plans".equals(resource)) {
+            return routePlans(request);
+        } else if ("coupons".equals(resource)) {
+            if (segments.length == 1 && request.is("GET")) {
+                return page("coupons", site.getCoupons(), request);
+            } else if (segments.length == 1 && request.is("POST")) {
+                return created(site.createCoupon(request.bodyAs(Coupon.class)));
+            } else if (segments.length == 2 && request.is("GET")) {
+                return ok(site.getCoupon(segments[1]));
+            } else if (segments.length == 2 && request.is("DELETE")) {
+                site.deactivateCoupon(segments[1]);
+                return noContent();
+            }
+        } else if ("recurly_js".equals(resource)) {
+            if (segments.length == 3 && "result".equals(segments[1]) && request.is("GET")) {
+                return ok(site.getRecurlyJsResult(segments[2]));
+            }
+        }
+
+        throw SimulatorException.error(404, "not_found", "The requested URL " + request.rawPath + " was not found.");
+    }
+
+    private SimulatorResponse routeAccounts(final Request request) throws IOException {
+        final String[] segments = request.segments;
+        if (segments.length == 1) {
+            if (request.is("GET")) {
+                return page("accounts", site.getAccounts(request.query.get("state")), request);
+            } else if (request.is("POST")) {
+                return created(site.createAccount(request.bodyAs(Account.class)));
+            }
+        } else if (segments.length == 2) {
+            if (request.is("GET")) {
+                return ok(site.getAccount(segments[1]));
+            } else if (request.is("PUT")) {
+                return ok(site.updateAccount(segments[1], request.bodyAs(Account.class)));
+            } else if (request.is("DELETE")) {
+                site.closeAccount(segments[1]);
+                return noContent();
+            }
+        } else if (segments.length == 3) {
+            final String accountCode = segments[1];
+            final String subResource = segments[2];
+            if ("billing_info".equals(subResource)) {
+                if (request.is("GET")) {
+                    return ok(site.getBillingInfo(accountCode));
+                } else if (request.is("PUT")) {
+                    return ok(site.updateBillingInfo(accountCode, request.bodyAs(BillingInfo.class)));
+                } else if (request.is("DELETE")) {
+                    site.clearBillingInfo(accountCode);
+                    return noContent();
+                }
+            } else if ("subscriptions".equals(subResource) && request.is("GET")) {
+                return page("subscriptions", site.getAccountSubscriptions(accountCode, request.query.get("state")), request);
+            } else if ("transactions".equals(subResource) && request.is("GET")) {
+                return page("transactions", site.getTransactions(accountCode, request.query.get("state"), request.query.get("type")), request);
+            } else if ("invoices".equals(subResource) && request.is("GET")) {
+                return page("invoices", site.getAccountInvoices(accountCode), request);
+            }
+        }
+        throw SimulatorException.error(404, "not_found", "The requested URL " + request.rawPath + " was not found.");
+    }
+
+    private SimulatorResponse routeSubscriptions(final Request request) throws IOException {
+        final String[] segments = request.segments;
+        if (segments.length == 1 && request.is("POST")) {
+            return created(site.createSubscription(request.bodyAs(Subscription.class)));
+        } else if (segments.length == 2 && request.is("GET")) {
+            return ok(site.getSubscription(segments[1]));
+        } else if (segments.length == 2 && request.is("PUT")) {
+            return ok(site.updateSubscription(segments[1], request.bodyAs(SubscriptionUpdate.class)));
+        } else if (segments.length == 3 && "cancel".equals(segments[2]) && request.is("PUT")) {
+            return ok(site.cancelSubscription(segments[1]));
+        } else if (segments.length == 3 && "reactivate".equals(segments[2]) && request.is("PUT")) {
+            return ok(site.reactivateSubscription(segments[1]));
+        }
+        throw SimulatorException.error(404, "not_found", "The requested URL " + request.rawPath + " was not found.");
+    }
+
+    private SimulatorResponse routePlans(final Request request) throws IOException {
+        final String[] segments = request.segments;
+        if (segments.length == 1) {
+            if (request.is("GET")) {
+                return page("plans", site.getPlans(), request);
+            } else if (request.is("POST")) {
+                return created(site.createPlan(request.bodyAs(Plan.class)));
+            }
+        } else if (segments.length == 2) {
+            if (request.is("GET")) {
+                return ok(site.getPlan(segments[1]));
+            } else if (request.is("DELETE")) {
+                site.deletePlan(segments[1]);
+                return noContent();
+            }
+        } else if (segments.length == 3 && "add_ons".equals(segments[2])) {
+            if (request.is("GET")) {
+                return page("add_ons", site.getAddOns(segments[1]), request);
+            } else if (request.is("POST")) {
+                return created(site.createAddOn(segments[1], request.bodyAs(AddOn.class)));
+            }
+        } else if (segments.length == 4 && "add_ons".equals(segments[2])) {
+            if (request.is("GET")) {
+                return ok(site.getAddOn(segments[1], segments[3]));
+            } else if (request.is("DELETE")) {
+                site.deleteAddOn(segments[1], segments[3]);
+                return noContent();
+            }
+        }
+        throw SimulatorException.error(404, "not_found", "The requested URL " + request.rawPath + " was not found.");
+    }
+
+    /**
+     * Serialize a page of a list, with the same pagination headers as the real API
+     */
+    private SimulatorResponse page(final String root, final List<? extends RecurlyObject> items, final Request request) throws IOException {
+        final int perPage = Math.max(1, Math.min(MAX_PAGE_SIZE, intParameter(request.query.get("per_page"), DEFAULT_PAGE_SIZE)));
+        final int start = Math.max(0, Math.min(items.size(), intParameter(request.query.get("cursor"), 0)));
+        final int end = Math.min(items.size(), start + perPage);
+
+        final StringBuilder body = new StringBuilder(XML_DECLARATION);
+        body.append('<').append(root).append(" type=\"array\">\n");
+        for (final RecurlyObject item : items.subList(start, end)) {
+            body.append(xmlMapper.writeValueAsString(item)).append('\n');
+        }
+        body.append("</").append(root).append(">");
+
+        final SimulatorResponse response = new SimulatorResponse(200, body.toString()).withHeader("X-Records", String.valueOf(items.size()));
+        final StringBuilder links = new StringBuilder();
+        if (start > 0) {
+            links.append('<').append(pageUrl(request, null, perPage)).append(">; rel=\"start\"");
+        }
+        if (end < items.size()) {
+            if (links.length() > 0) {
+                links.append(", ");
+            }
+            links.append('<').append(pageUrl(request, end, perPage)).append(">; rel=\"next\"");
+        }
+        if (links.length() > 0) {
+            response.withHeader("Link", links.toString());
+        }
+        return response;
+    }
+
+    private String pageUrl(final Request request, final Integer cursor, final int perPage) {
+        final StringBuilder url = new StringBuilder("http://127.0.0.1:").append(getPort()).append(request.rawPath);
+        for (final Map.Entry<String, String> parameter : request.query.entrySet()) {
+            if (!"cursor".equals(parameter.getKey()) && !"per_page".equals(parameter.getKey())) {
+                UriTemplate.appendQueryParameter(url, parameter.getKey(), parameter.getValue());
+            }
+        }
+        if (cursor != null) {
+            UriTemplate.appendQueryParameter(url, "cursor", cursor);
+        }
+        UriTemplate.appendQueryParameter(url, "per_page", perPage);
+        return url.toString();
+    }
+
+    private SimulatorResponse ok(final RecurlyObject object) throws IOException {
+        return new SimulatorResponse(200, XML_DECLARATION + xmlMapper.writeValueAsString(object));
+    }
+
+    private SimulatorResponse created(final RecurlyObject object) throws IOException {
+        return new SimulatorResponse(201, XML_DECLARATION + xmlMapper.writeValueAsString(object));
+    }
+
+    private static SimulatorResponse noContent() {
+        return new SimulatorResponse(204, null);
+    }
+
+    private void simulateLatency() {
+        final long jitter;
+        synchronized (latencyRandom) {
+            jitter = latencyJitterMillis > 0 ? latencyRandom.nextInt(latencyJitterMillis + 1) : 0;
+        }
+        final long delay = latencyMillis + jitter;
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Apply the begin_time, end_time and order parameters of a transactions search (on created_at, whatever the sort)
+     */
+    private static List<Transaction> search(final List<Transaction> transactions, final Request request) {
+        final DateTime beginTime = request.query.get("begin_time") == null ? null : new DateTime(request.query.get("begin_time"));
+        final DateTime endTime = request.query.get("end_time") == null ? null : new DateTime(request.query.get("end_time"));
+
+        final List<Transaction> result = new ArrayList<Transaction>(transactions.size());
+        for (final Transaction transaction : transactions) {
+            final DateTime createdAt = transaction.getCreatedAt();
+            if ((beginTime == null || !createdAt.isBefore(beginTime)) && (endTime == null || !createdAt.isAfter(endTime))) {
+                result.add(transaction);
+            }
+        }
+        if ("desc".equals(request.query.get("order"))) {
+            Collections.reverse(result);
+        }
+        return result;
+    }
+
+    private static String etag(final byte[] body) {
+        try {
+            return "\"" + DatatypeConverter.printHexBinary(MessageDigest.getInstance("MD5").digest(body)).toLowerCase() + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int intParameter(final String value, final int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> query = new LinkedHashMap<String, String>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (final String parameter : rawQuery.split("&")) {
+            final int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                query.put(decode(parameter.substring(0, separator)), decode(parameter.substring(separator + 1)));
+            }
+        }
+        return query;
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readBody(final InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+
+    private final class Request {
+
+        private final String method;
+        private final String rawPath;
+        private final String[] segments;
+        private final Map<String, String> query;
+        private final String body;
+
+        private Request(final String method, final String rawPath, final String[] segments, final Map<String, String> query, final String body) {
+            this.method = method;
+            this.rawPath = rawPath;
+            this.segments = segments;
+            this.query = query;
+            this.body = body;
+        }
+
+        private boolean is(final String expectedMethod) {
+            return expectedMethod.equals(method);
+        }
+
+        private <T> T bodyAs(final Class<T> clazz) throws IOException {
+            if (body.isEmpty()) {
+                throw SimulatorException.error(400, "bad_request", "Missing request body");
+            }
+            return xmlMapper.readValue(body, clazz);
+        }
+    }
+
+    private static final class SimulatorResponse {
+
+        private final int statusCode;
+        private final String body;
+        private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+        private SimulatorResponse(final int statusCode, final String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        private static SimulatorResponse of(final SimulatorException exception) {
+            return new SimulatorResponse(exception.getStatusCode(), exception.getBody());
+        }
+
+        private SimulatorResponse withHeader(final String name, final String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        final String apiKey = args.length > 1 ? args[1] : "apiKey";
+        new RecurlySimulator(apiKey, port).start();
+        Thread.currentThread().join();
+    }
+}
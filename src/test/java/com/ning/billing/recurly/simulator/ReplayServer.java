@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ning.billing.recurly.trace.RecordedExchange;
+import com.ning.billing.recurly.trace.TraceArchiveReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serve the responses of a trace archive (see {@link com.ning.billing.recurly.trace.RecordingRequestTraceSink})
+ * back to a {@link com.ning.billing.recurly.RecurlyClient}, to replay a recorded flow through the full client stack
+ * <p/>
+ * Requests are matched on method and relative url; identical requests get the recorded responses in order,
+ * starting over once exhausted when looping (the default). Responses are sent either after the recorded
+ * Recurly latency or immediately, with their recorded headers (relative Link urls pointing to the replay server).
+ * Unknown requests get a 404.
+ */
+public class ReplayServer {
+
+    public static enum Timing {
+        ORIGINAL,
+        MAXIMUM_SPEED
+    }
+
+    private static final String CONTEXT = "/" + RecurlySimulator.VERSION;
+
+    private final Map<String, List<RecordedExchange>> exchanges = new HashMap<String, List<RecordedExchange>>();
+    private final Map<String, AtomicInteger> positions = new HashMap<String, AtomicInteger>();
+    private final Timing timing;
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean loop = true;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ReplayServer(final List<RecordedExchange> recordedExchanges, final Timing timing) {
+        this.timing = timing;
+        for (final RecordedExchange exchange : recordedExchanges) {
+            final String key = key(exchange.getMethod(), exchange.getUrl());
+            List<RecordedExchange> sameRequest = exchanges.get(key);
+            if (sameRequest == null) {
+                sameRequest = new ArrayList<RecordedExchange>();
+                exchanges.put(key, sameRequest);
+                positions.put(key, new AtomicInteger());
+            }
+            sameRequest.add(exchange);
+        }
+    }
+
+    public static ReplayServer fromArchive(final File archive, final Timing timing) throws IOException {
+        return new ReplayServer(TraceArchiveReader.readAll(archive), timing);
+    }
+
+    public synchronized ReplayServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "ReplayServer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext(CONTEXT + "/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    replay(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + CONTEXT;
+    }
+
+    /**
+     * @param loop whether to start over once the recorded responses of a request are exhausted
+     */
+    public ReplayServer setLoop(final boolean loop) {
+        this.loop = loop;
+        return this;
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void replay(final HttpExchange httpExchange) throws IOException {
+        final String rawQuery = httpExchange.getRequestURI().getRawQuery();
+        final String url = httpExchange.getRequestURI().getRawPath().substring(CONTEXT.length()) + (rawQuery == null ? "" : "?" + rawQuery);
+        final String key = key(httpExchange.getRequestMethod(), url);
+
+        final RecordedExchange recorded = nextExchange(key);
+        if (recorded == null) {
+            misses.incrementAndGet();
+            send(httpExchange, SimulatorException.notFound("recorded exchange", "request", key));
+            return;
+        }
+
+        if (timing == Timing.ORIGINAL) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(recorded.getDurationNanos());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        replayed.incrementAndGet();
+        for (final Map.Entry<String, String> header : recorded.getResponseHeaders().entrySet()) {
+            final String value = "Link".equals(header.getKey()) ? header.getValue().replace("</", "<" + getBaseUrl() + "/") : header.getValue();
+            httpExchange.getResponseHeaders().add(header.getKey(), value);
+        }
+        send(httpExchange, recorded.getStatusCode(), recorded.getResponseBody());
+    }
+
+    private RecordedExchange nextExchange(final String key) {
+        final List<RecordedExchange> sameRequest = exchanges.get(key);
+        if (sameRequest == null) {
+            return null;
+        }
+        final AtomicInteger counter = positions.get(key);
+        final int size = sameRequest.size();
+        int position;
+        int next;
+        do {
+            position = counter.get();
+            if (position >= size && !loop) {
+                return null;
+            }
+            // Past the end (exhausted), keep the same position modulo size instead of overflowing
+            next = position == Integer.MAX_VALUE ? size + (position - size + 1) % size : position + 1;
+        } while (!counter.compareAndSet(position, next));
+        return sameRequest.get(position % size);
+    }
+
+    private static void send(final HttpExchange httpExchange, final SimulatorException error) throws IOException {
+        send(httpExchange, error.getStatusCode(), error.getBody());
+    }
+
+    private static void send(final HttpExchange httpExchange, final int statusCode, final String body) throws IOException {
+        if (body == null || body.isEmpty() || statusCode == 204) {
+            httpExchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        final byte[] bytes = body.getBytes("UTF-8");
+        httpExchange.getResponseHeaders().add("Content-Type", "application/xml; charset=utf-8");
+        httpExchange.sendResponseHeaders(statusCode, bytes.length);
+        final OutputStream out = httpExchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String key(final String method, final String url) {
+        return method + " " + url;
+    }
+}
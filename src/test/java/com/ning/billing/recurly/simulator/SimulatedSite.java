@@ -0,0 +1,622 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.simulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.AddOn;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.Coupon;
+import com.ning.billing.recurly.model.Invoice;
+import com.ning.billing.recurly.model.Plan;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.SubscriptionUpdate;
+import com.ning.billing.recurly.model.Transaction;
+
+/**
+ * In-memory state of a simulated Recurly site
+ * <p/>
+ * Identifiers (uuids, invoice numbers) come from sequences and timestamps from a clock which starts at a fixed
+ * date and ticks one second per mutation, so that a given sequence of calls always produces the same data.
+ * Objects referenced from other resources (e.g. the account of a subscription) are stored as stubs, like the
+ * href links of the real API.
+ * <p/>
+ * Billing infos whose card number ends with 0002 are declined, like the Recurly test gateway does.
+ */
+public class SimulatedSite {
+
+    public static final String DECLINED_CARD_LAST_FOUR = "0002";
+
+    private static final DateTime EPOCH = new DateTime(2013, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+    private static final String DEFAULT_CURRENCY = "USD";
+
+    private final Map<String, Account> accounts = new LinkedHashMap<String, Account>();
+    private final Map<String, BillingInfo> billingInfos = new HashMap<String, BillingInfo>();
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<String, Subscription>();
+    private final Map<String, Transaction> transactions = new LinkedHashMap<String, Transaction>();
+    private final Map<Integer, Invoice> invoices = new LinkedHashMap<Integer, Invoice>();
+    private final Map<String, Plan> plans = new LinkedHashMap<String, Plan>();
+    private final Map<String, Map<String, AddOn>> addOns = new HashMap<String, Map<String, AddOn>>();
+    private final Map<String, Coupon> coupons = new LinkedHashMap<String, Coupon>();
+    private final Map<String, RecurlyObject> recurlyJsResults = new HashMap<String, RecurlyObject>();
+
+    private long uuidSequence = 0;
+    private int invoiceNumberSequence = 1000;
+    private DateTime clock = EPOCH;
+
+    public synchronized void reset() {
+        accounts.clear();
+        billingInfos.clear();
+        subscriptions.clear();
+        transactions.clear();
+        invoices.clear();
+        plans.clear();
+        addOns.clear();
+        coupons.clear();
+        recurlyJsResults.clear();
+        uuidSequence = 0;
+        invoiceNumberSequence = 1000;
+        clock = EPOCH;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Accounts
+
+    public synchronized Account createAccount(final Account account) {
+        final String accountCode = account.getAccountCode();
+        if (accountCode == null || accountCode.isEmpty()) {
+            throw SimulatorException.invalid("account.account_code", "blank", "can't be blank");
+        }
+        if (accounts.containsKey(accountCode)) {
+            throw SimulatorException.invalid("account.account_code", "taken", "has already been taken");
+        }
+
+        final BillingInfo billingInfo = account.getBillingInfo();
+        account.setBillingInfo(null);
+        account.setState("active");
+        account.setCreatedAt(tick());
+        account.setHostedLoginToken(nextUuid());
+        accounts.put(accountCode, account);
+
+        if (billingInfo != null) {
+            updateBillingInfo(accountCode, billingInfo);
+        }
+        return account;
+    }
+
+    public synchronized List<Account> getAccounts(final String state) {
+        final List<Account> result = new ArrayList<Account>();
+        for (final Account account : accounts.values()) {
+            if (state == null || state.equals(account.getState())) {
+                result.add(account);
+            }
+        }
+        return result;
+    }
+
+    public synchronized Account getAccount(final String accountCode) {
+        final Account account = accounts.get(accountCode);
+        if (account == null) {
+            throw SimulatorException.notFound("Account", "account_code", accountCode);
+        }
+        return account;
+    }
+
+    public synchronized Account updateAccount(final String accountCode, final Account update) {
+        final Account account = getAccount(accountCode);
+        if (update.getUsername() != null) {
+            account.setUsername(update.getUsername());
+        }
+        if (update.getEmail() != null) {
+            account.setEmail(update.getEmail());
+        }
+        if (update.getFirstName() != null) {
+            account.setFirstName(update.getFirstName());
+        }
+        if (update.getLastName() != null) {
+            account.setLastName(update.getLastName());
+        }
+        if (update.getCompanyName() != null) {
+            account.setCompanyName(update.getCompanyName());
+        }
+        if (update.getAcceptLanguage() != null) {
+            account.setAcceptLanguage(update.getAcceptLanguage());
+        }
+        tick();
+        return account;
+    }
+
+    public synchronized void closeAccount(final String accountCode) {
+        final Account account = getAccount(accountCode);
+        final DateTime now = tick();
+        account.setState("closed");
+        billingInfos.remove(accountCode);
+        for (final Subscription subscription : subscriptions.values()) {
+            if (accountCode.equals(subscription.getAccount().getAccountCode()) && !"expired".equals(subscription.getState())) {
+                subscription.setState("expired");
+                subscription.setCanceledAt(now);
+                subscription.setExpiresAt(now);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Billing info
+
+    public synchronized BillingInfo updateBillingInfo(final String accountCode, final BillingInfo billingInfo) {
+        if (!accounts.containsKey(accountCode)) {
+            final Account account = new Account();
+            account.setAccountCode(accountCode);
+            createAccount(account);
+        }
+
+        final String number = billingInfo.getNumber();
+        if (number != null) {
+            if (number.length() < 10) {
+                throw SimulatorException.invalid("billing_info.number", "invalid", "is not a valid credit card number");
+            }
+            if (number.endsWith(DECLINED_CARD_LAST_FOUR)) {
+                throw SimulatorException.declined("declined", "The transaction was declined.", "Your card was declined.", null);
+            }
+            billingInfo.setFirstSix(number.substring(0, 6));
+            billingInfo.setLastFour(number.substring(number.length() - 4));
+            billingInfo.setCardType(cardType(number));
+            billingInfo.setNumber(null);
+            billingInfo.setVerificationValue(null);
+        }
+        billingInfo.setAccount(accountReference(accountCode));
+        billingInfos.put(accountCode, billingInfo);
+        tick();
+        return billingInfo;
+    }
+
+    public synchronized BillingInfo getBillingInfo(final String accountCode) {
+        getAccount(accountCode);
+        final BillingInfo billingInfo = billingInfos.get(accountCode);
+        if (billingInfo == null) {
+            throw SimulatorException.notFound("BillingInfo", "account_code", accountCode);
+        }
+        return billingInfo;
+    }
+
+    public synchronized void clearBillingInfo(final String accountCode) {
+        getAccount(accountCode);
+        billingInfos.remove(accountCode);
+        tick();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Subscriptions
+
+    public synchronized Subscription createSubscription(final Subscription subscription) {
+        final Plan plan = plans.get(subscription.getPlanCode());
+        if (plan == null) {
+            throw SimulatorException.invalid("subscription.plan_code", "invalid", "is invalid");
+        }
+        final Account account = subscription.getAccount();
+        if (account == null || account.getAccountCode() == null) {
+            throw SimulatorException.invalid("subscription.account.account_code", "blank", "can't be blank");
+        }
+        final String accountCode = account.getAccountCode();
+        if (!accounts.containsKey(accountCode)) {
+            createAccount(account);
+        } else if (account.getBillingInfo() != null) {
+            updateBillingInfo(accountCode, account.getBillingInfo());
+        }
+
+        final DateTime now = tick();
+        final Subscription created = new Subscription();
+        created.setUuid(nextUuid());
+        created.setAccount(accountReference(accountCode));
+        created.setPlan(planReference(plan));
+        created.setState("active");
+        created.setCurrency(subscription.getCurrency() == null ? DEFAULT_CURRENCY : subscription.getCurrency());
+        created.setQuantity(subscription.getQuantity() == null ? 1 : subscription.getQuantity());
+        created.setUnitAmountInCents(subscription.getUnitAmountInCents() == null ? planAmountInCents(plan) : subscription.getUnitAmountInCents());
+        created.setActivatedAt(now);
+        created.setCurrentPeriodStartedAt(now);
+        created.setCurrentPeriodEndsAt(periodEnd(plan, now));
+
+        // Declined charges don't create the subscription
+        final int amountInCents = created.getUnitAmountInCents() * created.getQuantity();
+        charge(accountCode, amountInCents, created.getCurrency(), created.getUuid(), plan.getName());
+        subscriptions.put(created.getUuid(), created);
+        return created;
+    }
+
+    public synchronized Subscription getSubscription(final String uuid) {
+        final Subscription subscription = subscriptions.get(uuid);
+        if (subscription == null) {
+            throw SimulatorException.notFound("Subscription", "uuid", uuid);
+        }
+        return subscription;
+    }
+
+    public synchronized List<Subscription> getAccountSubscriptions(final String accountCode, final String state) {
+        getAccount(accountCode);
+        final List<Subscription> result = new ArrayList<Subscription>();
+        for (final Subscription subscription : subscriptions.values()) {
+            if (accountCode.equals(subscription.getAccount().getAccountCode()) && (state == null || state.equals(subscription.getState()))) {
+                result.add(subscription);
+            }
+        }
+        return result;
+    }
+
+    public synchronized Subscription updateSubscription(final String uuid, final SubscriptionUpdate update) {
+        final Subscription subscription = getSubscription(uuid);
+        if (update.getPlanCode() != null) {
+            final Plan plan = plans.get(update.getPlanCode());
+            if (plan == null) {
+                throw SimulatorException.invalid("subscription.plan_code", "invalid", "is invalid");
+            }
+            subscription.setPlan(planReference(plan));
+            if (update.getUnitAmountInCents() == null) {
+                subscription.setUnitAmountInCents(planAmountInCents(plan));
+            }
+        }
+        if (update.getQuantity() != null) {
+            subscription.setQuantity(update.getQuantity());
+        }
+        if (update.getUnitAmountInCents() != null) {
+            subscription.setUnitAmountInCents(update.getUnitAmountInCents());
+        }
+        tick();
+        return subscription;
+    }
+
+    public synchronized Subscription cancelSubscription(final String uuid) {
+        final Subscription subscription = getSubscription(uuid);
+        if (!"active".equals(subscription.getState())) {
+            throw SimulatorException.error(400, "invalid_transition", "Subscription is not active");
+        }
+        subscription.setState("canceled");
+        subscription.setCanceledAt(tick());
+        subscription.setExpiresAt(subscription.getCurrentPeriodEndsAt());
+        return subscription;
+    }
+
+    public synchronized Subscription reactivateSubscription(final String uuid) {
+        final Subscription subscription = getSubscription(uuid);
+        if (!"canceled".equals(subscription.getState())) {
+            throw SimulatorException.error(400, "invalid_transition", "Subscription is not canceled");
+        }
+        subscription.setState("active");
+        subscription.setCanceledAt(null);
+        subscription.setExpiresAt(null);
+        tick();
+        return subscription;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Transactions and invoices
+
+    public synchronized Transaction createTransaction(final Transaction transaction) {
+        final Account account = transaction.getAccount();
+        if (account == null || account.getAccountCode() == null) {
+            throw SimulatorException.invalid("transaction.account.account_code", "blank", "can't be blank");
+        }
+        if (transaction.getAmountInCents() == null || transaction.getAmountInCents() <= 0) {
+            throw SimulatorException.invalid("transaction.amount_in_cents", "invalid", "is invalid");
+        }
+        final String accountCode = account.getAccountCode();
+        if (!accounts.containsKey(accountCode)) {
+            createAccount(account);
+        } else if (account.getBillingInfo() != null) {
+            updateBillingInfo(accountCode, account.getBillingInfo());
+        }
+
+        final String currency = transaction.getCurrency() == null ? DEFAULT_CURRENCY : transaction.getCurrency();
+        return charge(accountCode, transaction.getAmountInCents(), currency, null, transaction.getDescription());
+    }
+
+    public synchronized Transaction getTransaction(final String uuid) {
+        final Transaction transaction = transactions.get(uuid);
+        if (transaction == null) {
+            throw SimulatorException.notFound("Transaction", "uuid", uuid);
+        }
+        return transaction;
+    }
+
+    /**
+     * @param accountCode account to look at, null for all the transactions of the site
+     * @param state       successful, failed or voided (API filter values), null for any
+     * @param type        authorization, refund or purchase, null for any
+     */
+    public synchronized List<Transaction> getTransactions(final String accountCode, final String state, final String type) {
+        if (accountCode != null) {
+            getAccount(accountCode);
+        }
+        final String status = state == null ? null : transactionStatus(state);
+        final List<Transaction> result = new ArrayList<Transaction>();
+        for (final Transaction transaction : transactions.values()) {
+            if ((accountCode == null || accountCode.equals(transaction.getAccount().getAccountCode())) &&
+                (status == null || status.equals(transaction.getStatus())) &&
+                (type == null || type.equals(transaction.getAction()))) {
+                result.add(transaction);
+            }
+        }
+        return result;
+    }
+
+    public synchronized Invoice getInvoice(final Integer invoiceNumber) {
+        final Invoice invoice = invoices.get(invoiceNumber);
+        if (invoice == null) {
+            throw SimulatorException.notFound("Invoice", "invoice_number", invoiceNumber);
+        }
+        return invoice;
+    }
+
+    public synchronized List<Invoice> getAccountInvoices(final String accountCode) {
+        getAccount(accountCode);
+        final List<Invoice> result = new ArrayList<Invoice>();
+        for (final Invoice invoice : invoices.values()) {
+            if (accountCode.equals(invoice.getAccount().getAccountCode())) {
+                result.add(invoice);
+            }
+        }
+        return result;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Plans, add-ons and coupons
+
+    public synchronized Plan createPlan(final Plan plan) {
+        final String planCode = plan.getPlanCode();
+        if (planCode == null || planCode.isEmpty()) {
+            throw SimulatorException.invalid("plan.plan_code", "blank", "can't be blank");
+        }
+        if (plans.containsKey(planCode)) {
+            throw SimulatorException.invalid("plan.plan_code", "taken", "has already been taken");
+        }
+        plan.setAddOns(null);
+        plan.setCreatedAt(tick());
+        plans.put(planCode, plan);
+        addOns.put(planCode, new LinkedHashMap<String, AddOn>());
+        return plan;
+    }
+
+    public synchronized Plan getPlan(final String planCode) {
+        final Plan plan = plans.get(planCode);
+        if (plan == null) {
+            throw SimulatorException.notFound("Plan", "plan_code", planCode);
+        }
+        return plan;
+    }
+
+    public synchronized List<Plan> getPlans() {
+        return new ArrayList<Plan>(plans.values());
+    }
+
+    public synchronized void deletePlan(final String planCode) {
+        getPlan(planCode);
+        plans.remove(planCode);
+        addOns.remove(planCode);
+        tick();
+    }
+
+    public synchronized AddOn createAddOn(final String planCode, final AddOn addOn) {
+        getPlan(planCode);
+        final String addOnCode = addOn.getAddOnCode();
+        if (addOnCode == null || addOnCode.isEmpty()) {
+            throw SimulatorException.invalid("add_on.add_on_code", "blank", "can't be blank");
+        }
+        final Map<String, AddOn> planAddOns = addOns.get(planCode);
+        if (planAddOns.containsKey(addOnCode)) {
+            throw SimulatorException.invalid("add_on.add_on_code", "taken", "has already been taken");
+        }
+        addOn.setCreatedAt(tick());
+        planAddOns.put(addOnCode, addOn);
+        return addOn;
+    }
+
+    public synchronized AddOn getAddOn(final String planCode, final String addOnCode) {
+        getPlan(planCode);
+        final AddOn addOn = addOns.get(planCode).get(addOnCode);
+        if (addOn == null) {
+            throw SimulatorException.notFound("AddOn", "add_on_code", addOnCode);
+        }
+        return addOn;
+    }
+
+    public synchronized List<AddOn> getAddOns(final String planCode) {
+        getPlan(planCode);
+        return new ArrayList<AddOn>(addOns.get(planCode).values());
+    }
+
+    public synchronized void deleteAddOn(final String planCode, final String addOnCode) {
+        getAddOn(planCode, addOnCode);
+        addOns.get(planCode).remove(addOnCode);
+        tick();
+    }
+
+    public synchronized Coupon createCoupon(final Coupon coupon) {
+        final String couponCode = coupon.getCouponCode();
+        if (couponCode == null || couponCode.isEmpty()) {
+            throw SimulatorException.invalid("coupon.coupon_code", "blank", "can't be blank");
+        }
+        if (coupons.containsKey(couponCode)) {
+            throw SimulatorException.invalid("coupon.coupon_code", "taken", "has already been taken");
+        }
+        coupon.setState("redeemable");
+        coupons.put(couponCode, coupon);
+        tick();
+        return coupon;
+    }
+
+    public synchronized Coupon getCoupon(final String couponCode) {
+        final Coupon coupon = coupons.get(couponCode);
+        if (coupon == null) {
+            throw SimulatorException.notFound("Coupon", "coupon_code", couponCode);
+        }
+        return coupon;
+    }
+
+    public synchronized List<Coupon> getCoupons() {
+        return new ArrayList<Coupon>(coupons.values());
+    }
+
+    /**
+     * Coupons are deactivated, not removed
+     */
+    public synchronized void deactivateCoupon(final String couponCode) {
+        getCoupon(couponCode).setState("inactive");
+        tick();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Recurly.js
+
+    /**
+     * Register the object returned for a recurly.js token (subscription, billing info or invoice)
+     */
+    public synchronized void addRecurlyJsResult(final String token, final RecurlyObject result) {
+        recurlyJsResults.put(token, result);
+    }
+
+    public synchronized RecurlyObject getRecurlyJsResult(final String token) {
+        final RecurlyObject result = recurlyJsResults.get(token);
+        if (result == null) {
+            throw SimulatorException.notFound("Token", "token", token);
+        }
+        return result;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Transaction charge(final String accountCode, final int amountInCents, final String currency,
+                               final String subscriptionUuid, final String description) {
+        final DateTime now = tick();
+
+        final Invoice invoice = new Invoice();
+        invoice.setUuid(nextUuid());
+        invoice.setInvoiceNumber(++invoiceNumberSequence);
+        invoice.setAccount(accountReference(accountCode));
+        invoice.setCurrency(currency);
+        invoice.setSubtotalInCents(amountInCents);
+        invoice.setTaxInCents(0);
+        invoice.setTotalInCents(amountInCents);
+        invoice.setCreatedAt(now);
+
+        final Transaction transaction = new Transaction();
+        transaction.setUuid(nextUuid());
+        transaction.setAccount(accountReference(accountCode));
+        transaction.setInvoice(invoiceReference(invoice));
+        transaction.setSubscription(subscriptionUuid);
+        transaction.setAction("purchase");
+        transaction.setAmountInCents(amountInCents);
+        transaction.setTaxInCents(0);
+        transaction.setCurrency(currency);
+        transaction.setDescription(description);
+        transaction.setRecurring(subscriptionUuid != null);
+        transaction.setTest(true);
+        transaction.setSource(subscriptionUuid == null ? "transaction" : "subscription");
+        transaction.setCreatedAt(now);
+
+        final BillingInfo billingInfo = billingInfos.get(accountCode);
+        if (billingInfo != null && DECLINED_CARD_LAST_FOUR.equals(billingInfo.getLastFour())) {
+            transaction.setStatus("declined");
+            transaction.setVoidable(false);
+            transaction.setRefundable(false);
+            transactions.put(transaction.getUuid(), transaction);
+            invoice.setState("failed");
+            invoices.put(invoice.getInvoiceNumber(), invoice);
+            throw SimulatorException.declined("declined", "The transaction was declined.", "Your card was declined.", null);
+        }
+
+        transaction.setStatus("success");
+        transaction.setVoidable(true);
+        transaction.setRefundable(true);
+        transactions.put(transaction.getUuid(), transaction);
+        invoice.setState("collected");
+        invoice.setClosedAt(now);
+        invoices.put(invoice.getInvoiceNumber(), invoice);
+        return transaction;
+    }
+
+    private DateTime tick() {
+        clock = clock.plusSeconds(1);
+        return clock;
+    }
+
+    private String nextUuid() {
+        return String.format("%032x", ++uuidSequence);
+    }
+
+    private static Account accountReference(final String accountCode) {
+        final Account reference = new Account();
+        reference.setAccountCode(accountCode);
+        return reference;
+    }
+
+    private static Plan planReference(final Plan plan) {
+        final Plan reference = new Plan();
+        reference.setPlanCode(plan.getPlanCode());
+        reference.setName(plan.getName());
+        return reference;
+    }
+
+    private static Invoice invoiceReference(final Invoice invoice) {
+        final Invoice reference = new Invoice();
+        reference.setUuid(invoice.getUuid());
+        reference.setInvoiceNumber(invoice.getInvoiceNumber());
+        return reference;
+    }
+
+    private static int planAmountInCents(final Plan plan) {
+        if (plan.getUnitAmountInCents() == null || plan.getUnitAmountInCents().getUnitAmountUSD() == null) {
+            return 0;
+        }
+        return plan.getUnitAmountInCents().getUnitAmountUSD();
+    }
+
+    private static DateTime periodEnd(final Plan plan, final DateTime start) {
+        final int length = plan.getPlanIntervalLength() == null ? 1 : plan.getPlanIntervalLength();
+        return "days".equals(plan.getPlanIntervalUnit()) ? start.plusDays(length) : start.plusMonths(length);
+    }
+
+    private static String cardType(final String number) {
+        switch (number.charAt(0)) {
+            case '3':
+                return "american_express";
+            case '4':
+                return "visa";
+            case '5':
+                return "master";
+            default:
+                return "unknown";
+        }
+    }
+
+    private static String transactionStatus(final String state) {
+        if ("successful".equals(state)) {
+            return "success";
+        } else if ("voided".equals(state)) {
+            return "void";
+        }
+        return state;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.simulator;
+
+/**
+ * Error returned by the simulator, serialized the way Recurly does it
+ */
+public class SimulatorException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final String body;
+
+    public SimulatorException(final int statusCode, final String body) {
+        super(statusCode + ": " + body);
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public static SimulatorException notFound(final String type, final String field, final Object value) {
+        return error(404, "not_found", String.format("Couldn't find %s with %s = %s", type, field, value));
+    }
+
+    public static SimulatorException error(final int statusCode, final String symbol, final String description) {
+        return new SimulatorException(statusCode, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                  "<error>\n" +
+                                                  "  <symbol>" + symbol + "</symbol>\n" +
+                                                  "  <description lang=\"en-US\">" + escape(description) + "</description>\n" +
+                                                  "</error>");
+    }
+
+    public static SimulatorException invalid(final String field, final String symbol, final String message) {
+        return new SimulatorException(422, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                           "<errors>\n" +
+                                           "  <error field=\"" + escape(field) + "\" symbol=\"" + symbol + "\">" + escape(message) + "</error>\n" +
+                                           "</errors>");
+    }
+
+    /**
+     * @param transactionXml serialized declined transaction, may be null
+     */
+    public static SimulatorException declined(final String errorCode, final String merchantMessage, final String customerMessage,
+                                              final String transactionXml) {
+        return new SimulatorException(422, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                           "<errors>\n" +
+                                           "  <transaction_error>\n" +
+                                           "    <error_code>" + errorCode + "</error_code>\n" +
+                                           "    <error_category>soft</error_category>\n" +
+                                           "    <merchant_message>" + escape(merchantMessage) + "</merchant_message>\n" +
+                                           "    <customer_message>" + escape(customerMessage) + "</customer_message>\n" +
+                                           "  </transaction_error>\n" +
+                                           (transactionXml == null ? "" : transactionXml + "\n") +
+                                           "</errors>");
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    static String escape(final String value) {
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
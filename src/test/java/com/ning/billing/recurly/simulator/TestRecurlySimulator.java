@@ -0,0 +1,419 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.simulator;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.AccountCodeCache;
+import com.ning.billing.recurly.Patch;
+import com.ning.billing.recurly.Projection;
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.ResponseCache;
+import com.ning.billing.recurly.TransactionQuery;
+import com.ning.billing.recurly.TransactionStream;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.BillingInfo;
+import com.ning.billing.recurly.model.Invoice;
+import com.ning.billing.recurly.model.Invoices;
+import com.ning.billing.recurly.model.Plan;
+import com.ning.billing.recurly.model.Subscription;
+import com.ning.billing.recurly.model.Subscriptions;
+import com.ning.billing.recurly.model.Transaction;
+import com.ning.billing.recurly.model.Transactions;
+import com.ning.billing.recurly.model.batch.TransactionBatch;
+import com.ning.billing.recurly.model.exceptions.NotFoundException;
+import com.ning.billing.recurly.model.exceptions.RequestException;
+import com.ning.billing.recurly.model.exceptions.TransactionException;
+
+public class TestRecurlySimulator {
+
+    private static final String API_KEY = "simulatorApiKey";
+
+    private RecurlySimulator simulator;
+    private RecurlyClient recurlyClient;
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        simulator = new RecurlySimulator(API_KEY).start();
+        recurlyClient = new RecurlyClient(API_KEY);
+        recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(simulator.getBaseUrl()));
+        recurlyClient.open();
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDown() throws Exception {
+        recurlyClient.close();
+        simulator.stop();
+    }
+
+    @Test(groups = "slow")
+    public void testSubscriptionLifecycle() throws Exception {
+        final Plan plan = new Plan();
+        plan.setPlanCode("gold");
+        plan.setName("Gold plan");
+        final Plan.RecurlyUnitCurrency unitAmountInCents = new Plan.RecurlyUnitCurrency();
+        unitAmountInCents.setUnitAmountUSD(1500);
+        plan.setUnitAmountInCents(unitAmountInCents);
+        Assert.assertEquals(recurlyClient.createPlan(plan).getPlanCode(), "gold");
+
+        final Account account = newAccount("john");
+        account.setBillingInfo(newBillingInfo("4111111111111111"));
+        final Subscription subscription = new Subscription();
+        subscription.setPlanCode("gold");
+        subscription.setAccount(account);
+        subscription.setQuantity(2);
+        final Subscription created = recurlyClient.createSubscription(subscription);
+        Assert.assertEquals(created.getState(), "active");
+        Assert.assertEquals(created.getPlan().getPlanCode(), "gold");
+        Assert.assertEquals(created.getAccount().getAccountCode(), "john");
+
+        Assert.assertEquals(recurlyClient.getAccount("john").getState(), "active");
+
+        final Account fetched = recurlyClient.getAccount("john");
+        fetched.setFirstName("John");
+        fetched.setEmail("not-sent@example.com");
+        Assert.assertEquals(recurlyClient.updateAccount("john", Patch.of(fetched, "first_name")).getFirstName(), "John");
+        Assert.assertEquals(recurlyClient.getAccount("john").getEmail(), "john@example.com");
+        Assert.assertEquals(recurlyClient.getBillingInfo("john").getLastFour(), "1111");
+
+        final Subscriptions subscriptions = recurlyClient.getAccountSubscriptions("john", "active");
+        Assert.assertEquals(subscriptions.size(), 1);
+        Assert.assertEquals(subscriptions.get(0).getUuid(), created.getUuid());
+
+        final Subscriptions projected = recurlyClient.getAccountSubscriptions("john", Projection.of("uuid", "state"));
+        Assert.assertEquals(projected.get(0).getUuid(), created.getUuid());
+        Assert.assertEquals(projected.get(0).getState(), "active");
+        Assert.assertNull(projected.get(0).getPlan());
+
+        final Transactions transactions = recurlyClient.getAccountTransactions("john");
+        Assert.assertEquals(transactions.size(), 1);
+        Assert.assertEquals(transactions.get(0).getAmountInCents(), (Integer) 3000);
+        Assert.assertEquals(transactions.get(0).getStatus(), "success");
+
+        final TransactionBatch transactionBatch = recurlyClient.getAccountTransactionBatch("john");
+        Assert.assertEquals(transactionBatch.size(), 1);
+        Assert.assertEquals(transactionBatch.row(0).getUuid(), transactions.get(0).getUuid());
+        Assert.assertEquals(transactionBatch.row(0).getAccountCode(), "john");
+        Assert.assertEquals(transactionBatch.row(0).getAmountInCents(), 3000);
+
+        final Invoices invoices = recurlyClient.getAccountInvoices("john");
+        Assert.assertEquals(invoices.size(), 1);
+        final Invoice invoice = recurlyClient.getInvoice(invoices.get(0).getInvoiceNumber());
+        Assert.assertEquals(invoice.getTotalInCents(), (Integer) 3000);
+        Assert.assertEquals(invoice.getState(), "collected");
+
+        Assert.assertEquals(recurlyClient.cancelSubscription(created).getState(), "canceled");
+        Assert.assertEquals(recurlyClient.reactivateSubscription(created).getState(), "active");
+
+        recurlyClient.closeAccount("john");
+        Assert.assertEquals(recurlyClient.getAccount("john").getState(), "closed");
+        Assert.assertEquals(recurlyClient.getSubscription(created.getUuid()).getState(), "expired");
+    }
+
+    @Test(groups = "slow")
+    public void testErrors() throws Exception {
+        try {
+            recurlyClient.getAccount("unknown");
+            Assert.fail();
+        } catch (NotFoundException e) {
+            Assert.assertEquals(e.getError().getSymbol(), "not_found");
+        }
+
+        recurlyClient.createAccount(newAccount("jane"));
+        try {
+            recurlyClient.createAccount(newAccount("jane"));
+            Assert.fail();
+        } catch (RequestException e) {
+            Assert.assertEquals(e.getStatusCode(), 422);
+        }
+
+        final BillingInfo declined = newBillingInfo("4000000000000002");
+        declined.setAccount(newAccount("jane"));
+        try {
+            recurlyClient.createOrUpdateBillingInfo(declined);
+            Assert.fail();
+        } catch (TransactionException e) {
+            Assert.assertEquals(e.getErrors().getTransactionError().getErrorCode(), "declined");
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testInjection() throws Exception {
+        recurlyClient.createAccount(newAccount("jane"));
+        simulator.reset();
+        simulator.setThrottleEvery(3, 5).setErrorEvery(4, 503);
+        recurlyClient.createAccount(newAccount("jane"));
+
+        int throttled = 0;
+        int failed = 0;
+        for (int i = 0; i < 12; i++) {
+            try {
+                recurlyClient.getAccount("jane");
+            } catch (RequestException e) {
+                if (e.getStatusCode() == 429) {
+                    throttled++;
+                } else {
+                    Assert.assertEquals(e.getStatusCode(), 503);
+                    failed++;
+                }
+            }
+        }
+        // Requests 2 to 13: 3, 6, 9 and 12 are throttled, 4 and 8 fail (12 is throttled first)
+        Assert.assertEquals(throttled, 4);
+        Assert.assertEquals(failed, 2);
+        Assert.assertEquals(simulator.getThrottledRequests(), 4);
+        Assert.assertEquals(simulator.getInjectedErrors(), 2);
+    }
+
+    @Test(groups = "slow")
+    public void testPagination() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            recurlyClient.createAccount(newAccount("account-" + i));
+        }
+
+        final HttpURLConnection firstPage = get(simulator.getBaseUrl() + "/accounts?state=active&per_page=2");
+        Assert.assertEquals(firstPage.getResponseCode(), 200);
+        Assert.assertEquals(firstPage.getHeaderField("X-Records"), "5");
+        final String nextUrl = simulator.getBaseUrl() + "/accounts?state=active&cursor=2&per_page=2";
+        Assert.assertEquals(firstPage.getHeaderField("Link"), "<" + nextUrl + ">; rel=\"next\"");
+
+        final HttpURLConnection lastPage = get(simulator.getBaseUrl() + "/accounts?state=active&cursor=4&per_page=2");
+        Assert.assertEquals(lastPage.getHeaderField("Link"), "<" + simulator.getBaseUrl() + "/accounts?state=active&per_page=2>; rel=\"start\"");
+
+        // The client sends per_page and gets the first page
+        Assert.assertEquals(recurlyClient.getAccounts().size(), 5);
+        recurlyClient.reconfigure(recurlyClient.getConfig().withPageSize(3));
+        Assert.assertEquals(recurlyClient.getAccounts().size(), 3);
+    }
+
+    @Test(groups = "slow")
+    public void testTransactionSearch() throws Exception {
+        recurlyClient.createAccount(newAccount("john"));
+        final List<Transaction> created = new ArrayList<Transaction>();
+        for (int i = 0; i < 10; i++) {
+            final Transaction transaction = new Transaction();
+            transaction.setAccount(newAccount("john"));
+            transaction.setAmountInCents(100 + i);
+            created.add(simulator.getSite().createTransaction(transaction));
+        }
+
+        // Transactions 2 to 8, most recent first, 3 per page
+        final TransactionQuery query = new TransactionQuery();
+        query.setType(Transaction.Type.PURCHASE);
+        query.setBeginTime(created.get(2).getCreatedAt());
+        query.setEndTime(created.get(8).getCreatedAt());
+        query.setOrder(TransactionQuery.Order.DESC);
+        query.setPerPage(3);
+
+        final Transactions firstPage = recurlyClient.getTransactions(query);
+        Assert.assertEquals(firstPage.size(), 3);
+        Assert.assertEquals(firstPage.get(0).getUuid(), created.get(8).getUuid());
+        Assert.assertTrue(firstPage.hasNextPage());
+
+        final List<Integer> amounts = new ArrayList<Integer>();
+        final TransactionStream stream = recurlyClient.streamTransactions(query);
+        while (stream.hasNext()) {
+            amounts.add(stream.next().getAmountInCents());
+        }
+        Assert.assertEquals(amounts, Arrays.asList(108, 107, 106, 105, 104, 103, 102));
+        Assert.assertNull(stream.getNextUrl());
+
+        // Interrupted in the middle of the second page
+        final TransactionStream interrupted = recurlyClient.streamTransactions(query);
+        for (int i = 0; i < 4; i++) {
+            interrupted.next();
+        }
+        Assert.assertEquals(interrupted.getPageOffset(), 1);
+        final TransactionStream resumedStream = recurlyClient.resumeTransactions(interrupted.getPageUrl(), interrupted.getPageOffset());
+        interrupted.close();
+        Assert.assertEquals(resumedStream.next().getAmountInCents(), (Integer) 104);
+
+        // Resume from a cursor
+        query.setCursor("6");
+        final TransactionStream resumed = recurlyClient.streamTransactions(query);
+        Assert.assertEquals(resumed.next().getAmountInCents(), (Integer) 102);
+        Assert.assertFalse(resumed.hasNext());
+
+        query.setBeginTime(created.get(9).getCreatedAt().plusSeconds(1));
+        query.setCursor(null);
+        Assert.assertFalse(recurlyClient.streamTransactions(query).hasNext());
+    }
+
+    @Test(groups = "slow")
+    public void testCoalescedGets() throws Exception {
+        recurlyClient.createAccount(newAccount("john"));
+        recurlyClient.reconfigure(recurlyClient.getConfig().withCoalesceGets(true));
+        simulator.setLatency(300, 0);
+
+        final int callers = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(callers);
+        final ExecutorService executor = Executors.newFixedThreadPool(callers);
+        final long requestsBefore = simulator.getRequests();
+        try {
+            final List<Future<Account>> accounts = new ArrayList<Future<Account>>();
+            final List<Future<Account>> unknownAccounts = new ArrayList<Future<Account>>();
+            for (int i = 0; i < callers; i++) {
+                final String accountCode = i % 2 == 0 ? "john" : "unknown";
+                final Future<Account> account = executor.submit(new Callable<Account>() {
+                    @Override
+                    public Account call() throws Exception {
+                        barrier.await();
+                        return recurlyClient.getAccount(accountCode);
+                    }
+                });
+                (i % 2 == 0 ? accounts : unknownAccounts).add(account);
+            }
+
+            for (final Future<Account> account : accounts) {
+                // Shared result
+                Assert.assertSame(account.get(), accounts.get(0).get());
+            }
+            for (final Future<Account> unknownAccount : unknownAccounts) {
+                try {
+                    unknownAccount.get();
+                    Assert.fail();
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof NotFoundException);
+                }
+            }
+            Assert.assertEquals(recurlyClient.getLeaderGets() + recurlyClient.getCoalescedGets(), callers);
+            Assert.assertTrue(recurlyClient.getCoalescedGets() >= callers - 2 * 2, String.valueOf(recurlyClient.getCoalescedGets()));
+            Assert.assertEquals(simulator.getRequests() - requestsBefore, recurlyClient.getLeaderGets());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Sequential calls aren't coalesced
+        simulator.setLatency(0, 0);
+        recurlyClient.getAccount("john");
+        recurlyClient.getAccount("john");
+        Assert.assertEquals(recurlyClient.getCoalescedGets() + recurlyClient.getLeaderGets(), callers + 2);
+    }
+
+    @Test(groups = "slow")
+    public void testConditionalGets() throws Exception {
+        recurlyClient.createAccount(newAccount("john"));
+        final ResponseCache responseCache = new ResponseCache(1024 * 1024);
+        recurlyClient.setResponseCache(responseCache);
+
+        final Account account = recurlyClient.getAccount("john");
+        // Modifying a returned object doesn't change what the next 304 returns
+        account.setEmail("changed@example.com");
+        final Account notModified = recurlyClient.getAccount("john");
+        Assert.assertNotSame(notModified, account);
+        Assert.assertEquals(notModified.getAccountCode(), "john");
+        Assert.assertNotEquals(notModified.getEmail(), "changed@example.com");
+        Assert.assertEquals(responseCache.getNotModifiedResponses(), 1);
+        Assert.assertEquals(responseCache.getEntries(), 1);
+
+        // Modified: new ETag
+        final Account update = new Account();
+        update.setFirstName("John");
+        recurlyClient.updateAccount("john", update);
+        final Account updated = recurlyClient.getAccount("john");
+        Assert.assertNotSame(updated, account);
+        Assert.assertEquals(updated.getFirstName(), "John");
+        Assert.assertEquals(responseCache.getStoredResponses(), 2);
+
+        // Errors aren't cached
+        try {
+            recurlyClient.getAccount("unknown");
+            Assert.fail();
+        } catch (NotFoundException e) {
+            Assert.assertEquals(responseCache.getEntries(), 1);
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testAccountCodeCache() throws Exception {
+        recurlyClient.createAccount(newAccount("john"));
+        recurlyClient.createAccount(newAccount("jane"));
+        recurlyClient.closeAccount("jane");
+        final AccountCodeCache accountCodeCache = new AccountCodeCache(1000, 0.01, 1, TimeUnit.HOURS);
+        recurlyClient.setAccountCodeCache(accountCodeCache);
+
+        // The first 404 goes to Recurly, the next one is answered locally
+        final long requestsBefore = simulator.getRequests();
+        for (int i = 0; i < 2; i++) {
+            try {
+                recurlyClient.getAccount("bob");
+                Assert.fail();
+            } catch (NotFoundException e) {
+                Assert.assertEquals(e.getError().getSymbol(), "not_found");
+            }
+        }
+        Assert.assertEquals(simulator.getRequests() - requestsBefore, 1);
+        Assert.assertEquals(accountCodeCache.getCachedNotFounds(), 1);
+
+        // Creating the account invalidates the 404
+        recurlyClient.createAccount(newAccount("bob"));
+        Assert.assertEquals(recurlyClient.getAccount("bob").getAccountCode(), "bob");
+
+        // Once all the accounts are listed, unknown codes are answered from the Bloom filter
+        Assert.assertTrue(accountCodeCache.load(recurlyClient));
+        final long requestsAfterLoad = simulator.getRequests();
+        try {
+            recurlyClient.getAccount("alice");
+            Assert.fail();
+        } catch (NotFoundException e) {
+            Assert.assertEquals(simulator.getRequests(), requestsAfterLoad);
+        }
+        Assert.assertEquals(recurlyClient.getAccount("jane").getState(), "closed");
+    }
+
+    private HttpURLConnection get(final String url) throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Authorization", "Basic " + DatatypeConverter.printBase64Binary(API_KEY.getBytes()));
+        return connection;
+    }
+
+    private static Account newAccount(final String accountCode) {
+        final Account account = new Account();
+        account.setAccountCode(accountCode);
+        account.setEmail(accountCode + "@example.com");
+        return account;
+    }
+
+    private static BillingInfo newBillingInfo(final String number) {
+        final BillingInfo billingInfo = new BillingInfo();
+        billingInfo.setFirstName("John");
+        billingInfo.setLastName("Doe");
+        billingInfo.setNumber(number);
+        billingInfo.setMonth(12);
+        billingInfo.setYear(2030);
+        billingInfo.setVerificationValue(123);
+        return billingInfo;
+    }
+}
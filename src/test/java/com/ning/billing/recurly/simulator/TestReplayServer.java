@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.simulator;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.RecurlyClient;
+import com.ning.billing.recurly.ResponseCache;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.Accounts;
+import com.ning.billing.recurly.model.exceptions.NotFoundException;
+import com.ning.billing.recurly.trace.RecordedExchange;
+import com.ning.billing.recurly.trace.RecordingRequestTraceSink;
+import com.ning.billing.recurly.trace.TraceArchiveReader;
+
+public class TestReplayServer {
+
+    private static final String API_KEY = "replayApiKey";
+
+    @Test(groups = "slow")
+    public void testRecordAndReplay() throws Exception {
+        final File archive = File.createTempFile("recurly-", ".trace");
+        archive.deleteOnExit();
+
+        // Record a flow against the simulator
+        final RecurlySimulator simulator = new RecurlySimulator(API_KEY).start();
+        final RecurlyClient recordingClient = newClient(simulator.getBaseUrl());
+        recordingClient.setHideXMLResponseNodeValues(Collections.singleton("email"));
+        // Bodies are recorded whole whatever the logging limit
+        recordingClient.reconfigure(recordingClient.getConfig().withMaxLoggedBodyLength(16));
+        final RecordingRequestTraceSink recorder = new RecordingRequestTraceSink(archive);
+        recordingClient.setRequestTraceSink(recorder);
+        try {
+            final Account account = new Account();
+            account.setAccountCode("recorded");
+            account.setEmail("recorded@example.com");
+            recordingClient.createAccount(account);
+            recordingClient.getAccount("recorded");
+            try {
+                recordingClient.getAccount("unknown");
+                Assert.fail();
+            } catch (NotFoundException expected) {
+            }
+        } finally {
+            recorder.close();
+            recordingClient.close();
+            simulator.stop();
+        }
+
+        Assert.assertEquals(recorder.getTruncatedExchanges(), 0);
+        final List<RecordedExchange> exchanges = TraceArchiveReader.readAll(archive);
+        Assert.assertEquals(exchanges.size(), 3);
+        Assert.assertEquals(exchanges.get(0).getMethod(), "POST");
+        Assert.assertEquals(exchanges.get(0).getUrl(), "/accounts");
+        Assert.assertEquals(exchanges.get(0).getStatusCode(), 201);
+        Assert.assertTrue(exchanges.get(0).getRequestBody().contains("<email>****</email>"));
+        Assert.assertEquals(exchanges.get(1).getUrl(), "/accounts/recorded?per_page=20");
+        Assert.assertFalse(exchanges.get(1).getResponseBody().contains("recorded@example.com"));
+        Assert.assertEquals(exchanges.get(2).getStatusCode(), 404);
+
+        // Replay it, without the simulator
+        final ReplayServer replayServer = ReplayServer.fromArchive(archive, ReplayServer.Timing.MAXIMUM_SPEED).start();
+        final RecurlyClient replayingClient = newClient(replayServer.getBaseUrl());
+        try {
+            for (int i = 0; i < 3; i++) {
+                final Account replayed = replayingClient.getAccount("recorded");
+                Assert.assertEquals(replayed.getAccountCode(), "recorded");
+                Assert.assertEquals(replayed.getEmail(), "****");
+            }
+            try {
+                replayingClient.getAccount("unknown");
+                Assert.fail();
+            } catch (NotFoundException expected) {
+            }
+            Assert.assertEquals(replayServer.getReplayed(), 4);
+
+            replayServer.setLoop(false);
+            try {
+                replayingClient.getAccount("recorded");
+                Assert.fail();
+            } catch (NotFoundException expected) {
+                Assert.assertEquals(replayServer.getMisses(), 1);
+            }
+        } finally {
+            replayingClient.close();
+            replayServer.stop();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testReplayHeaders() throws Exception {
+        final File archive = File.createTempFile("recurly-", ".trace");
+        archive.deleteOnExit();
+
+        // Paginated and conditional GETs depend on the Link and ETag headers
+        final RecurlySimulator simulator = new RecurlySimulator(API_KEY).start();
+        final RecurlyClient recordingClient = newClient(simulator.getBaseUrl());
+        recordingClient.reconfigure(recordingClient.getConfig().withPageSize(2));
+        recordingClient.setResponseCache(new ResponseCache(1024 * 1024));
+        final RecordingRequestTraceSink recorder = new RecordingRequestTraceSink(archive);
+        recordingClient.setRequestTraceSink(recorder);
+        try {
+            for (int i = 0; i < 3; i++) {
+                final Account account = new Account();
+                account.setAccountCode("recorded-" + i);
+                recordingClient.createAccount(account);
+            }
+            Assert.assertEquals(recordingClient.getNextPage(recordingClient.getAccounts()).size(), 1);
+            recordingClient.getAccount("recorded-0");
+            recordingClient.getAccount("recorded-0");
+        } finally {
+            recorder.close();
+            recordingClient.close();
+            simulator.stop();
+        }
+
+        final List<RecordedExchange> exchanges = TraceArchiveReader.readAll(archive);
+        Assert.assertTrue(exchanges.get(3).getResponseHeaders().get("Link").startsWith("</accounts?"));
+        Assert.assertNotNull(exchanges.get(5).getResponseHeaders().get("ETag"));
+        Assert.assertEquals(exchanges.get(6).getStatusCode(), 304);
+
+        final ReplayServer replayServer = ReplayServer.fromArchive(archive, ReplayServer.Timing.MAXIMUM_SPEED).start();
+        final RecurlyClient replayingClient = newClient(replayServer.getBaseUrl());
+        replayingClient.reconfigure(replayingClient.getConfig().withPageSize(2));
+        final ResponseCache responseCache = new ResponseCache(1024 * 1024);
+        replayingClient.setResponseCache(responseCache);
+        try {
+            final Accounts firstPage = replayingClient.getAccounts();
+            Assert.assertEquals(firstPage.size(), 2);
+            Assert.assertTrue(firstPage.getNextUrl().startsWith(replayServer.getBaseUrl()));
+            final Accounts secondPage = replayingClient.getNextPage(firstPage);
+            Assert.assertEquals(secondPage.get(0).getAccountCode(), "recorded-2");
+            Assert.assertFalse(secondPage.hasNextPage());
+
+            final Account account = replayingClient.getAccount("recorded-0");
+            final Account notModified = replayingClient.getAccount("recorded-0");
+            Assert.assertNotSame(notModified, account);
+            Assert.assertEquals(notModified.getAccountCode(), "recorded-0");
+            Assert.assertEquals(responseCache.getNotModifiedResponses(), 1);
+            Assert.assertEquals(replayServer.getMisses(), 0);
+        } finally {
+            replayingClient.close();
+            replayServer.stop();
+        }
+    }
+
+    private static RecurlyClient newClient(final String baseUrl) {
+        final RecurlyClient recurlyClient = new RecurlyClient(API_KEY);
+        recurlyClient.reconfigure(recurlyClient.getConfig().withBaseUrl(baseUrl).withPageSize(20));
+        recurlyClient.open();
+        return recurlyClient;
+    }
+}
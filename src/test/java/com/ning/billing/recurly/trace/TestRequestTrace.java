@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.RecurlyClientConfig;
+
+public class TestRequestTrace {
+
+    private static final String BODY = "<billing_info><number>4111111111111111</number><city>San Francisco</city></billing_info>";
+
+    @Test(groups = "fast")
+    public void testLoggableResponseBody() throws Exception {
+        final RecurlyClientConfig config = new RecurlyClientConfig("https://api.recurly.com:443/v2", 20, false, Collections.singleton("number")).withMaxLoggedBodyLength(-1);
+        final RequestTrace trace = new RequestTrace("id", "https://api.recurly.com:443/v2/accounts/1/billing_info", 200, 1000, BODY, config);
+        Assert.assertFalse(trace.isError());
+        Assert.assertEquals(trace.getLoggableResponseBody(), "<billing_info><number>****</number><city>San Francisco</city></billing_info>");
+
+        final RequestTrace truncated = new RequestTrace("id", "https://api.recurly.com:443/v2/accounts/1/billing_info", 404, 1000, BODY, config.withMaxLoggedBodyLength(30));
+        Assert.assertTrue(truncated.isError());
+        Assert.assertEquals(truncated.getLoggableResponseBody(), "<billing_info><number>****</nu...(46 more characters)");
+
+        // Cut by the client: a masked node without its closing tag is left out
+        final RequestTrace cut = new RequestTrace("id", null, "url", null, 0, 500, 0, 1000, BODY.substring(0, 30), BODY.length() - 30, null, config);
+        Assert.assertTrue(cut.isTruncated());
+        Assert.assertEquals(cut.getLoggableResponseBody(), "<billing_info>...(" + (BODY.length() - 30) + " more bytes)");
+    }
+
+    @Test(groups = "fast")
+    public void testAsyncSink() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<RequestTrace> traces = new CopyOnWriteArrayList<RequestTrace>();
+        final RequestTraceSink delegate = new RequestTraceSink() {
+            @Override
+            public boolean isTraceEnabled(final int statusCode) {
+                return statusCode >= 300;
+            }
+
+            @Override
+            public int getMaxBodyLength(final int maxLoggedBodyLength) {
+                return maxLoggedBodyLength;
+            }
+
+            @Override
+            public void trace(final RequestTrace trace) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                traces.add(trace);
+            }
+        };
+
+        final AsyncRequestTraceSink sink = new AsyncRequestTraceSink(delegate, 2);
+        Assert.assertFalse(sink.isTraceEnabled(200));
+        Assert.assertTrue(sink.isTraceEnabled(500));
+
+        final RecurlyClientConfig config = new RecurlyClientConfig("https://api.recurly.com:443/v2", 20, false, Collections.<String>emptySet());
+        sink.trace(new RequestTrace("id", "url", 500, 0, BODY, config));
+        while (sink.getPendingTraces() > 0) {
+            Thread.sleep(10);
+        }
+        for (int i = 1; i < 10; i++) {
+            sink.trace(new RequestTrace("id", "url", 500, i, BODY, config));
+        }
+
+        // The drain thread is blocked on the first trace: 2 traces are buffered, the rest is dropped
+        Assert.assertEquals(sink.getDroppedTraces(), 7);
+
+        latch.countDown();
+        sink.close();
+        Assert.assertEquals(traces.size(), 3);
+        Assert.assertFalse(sink.isTraceEnabled(500));
+    }
+
+    @Test(groups = "fast")
+    public void testAsyncSinkCloseTimeout() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final List<RequestTrace> traces = new CopyOnWriteArrayList<RequestTrace>();
+        final RequestTraceSink delegate = new RequestTraceSink() {
+            @Override
+            public boolean isTraceEnabled(final int statusCode) {
+                return true;
+            }
+
+            @Override
+            public int getMaxBodyLength(final int maxLoggedBodyLength) {
+                return maxLoggedBodyLength;
+            }
+
+            @Override
+            public void trace(final RequestTrace trace) {
+                writing.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                traces.add(trace);
+            }
+        };
+
+        final AsyncRequestTraceSink sink = new AsyncRequestTraceSink(delegate);
+        final RecurlyClientConfig config = new RecurlyClientConfig("https://api.recurly.com:443/v2", 20, false, Collections.<String>emptySet());
+        sink.trace(new RequestTrace("id", "url", 500, 0, BODY, config));
+        sink.trace(new RequestTrace("id", "url", 500, 1, BODY, config));
+        writing.await();
+
+        // The delegate is busy: close gives up waiting, without interrupting it
+        Assert.assertFalse(sink.close(50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(sink.isClosed());
+        Assert.assertFalse(interrupted.get());
+
+        latch.countDown();
+        Assert.assertTrue(sink.close(10, TimeUnit.SECONDS));
+        Assert.assertEquals(traces.size(), 2);
+        Assert.assertFalse(interrupted.get());
+    }
+}
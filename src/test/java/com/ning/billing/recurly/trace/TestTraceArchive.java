@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.RecurlyClientConfig;
+
+public class TestTraceArchive {
+
+    @Test(groups = "fast")
+    public void testRoundTrip() throws Exception {
+        final File archive = File.createTempFile("recurly-", ".trace");
+        archive.deleteOnExit();
+
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("Link", "</accounts?cursor=1234&per_page=20>; rel=\"next\"");
+        headers.put("ETag", "\"abcd\"");
+
+        final TraceArchiveWriter writer = new TraceArchiveWriter(archive);
+        writer.write(new RecordedExchange(0, 1500000, "POST", "/accounts", "<account><account_code>1234</account_code></account>",
+                                          201, "<account><account_code>1234</account_code><city>Zürich</city></account>", headers));
+        writer.write(new RecordedExchange(2000000, 800000, "DELETE", "/accounts/1234", null, 204, null));
+        writer.close();
+        Assert.assertEquals(writer.getExchanges(), 2);
+
+        final List<RecordedExchange> exchanges = TraceArchiveReader.readAll(archive);
+        Assert.assertEquals(exchanges.size(), 2);
+        Assert.assertEquals(exchanges.get(0).getMethod(), "POST");
+        Assert.assertEquals(exchanges.get(0).getDurationNanos(), 1500000);
+        Assert.assertEquals(exchanges.get(0).getResponseBody(), "<account><account_code>1234</account_code><city>Zürich</city></account>");
+        Assert.assertEquals(exchanges.get(0).getResponseHeaders(), headers);
+        Assert.assertTrue(exchanges.get(1).getResponseHeaders().isEmpty());
+        Assert.assertEquals(exchanges.get(1).getOffsetNanos(), 2000000);
+        Assert.assertEquals(exchanges.get(1).getStatusCode(), 204);
+        Assert.assertNull(exchanges.get(1).getRequestBody());
+        Assert.assertNull(exchanges.get(1).getResponseBody());
+    }
+
+    @Test(groups = "fast")
+    public void testTruncatedArchive() throws Exception {
+        final File archive = File.createTempFile("recurly-", ".trace");
+        archive.deleteOnExit();
+
+        final TraceArchiveWriter writer = new TraceArchiveWriter(archive);
+        for (int i = 0; i < 100; i++) {
+            writer.write(new RecordedExchange(i, i, "GET", "/accounts/" + i, null, 200, "<account><account_code>" + i + "</account_code></account>"));
+        }
+        writer.close();
+
+        // Simulate a crash while recording
+        final byte[] content = new byte[(int) archive.length()];
+        final FileInputStream in = new FileInputStream(archive);
+        Assert.assertEquals(in.read(content), content.length);
+        in.close();
+        final FileOutputStream out = new FileOutputStream(archive);
+        out.write(content, 0, content.length - 40);
+        out.close();
+
+        final List<RecordedExchange> exchanges = TraceArchiveReader.readAll(archive);
+        Assert.assertTrue(exchanges.size() < 100);
+        for (int i = 0; i < exchanges.size(); i++) {
+            Assert.assertEquals(exchanges.get(i).getUrl(), "/accounts/" + i);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testRelativeUrl() throws Exception {
+        final RecurlyClientConfig config = new RecurlyClientConfig("https://api.recurly.com:443/v2", 20, false, Collections.<String>emptySet());
+        Assert.assertEquals(RecordingRequestTraceSink.relativeUrl(new RequestTrace("id", "https://api.recurly.com:443/v2/accounts/1234?per_page=20", 200, 1000, "", config)),
+                            "/accounts/1234?per_page=20");
+        // The http client may drop the default port
+        Assert.assertEquals(RecordingRequestTraceSink.relativeUrl(new RequestTrace("id", "https://api.recurly.com/v2/plans", 200, 1000, "", config)),
+                            "/plans");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+
+public class TestIsoDateTimeParser {
+
+    @Test(groups = "fast")
+    public void testSameResultAsJoda() throws Exception {
+        final String[] timestamps = {"2011-06-27T12:34:56Z", "1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "2000-02-29T23:59:59Z",
+                                     "2100-03-01T00:00:00Z", "2011-06-27T12:34:56.789Z", "2011-06-27T12:34:56.7Z", "2011-06-27T12:34:56.123456Z",
+                                     "2011-06-27T12:34:56-07:00", "2011-06-27T12:34:56+05:30", "0001-01-01T00:00:00Z", "9999-12-31T23:59:59Z",
+                                     // Generic path
+                                     "2011-06-27", "2011-06-27T12:34:56", "2011-06-27T12:34Z", "2011-06-27T12:34:56+0530", "2011-W26-1T00:00:00Z"};
+        for (final String timestamp : timestamps) {
+            Assert.assertEquals(IsoDateTimeParser.parseMillis(timestamp), new DateTime(timestamp).getMillis(), timestamp);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testInvalid() throws Exception {
+        for (final String timestamp : new String[]{"2011-02-29T00:00:00Z", "2011-13-01T00:00:00Z", "2011-06-27T12:60:00Z", "not a date", ""}) {
+            try {
+                IsoDateTimeParser.parseMillis(timestamp);
+                Assert.fail(timestamp);
+            } catch (IllegalArgumentException e) {
+                // Expected, like new DateTime(String)
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testLazyDateTimes() throws Exception {
+        final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+        final String xml = "<subscription><uuid>1234</uuid><activated_at type=\"datetime\">2011-05-27T07:00:00Z</activated_at>" +
+                           "<canceled_at nil=\"nil\"></canceled_at><current_period_ends_at type=\"datetime\">2011-06-27T07:00:00Z</current_period_ends_at>" +
+                           "</subscription>";
+        final Subscription eager = xmlMapper.readValue(xml, Subscription.class);
+
+        RecurlyObject.setLazyDateTimes(true);
+        try {
+            final Subscription lazy = xmlMapper.readValue(xml, Subscription.class);
+            Assert.assertEquals(lazy, eager);
+            Assert.assertEquals(lazy.getActivatedAt(), new DateTime("2011-05-27T07:00:00Z"));
+            Assert.assertSame(lazy.getActivatedAt(), lazy.getActivatedAt());
+            Assert.assertNull(lazy.getCanceledAt());
+
+            // Serialized through the getters
+            final Subscription unread = xmlMapper.readValue(xml, Subscription.class);
+            final String serialized = xmlMapper.writeValueAsString(unread);
+            Assert.assertEquals(xmlMapper.readValue(serialized, Subscription.class), eager, serialized);
+        } finally {
+            RecurlyObject.setLazyDateTimes(false);
+        }
+    }
+}
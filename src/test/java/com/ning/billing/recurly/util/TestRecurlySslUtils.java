@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRecurlySslUtils {
+
+    @Test(groups = "fast")
+    public void testReloadSSLContext() throws Exception {
+        final SSLContext context = RecurlySslUtils.getSSLContext();
+        Assert.assertSame(RecurlySslUtils.getSSLContext(), context);
+
+        final SSLContext reloaded = RecurlySslUtils.reloadSSLContext();
+        Assert.assertNotSame(reloaded, context);
+        Assert.assertSame(RecurlySslUtils.getSSLContext(), reloaded);
+
+        Assert.assertEquals(reloaded.getClientSessionContext().getSessionCacheSize(), 256);
+        Assert.assertEquals(reloaded.getClientSessionContext().getSessionTimeout(), 3600);
+    }
+
+    @Test(groups = "fast")
+    public void testPeerAwareEngine() throws Exception {
+        final SSLEngine engine = RecurlySslUtils.getSSLEngine("api.recurly.com", 443);
+        Assert.assertTrue(engine instanceof MeteredSSLEngine);
+        Assert.assertTrue(engine.getUseClientMode());
+        Assert.assertEquals(engine.getPeerHost(), "api.recurly.com");
+        Assert.assertEquals(engine.getPeerPort(), 443);
+    }
+
+    @Test(groups = "fast")
+    public void testHandshakeMetrics() throws Exception {
+        final SslHandshakeMetrics metrics = new SslHandshakeMetrics();
+        Assert.assertEquals(metrics.getMeanHandshakeNanos(), 0);
+
+        metrics.recordHandshake(3000, false);
+        metrics.recordHandshake(1000, true);
+        metrics.recordFailure();
+
+        Assert.assertEquals(metrics.getFullHandshakes(), 1);
+        Assert.assertEquals(metrics.getResumedHandshakes(), 1);
+        Assert.assertEquals(metrics.getCompletedHandshakes(), 2);
+        Assert.assertEquals(metrics.getFailedHandshakes(), 1);
+        Assert.assertEquals(metrics.getMeanHandshakeNanos(), 2000);
+        Assert.assertEquals(metrics.getMaxHandshakeNanos(), 3000);
+
+        metrics.reset();
+        Assert.assertEquals(metrics.getCompletedHandshakes(), 0);
+    }
+}
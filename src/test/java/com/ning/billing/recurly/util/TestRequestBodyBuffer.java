@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.TestUtils;
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.http.client.Body;
+
+public class TestRequestBodyBuffer {
+
+    @Test(groups = "fast")
+    public void testBody() throws Exception {
+        final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+        final Account account = TestUtils.createRandomAccount();
+        account.setBillingInfo(TestUtils.createRandomBillingInfo());
+
+        final RequestBodyBuffer buffer = RequestBodyBuffer.acquire();
+        xmlMapper.writerWithType(Account.class).writeValue(buffer, account);
+        final String expected = xmlMapper.writeValueAsString(account);
+        Assert.assertEquals(buffer.toString(), expected);
+
+        // Each body reads the whole content, in as many chunks as needed
+        for (int i = 0; i < 2; i++) {
+            final Body body = buffer.asBodyGenerator().createBody();
+            Assert.assertEquals(body.getContentLength(), expected.getBytes("UTF-8").length);
+            final ByteBuffer chunk = ByteBuffer.allocate(7);
+            final StringBuilder read = new StringBuilder();
+            while (body.read(chunk) >= 0) {
+                chunk.flip();
+                read.append(new String(chunk.array(), 0, chunk.limit(), "UTF-8"));
+                chunk.clear();
+            }
+            Assert.assertEquals(read.toString(), expected);
+            body.close();
+        }
+
+        // Released buffers are reused, empty
+        buffer.release();
+        buffer.release();
+        final RequestBodyBuffer reused = RequestBodyBuffer.acquire();
+        Assert.assertSame(reused, buffer);
+        Assert.assertEquals(reused.getLength(), 0);
+        Assert.assertNotSame(RequestBodyBuffer.acquire(), reused);
+    }
+
+    @Test(groups = "fast")
+    public void testReleaseWhileBodyIsRead() throws Exception {
+        final RequestBodyBuffer buffer = RequestBodyBuffer.acquire();
+        buffer.write("<account><account_code>1</account_code></account>".getBytes("UTF-8"));
+        final Body body = buffer.asBodyGenerator().createBody();
+        final ByteBuffer chunk = ByteBuffer.allocate(9);
+        Assert.assertEquals(body.read(chunk), 9);
+
+        // The request completed early: the buffer stays out of the pool while the body is being read
+        buffer.release();
+        final RequestBodyBuffer other = RequestBodyBuffer.acquire();
+        Assert.assertNotSame(other, buffer);
+        other.write("<billing_info><number>4111111111111111</number></billing_info>".getBytes("UTF-8"));
+        chunk.clear();
+        Assert.assertEquals(body.read(chunk), 9);
+        Assert.assertEquals(new String(chunk.array(), 0, 9, "UTF-8"), "<account_");
+        other.release();
+
+        // No new body once released
+        try {
+            buffer.asBodyGenerator().createBody();
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+
+        // Back to the pool (behind the buffers released before it) once the body is closed
+        body.close();
+        body.close();
+        final List<RequestBodyBuffer> pooled = new ArrayList<RequestBodyBuffer>();
+        RequestBodyBuffer acquired;
+        do {
+            acquired = RequestBodyBuffer.acquire();
+            pooled.add(acquired);
+        } while (acquired != buffer && pooled.size() < 100);
+        Assert.assertSame(acquired, buffer);
+        Assert.assertEquals(buffer.getLength(), 0);
+        for (final RequestBodyBuffer released : pooled) {
+            released.release();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import java.io.ByteArrayInputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.recurly.model.Account;
+import com.ning.billing.recurly.model.RecurlyObject;
+
+public class TestResponseBodyBuffer {
+
+    @Test(groups = "fast")
+    public void testReadFrom() throws Exception {
+        final String xml = "<account>\n  <city>Zürich\nCenter</city>\n</account>";
+
+        final ResponseBodyBuffer buffer = ResponseBodyBuffer.acquire();
+        try {
+            buffer.readFrom(new ByteArrayInputStream(xml.getBytes("UTF-8")), false);
+            Assert.assertEquals(buffer.toString(), xml);
+
+            buffer.readFrom(new ByteArrayInputStream(xml.getBytes("UTF-8")), true);
+            Assert.assertEquals(buffer.toString(), "<account>  <city>ZürichCenter</city></account>");
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testParseFromBuffer() throws Exception {
+        final String xml = "<account><account_code>1234</account_code><city>Zürich</city></account>";
+
+        final ResponseBodyBuffer buffer = ResponseBodyBuffer.acquire();
+        try {
+            buffer.readFrom(new ByteArrayInputStream(xml.getBytes("UTF-8")), false);
+            final Account account = RecurlyObject.newXmlMapper().readValue(buffer.asInputStream(), Account.class);
+            Assert.assertEquals(account.getAccountCode(), "1234");
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testGrowAndReuse() throws Exception {
+        final byte[] large = new byte[100000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) ('a' + (i % 26));
+        }
+
+        final ResponseBodyBuffer buffer = ResponseBodyBuffer.acquire();
+        buffer.readFrom(new ByteArrayInputStream(large), false);
+        Assert.assertEquals(buffer.getLength(), large.length);
+        Assert.assertEquals(buffer.toByteArray(), large);
+
+        // Nested acquisitions on the same thread get their own buffer
+        final ResponseBodyBuffer nested = ResponseBodyBuffer.acquire();
+        Assert.assertNotSame(nested, buffer);
+        nested.release();
+        buffer.release();
+
+        final ResponseBodyBuffer reused = ResponseBodyBuffer.acquire();
+        Assert.assertSame(reused, buffer);
+        Assert.assertTrue(reused.isEmpty());
+        reused.release();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ning.billing.recurly.model.RecurlyObject;
+import com.ning.billing.recurly.model.Subscription;
+
+public class TestStringPool {
+
+    @Test(groups = "fast")
+    public void testIntern() throws Exception {
+        final StringPool pool = new StringPool(2);
+        final String usd = pool.intern(new String("USD"));
+        Assert.assertSame(pool.intern(new String("USD")), usd);
+        Assert.assertNull(pool.intern(null));
+
+        final String eur = pool.intern(new String("EUR"));
+        Assert.assertSame(pool.intern(new String("EUR")), eur);
+        Assert.assertEquals(pool.size(), 2);
+
+        // Full: values are returned as-is
+        final String gbp = new String("GBP");
+        Assert.assertSame(pool.intern(gbp), gbp);
+        Assert.assertNotSame(pool.intern(new String("GBP")), gbp);
+        Assert.assertEquals(pool.size(), 2);
+
+        // Long values are never pooled
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i <= StringPool.MAX_VALUE_LENGTH; i++) {
+            longValue.append('x');
+        }
+        pool.clear();
+        final String value = longValue.toString();
+        Assert.assertSame(pool.intern(value), value);
+        Assert.assertEquals(pool.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testParsedValuesAreShared() throws Exception {
+        final XmlMapper xmlMapper = RecurlyObject.newXmlMapper();
+        final String xml = "<subscription><plan_code>gold</plan_code><state>active</state><currency>USD</currency></subscription>";
+        final Subscription first = xmlMapper.readValue(xml, Subscription.class);
+        final Subscription second = xmlMapper.readValue(xml, Subscription.class);
+        Assert.assertEquals(first.getState(), "active");
+        Assert.assertSame(first.getState(), second.getState());
+        Assert.assertSame(first.getCurrency(), second.getCurrency());
+    }
+}
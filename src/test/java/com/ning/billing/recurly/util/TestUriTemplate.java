@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.recurly.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestUriTemplate {
+
+    @Test(groups = "fast")
+    public void testExpand() throws Exception {
+        final UriTemplate template = UriTemplate.compile("/accounts/{account_code}/billing_info");
+        Assert.assertEquals(template.getVariableCount(), 1);
+        Assert.assertEquals(template.expand("1234"), "/accounts/1234/billing_info");
+        Assert.assertEquals(UriTemplate.compile("/plans").expand(), "/plans");
+        Assert.assertEquals(UriTemplate.compile("/plans/{plan_code}/add_ons/{add_on_code}").expand("gold", "seats"), "/plans/gold/add_ons/seats");
+    }
+
+    @Test(groups = "fast")
+    public void testEncoding() throws Exception {
+        final UriTemplate template = UriTemplate.compile("/accounts/{account_code}");
+        Assert.assertEquals(template.expand("a b/c?d#e"), "/accounts/a%20b%2Fc%3Fd%23e");
+        Assert.assertEquals(template.expand("user@example.com"), "/accounts/user@example.com");
+        Assert.assertEquals(template.expand("café"), "/accounts/caf%C3%A9");
+
+        final StringBuilder url = new StringBuilder("/accounts");
+        UriTemplate.appendQueryParameter(url, "state", "past_due");
+        UriTemplate.appendQueryParameter(url, "q", "a&b=c+d");
+        Assert.assertEquals(url.toString(), "/accounts?state=past_due&q=a%26b%3Dc%2Bd");
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() throws Exception {
+        UriTemplate.compile("/accounts/{account_code}").expand();
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testUnterminatedVariable() throws Exception {
+        UriTemplate.compile("/accounts/{account_code");
+    }
+}